@@ -29,10 +29,13 @@ import exchange.core2.core.common.api.reports.ReportResult;
 import exchange.core2.core.common.cmd.CommandResultCode;
 import exchange.core2.core.common.cmd.OrderCommand;
 import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.AdmissionControlConfiguration;
+import exchange.core2.core.common.config.AdmissionControlConfiguration.CommandClass;
+import exchange.core2.core.metrics.MetricsRegistry;
 import exchange.core2.core.orderbook.OrderBookEventsHelper;
 import exchange.core2.core.processors.BinaryCommandsProcessor;
 import exchange.core2.core.utils.SerializationUtils;
-import lombok.RequiredArgsConstructor;
+import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import net.jpountz.lz4.LZ4Compressor;
 import net.openhft.chronicle.bytes.WriteBytesMarshallable;
@@ -40,26 +43,51 @@ import net.openhft.chronicle.wire.Wire;
 import org.agrona.collections.LongLongConsumer;
 import org.eclipse.collections.impl.map.mutable.ConcurrentHashMap;
 
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.LongConsumer;
 import java.util.stream.Stream;
 
 @Slf4j
-@RequiredArgsConstructor
 public final class ExchangeApi {
 
     private final RingBuffer<OrderCommand> ringBuffer;
     private final LZ4Compressor lz4Compressor;
 
+    // admission control: min free ring slots required to accept command (by command class)
+    private final long[] minFreeSlots;
+    private final LongAdder[] rejectedCounters;
+
     // promises cache (TODO can be changed to queue)
     private final Map<Long, Consumer<OrderCommand>> promises = new ConcurrentHashMap<>();
 
     public static final int LONGS_PER_MESSAGE = 5;
 
+    public ExchangeApi(final RingBuffer<OrderCommand> ringBuffer,
+                       final LZ4Compressor lz4Compressor,
+                       final AdmissionControlConfiguration admissionControlCfg) {
+
+        this.ringBuffer = ringBuffer;
+        this.lz4Compressor = lz4Compressor;
+
+        final CommandClass[] classes = CommandClass.values();
+        this.minFreeSlots = new long[classes.length];
+        this.rejectedCounters = new LongAdder[classes.length];
+        for (CommandClass commandClass : classes) {
+            final double highWaterMark = admissionControlCfg.getHighWaterMark(commandClass);
+            if (highWaterMark <= 0 || highWaterMark > 1) {
+                throw new IllegalArgumentException("High-water mark for " + commandClass + " must be in (0, 1] range");
+            }
+            minFreeSlots[commandClass.ordinal()] = (long) Math.ceil(ringBuffer.getBufferSize() * (1.0 - highWaterMark));
+            rejectedCounters[commandClass.ordinal()] = new LongAdder();
+        }
+    }
+
 
     public void processResult(final long seq, final OrderCommand cmd) {
 
@@ -172,6 +200,92 @@ public final class ExchangeApi {
     }
 
 
+    /**
+     * Non-blocking version of submitCommand.
+     * Command is rejected immediately (not published) if ring buffer occupancy is above
+     * the high-water mark configured for the command class, or if ring buffer is full.
+     *
+     * @param cmd - command
+     * @return ACCEPTED if command was published, OVERLOADED if rejected
+     */
+    public CommandResultCode trySubmitCommand(ApiCommand cmd) {
+        final TryPublishRoute route = tryPublishRoute(cmd);
+        return tryPublish(route.translator, cmd, route.commandClass);
+    }
+
+    /**
+     * Non-blocking version of submitCommandAsync.
+     * Returns already completed future with OVERLOADED result code if command was rejected by admission control.
+     *
+     * @param cmd - command
+     * @return future with command result
+     */
+    public CompletableFuture<CommandResultCode> trySubmitCommandAsync(ApiCommand cmd) {
+        final TryPublishRoute route = tryPublishRoute(cmd);
+        return tryPublishAsync(route.translator, cmd, route.commandClass);
+    }
+
+    /**
+     * Number of commands rejected by admission control
+     *
+     * @param commandClass - command class
+     * @return rejected commands counter
+     */
+    public long getRejectedCount(final CommandClass commandClass) {
+        return rejectedCounters[commandClass.ordinal()].sum();
+    }
+
+    public void registerMetrics(final MetricsRegistry registry) {
+        for (CommandClass commandClass : CommandClass.values()) {
+            registry.gauge("api.rejected." + commandClass.name(), () -> getRejectedCount(commandClass));
+        }
+    }
+
+    private static TryPublishRoute tryPublishRoute(final ApiCommand cmd) {
+        final TryPublishRoute route = TRY_PUBLISH_ROUTES.get(cmd.getClass());
+        if (route == null) {
+            // multi-message commands (binary data, persist state) and reset are not supported
+            throw new IllegalArgumentException("Unsupported command type for non-blocking submit: " + cmd.getClass().getSimpleName());
+        }
+        return route;
+    }
+
+    private boolean isAdmitted(final CommandClass commandClass) {
+        final long minFree = minFreeSlots[commandClass.ordinal()];
+        // remainingCapacity is relatively expensive (reads gating sequences), skip it when only full ring matters
+        return minFree == 0 || ringBuffer.remainingCapacity() > minFree;
+    }
+
+    private <T extends ApiCommand> CommandResultCode tryPublish(final EventTranslatorOneArg<OrderCommand, T> translator,
+                                                                final T apiCommand,
+                                                                final CommandClass commandClass) {
+
+        if (isAdmitted(commandClass) && ringBuffer.tryPublishEvent(translator, apiCommand)) {
+            return CommandResultCode.ACCEPTED;
+        }
+        rejectedCounters[commandClass.ordinal()].increment();
+        return CommandResultCode.OVERLOADED;
+    }
+
+    private <T extends ApiCommand> CompletableFuture<CommandResultCode> tryPublishAsync(final EventTranslatorOneArg<OrderCommand, T> translator,
+                                                                                        final T apiCommand,
+                                                                                        final CommandClass commandClass) {
+        final CompletableFuture<CommandResultCode> future = new CompletableFuture<>();
+
+        final boolean published = isAdmitted(commandClass) && ringBuffer.tryPublishEvent(
+                (cmd, seq, apiCmd) -> {
+                    translator.translateTo(cmd, seq, apiCmd);
+                    promises.put(seq, orderCommand -> future.complete(orderCommand.resultCode));
+                },
+                apiCommand);
+
+        if (!published) {
+            rejectedCounters[commandClass.ordinal()].increment();
+            future.complete(CommandResultCode.OVERLOADED);
+        }
+        return future;
+    }
+
     public void submitCommandsSync(List<? extends ApiCommand> cmd) {
         if (cmd.isEmpty()) {
             return;
@@ -398,7 +512,7 @@ public final class ExchangeApi {
             cmdMatching.orderId = api.dumpId;
             cmdMatching.symbol = -1;
             cmdMatching.uid = 0;
-            cmdMatching.price = 0;
+            cmdMatching.price = api.baseDumpId;
             cmdMatching.timestamp = api.timestamp;
             cmdMatching.resultCode = CommandResultCode.NEW;
 
@@ -410,7 +524,7 @@ public final class ExchangeApi {
             cmdRisk.orderId = api.dumpId;
             cmdRisk.symbol = -1;
             cmdRisk.uid = 0;
-            cmdRisk.price = 0;
+            cmdRisk.price = api.baseDumpId;
             cmdRisk.timestamp = api.timestamp;
             cmdRisk.resultCode = CommandResultCode.NEW;
 
@@ -520,6 +634,37 @@ public final class ExchangeApi {
         cmd.resultCode = CommandResultCode.NEW;
     };
 
+    // translator and admission control class of commands accepted by non-blocking submit
+    private static final Map<Class<? extends ApiCommand>, TryPublishRoute> TRY_PUBLISH_ROUTES = new HashMap<>();
+
+    static {
+        addTryPublishRoute(ApiMoveOrder.class, MOVE_ORDER_TRANSLATOR, CommandClass.MODIFY_ORDER);
+        addTryPublishRoute(ApiPlaceOrder.class, NEW_ORDER_TRANSLATOR, CommandClass.NEW_ORDER);
+        addTryPublishRoute(ApiCancelOrder.class, CANCEL_ORDER_TRANSLATOR, CommandClass.CANCEL_ORDER);
+        addTryPublishRoute(ApiReduceOrder.class, REDUCE_ORDER_TRANSLATOR, CommandClass.MODIFY_ORDER);
+        addTryPublishRoute(ApiOrderBookRequest.class, ORDER_BOOK_REQUEST_TRANSLATOR, CommandClass.OTHER);
+        addTryPublishRoute(ApiAddUser.class, ADD_USER_TRANSLATOR, CommandClass.OTHER);
+        addTryPublishRoute(ApiAdjustUserBalance.class, ADJUST_USER_BALANCE_TRANSLATOR, CommandClass.OTHER);
+        addTryPublishRoute(ApiResumeUser.class, RESUME_USER_TRANSLATOR, CommandClass.OTHER);
+        addTryPublishRoute(ApiSuspendUser.class, SUSPEND_USER_TRANSLATOR, CommandClass.OTHER);
+        addTryPublishRoute(ApiNop.class, NOP_TRANSLATOR, CommandClass.OTHER);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T extends ApiCommand> void addTryPublishRoute(final Class<T> commandType,
+                                                                  final EventTranslatorOneArg<OrderCommand, T> translator,
+                                                                  final CommandClass commandClass) {
+        // translator is only called with command of its own type
+        final EventTranslatorOneArg<OrderCommand, ApiCommand> anyCommandTranslator = (EventTranslatorOneArg) translator;
+        TRY_PUBLISH_ROUTES.put(commandType, new TryPublishRoute(anyCommandTranslator, commandClass));
+    }
+
+    @AllArgsConstructor
+    private static final class TryPublishRoute {
+        private final EventTranslatorOneArg<OrderCommand, ApiCommand> translator;
+        private final CommandClass commandClass;
+    }
+
     public void binaryData(int serviceFlags, long eventsGroup, long timestampNs, byte lastFlag, long word0, long word1, long word2, long word3, long word4) {
         ringBuffer.publishEvent(((cmd, seq) -> {
 
@@ -923,6 +1068,44 @@ public final class ExchangeApi {
 
     }
 
+    /**
+     * Publish preassembled replayed commands using batch claims.
+     * Only request fields are copied, result code is set to NEW.
+     *
+     * @param commands - decoded commands
+     * @param count    - number of commands to publish
+     */
+    public void publishReplayedCommands(final OrderCommand[] commands, final int count) {
+
+        final int maxChunk = Math.max(1, ringBuffer.getBufferSize() / 4);
+
+        int idx = 0;
+        while (idx < count) {
+            final int n = Math.min(count - idx, maxChunk);
+            final long hi = ringBuffer.next(n);
+            final long lo = hi - n + 1;
+            for (long seq = lo; seq <= hi; seq++) {
+                final OrderCommand src = commands[idx++];
+                final OrderCommand cmd = ringBuffer.get(seq);
+                cmd.command = src.command;
+                cmd.resultCode = CommandResultCode.NEW;
+                cmd.serviceFlags = src.serviceFlags;
+                cmd.eventsGroup = src.eventsGroup;
+                cmd.timestamp = src.timestamp;
+                cmd.orderId = src.orderId;
+                cmd.symbol = src.symbol;
+                cmd.uid = src.uid;
+                cmd.price = src.price;
+                cmd.reserveBidPrice = src.reserveBidPrice;
+                cmd.size = src.size;
+                cmd.action = src.action;
+                cmd.orderType = src.orderType;
+                cmd.userCookie = src.userCookie;
+            }
+            ringBuffer.publish(lo, hi);
+        }
+    }
+
     public void reset(long timestampNs) {
 
         ringBuffer.publishEvent((cmd, seq) -> {
@@ -23,15 +23,26 @@ import com.lmax.disruptor.dsl.Disruptor;
 import com.lmax.disruptor.dsl.EventHandlerGroup;
 import com.lmax.disruptor.dsl.ProducerType;
 import exchange.core2.core.common.CoreWaitStrategy;
+import exchange.core2.core.common.api.ApiPersistState;
 import exchange.core2.core.common.cmd.CommandResultCode;
 import exchange.core2.core.common.cmd.OrderCommand;
 import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.AdmissionControlConfiguration;
 import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.common.config.InitialStateConfiguration;
 import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.ReportsQueriesConfiguration;
 import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.core.metrics.MetricsRegistry;
+import exchange.core2.core.metrics.PipelineLatencyRecorder;
+import exchange.core2.core.metrics.PipelineLatencySnapshot;
+import exchange.core2.core.metrics.PipelineStage;
 import exchange.core2.core.orderbook.IOrderBook;
 import exchange.core2.core.processors.*;
 import exchange.core2.core.processors.journaling.ISerializationProcessor;
+import exchange.core2.core.processors.output.OutputRing;
+import exchange.core2.core.processors.views.MatchingEngineReplica;
+import exchange.core2.core.processors.views.ReportQueryEngine;
 import lombok.Builder;
 import lombok.extern.slf4j.Slf4j;
 
@@ -61,6 +72,16 @@ public final class ExchangeCore {
 
     private final ExchangeConfiguration exchangeConfiguration;
 
+    private final PipelineLatencyRecorder latencyRecorder;
+
+    private final MetricsRegistry metricsRegistry = new MetricsRegistry();
+
+    // optional asynchronous output ring
+    private final OutputRing outputRing;
+
+    // optional off-pipeline reports engine
+    private final ReportQueryEngine reportQueryEngine;
+
     // core can be started and stopped only once
     private boolean started = false;
     private boolean stopped = false;
@@ -70,7 +91,7 @@ public final class ExchangeCore {
 
     /**
      * Exchange core constructor.
-     *  @param resultsConsumer       - custom consumer of processed commands
+     *  @param resultsConsumer       - custom consumer of processed commands (called synchronously, can be null if only output ring is used)
      * @param exchangeConfiguration - exchange configuration
      */
     @Builder
@@ -98,7 +119,15 @@ public final class ExchangeCore {
 
         this.ringBuffer = disruptor.getRingBuffer();
 
-        this.api = new ExchangeApi(ringBuffer, perfCfg.getBinaryCommandsLz4CompressorFactory().get());
+        metricsRegistry.gauge("ringBuffer.remainingCapacity", ringBuffer::remainingCapacity);
+        metricsRegistry.gauge("ringBuffer.cursor", ringBuffer::getCursor);
+
+        final AdmissionControlConfiguration admissionControlCfg = exchangeConfiguration.getAdmissionControlCfg() != null
+                ? exchangeConfiguration.getAdmissionControlCfg()
+                : AdmissionControlConfiguration.DEFAULT;
+
+        this.api = new ExchangeApi(ringBuffer, perfCfg.getBinaryCommandsLz4CompressorFactory().get(), admissionControlCfg);
+        api.registerMetrics(metricsRegistry);
 
         final IOrderBook.OrderBookFactory orderBookFactory = perfCfg.getOrderBookFactory();
 
@@ -107,13 +136,21 @@ public final class ExchangeCore {
 
         final SerializationConfiguration serializationCfg = exchangeConfiguration.getSerializationCfg();
 
+        // per-stage latency recorders (preallocated, can be switched on/off at runtime)
+        this.latencyRecorder = new PipelineLatencyRecorder(ringBufferSize, matchingEnginesNum, riskEnginesNum, perfCfg.isLatencyMetricsEnabled());
+
         // creating serialization processor
         serializationProcessor = serializationCfg.getSerializationProcessorFactory().apply(exchangeConfiguration);
+        serializationProcessor.registerMetrics(metricsRegistry);
 
         // creating shared objects pool
         final int poolInitialSize = (matchingEnginesNum + riskEnginesNum) * 8;
         final int chainLength = EVENTS_POOLING ? 1024 : 1;
-        final SharedPool sharedPool = new SharedPool(poolInitialSize * 4, poolInitialSize, chainLength);
+        final SharedBinaryDecoder binaryDecoder = exchangeConfiguration.getReportsQueriesCfg().isSharedBinaryDecoding()
+                ? new SharedBinaryDecoder(matchingEnginesNum + riskEnginesNum)
+                : null;
+        final SharedPool sharedPool = new SharedPool(poolInitialSize * 4, poolInitialSize, chainLength, binaryDecoder);
+        sharedPool.registerMetrics(metricsRegistry);
 
         // creating and attaching exceptions handler
         final DisruptorExceptionHandler<OrderCommand> exceptionHandler = new DisruptorExceptionHandler<>("main", (ex, seq) -> {
@@ -134,7 +171,7 @@ public final class ExchangeCore {
                 .collect(Collectors.toMap(
                         shardId -> shardId,
                         shardId -> CompletableFuture.supplyAsync(
-                                () -> new MatchingEngineRouter(shardId, matchingEnginesNum, serializationProcessor, orderBookFactory, sharedPool, exchangeConfiguration),
+                                () -> new MatchingEngineRouter(shardId, matchingEnginesNum, serializationProcessor, orderBookFactory, sharedPool, exchangeConfiguration, metricsRegistry),
                                 loaderExecutor)));
 
         // TODO create processors in same thread we will execute it??
@@ -145,12 +182,15 @@ public final class ExchangeCore {
                 .collect(Collectors.toMap(
                         shardId -> shardId,
                         shardId -> CompletableFuture.supplyAsync(
-                                () -> new RiskEngine(shardId, riskEnginesNum, serializationProcessor, sharedPool, exchangeConfiguration),
+                                () -> new RiskEngine(shardId, riskEnginesNum, serializationProcessor, sharedPool, exchangeConfiguration, metricsRegistry),
                                 loaderExecutor)));
 
         final EventHandler<OrderCommand>[] matchingEngineHandlers = matchingEngineFutures.values().stream()
                 .map(CompletableFuture::join)
-                .map(mer -> (EventHandler<OrderCommand>) (cmd, seq, eob) -> mer.processOrder(seq, cmd))
+                .map(mer -> (EventHandler<OrderCommand>) (cmd, seq, eob) -> {
+                    mer.processOrder(seq, cmd);
+                    latencyRecorder.record(PipelineStage.MATCHING_ENGINE, mer.getShardId(), seq);
+                })
                 .toArray(ExchangeCore::newEventHandlersArray);
 
         final Map<Integer, RiskEngine> riskEngines = riskEngineFutures.entrySet().stream()
@@ -164,12 +204,17 @@ public final class ExchangeCore {
 
         // 1. grouping processor (G)
         final EventHandlerGroup<OrderCommand> afterGrouping =
-                disruptor.handleEventsWith((rb, bs) -> new GroupingProcessor(rb, rb.newBarrier(bs), perfCfg, coreWaitStrategy, sharedPool));
+                disruptor.handleEventsWith((rb, bs) -> new GroupingProcessor(rb, rb.newBarrier(bs), perfCfg, exchangeConfiguration.getReportsQueriesCfg(), coreWaitStrategy, sharedPool, latencyRecorder));
 
         // 2. [journaling (J)] in parallel with risk hold (R1) + matching engine (ME)
 
         boolean enableJournaling = serializationCfg.isEnableJournaling();
-        final EventHandler<OrderCommand> jh = enableJournaling ? serializationProcessor::writeToJournal : null;
+        final EventHandler<OrderCommand> jh = enableJournaling
+                ? (cmd, seq, eob) -> {
+                    serializationProcessor.writeToJournal(cmd, seq, eob);
+                    latencyRecorder.record(PipelineStage.JOURNALING, 0, seq);
+                }
+                : null;
 
         if (enableJournaling) {
             afterGrouping.handleEventsWith(jh);
@@ -177,7 +222,11 @@ public final class ExchangeCore {
 
         riskEngines.forEach((idx, riskEngine) -> afterGrouping.handleEventsWith(
                 (rb, bs) -> {
-                    final TwoStepMasterProcessor r1 = new TwoStepMasterProcessor(rb, rb.newBarrier(bs), riskEngine::preProcessCommand, exceptionHandler, coreWaitStrategy, "R1_" + idx);
+                    final TwoStepMasterProcessor r1 = new TwoStepMasterProcessor(rb, rb.newBarrier(bs), (seq, cmd) -> {
+                        final boolean forcePublish = riskEngine.preProcessCommand(seq, cmd);
+                        latencyRecorder.record(PipelineStage.RISK_HOLD, idx, seq);
+                        return forcePublish;
+                    }, exceptionHandler, coreWaitStrategy, "R1_" + idx);
                     procR1.add(r1);
                     return r1;
                 }));
@@ -189,7 +238,11 @@ public final class ExchangeCore {
 
         riskEngines.forEach((idx, riskEngine) -> afterMatchingEngine.handleEventsWith(
                 (rb, bs) -> {
-                    final TwoStepSlaveProcessor r2 = new TwoStepSlaveProcessor(rb, rb.newBarrier(bs), riskEngine::handlerRiskRelease, exceptionHandler, "R2_" + idx);
+                    final TwoStepSlaveProcessor r2 = new TwoStepSlaveProcessor(rb, rb.newBarrier(bs), (seq, cmd) -> {
+                        final boolean forcePublish = riskEngine.handlerRiskRelease(seq, cmd);
+                        latencyRecorder.record(PipelineStage.RISK_RELEASE, idx, seq);
+                        return forcePublish;
+                    }, exceptionHandler, "R2_" + idx);
                     procR2.add(r2);
                     return r2;
                 }));
@@ -200,16 +253,48 @@ public final class ExchangeCore {
                 ? disruptor.after(arraysAddHandler(matchingEngineHandlers, jh))
                 : afterMatchingEngine;
 
-        final ResultsHandler resultsHandler = new ResultsHandler(resultsConsumer);
+        this.outputRing = perfCfg.getOutputRingSize() > 0 ? new OutputRing(perfCfg.getOutputRingSize(), metricsRegistry) : null;
+
+        final ObjLongConsumer<OrderCommand> syncConsumer = resultsConsumer != null ? resultsConsumer : (cmd, seq) -> {
+        };
+
+        final ResultsHandler resultsHandler = new ResultsHandler(outputRing == null
+                ? syncConsumer
+                : (cmd, seq) -> {
+                    syncConsumer.accept(cmd, seq);
+                    outputRing.publish(seq, cmd);
+                });
 
         mainHandlerGroup.handleEventsWith((cmd, seq, eob) -> {
             resultsHandler.onEvent(cmd, seq, eob);
             api.processResult(seq, cmd); // TODO SLOW ?(volatile operations)
+            latencyRecorder.record(PipelineStage.RESULTS_HANDLER, 0, seq);
         });
 
+        // 5. [matching engine replicas (V) publishing read views] after matching engine (ME)
+        final ReportsQueriesConfiguration reportsCfg = exchangeConfiguration.getReportsQueriesCfg();
+        if (reportsCfg.isReadViewsEnabled()) {
+            final List<MatchingEngineReplica> replicas = IntStream.range(0, matchingEnginesNum)
+                    .mapToObj(i -> new MatchingEngineReplica(matchingEngineFutures.get(i).join(), exchangeConfiguration))
+                    .collect(Collectors.toList());
+            afterMatchingEngine.handleEventsWith(replicas.stream().toArray(ExchangeCore::newEventHandlersArray));
+            this.reportQueryEngine = new ReportQueryEngine(
+                    replicas.stream().map(MatchingEngineReplica::getReadViews).collect(Collectors.toList()),
+                    IntStream.range(0, riskEnginesNum).mapToObj(i -> riskEngines.get(i).getReadViews()).collect(Collectors.toList()),
+                    api,
+                    reportsCfg.getReadViewThreads());
+        } else {
+            this.reportQueryEngine = null;
+        }
+
         // attach slave processors to master processor
         IntStream.range(0, riskEnginesNum).forEach(i -> procR1.get(i).setSlaveProcessor(procR2.get(i)));
 
+        // R2 stage lag behind R1 (in sequences)
+        IntStream.range(0, riskEnginesNum).forEach(i -> metricsRegistry.gauge(
+                "re." + i + ".r1r2Lag",
+                () -> procR1.get(i).getSequence().get() - procR2.get(i).getSequence().get()));
+
         try {
             loaderExecutor.shutdown();
             loaderExecutor.awaitTermination(1, TimeUnit.SECONDS);
@@ -225,9 +310,30 @@ public final class ExchangeCore {
             started = true;
 
             serializationProcessor.replayJournalFullAndThenEnableJouraling(exchangeConfiguration.getInitStateCfg(), api);
+
+            persistBootstrappedState();
         }
     }
 
+    /**
+     * Bootstrapped state is not journaled, snapshot makes it recoverable (findLastKnownState starts from this snapshot).
+     */
+    private void persistBootstrappedState() {
+        final InitialStateConfiguration initStateCfg = exchangeConfiguration.getInitStateCfg();
+        if (initStateCfg.getBootstrapFile() == null
+                || initStateCfg.fromSnapshot()
+                || !exchangeConfiguration.getSerializationCfg().isEnableJournaling()) {
+            return;
+        }
+
+        final long snapshotId = System.currentTimeMillis() * 1000;
+        final CommandResultCode resultCode = api.submitCommandAsync(ApiPersistState.builder().dumpId(snapshotId).build()).join();
+        if (resultCode != CommandResultCode.SUCCESS) {
+            throw new IllegalStateException("Can not persist bootstrapped state: " + resultCode);
+        }
+        log.info("Persisted bootstrapped state as snapshot {}", snapshotId);
+    }
+
     /**
      * Provides ExchangeApi instance.
      *
@@ -237,6 +343,65 @@ public final class ExchangeCore {
         return api;
     }
 
+    /**
+     * Collects per-stage latency histograms recorded since previous call.
+     * Values are nanoseconds elapsed from the moment command entered grouping processor to the moment stage completed it.
+     *
+     * @return latency snapshot (empty histograms if recording is disabled)
+     */
+    public PipelineLatencySnapshot getLatencySnapshot() {
+        return latencyRecorder.snapshot();
+    }
+
+    /**
+     * Enables or disables per-stage latency recording at runtime.
+     *
+     * @param enabled - true to record latencies
+     */
+    public void setLatencyMetricsEnabled(final boolean enabled) {
+        latencyRecorder.setEnabled(enabled);
+    }
+
+    public boolean isLatencyMetricsEnabled() {
+        return latencyRecorder.isEnabled();
+    }
+
+    /**
+     * Provides asynchronous output ring (should be enabled using PerformanceConfiguration.outputRingSize).
+     * Slow subscribers can not back-pressure matching, they skip overrun records instead.
+     *
+     * @return output ring
+     */
+    public OutputRing getOutputRing() {
+        if (outputRing == null) {
+            throw new IllegalStateException("Output ring is disabled, set outputRingSize in performance configuration");
+        }
+        return outputRing;
+    }
+
+    /**
+     * Provides off-pipeline reports engine (should be enabled using ReportsQueriesConfiguration.withReadViews).
+     * Reports are executed by own threads against consistent read views published by matching and risk engines.
+     *
+     * @return report query engine
+     */
+    public ReportQueryEngine getReportQueryEngine() {
+        if (reportQueryEngine == null) {
+            throw new IllegalStateException("Read views are disabled, enable them in reports queries configuration");
+        }
+        return reportQueryEngine;
+    }
+
+    /**
+     * Provides runtime metrics registry (per-shard command counters, stage lags, pools and journal statistics).
+     * Can be exported using JmxMetricsExporter or TextMetricsExporter.
+     *
+     * @return metrics registry (always same object)
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return metricsRegistry;
+    }
+
     private static final EventTranslator<OrderCommand> SHUTDOWN_SIGNAL_TRANSLATOR = (cmd, seq) -> {
         cmd.command = OrderCommandType.SHUTDOWN_SIGNAL;
         cmd.resultCode = CommandResultCode.NEW;
@@ -264,6 +429,10 @@ public final class ExchangeCore {
                 ringBuffer.publishEvent(SHUTDOWN_SIGNAL_TRANSLATOR);
                 disruptor.shutdown(timeout, timeUnit);
                 log.info("Disruptor stopped");
+                if (reportQueryEngine != null) {
+                    reportQueryEngine.shutdown();
+                }
+                serializationProcessor.close();
             } catch (TimeoutException e) {
                 throw new IllegalStateException("could not stop a disruptor gracefully. Not all events may be executed.");
             }
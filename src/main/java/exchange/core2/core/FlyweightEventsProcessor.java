@@ -0,0 +1,110 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core;
+
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.cmd.OrderCommand;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Dispatches processed commands to IFlyweightEventsHandler without producing any garbage.
+ * Same views instances are reused for every command.
+ */
+@Slf4j
+public final class FlyweightEventsProcessor implements ObjLongConsumer<OrderCommand> {
+
+    @Getter
+    private final IFlyweightEventsHandler eventsHandler;
+
+    private final IFlyweightEventsHandler.CommandView commandView = new IFlyweightEventsHandler.CommandView();
+    private final IFlyweightEventsHandler.TradeEventView tradeEventView = new IFlyweightEventsHandler.TradeEventView();
+    private final IFlyweightEventsHandler.SingleEventView singleEventView = new IFlyweightEventsHandler.SingleEventView();
+    private final IFlyweightEventsHandler.OrderBookView orderBookView = new IFlyweightEventsHandler.OrderBookView();
+
+    public FlyweightEventsProcessor(IFlyweightEventsHandler eventsHandler) {
+        this.eventsHandler = eventsHandler;
+    }
+
+    @Override
+    public void accept(OrderCommand cmd, long seq) {
+        try {
+            eventsHandler.commandResult(commandView.wrap(cmd, seq));
+            sendTradeEvents(cmd);
+            sendMarketData(cmd);
+        } catch (Exception ex) {
+            log.error("Exception when handling command result data", ex);
+        }
+    }
+
+    private void sendTradeEvents(OrderCommand cmd) {
+        final MatcherTradeEvent firstEvent = cmd.matcherEvent;
+        if (firstEvent == null) {
+            return;
+        }
+
+        if (firstEvent.eventType == MatcherEventType.REDUCE) {
+
+            eventsHandler.reduceEvent(singleEventView.wrap(cmd, firstEvent));
+
+            if (firstEvent.nextEvent != null) {
+                throw new IllegalStateException("Only single REDUCE event is expected");
+            }
+
+            return;
+        }
+
+        MatcherTradeEvent firstTrade = null;
+        MatcherTradeEvent rejectEvent = null;
+        long totalVolume = 0L;
+        int tradesNum = 0;
+        boolean takerOrderCompleted = false;
+
+        for (MatcherTradeEvent evt = firstEvent; evt != null; evt = evt.nextEvent) {
+            if (evt.eventType == MatcherEventType.TRADE) {
+                if (firstTrade == null) {
+                    firstTrade = evt;
+                }
+                totalVolume += evt.size;
+                tradesNum++;
+                if (evt.activeOrderCompleted) {
+                    takerOrderCompleted = true;
+                }
+            } else if (evt.eventType == MatcherEventType.REJECT) {
+                rejectEvent = evt;
+            }
+        }
+
+        if (tradesNum != 0) {
+            eventsHandler.tradeEvent(tradeEventView.wrap(cmd, firstTrade, totalVolume, tradesNum, takerOrderCompleted));
+        }
+
+        if (rejectEvent != null) {
+            eventsHandler.rejectEvent(singleEventView.wrap(cmd, rejectEvent));
+        }
+    }
+
+    private void sendMarketData(OrderCommand cmd) {
+        final L2MarketData marketData = cmd.marketData;
+        if (marketData != null) {
+            eventsHandler.orderBook(orderBookView.wrap(cmd, marketData));
+        }
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core;
+
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+
+/**
+ * Zero-allocation events handler interface for latency-critical applications.<br>
+ * Custom handler implementation should be attached to FlyweightEventsProcessor.<br>
+ * Callbacks receive reusable flyweight views over OrderCommand, MatcherTradeEvent and L2MarketData.
+ * Views are valid only during the callback - copy required values, never keep references.<br>
+ * Handler method are invoked from single thread in the same order as IEventsHandler methods.
+ */
+public interface IFlyweightEventsHandler {
+
+    /**
+     * Method is called after each commands execution.
+     *
+     * @param command - view of the command, its result code and sequence number
+     */
+    void commandResult(CommandView command);
+
+    /**
+     * Method is called if order execution was resulted to one or more trades.
+     *
+     * @param tradeEvent - view of the taker order and iterator over trades
+     */
+    void tradeEvent(TradeEventView tradeEvent);
+
+    /**
+     * Method is called if IoC order was not possible to match with provided price limit.
+     *
+     * @param rejectEvent - view of the rejected order
+     */
+    void rejectEvent(SingleEventView rejectEvent);
+
+    /**
+     * Method is called if Cancel or Reduce command was successfully executed.
+     *
+     * @param reduceEvent - view of the reduced order
+     */
+    void reduceEvent(SingleEventView reduceEvent);
+
+    /**
+     * Method is called when order book snapshot (L2MarketData) was attached to commands by matching engine.
+     *
+     * @param orderBook - view of L2 OrderBook snapshot
+     */
+    void orderBook(OrderBookView orderBook);
+
+
+    final class CommandView {
+        private OrderCommand cmd;
+        private long seq;
+
+        CommandView wrap(final OrderCommand cmd, final long seq) {
+            this.cmd = cmd;
+            this.seq = seq;
+            return this;
+        }
+
+        public long getSeq() {
+            return seq;
+        }
+
+        public OrderCommandType getCommand() {
+            return cmd.command;
+        }
+
+        public CommandResultCode getResultCode() {
+            return cmd.resultCode;
+        }
+
+        public long getOrderId() {
+            return cmd.orderId;
+        }
+
+        public int getSymbol() {
+            return cmd.symbol;
+        }
+
+        public long getPrice() {
+            return cmd.price;
+        }
+
+        public long getSize() {
+            return cmd.size;
+        }
+
+        public long getReserveBidPrice() {
+            return cmd.reserveBidPrice;
+        }
+
+        public OrderAction getAction() {
+            return cmd.action;
+        }
+
+        public OrderType getOrderType() {
+            return cmd.orderType;
+        }
+
+        public long getUid() {
+            return cmd.uid;
+        }
+
+        public long getTimestamp() {
+            return cmd.timestamp;
+        }
+
+        public int getUserCookie() {
+            return cmd.userCookie;
+        }
+    }
+
+    /**
+     * Taker order details and iterator over trades (maker side).
+     * Call nextTrade() before reading first trade.
+     */
+    final class TradeEventView {
+        private OrderCommand cmd;
+        private MatcherTradeEvent firstTrade;
+        private MatcherTradeEvent currentTrade;
+        private long totalVolume;
+        private int tradesNum;
+        private boolean takerOrderCompleted;
+
+        TradeEventView wrap(final OrderCommand cmd,
+                            final MatcherTradeEvent firstTrade,
+                            final long totalVolume,
+                            final int tradesNum,
+                            final boolean takerOrderCompleted) {
+            this.cmd = cmd;
+            this.firstTrade = firstTrade;
+            this.currentTrade = null;
+            this.totalVolume = totalVolume;
+            this.tradesNum = tradesNum;
+            this.takerOrderCompleted = takerOrderCompleted;
+            return this;
+        }
+
+        public int getSymbol() {
+            return cmd.symbol;
+        }
+
+        public long getTotalVolume() {
+            return totalVolume;
+        }
+
+        public long getTakerOrderId() {
+            return cmd.orderId;
+        }
+
+        public long getTakerUid() {
+            return cmd.uid;
+        }
+
+        public OrderAction getTakerAction() {
+            return cmd.action;
+        }
+
+        public boolean isTakeOrderCompleted() {
+            return takerOrderCompleted;
+        }
+
+        public long getTimestamp() {
+            return cmd.timestamp;
+        }
+
+        public int getTradesNum() {
+            return tradesNum;
+        }
+
+        /**
+         * Move to next trade
+         *
+         * @return false if there are no more trades
+         */
+        public boolean nextTrade() {
+            MatcherTradeEvent evt = currentTrade == null ? firstTrade : currentTrade.nextEvent;
+            while (evt != null && evt.eventType != MatcherEventType.TRADE) {
+                evt = evt.nextEvent;
+            }
+            if (evt == null) {
+                return false;
+            }
+            currentTrade = evt;
+            return true;
+        }
+
+        /**
+         * Rewind trades iterator to the beginning
+         */
+        public void resetTrades() {
+            currentTrade = null;
+        }
+
+        public long getMakerOrderId() {
+            return currentTrade.matchedOrderId;
+        }
+
+        public long getMakerUid() {
+            return currentTrade.matchedOrderUid;
+        }
+
+        public boolean isMakerOrderCompleted() {
+            return currentTrade.matchedOrderCompleted;
+        }
+
+        public long getPrice() {
+            return currentTrade.price;
+        }
+
+        public long getVolume() {
+            return currentTrade.size;
+        }
+    }
+
+    /**
+     * Reduce or reject event
+     */
+    final class SingleEventView {
+        private OrderCommand cmd;
+        private MatcherTradeEvent event;
+
+        SingleEventView wrap(final OrderCommand cmd, final MatcherTradeEvent event) {
+            this.cmd = cmd;
+            this.event = event;
+            return this;
+        }
+
+        public int getSymbol() {
+            return cmd.symbol;
+        }
+
+        /**
+         * @return reduced volume for reduce event, rejected volume for reject event
+         */
+        public long getVolume() {
+            return event.size;
+        }
+
+        /**
+         * @return always true for reject event
+         */
+        public boolean isOrderCompleted() {
+            return event.activeOrderCompleted;
+        }
+
+        public long getPrice() {
+            return event.price;
+        }
+
+        public long getOrderId() {
+            return cmd.orderId;
+        }
+
+        public long getUid() {
+            return cmd.uid;
+        }
+
+        public long getTimestamp() {
+            return cmd.timestamp;
+        }
+    }
+
+    final class OrderBookView {
+        private OrderCommand cmd;
+        private L2MarketData marketData;
+
+        OrderBookView wrap(final OrderCommand cmd, final L2MarketData marketData) {
+            this.cmd = cmd;
+            this.marketData = marketData;
+            return this;
+        }
+
+        public int getSymbol() {
+            return cmd.symbol;
+        }
+
+        public long getTimestamp() {
+            return cmd.timestamp;
+        }
+
+        public int getAskSize() {
+            return marketData.askSize;
+        }
+
+        public long getAskPrice(int i) {
+            return marketData.askPrices[i];
+        }
+
+        public long getAskVolume(int i) {
+            return marketData.askVolumes[i];
+        }
+
+        public int getAskOrders(int i) {
+            return (int) marketData.askOrders[i];
+        }
+
+        public int getBidSize() {
+            return marketData.bidSize;
+        }
+
+        public long getBidPrice(int i) {
+            return marketData.bidPrices[i];
+        }
+
+        public long getBidVolume(int i) {
+            return marketData.bidVolumes[i];
+        }
+
+        public int getBidOrders(int i) {
+            return (int) marketData.bidOrders[i];
+        }
+    }
+}
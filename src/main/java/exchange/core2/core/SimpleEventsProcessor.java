@@ -1,203 +1,166 @@
 package exchange.core2.core;
 
-import exchange.core2.core.common.L2MarketData;
-import exchange.core2.core.common.MatcherEventType;
-import exchange.core2.core.common.MatcherTradeEvent;
 import exchange.core2.core.common.api.*;
 import exchange.core2.core.common.cmd.CommandResultCode;
 import exchange.core2.core.common.cmd.OrderCommand;
+import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.agrona.collections.MutableBoolean;
-import org.agrona.collections.MutableLong;
-import org.agrona.collections.MutableReference;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.ObjLongConsumer;
 
-@RequiredArgsConstructor
+/**
+ * Converts processed commands into immutable IEventsHandler objects.
+ * Implemented as an adapter on top of FlyweightEventsProcessor - use it directly to avoid garbage.
+ */
 @Getter
 @Slf4j
 public class SimpleEventsProcessor implements ObjLongConsumer<OrderCommand> {
 
     private final IEventsHandler eventsHandler;
 
+    @Getter(AccessLevel.NONE)
+    private final FlyweightEventsProcessor flyweightProcessor;
+
+    public SimpleEventsProcessor(IEventsHandler eventsHandler) {
+        this.eventsHandler = eventsHandler;
+        this.flyweightProcessor = new FlyweightEventsProcessor(new ObjectsAdapter(eventsHandler));
+    }
+
     @Override
     public void accept(OrderCommand cmd, long seq) {
-        try {
-            sendCommandResult(cmd, seq);
-            sendTradeEvents(cmd);
-            sendMarketData(cmd);
-        } catch (Exception ex) {
-            log.error("Exception when handling command result data", ex);
-        }
+        flyweightProcessor.accept(cmd, seq);
     }
 
-    private void sendTradeEvents(OrderCommand cmd) {
-        final MatcherTradeEvent firstEvent = cmd.matcherEvent;
-        if (firstEvent == null) {
-            return;
-        }
+    private static final class ObjectsAdapter implements IFlyweightEventsHandler {
 
-        if (firstEvent.eventType == MatcherEventType.REDUCE) {
+        private final IEventsHandler eventsHandler;
 
-            final IEventsHandler.ReduceEvent evt = new IEventsHandler.ReduceEvent(
-                    cmd.symbol,
-                    firstEvent.size,
-                    firstEvent.activeOrderCompleted,
-                    firstEvent.price,
-                    cmd.orderId,
-                    cmd.uid,
-                    cmd.timestamp);
+        private ObjectsAdapter(IEventsHandler eventsHandler) {
+            this.eventsHandler = eventsHandler;
+        }
 
-            eventsHandler.reduceEvent(evt);
+        @Override
+        public void commandResult(CommandView cmd) {
+
+            switch (cmd.getCommand()) {
+                case PLACE_ORDER:
+                    sendApiCommandResult(new ApiPlaceOrder(
+                                    cmd.getPrice(),
+                                    cmd.getSize(),
+                                    cmd.getOrderId(),
+                                    cmd.getAction(),
+                                    cmd.getOrderType(),
+                                    cmd.getUid(),
+                                    cmd.getSymbol(),
+                                    cmd.getUserCookie(),
+                                    cmd.getReserveBidPrice()),
+                            cmd);
+                    break;
+
+                case MOVE_ORDER:
+                    sendApiCommandResult(new ApiMoveOrder(cmd.getOrderId(), cmd.getPrice(), cmd.getUid(), cmd.getSymbol()), cmd);
+                    break;
+
+                case CANCEL_ORDER:
+                    sendApiCommandResult(new ApiCancelOrder(cmd.getOrderId(), cmd.getUid(), cmd.getSymbol()), cmd);
+                    break;
+
+                case REDUCE_ORDER:
+                    sendApiCommandResult(new ApiReduceOrder(cmd.getOrderId(), cmd.getUid(), cmd.getSymbol(), cmd.getSize()), cmd);
+                    break;
+
+                case ADD_USER:
+                    sendApiCommandResult(new ApiAddUser(cmd.getUid()), cmd);
+                    break;
+
+                case BALANCE_ADJUSTMENT:
+                    sendApiCommandResult(new ApiAdjustUserBalance(cmd.getUid(), cmd.getSymbol(), cmd.getPrice(), cmd.getOrderId()), cmd);
+                    break;
+
+                case BINARY_DATA_COMMAND:
+                    if (cmd.getResultCode() != CommandResultCode.ACCEPTED) {
+                        sendApiCommandResult(new ApiBinaryDataCommand(cmd.getUserCookie(), null), cmd);
+                    }
+                    break;
+
+                case ORDER_BOOK_REQUEST:
+                    sendApiCommandResult(new ApiOrderBookRequest(cmd.getSymbol(), (int) cmd.getSize()), cmd);
+                    break;
+
+                // TODO add rest of commands
 
-            if (firstEvent.nextEvent != null) {
-                throw new IllegalStateException("Only single REDUCE event is expected");
             }
-
-            return;
         }
 
-        sendTradeEvent(cmd);
-    }
-
-    private void sendTradeEvent(OrderCommand cmd) {
-
-        final MutableBoolean takerOrderCompleted = new MutableBoolean(false);
-        final MutableLong mutableLong = new MutableLong(0L);
-        final List<IEventsHandler.Trade> trades = new ArrayList<>();
-
-        final MutableReference<IEventsHandler.RejectEvent> rejectEvent = new MutableReference<>(null);
-
-        cmd.processMatcherEvents(evt -> {
-
-            if (evt.eventType == MatcherEventType.TRADE) {
-
-                final IEventsHandler.Trade trade = new IEventsHandler.Trade(
-                        evt.matchedOrderId,
-                        evt.matchedOrderUid,
-                        evt.matchedOrderCompleted,
-                        evt.price,
-                        evt.size);
-
-                trades.add(trade);
-                mutableLong.value += evt.size;
-
-                if (evt.activeOrderCompleted) {
-                    takerOrderCompleted.value = true;
-                }
-
-            } else if (evt.eventType == MatcherEventType.REJECT) {
-
-                rejectEvent.set(new IEventsHandler.RejectEvent(
-                        cmd.symbol,
-                        evt.size,
-                        evt.price,
-                        cmd.orderId,
-                        cmd.uid,
-                        cmd.timestamp));
+        @Override
+        public void tradeEvent(TradeEventView tradeEvent) {
+
+            final List<IEventsHandler.Trade> trades = new ArrayList<>(tradeEvent.getTradesNum());
+            tradeEvent.resetTrades();
+            while (tradeEvent.nextTrade()) {
+                trades.add(new IEventsHandler.Trade(
+                        tradeEvent.getMakerOrderId(),
+                        tradeEvent.getMakerUid(),
+                        tradeEvent.isMakerOrderCompleted(),
+                        tradeEvent.getPrice(),
+                        tradeEvent.getVolume()));
             }
-        });
 
-        if (!trades.isEmpty()) {
-
-            final IEventsHandler.TradeEvent evt = new IEventsHandler.TradeEvent(
-                    cmd.symbol,
-                    mutableLong.value,
-                    cmd.orderId,
-                    cmd.uid,
-                    cmd.action,
-                    takerOrderCompleted.value,
-                    cmd.timestamp,
-                    trades);
+            eventsHandler.tradeEvent(new IEventsHandler.TradeEvent(
+                    tradeEvent.getSymbol(),
+                    tradeEvent.getTotalVolume(),
+                    tradeEvent.getTakerOrderId(),
+                    tradeEvent.getTakerUid(),
+                    tradeEvent.getTakerAction(),
+                    tradeEvent.isTakeOrderCompleted(),
+                    tradeEvent.getTimestamp(),
+                    trades));
+        }
 
-            eventsHandler.tradeEvent(evt);
+        @Override
+        public void rejectEvent(SingleEventView rejectEvent) {
+            eventsHandler.rejectEvent(new IEventsHandler.RejectEvent(
+                    rejectEvent.getSymbol(),
+                    rejectEvent.getVolume(),
+                    rejectEvent.getPrice(),
+                    rejectEvent.getOrderId(),
+                    rejectEvent.getUid(),
+                    rejectEvent.getTimestamp()));
         }
 
-        if (rejectEvent.ref != null) {
-            eventsHandler.rejectEvent(rejectEvent.ref);
+        @Override
+        public void reduceEvent(SingleEventView reduceEvent) {
+            eventsHandler.reduceEvent(new IEventsHandler.ReduceEvent(
+                    reduceEvent.getSymbol(),
+                    reduceEvent.getVolume(),
+                    reduceEvent.isOrderCompleted(),
+                    reduceEvent.getPrice(),
+                    reduceEvent.getOrderId(),
+                    reduceEvent.getUid(),
+                    reduceEvent.getTimestamp()));
         }
-    }
 
-    private void sendMarketData(OrderCommand cmd) {
-        final L2MarketData marketData = cmd.marketData;
-        if (marketData != null) {
-            final List<IEventsHandler.OrderBookRecord> asks = new ArrayList<>(marketData.askSize);
-            for (int i = 0; i < marketData.askSize; i++) {
-                asks.add(new IEventsHandler.OrderBookRecord(marketData.askPrices[i], marketData.askVolumes[i], (int) marketData.askOrders[i]));
+        @Override
+        public void orderBook(OrderBookView orderBook) {
+            final List<IEventsHandler.OrderBookRecord> asks = new ArrayList<>(orderBook.getAskSize());
+            for (int i = 0; i < orderBook.getAskSize(); i++) {
+                asks.add(new IEventsHandler.OrderBookRecord(orderBook.getAskPrice(i), orderBook.getAskVolume(i), orderBook.getAskOrders(i)));
             }
 
-            final List<IEventsHandler.OrderBookRecord> bids = new ArrayList<>(marketData.bidSize);
-            for (int i = 0; i < marketData.bidSize; i++) {
-                bids.add(new IEventsHandler.OrderBookRecord(marketData.bidPrices[i], marketData.bidVolumes[i], (int) marketData.bidOrders[i]));
+            final List<IEventsHandler.OrderBookRecord> bids = new ArrayList<>(orderBook.getBidSize());
+            for (int i = 0; i < orderBook.getBidSize(); i++) {
+                bids.add(new IEventsHandler.OrderBookRecord(orderBook.getBidPrice(i), orderBook.getBidVolume(i), orderBook.getBidOrders(i)));
             }
 
-            eventsHandler.orderBook(new IEventsHandler.OrderBook(cmd.symbol, asks, bids, cmd.timestamp));
+            eventsHandler.orderBook(new IEventsHandler.OrderBook(orderBook.getSymbol(), asks, bids, orderBook.getTimestamp()));
         }
-    }
-
-
-    private void sendCommandResult(OrderCommand cmd, long seq) {
-
-        switch (cmd.command) {
-            case PLACE_ORDER:
-                sendApiCommandResult(new ApiPlaceOrder(
-                                cmd.price,
-                                cmd.size,
-                                cmd.orderId,
-                                cmd.action,
-                                cmd.orderType,
-                                cmd.uid,
-                                cmd.symbol,
-                                cmd.userCookie,
-                                cmd.reserveBidPrice),
-                        cmd.resultCode,
-                        cmd.timestamp,
-                        seq);
-                break;
-
-            case MOVE_ORDER:
-                sendApiCommandResult(new ApiMoveOrder(cmd.orderId, cmd.price, cmd.uid, cmd.symbol), cmd.resultCode, cmd.timestamp, seq);
-                break;
-
-            case CANCEL_ORDER:
-                sendApiCommandResult(new ApiCancelOrder(cmd.orderId, cmd.uid, cmd.symbol), cmd.resultCode, cmd.timestamp, seq);
-                break;
-
-            case REDUCE_ORDER:
-                sendApiCommandResult(new ApiReduceOrder(cmd.orderId, cmd.uid, cmd.symbol, cmd.size), cmd.resultCode, cmd.timestamp, seq);
-                break;
-
-            case ADD_USER:
-                sendApiCommandResult(new ApiAddUser(cmd.uid), cmd.resultCode, cmd.timestamp, seq);
-                break;
-
-            case BALANCE_ADJUSTMENT:
-                sendApiCommandResult(new ApiAdjustUserBalance(cmd.uid, cmd.symbol, cmd.price, cmd.orderId), cmd.resultCode, cmd.timestamp, seq);
-                break;
-
-            case BINARY_DATA_COMMAND:
-                if (cmd.resultCode != CommandResultCode.ACCEPTED) {
-                    sendApiCommandResult(new ApiBinaryDataCommand(cmd.userCookie, null), cmd.resultCode, cmd.timestamp, seq);
-                }
-                break;
-
-            case ORDER_BOOK_REQUEST:
-                sendApiCommandResult(new ApiOrderBookRequest(cmd.symbol, (int) cmd.size), cmd.resultCode, cmd.timestamp, seq);
-                break;
-
-            // TODO add rest of commands
 
+        private void sendApiCommandResult(ApiCommand apiCmd, CommandView cmd) {
+            apiCmd.timestamp = cmd.getTimestamp();
+            eventsHandler.commandResult(new IEventsHandler.ApiCommandResult(apiCmd, cmd.getResultCode(), cmd.getSeq()));
         }
-
-    }
-
-    private void sendApiCommandResult(ApiCommand cmd, CommandResultCode resultCode, long timestamp, long seq) {
-        cmd.timestamp = timestamp;
-        final IEventsHandler.ApiCommandResult commandResult = new IEventsHandler.ApiCommandResult(cmd, resultCode, seq);
-        eventsHandler.commandResult(commandResult);
     }
 }
@@ -26,8 +26,11 @@ public final class ApiPersistState extends ApiCommand {
     public long dumpId;
     public boolean seal;
 
+    // 0 - full snapshot, otherwise delta snapshot of changes since full snapshot baseDumpId
+    public long baseDumpId;
+
     @Override
     public String toString() {
-        return "[PERSIST]-" + dumpId + " seal=" + seal;
+        return "[PERSIST]-" + dumpId + " seal=" + seal + (baseDumpId != 0 ? " base=" + baseDumpId : "");
     }
 }
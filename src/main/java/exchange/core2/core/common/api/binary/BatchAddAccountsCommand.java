@@ -31,6 +31,16 @@ public final class BatchAddAccountsCommand implements BinaryDataCommand {
 
     private final LongObjectHashMap<IntLongHashMap> users;
 
+    /**
+     * Transaction id of initial balance adjustment (same for batch command and bootstrap file).
+     *
+     * @param currency - currency of the account
+     * @return transaction id
+     */
+    public static long initialBalanceTransactionId(final int currency) {
+        return 1_000_000_000 + currency;
+    }
+
     public BatchAddAccountsCommand(final BytesIn bytes) {
         users = SerializationUtils.readLongHashMap(bytes, c -> SerializationUtils.readIntLongHashMap(bytes));
     }
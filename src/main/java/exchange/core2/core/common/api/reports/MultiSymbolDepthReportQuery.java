@@ -0,0 +1,149 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.api.reports;
+
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.orderbook.IOrderBook;
+import exchange.core2.core.processors.MatchingEngineRouter;
+import exchange.core2.core.processors.RiskEngine;
+import exchange.core2.core.processors.views.MatchingEngineReadView;
+import exchange.core2.core.processors.views.RiskEngineReadView;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import net.openhft.chronicle.bytes.BytesIn;
+import net.openhft.chronicle.bytes.BytesOut;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Top-N levels of many order books in one request (instead of one ORDER_BOOK_REQUEST command per symbol).
+ * <p>
+ * Every matching engine shard fills single reusable L2 buffer for each of its order books
+ * and appends levels into columnar result.
+ */
+@EqualsAndHashCode
+@ToString
+@Getter
+public final class MultiSymbolDepthReportQuery implements ReportQuery<MultiSymbolDepthReportResult> {
+
+    // requested symbols (sorted), empty means all symbols
+    private final int[] symbols;
+
+    // max levels for each side
+    private final int depth;
+
+    public MultiSymbolDepthReportQuery(final int[] symbols, final int depth) {
+        if (depth < 1) {
+            throw new IllegalArgumentException("Invalid depth " + depth);
+        }
+        this.symbols = Arrays.stream(symbols).distinct().sorted().toArray();
+        this.depth = depth;
+    }
+
+    /**
+     * Request depth of all symbols
+     *
+     * @param depth - max levels for each side
+     */
+    public MultiSymbolDepthReportQuery(final int depth) {
+        this(new int[0], depth);
+    }
+
+    public MultiSymbolDepthReportQuery(final BytesIn bytesIn) {
+        this.symbols = new int[bytesIn.readInt()];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = bytesIn.readInt();
+        }
+        this.depth = bytesIn.readInt();
+    }
+
+    @Override
+    public int getReportTypeCode() {
+        return ReportType.MULTI_SYMBOL_DEPTH.getCode();
+    }
+
+    @Override
+    public MultiSymbolDepthReportResult createResult(final Stream<BytesIn> sections) {
+        return MultiSymbolDepthReportResult.merge(sections);
+    }
+
+    @Override
+    public boolean isReadViewSupported() {
+        return true;
+    }
+
+    @Override
+    public Optional<MultiSymbolDepthReportResult> process(final MatchingEngineRouter matchingEngine) {
+        return Optional.of(collect(matchingEngine.getOrderBooks(), matchingEngine.getShardId(), matchingEngine.getShardMask()));
+    }
+
+    @Override
+    public Optional<MultiSymbolDepthReportResult> process(final MatchingEngineReadView matchingEngineView) {
+        return Optional.of(collect(matchingEngineView.getOrderBooks(), matchingEngineView.getShardId(), matchingEngineView.getShardMask()));
+    }
+
+    @Override
+    public Optional<MultiSymbolDepthReportResult> process(final RiskEngine riskEngine) {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<MultiSymbolDepthReportResult> process(final RiskEngineReadView riskEngineView) {
+        return Optional.empty();
+    }
+
+    private MultiSymbolDepthReportResult collect(final IntObjectHashMap<IOrderBook> orderBooks, final int shardId, final long shardMask) {
+
+        final MultiSymbolDepthReportResult.Builder builder = new MultiSymbolDepthReportResult.Builder();
+
+        // single buffer for all order books, grows only if book has more levels than previous ones
+        L2MarketData buffer = new L2MarketData(0, 0);
+
+        final int[] shardSymbols = symbols.length == 0 ? orderBooks.keySet().toSortedArray() : symbols;
+        for (final int symbol : shardSymbols) {
+            // every shard has (empty) order books of all symbols
+            final IOrderBook orderBook = orderBooks.get(symbol);
+            if (orderBook == null || (symbol & shardMask) != shardId) {
+                continue;
+            }
+
+            final int asksSize = orderBook.getTotalAskBuckets(depth);
+            final int bidsSize = orderBook.getTotalBidBuckets(depth);
+            if (asksSize > buffer.askPrices.length || bidsSize > buffer.bidPrices.length) {
+                buffer = new L2MarketData(Math.max(asksSize, buffer.askPrices.length), Math.max(bidsSize, buffer.bidPrices.length));
+            }
+
+            orderBook.fillAsks(asksSize, buffer);
+            orderBook.fillBids(bidsSize, buffer);
+            builder.add(symbol, buffer);
+        }
+
+        return builder.build();
+    }
+
+    @Override
+    public void writeMarshallable(final BytesOut bytes) {
+        bytes.writeInt(symbols.length);
+        for (final int symbol : symbols) {
+            bytes.writeInt(symbol);
+        }
+        bytes.writeInt(depth);
+    }
+}
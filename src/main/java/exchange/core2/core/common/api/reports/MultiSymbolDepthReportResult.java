@@ -0,0 +1,266 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.api.reports;
+
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.utils.SerializationUtils;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import net.openhft.chronicle.bytes.BytesIn;
+import net.openhft.chronicle.bytes.BytesOut;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Top levels of multiple order books in columnar layout, ordered by symbol.
+ * <p>
+ * Levels of all symbols are concatenated into shared price/volume/orders arrays,
+ * askLevels/bidLevels hold number of levels per symbol.
+ */
+@EqualsAndHashCode
+@Getter
+public final class MultiSymbolDepthReportResult implements ReportResult {
+
+    private final int[] symbols;
+    private final int[] askLevels;
+    private final int[] bidLevels;
+
+    private final long[] askPrices;
+    private final long[] askVolumes;
+    private final long[] askOrders;
+    private final long[] bidPrices;
+    private final long[] bidVolumes;
+    private final long[] bidOrders;
+
+    // offsets of the first level of each symbol (derived)
+    @EqualsAndHashCode.Exclude
+    @Getter(AccessLevel.NONE)
+    private final int[] askOffsets;
+    @EqualsAndHashCode.Exclude
+    @Getter(AccessLevel.NONE)
+    private final int[] bidOffsets;
+
+    private MultiSymbolDepthReportResult(final int[] symbols,
+                                         final int[] askLevels,
+                                         final int[] bidLevels,
+                                         final long[] askPrices,
+                                         final long[] askVolumes,
+                                         final long[] askOrders,
+                                         final long[] bidPrices,
+                                         final long[] bidVolumes,
+                                         final long[] bidOrders) {
+        this.symbols = symbols;
+        this.askLevels = askLevels;
+        this.bidLevels = bidLevels;
+        this.askPrices = askPrices;
+        this.askVolumes = askVolumes;
+        this.askOrders = askOrders;
+        this.bidPrices = bidPrices;
+        this.bidVolumes = bidVolumes;
+        this.bidOrders = bidOrders;
+        this.askOffsets = offsets(askLevels);
+        this.bidOffsets = offsets(bidLevels);
+    }
+
+    private MultiSymbolDepthReportResult(final BytesIn bytesIn) {
+        this(readIntArray(bytesIn),
+                readIntArray(bytesIn),
+                readIntArray(bytesIn),
+                SerializationUtils.readLongArray(bytesIn),
+                SerializationUtils.readLongArray(bytesIn),
+                SerializationUtils.readLongArray(bytesIn),
+                SerializationUtils.readLongArray(bytesIn),
+                SerializationUtils.readLongArray(bytesIn),
+                SerializationUtils.readLongArray(bytesIn));
+    }
+
+    public int getSymbolsNum() {
+        return symbols.length;
+    }
+
+    /**
+     * @param symbol - symbol id
+     * @return position of the symbol in this result, or -1 if not found
+     */
+    public int indexOf(final int symbol) {
+        for (int i = 0; i < symbols.length; i++) {
+            if (symbols[i] == symbol) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Extract market data of one symbol (allocates new object)
+     *
+     * @param index - symbol position in this result
+     * @return L2 market data
+     */
+    public L2MarketData getL2MarketData(final int index) {
+        final int askFrom = askOffsets[index];
+        final int askTo = askOffsets[index + 1];
+        final int bidFrom = bidOffsets[index];
+        final int bidTo = bidOffsets[index + 1];
+        return new L2MarketData(
+                Arrays.copyOfRange(askPrices, askFrom, askTo),
+                Arrays.copyOfRange(askVolumes, askFrom, askTo),
+                Arrays.copyOfRange(askOrders, askFrom, askTo),
+                Arrays.copyOfRange(bidPrices, bidFrom, bidTo),
+                Arrays.copyOfRange(bidVolumes, bidFrom, bidTo),
+                Arrays.copyOfRange(bidOrders, bidFrom, bidTo));
+    }
+
+    @Override
+    public void writeMarshallable(final BytesOut bytes) {
+        writeIntArray(symbols, bytes);
+        writeIntArray(askLevels, bytes);
+        writeIntArray(bidLevels, bytes);
+        SerializationUtils.marshallLongArray(askPrices, bytes);
+        SerializationUtils.marshallLongArray(askVolumes, bytes);
+        SerializationUtils.marshallLongArray(askOrders, bytes);
+        SerializationUtils.marshallLongArray(bidPrices, bytes);
+        SerializationUtils.marshallLongArray(bidVolumes, bytes);
+        SerializationUtils.marshallLongArray(bidOrders, bytes);
+    }
+
+    @Override
+    public String toString() {
+        return "MultiSymbolDepthReportResult{symbols=" + symbols.length
+                + " askLevels=" + askPrices.length
+                + " bidLevels=" + bidPrices.length + "}";
+    }
+
+    /**
+     * Merge shard results (symbols are disjoint), keeping symbols order.
+     *
+     * @param pieces - shard results
+     * @return merged result
+     */
+    public static MultiSymbolDepthReportResult merge(final Stream<BytesIn> pieces) {
+
+        final List<MultiSymbolDepthReportResult> results = pieces.map(MultiSymbolDepthReportResult::new).collect(Collectors.toList());
+        if (results.size() == 1) {
+            return results.get(0);
+        }
+
+        final List<long[]> entries = new ArrayList<>();
+        for (int r = 0; r < results.size(); r++) {
+            final int[] symbols = results.get(r).symbols;
+            for (int i = 0; i < symbols.length; i++) {
+                entries.add(new long[]{symbols[i], r, i});
+            }
+        }
+        entries.sort(Comparator.comparingLong(e -> e[0]));
+
+        final Builder builder = new Builder();
+        entries.forEach(e -> builder.add(results.get((int) e[1]), (int) e[2]));
+        return builder.build();
+    }
+
+    private static int[] offsets(final int[] levels) {
+        final int[] offsets = new int[levels.length + 1];
+        for (int i = 0; i < levels.length; i++) {
+            offsets[i + 1] = offsets[i] + levels[i];
+        }
+        return offsets;
+    }
+
+    private static void writeIntArray(final int[] ints, final BytesOut bytes) {
+        bytes.writeInt(ints.length);
+        for (final int v : ints) {
+            bytes.writeInt(v);
+        }
+    }
+
+    private static int[] readIntArray(final BytesIn bytes) {
+        final int[] ints = new int[bytes.readInt()];
+        for (int i = 0; i < ints.length; i++) {
+            ints[i] = bytes.readInt();
+        }
+        return ints;
+    }
+
+    /**
+     * Accumulates symbols levels into columns (symbols should be added in increasing order)
+     */
+    public static final class Builder {
+
+        private final IntArrayList symbols = new IntArrayList();
+        private final IntArrayList askLevels = new IntArrayList();
+        private final IntArrayList bidLevels = new IntArrayList();
+        private final LongArrayList askPrices = new LongArrayList();
+        private final LongArrayList askVolumes = new LongArrayList();
+        private final LongArrayList askOrders = new LongArrayList();
+        private final LongArrayList bidPrices = new LongArrayList();
+        private final LongArrayList bidVolumes = new LongArrayList();
+        private final LongArrayList bidOrders = new LongArrayList();
+
+        public Builder add(final int symbol, final L2MarketData data) {
+            symbols.add(symbol);
+            askLevels.add(data.askSize);
+            bidLevels.add(data.bidSize);
+            for (int i = 0; i < data.askSize; i++) {
+                askPrices.add(data.askPrices[i]);
+                askVolumes.add(data.askVolumes[i]);
+                askOrders.add(data.askOrders[i]);
+            }
+            for (int i = 0; i < data.bidSize; i++) {
+                bidPrices.add(data.bidPrices[i]);
+                bidVolumes.add(data.bidVolumes[i]);
+                bidOrders.add(data.bidOrders[i]);
+            }
+            return this;
+        }
+
+        private void add(final MultiSymbolDepthReportResult result, final int index) {
+            symbols.add(result.symbols[index]);
+            askLevels.add(result.askLevels[index]);
+            bidLevels.add(result.bidLevels[index]);
+            for (int i = result.askOffsets[index]; i < result.askOffsets[index + 1]; i++) {
+                askPrices.add(result.askPrices[i]);
+                askVolumes.add(result.askVolumes[i]);
+                askOrders.add(result.askOrders[i]);
+            }
+            for (int i = result.bidOffsets[index]; i < result.bidOffsets[index + 1]; i++) {
+                bidPrices.add(result.bidPrices[i]);
+                bidVolumes.add(result.bidVolumes[i]);
+                bidOrders.add(result.bidOrders[i]);
+            }
+        }
+
+        public MultiSymbolDepthReportResult build() {
+            return new MultiSymbolDepthReportResult(
+                    symbols.toArray(),
+                    askLevels.toArray(),
+                    bidLevels.toArray(),
+                    askPrices.toArray(),
+                    askVolumes.toArray(),
+                    askOrders.toArray(),
+                    bidPrices.toArray(),
+                    bidVolumes.toArray(),
+                    bidOrders.toArray());
+        }
+    }
+}
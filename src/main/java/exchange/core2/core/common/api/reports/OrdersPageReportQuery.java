@@ -0,0 +1,190 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.api.reports;
+
+import exchange.core2.core.common.IOrder;
+import exchange.core2.core.common.Order;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.orderbook.IOrderBook;
+import exchange.core2.core.processors.MatchingEngineRouter;
+import exchange.core2.core.processors.RiskEngine;
+import exchange.core2.core.processors.views.MatchingEngineReadView;
+import exchange.core2.core.processors.views.RiskEngineReadView;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import net.openhft.chronicle.bytes.BytesIn;
+import net.openhft.chronicle.bytes.BytesOut;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Paginated resting orders export: returns up to limit orders starting from (fromSymbol, fromOrderId), ordered by symbol and order id.
+ * Use {@link OrdersPageReportResult#getNextSymbol()} and {@link OrdersPageReportResult#getNextOrderId()} for the next page.
+ * <p>
+ * Every shard scans symbols in increasing order and stops as soon as the page is filled,
+ * only limit+1 smallest order ids of a symbol are kept (bounded memory, no sorting of the whole order book).
+ */
+@EqualsAndHashCode
+@ToString
+@Getter
+public final class OrdersPageReportQuery implements ReportQuery<OrdersPageReportResult> {
+
+    private final int fromSymbol;
+    private final long fromOrderId;
+    private final int limit;
+
+    public OrdersPageReportQuery(final int fromSymbol, final long fromOrderId, final int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Invalid page size " + limit);
+        }
+        this.fromSymbol = fromSymbol;
+        this.fromOrderId = fromOrderId;
+        this.limit = limit;
+    }
+
+    public OrdersPageReportQuery(final BytesIn bytesIn) {
+        this.fromSymbol = bytesIn.readInt();
+        this.fromOrderId = bytesIn.readLong();
+        this.limit = bytesIn.readInt();
+    }
+
+    /**
+     * @param result - result of this query
+     * @return query for the next page, or null if result is the last page
+     */
+    public OrdersPageReportQuery nextPage(final OrdersPageReportResult result) {
+        return result.isHasMore() ? new OrdersPageReportQuery(result.getNextSymbol(), result.getNextOrderId(), limit) : null;
+    }
+
+    @Override
+    public int getReportTypeCode() {
+        return ReportType.ORDERS_PAGE.getCode();
+    }
+
+    @Override
+    public OrdersPageReportResult createResult(final Stream<BytesIn> sections) {
+        return OrdersPageReportResult.merge(sections, limit);
+    }
+
+    @Override
+    public boolean isReadViewSupported() {
+        return true;
+    }
+
+    @Override
+    public Optional<OrdersPageReportResult> process(final MatchingEngineRouter matchingEngine) {
+        return Optional.of(page(matchingEngine.getOrderBooks()));
+    }
+
+    @Override
+    public Optional<OrdersPageReportResult> process(final MatchingEngineReadView matchingEngineView) {
+        return Optional.of(page(matchingEngineView.getOrderBooks()));
+    }
+
+    @Override
+    public Optional<OrdersPageReportResult> process(final RiskEngine riskEngine) {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<OrdersPageReportResult> process(final RiskEngineReadView riskEngineView) {
+        return Optional.empty();
+    }
+
+    private OrdersPageReportResult page(final IntObjectHashMap<IOrderBook> orderBooks) {
+
+        final List<OrdersPageReportResult.SymbolOrder> orders = new ArrayList<>();
+
+        // keeps (remaining+1) smallest order ids of the symbol, largest on top
+        final PriorityQueue<IOrder> selected = new PriorityQueue<>(limit + 1, Comparator.comparingLong(IOrder::getOrderId).reversed());
+
+        for (final int symbol : orderBooks.keySet().toSortedArray()) {
+            if (symbol < fromSymbol) {
+                continue;
+            }
+
+            final IOrderBook orderBook = orderBooks.get(symbol);
+            final int remaining = limit - orders.size();
+            if (remaining == 0) {
+                // page is filled, any order of the next symbols starts the next page
+                if (orderBook.getOrdersNum(OrderAction.ASK) + orderBook.getOrdersNum(OrderAction.BID) > 0) {
+                    return new OrdersPageReportResult(orders, true);
+                }
+                continue;
+            }
+
+            final long minOrderId = symbol == fromSymbol ? fromOrderId : Long.MIN_VALUE;
+            final Consumer<IOrder> selector = ord -> {
+                if (ord.getOrderId() >= minOrderId) {
+                    if (selected.size() <= remaining) {
+                        selected.add(ord);
+                    } else if (ord.getOrderId() < selected.peek().getOrderId()) {
+                        selected.poll();
+                        selected.add(ord);
+                    }
+                }
+            };
+
+            orderBook.askOrdersStream(false).forEach(selector);
+            orderBook.bidOrdersStream(false).forEach(selector);
+
+            final boolean hasMore = selected.size() > remaining;
+            if (hasMore) {
+                // drop (remaining+1)th order, it starts the next page
+                selected.poll();
+            }
+
+            final IOrder[] symbolOrders = new IOrder[selected.size()];
+            for (int i = symbolOrders.length - 1; i >= 0; i--) {
+                symbolOrders[i] = selected.poll();
+            }
+
+            for (final IOrder ord : symbolOrders) {
+                orders.add(new OrdersPageReportResult.SymbolOrder(symbol, Order.builder()
+                        .orderId(ord.getOrderId())
+                        .price(ord.getPrice())
+                        .size(ord.getSize())
+                        .filled(ord.getFilled())
+                        .reserveBidPrice(ord.getReserveBidPrice())
+                        .action(ord.getAction())
+                        .uid(ord.getUid())
+                        .timestamp(ord.getTimestamp())
+                        .build()));
+            }
+
+            if (hasMore) {
+                return new OrdersPageReportResult(orders, true);
+            }
+        }
+
+        return new OrdersPageReportResult(orders, false);
+    }
+
+    @Override
+    public void writeMarshallable(final BytesOut bytes) {
+        bytes.writeInt(fromSymbol);
+        bytes.writeLong(fromOrderId);
+        bytes.writeInt(limit);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.api.reports;
+
+import exchange.core2.core.common.Order;
+import exchange.core2.core.utils.SerializationUtils;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import net.openhft.chronicle.bytes.BytesIn;
+import net.openhft.chronicle.bytes.BytesOut;
+import net.openhft.chronicle.bytes.WriteBytesMarshallable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * One page of resting orders, ordered by symbol and then by order id.
+ */
+@AllArgsConstructor
+@EqualsAndHashCode
+@Getter
+@ToString
+public final class OrdersPageReportResult implements ReportResult {
+
+    private static final Comparator<SymbolOrder> ORDERING = Comparator
+            .comparingInt(SymbolOrder::getSymbol)
+            .thenComparingLong(o -> o.getOrder().getOrderId());
+
+    // ordered by symbol and order id, not more than query limit
+    private final List<SymbolOrder> orders;
+
+    // true if there are orders after the last one in this page
+    private final boolean hasMore;
+
+    private OrdersPageReportResult(final BytesIn bytesIn) {
+        this.orders = SerializationUtils.readList(bytesIn, SymbolOrder::new);
+        this.hasMore = bytesIn.readBoolean();
+    }
+
+    /**
+     * @return symbol of the next page start (continuation token, together with next order id)
+     */
+    public int getNextSymbol() {
+        return hasMore ? orders.get(orders.size() - 1).symbol : -1;
+    }
+
+    /**
+     * @return first order id of the next page (for next symbol)
+     */
+    public long getNextOrderId() {
+        return hasMore ? orders.get(orders.size() - 1).order.getOrderId() + 1 : -1L;
+    }
+
+    @Override
+    public void writeMarshallable(final BytesOut bytes) {
+        SerializationUtils.marshallList(orders, bytes);
+        bytes.writeBoolean(hasMore);
+    }
+
+    /**
+     * Merge shard pages: each shard returns its first orders, global page consists of the first orders of all shards.
+     *
+     * @param pieces - shard pages
+     * @param limit  - page size
+     * @return merged page
+     */
+    public static OrdersPageReportResult merge(final Stream<BytesIn> pieces, final int limit) {
+
+        final List<OrdersPageReportResult> pages = pieces.map(OrdersPageReportResult::new).collect(Collectors.toList());
+
+        final List<SymbolOrder> orders = new ArrayList<>();
+        pages.forEach(page -> orders.addAll(page.orders));
+        orders.sort(ORDERING);
+
+        final boolean hasMore = orders.size() > limit || pages.stream().anyMatch(page -> page.hasMore);
+        return new OrdersPageReportResult(orders.size() > limit ? new ArrayList<>(orders.subList(0, limit)) : orders, hasMore);
+    }
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    @Getter
+    @ToString
+    public static final class SymbolOrder implements WriteBytesMarshallable {
+
+        private final int symbol;
+        private final Order order;
+
+        private SymbolOrder(final BytesIn bytes) {
+            this.symbol = bytes.readInt();
+            this.order = new Order(bytes);
+        }
+
+        @Override
+        public void writeMarshallable(final BytesOut bytes) {
+            bytes.writeInt(symbol);
+            order.writeMarshallable(bytes);
+        }
+    }
+}
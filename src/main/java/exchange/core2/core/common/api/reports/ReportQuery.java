@@ -17,6 +17,8 @@ package exchange.core2.core.common.api.reports;
 
 import exchange.core2.core.processors.MatchingEngineRouter;
 import exchange.core2.core.processors.RiskEngine;
+import exchange.core2.core.processors.views.MatchingEngineReadView;
+import exchange.core2.core.processors.views.RiskEngineReadView;
 import net.openhft.chronicle.bytes.BytesIn;
 import net.openhft.chronicle.bytes.WriteBytesMarshallable;
 
@@ -57,4 +59,33 @@ public interface ReportQuery<T extends ReportResult> extends WriteBytesMarshalla
      * @return custom result
      */
     Optional<T> process(RiskEngine riskEngine);
+
+    /**
+     * @return true if report can be executed against engines read views (outside of the pipeline)
+     */
+    default boolean isReadViewSupported() {
+        return false;
+    }
+
+    /**
+     * Report main logic for matching engine read view.
+     * This method is executed by report query thread.
+     *
+     * @param matchingEngineView matching engine read view (immutable)
+     * @return custom result
+     */
+    default Optional<T> process(MatchingEngineReadView matchingEngineView) {
+        throw new UnsupportedOperationException("Read views are not supported by " + getClass().getSimpleName());
+    }
+
+    /**
+     * Report main logic for risk engine read view.
+     * This method is executed by report query thread.
+     *
+     * @param riskEngineView risk engine read view (immutable)
+     * @return custom result
+     */
+    default Optional<T> process(RiskEngineReadView riskEngineView) {
+        throw new UnsupportedOperationException("Read views are not supported by " + getClass().getSimpleName());
+    }
 }
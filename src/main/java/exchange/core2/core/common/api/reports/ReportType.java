@@ -24,7 +24,15 @@ public enum ReportType {
 
     SINGLE_USER_REPORT(10002),
 
-    TOTAL_CURRENCY_BALANCE(10003);
+    TOTAL_CURRENCY_BALANCE(10003),
+
+    USERS_PAGE(10004),
+
+    ORDERS_PAGE(10005),
+
+    MULTI_SYMBOL_DEPTH(10006),
+
+    SYMBOL_STATS(10007);
 
     private final int code;
 
@@ -41,6 +49,14 @@ public enum ReportType {
                 return SINGLE_USER_REPORT;
             case 10003:
                 return TOTAL_CURRENCY_BALANCE;
+            case 10004:
+                return USERS_PAGE;
+            case 10005:
+                return ORDERS_PAGE;
+            case 10006:
+                return MULTI_SYMBOL_DEPTH;
+            case 10007:
+                return SYMBOL_STATS;
             default:
                 throw new IllegalArgumentException("unknown ReportType:" + code);
         }
@@ -17,8 +17,11 @@ package exchange.core2.core.common.api.reports;
 
 import exchange.core2.core.common.Order;
 import exchange.core2.core.common.UserProfile;
+import exchange.core2.core.orderbook.IOrderBook;
 import exchange.core2.core.processors.MatchingEngineRouter;
 import exchange.core2.core.processors.RiskEngine;
+import exchange.core2.core.processors.views.MatchingEngineReadView;
+import exchange.core2.core.processors.views.RiskEngineReadView;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
@@ -59,11 +62,44 @@ public final class SingleUserReportQuery implements ReportQuery<SingleUserReport
         return SingleUserReportResult.merge(sections);
     }
 
+    @Override
+    public boolean isReadViewSupported() {
+        return true;
+    }
+
     @Override
     public Optional<SingleUserReportResult> process(final MatchingEngineRouter matchingEngine) {
+        return Optional.of(userOrders(matchingEngine.getOrderBooks()));
+    }
+
+    @Override
+    public Optional<SingleUserReportResult> process(final MatchingEngineReadView matchingEngineView) {
+        return Optional.of(userOrders(matchingEngineView.getOrderBooks()));
+    }
+
+    @Override
+    public Optional<SingleUserReportResult> process(final RiskEngine riskEngine) {
+
+        if (!riskEngine.uidForThisHandler(this.uid)) {
+            return Optional.empty();
+        }
+        // read-only lookup, does not mark profile dirty for delta snapshot
+        return Optional.of(userProfile(riskEngine.getUserProfileService().getUserProfiles().get(this.uid)));
+    }
+
+    @Override
+    public Optional<SingleUserReportResult> process(final RiskEngineReadView riskEngineView) {
+
+        if (!riskEngineView.uidForThisHandler(this.uid)) {
+            return Optional.empty();
+        }
+        return Optional.of(userProfile(riskEngineView.getUserProfile(this.uid)));
+    }
+
+    private SingleUserReportResult userOrders(final IntObjectHashMap<IOrderBook> orderBooks) {
         final IntObjectHashMap<List<Order>> orders = new IntObjectHashMap<>();
 
-        matchingEngine.getOrderBooks().forEach(ob -> {
+        orderBooks.forEach(ob -> {
             final List<Order> userOrders = ob.findUserOrders(this.uid);
             // dont put empty results, so that the report result merge procedure would be simple
             if (!userOrders.isEmpty()) {
@@ -71,17 +107,10 @@ public final class SingleUserReportQuery implements ReportQuery<SingleUserReport
             }
         });
 
-        //log.debug("ME{}: orders: {}", matchingEngine.getShardId(), orders);
-        return Optional.of(SingleUserReportResult.createFromMatchingEngine(uid, orders));
+        return SingleUserReportResult.createFromMatchingEngine(uid, orders);
     }
 
-    @Override
-    public Optional<SingleUserReportResult> process(final RiskEngine riskEngine) {
-
-        if (!riskEngine.uidForThisHandler(this.uid)) {
-            return Optional.empty();
-        }
-        final UserProfile userProfile = riskEngine.getUserProfileService().getUserProfile(this.uid);
+    private SingleUserReportResult userProfile(final UserProfile userProfile) {
 
         if (userProfile != null) {
             final IntObjectHashMap<SingleUserReportResult.Position> positions = new IntObjectHashMap<>(userProfile.positions.size());
@@ -95,14 +124,14 @@ public final class SingleUserReportQuery implements ReportQuery<SingleUserReport
                             pos.pendingSellSize,
                             pos.pendingBuySize)));
 
-            return Optional.of(SingleUserReportResult.createFromRiskEngineFound(
+            return SingleUserReportResult.createFromRiskEngineFound(
                     uid,
                     userProfile.userStatus,
                     userProfile.accounts,
-                    positions));
+                    positions);
         } else {
             // not found
-            return Optional.of(SingleUserReportResult.createFromRiskEngineNotFound(uid));
+            return SingleUserReportResult.createFromRiskEngineNotFound(uid);
         }
     }
 
@@ -172,7 +172,7 @@ public final class SingleUserReportResult implements ReportResult {
         public final long pendingSellSize;
         public final long pendingBuySize;
 
-        private Position(BytesIn bytes) {
+        Position(BytesIn bytes) {
 
             this.quoteCurrency = bytes.readInt();
 
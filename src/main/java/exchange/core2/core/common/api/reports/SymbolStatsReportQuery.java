@@ -0,0 +1,119 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.api.reports;
+
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.metrics.SymbolCounters;
+import exchange.core2.core.orderbook.IOrderBook;
+import exchange.core2.core.processors.MatchingEngineRouter;
+import exchange.core2.core.processors.RiskEngine;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import net.openhft.chronicle.bytes.BytesIn;
+import net.openhft.chronicle.bytes.BytesOut;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Per-symbol statistics: activity counters maintained by matching engine and order book totals.
+ * <p>
+ * Executed by matching engines only (counters are not part of read views).
+ */
+@EqualsAndHashCode
+@ToString
+@Getter
+public final class SymbolStatsReportQuery implements ReportQuery<SymbolStatsReportResult> {
+
+    // requested symbols, empty means all symbols
+    private final int[] symbols;
+
+    public SymbolStatsReportQuery(final int... symbols) {
+        this.symbols = Arrays.stream(symbols).distinct().sorted().toArray();
+    }
+
+    public SymbolStatsReportQuery(final BytesIn bytesIn) {
+        this.symbols = new int[bytesIn.readInt()];
+        for (int i = 0; i < symbols.length; i++) {
+            symbols[i] = bytesIn.readInt();
+        }
+    }
+
+    @Override
+    public int getReportTypeCode() {
+        return ReportType.SYMBOL_STATS.getCode();
+    }
+
+    @Override
+    public SymbolStatsReportResult createResult(final Stream<BytesIn> sections) {
+        return SymbolStatsReportResult.merge(sections);
+    }
+
+    @Override
+    public Optional<SymbolStatsReportResult> process(final MatchingEngineRouter matchingEngine) {
+
+        final IntObjectHashMap<IOrderBook> orderBooks = matchingEngine.getOrderBooks();
+        final IntObjectHashMap<SymbolCounters> counters = matchingEngine.getSymbolCounters();
+        final IntObjectHashMap<SymbolStatsReportResult.SymbolStats> stats = new IntObjectHashMap<>();
+        final L2MarketData top = new L2MarketData(1, 1);
+
+        final int[] requested = symbols.length == 0 ? orderBooks.keySet().toArray() : symbols;
+        for (final int symbol : requested) {
+            // every shard has (empty) order books of all symbols
+            final IOrderBook orderBook = orderBooks.get(symbol);
+            if (orderBook == null || (symbol & matchingEngine.getShardMask()) != matchingEngine.getShardId()) {
+                continue;
+            }
+
+            orderBook.fillAsks(1, top);
+            orderBook.fillBids(1, top);
+
+            final SymbolCounters c = counters.get(symbol);
+            stats.put(symbol, new SymbolStatsReportResult.SymbolStats(
+                    c != null ? c.commands : 0L,
+                    c != null ? c.trades : 0L,
+                    c != null ? c.tradedVolume : 0L,
+                    c != null ? c.lastTradePrice : 0L,
+                    c != null ? c.lastTradeSize : 0L,
+                    c != null ? c.lastTradeTimestamp : 0L,
+                    orderBook.getOrdersNum(OrderAction.ASK),
+                    orderBook.getOrdersNum(OrderAction.BID),
+                    orderBook.getTotalOrdersVolume(OrderAction.ASK),
+                    orderBook.getTotalOrdersVolume(OrderAction.BID),
+                    top.askSize != 0 ? top.askPrices[0] : 0L,
+                    top.bidSize != 0 ? top.bidPrices[0] : 0L));
+        }
+
+        return Optional.of(new SymbolStatsReportResult(stats));
+    }
+
+    @Override
+    public Optional<SymbolStatsReportResult> process(final RiskEngine riskEngine) {
+        return Optional.empty();
+    }
+
+    @Override
+    public void writeMarshallable(final BytesOut bytes) {
+        bytes.writeInt(symbols.length);
+        for (final int symbol : symbols) {
+            bytes.writeInt(symbol);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.api.reports;
+
+import exchange.core2.core.utils.SerializationUtils;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import net.openhft.chronicle.bytes.BytesIn;
+import net.openhft.chronicle.bytes.BytesOut;
+import net.openhft.chronicle.bytes.WriteBytesMarshallable;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+
+import java.util.stream.Stream;
+
+/**
+ * Per-symbol operational statistics.
+ */
+@AllArgsConstructor
+@EqualsAndHashCode
+@Getter
+@ToString
+public final class SymbolStatsReportResult implements ReportResult {
+
+    // symbol -> statistics
+    private final IntObjectHashMap<SymbolStats> symbolStats;
+
+    private SymbolStatsReportResult(final BytesIn bytesIn) {
+        this.symbolStats = SerializationUtils.readIntHashMap(bytesIn, SymbolStats::new);
+    }
+
+    @Override
+    public void writeMarshallable(final BytesOut bytes) {
+        SerializationUtils.marshallIntHashMap(symbolStats, bytes);
+    }
+
+    public static SymbolStatsReportResult merge(final Stream<BytesIn> pieces) {
+        return new SymbolStatsReportResult(pieces
+                .map(SymbolStatsReportResult::new)
+                .map(SymbolStatsReportResult::getSymbolStats)
+                .reduce(new IntObjectHashMap<>(), SerializationUtils::mergeOverride));
+    }
+
+    /**
+     * Counters are cumulative since matching engine start,
+     * rates can be calculated from two consecutive reports.
+     */
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    @Getter
+    @ToString
+    public static final class SymbolStats implements WriteBytesMarshallable {
+
+        // matching commands processed (including rejected)
+        private final long commands;
+
+        private final long trades;
+        private final long tradedVolume;
+
+        // last trade (0 if no trades)
+        private final long lastTradePrice;
+        private final long lastTradeSize;
+        private final long lastTradeTimestamp;
+
+        // resting orders
+        private final int askOrders;
+        private final int bidOrders;
+        private final long askVolume;
+        private final long bidVolume;
+
+        // best prices (0 if side is empty)
+        private final long bestAsk;
+        private final long bestBid;
+
+        private SymbolStats(final BytesIn bytes) {
+            this.commands = bytes.readLong();
+            this.trades = bytes.readLong();
+            this.tradedVolume = bytes.readLong();
+            this.lastTradePrice = bytes.readLong();
+            this.lastTradeSize = bytes.readLong();
+            this.lastTradeTimestamp = bytes.readLong();
+            this.askOrders = bytes.readInt();
+            this.bidOrders = bytes.readInt();
+            this.askVolume = bytes.readLong();
+            this.bidVolume = bytes.readLong();
+            this.bestAsk = bytes.readLong();
+            this.bestBid = bytes.readLong();
+        }
+
+        @Override
+        public void writeMarshallable(final BytesOut bytes) {
+            bytes.writeLong(commands);
+            bytes.writeLong(trades);
+            bytes.writeLong(tradedVolume);
+            bytes.writeLong(lastTradePrice);
+            bytes.writeLong(lastTradeSize);
+            bytes.writeLong(lastTradeTimestamp);
+            bytes.writeInt(askOrders);
+            bytes.writeInt(bidOrders);
+            bytes.writeLong(askVolume);
+            bytes.writeLong(bidVolume);
+            bytes.writeLong(bestAsk);
+            bytes.writeLong(bestBid);
+        }
+    }
+}
@@ -18,9 +18,12 @@ package exchange.core2.core.common.api.reports;
 import exchange.core2.core.common.CoreSymbolSpecification;
 import exchange.core2.core.common.PositionDirection;
 import exchange.core2.core.common.SymbolType;
+import exchange.core2.core.common.UserProfile;
+import exchange.core2.core.orderbook.IOrderBook;
 import exchange.core2.core.processors.MatchingEngineRouter;
 import exchange.core2.core.processors.RiskEngine;
-import exchange.core2.core.processors.SymbolSpecificationProvider;
+import exchange.core2.core.processors.views.MatchingEngineReadView;
+import exchange.core2.core.processors.views.RiskEngineReadView;
 import exchange.core2.core.utils.CoreArithmeticUtils;
 import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
@@ -31,6 +34,8 @@ import org.eclipse.collections.impl.map.mutable.primitive.IntLongHashMap;
 import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 import java.util.stream.Stream;
 
 @NoArgsConstructor
@@ -52,12 +57,48 @@ public final class TotalCurrencyBalanceReportQuery implements ReportQuery<TotalC
         return TotalCurrencyBalanceReportResult.merge(sections);
     }
 
+    @Override
+    public boolean isReadViewSupported() {
+        return true;
+    }
+
     @Override
     public Optional<TotalCurrencyBalanceReportResult> process(final MatchingEngineRouter matchingEngine) {
+        return Optional.of(ordersBalances(matchingEngine.getOrderBooks()));
+    }
+
+    @Override
+    public Optional<TotalCurrencyBalanceReportResult> process(final MatchingEngineReadView matchingEngineView) {
+        return Optional.of(ordersBalances(matchingEngineView.getOrderBooks()));
+    }
+
+    @Override
+    public Optional<TotalCurrencyBalanceReportResult> process(final RiskEngine riskEngine) {
+        return Optional.of(accountBalances(
+                riskEngine.getLastPriceCache(),
+                riskEngine.getSymbolSpecificationProvider()::getSymbolSpecification,
+                consumer -> riskEngine.getUserProfileService().getUserProfiles().forEach(consumer::accept),
+                riskEngine.getFees(),
+                riskEngine.getAdjustments(),
+                riskEngine.getSuspends()));
+    }
+
+    @Override
+    public Optional<TotalCurrencyBalanceReportResult> process(final RiskEngineReadView riskEngineView) {
+        return Optional.of(accountBalances(
+                riskEngineView.getLastPriceCache(),
+                riskEngineView::getSymbolSpecification,
+                riskEngineView::forEachUserProfile,
+                riskEngineView.getFees(),
+                riskEngineView.getAdjustments(),
+                riskEngineView.getSuspends()));
+    }
+
+    private static TotalCurrencyBalanceReportResult ordersBalances(final IntObjectHashMap<IOrderBook> orderBooks) {
 
         final IntLongHashMap currencyBalance = new IntLongHashMap();
 
-        matchingEngine.getOrderBooks().stream()
+        orderBooks.stream()
                 .filter(ob -> ob.getSymbolSpec().type == SymbolType.CURRENCY_EXCHANGE_PAIR)
                 .forEach(ob -> {
                     final CoreSymbolSpecification spec = ob.getSymbolSpec();
@@ -71,27 +112,29 @@ public final class TotalCurrencyBalanceReportQuery implements ReportQuery<TotalC
                             ob.bidOrdersStream(false).mapToLong(ord -> CoreArithmeticUtils.calculateAmountBidTakerFee(ord.getSize() - ord.getFilled(), ord.getReserveBidPrice(), spec)).sum());
                 });
 
-        return Optional.of(TotalCurrencyBalanceReportResult.ofOrderBalances(currencyBalance));
+        return TotalCurrencyBalanceReportResult.ofOrderBalances(currencyBalance);
     }
 
-    @Override
-    public Optional<TotalCurrencyBalanceReportResult> process(final RiskEngine riskEngine) {
+    private static TotalCurrencyBalanceReportResult accountBalances(final IntObjectHashMap<RiskEngine.LastPriceCacheRecord> lastPriceCache,
+                                                                    final IntFunction<CoreSymbolSpecification> symbolSpecs,
+                                                                    final Consumer<Consumer<UserProfile>> userProfiles,
+                                                                    final IntLongHashMap fees,
+                                                                    final IntLongHashMap adjustments,
+                                                                    final IntLongHashMap suspends) {
 
         // prepare fast price cache for profit estimation with some price (exact value is not important, except ask==bid condition)
         final IntObjectHashMap<RiskEngine.LastPriceCacheRecord> dummyLastPriceCache = new IntObjectHashMap<>();
-        riskEngine.getLastPriceCache().forEachKeyValue((s, r) -> dummyLastPriceCache.put(s, r.averagingRecord()));
+        lastPriceCache.forEachKeyValue((s, r) -> dummyLastPriceCache.put(s, r.averagingRecord()));
 
         final IntLongHashMap currencyBalance = new IntLongHashMap();
 
         final IntLongHashMap symbolOpenInterestLong = new IntLongHashMap();
         final IntLongHashMap symbolOpenInterestShort = new IntLongHashMap();
 
-        final SymbolSpecificationProvider symbolSpecificationProvider = riskEngine.getSymbolSpecificationProvider();
-
-        riskEngine.getUserProfileService().getUserProfiles().forEach(userProfile -> {
+        userProfiles.accept(userProfile -> {
             userProfile.accounts.forEachKeyValue(currencyBalance::addToValue);
             userProfile.positions.forEachKeyValue((symbolId, positionRecord) -> {
-                final CoreSymbolSpecification spec = symbolSpecificationProvider.getSymbolSpecification(symbolId);
+                final CoreSymbolSpecification spec = symbolSpecs.apply(symbolId);
                 final RiskEngine.LastPriceCacheRecord avgPrice = dummyLastPriceCache.getIfAbsentPut(symbolId, RiskEngine.LastPriceCacheRecord.dummy);
                 currencyBalance.addToValue(positionRecord.currency, positionRecord.estimateProfit(spec, avgPrice));
 
@@ -103,15 +146,14 @@ public final class TotalCurrencyBalanceReportQuery implements ReportQuery<TotalC
             });
         });
 
-        return Optional.of(
-                new TotalCurrencyBalanceReportResult(
-                        currencyBalance,
-                        new IntLongHashMap(riskEngine.getFees()),
-                        new IntLongHashMap(riskEngine.getAdjustments()),
-                        new IntLongHashMap(riskEngine.getSuspends()),
-                        null,
-                        symbolOpenInterestLong,
-                        symbolOpenInterestShort));
+        return new TotalCurrencyBalanceReportResult(
+                currencyBalance,
+                new IntLongHashMap(fees),
+                new IntLongHashMap(adjustments),
+                new IntLongHashMap(suspends),
+                null,
+                symbolOpenInterestLong,
+                symbolOpenInterestShort);
     }
 
     @Override
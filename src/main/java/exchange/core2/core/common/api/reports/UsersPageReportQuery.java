@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.api.reports;
+
+import exchange.core2.core.common.UserProfile;
+import exchange.core2.core.processors.MatchingEngineRouter;
+import exchange.core2.core.processors.RiskEngine;
+import exchange.core2.core.processors.views.MatchingEngineReadView;
+import exchange.core2.core.processors.views.RiskEngineReadView;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import net.openhft.chronicle.bytes.BytesIn;
+import net.openhft.chronicle.bytes.BytesOut;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.map.mutable.primitive.IntLongHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Paginated users export: returns up to limit user profiles with uid &gt;= fromUid, ordered by uid.
+ * Use {@link UsersPageReportResult#getNextUid()} as fromUid for the next page.
+ * <p>
+ * Every shard collects only limit smallest uids (bounded memory), so result size does not depend on total number of users.
+ */
+@EqualsAndHashCode
+@ToString
+@Getter
+public final class UsersPageReportQuery implements ReportQuery<UsersPageReportResult> {
+
+    private final long fromUid;
+    private final int limit;
+
+    public UsersPageReportQuery(final long fromUid, final int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Invalid page size " + limit);
+        }
+        this.fromUid = fromUid;
+        this.limit = limit;
+    }
+
+    public UsersPageReportQuery(final BytesIn bytesIn) {
+        this.fromUid = bytesIn.readLong();
+        this.limit = bytesIn.readInt();
+    }
+
+    /**
+     * @param result - result of this query
+     * @return query for the next page, or null if result is the last page
+     */
+    public UsersPageReportQuery nextPage(final UsersPageReportResult result) {
+        return result.isHasMore() ? new UsersPageReportQuery(result.getNextUid(), limit) : null;
+    }
+
+    @Override
+    public int getReportTypeCode() {
+        return ReportType.USERS_PAGE.getCode();
+    }
+
+    @Override
+    public UsersPageReportResult createResult(final Stream<BytesIn> sections) {
+        return UsersPageReportResult.merge(sections, limit);
+    }
+
+    @Override
+    public boolean isReadViewSupported() {
+        return true;
+    }
+
+    @Override
+    public Optional<UsersPageReportResult> process(final MatchingEngineRouter matchingEngine) {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<UsersPageReportResult> process(final MatchingEngineReadView matchingEngineView) {
+        return Optional.empty();
+    }
+
+    @Override
+    public Optional<UsersPageReportResult> process(final RiskEngine riskEngine) {
+        // not using getUserProfile - it marks profiles as changed
+        return Optional.of(page(
+                consumer -> riskEngine.getUserProfileService().getUserProfiles().forEach(consumer::accept),
+                riskEngine.getUserProfileService().getUserProfiles()::get));
+    }
+
+    @Override
+    public Optional<UsersPageReportResult> process(final RiskEngineReadView riskEngineView) {
+        return Optional.of(page(riskEngineView::forEachUserProfile, riskEngineView::getUserProfile));
+    }
+
+    private UsersPageReportResult page(final Consumer<Consumer<UserProfile>> userProfiles, final LongFunction<UserProfile> profileByUid) {
+
+        // keep limit+1 smallest uids, sorting only when buffer is full
+        final LongArrayList uids = new LongArrayList(limit * 2 + 1);
+        userProfiles.accept(profile -> {
+            if (profile.uid >= fromUid) {
+                uids.add(profile.uid);
+                if (uids.size() > limit * 2) {
+                    uids.sortThis();
+                    while (uids.size() > limit + 1) {
+                        uids.removeAtIndex(uids.size() - 1);
+                    }
+                }
+            }
+        });
+        uids.sortThis();
+
+        final int size = Math.min(limit, uids.size());
+        final List<UsersPageReportResult.User> users = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final UserProfile profile = profileByUid.apply(uids.get(i));
+            final IntObjectHashMap<SingleUserReportResult.Position> positions = new IntObjectHashMap<>(profile.positions.size());
+            profile.positions.forEachKeyValue((symbol, pos) -> positions.put(symbol, new SingleUserReportResult.Position(
+                    pos.currency,
+                    pos.direction,
+                    pos.openVolume,
+                    pos.openPriceSum,
+                    pos.profit,
+                    pos.pendingSellSize,
+                    pos.pendingBuySize)));
+            users.add(new UsersPageReportResult.User(profile.uid, profile.userStatus, new IntLongHashMap(profile.accounts), positions));
+        }
+
+        return new UsersPageReportResult(users, uids.size() > limit);
+    }
+
+    @Override
+    public void writeMarshallable(final BytesOut bytes) {
+        bytes.writeLong(fromUid);
+        bytes.writeInt(limit);
+    }
+}
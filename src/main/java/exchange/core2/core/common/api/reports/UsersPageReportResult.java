@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.api.reports;
+
+import exchange.core2.core.common.UserStatus;
+import exchange.core2.core.utils.SerializationUtils;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+import net.openhft.chronicle.bytes.BytesIn;
+import net.openhft.chronicle.bytes.BytesOut;
+import net.openhft.chronicle.bytes.WriteBytesMarshallable;
+import org.eclipse.collections.impl.map.mutable.primitive.IntLongHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * One page of user profiles, ordered by uid.
+ */
+@AllArgsConstructor
+@EqualsAndHashCode
+@Getter
+@ToString
+public final class UsersPageReportResult implements ReportResult {
+
+    // ordered by uid, not more than query limit
+    private final List<User> users;
+
+    // true if there are users after the last one in this page
+    private final boolean hasMore;
+
+    private UsersPageReportResult(final BytesIn bytesIn) {
+        this.users = SerializationUtils.readList(bytesIn, User::new);
+        this.hasMore = bytesIn.readBoolean();
+    }
+
+    /**
+     * @return first uid of the next page (continuation token), or -1 if this page is the last one
+     */
+    public long getNextUid() {
+        return hasMore ? users.get(users.size() - 1).uid + 1 : -1L;
+    }
+
+    @Override
+    public void writeMarshallable(final BytesOut bytes) {
+        SerializationUtils.marshallList(users, bytes);
+        bytes.writeBoolean(hasMore);
+    }
+
+    /**
+     * Merge shard pages: each shard returns its first users, global page consists of the first users of all shards.
+     *
+     * @param pieces - shard pages
+     * @param limit  - page size
+     * @return merged page
+     */
+    public static UsersPageReportResult merge(final Stream<BytesIn> pieces, final int limit) {
+
+        final List<UsersPageReportResult> pages = pieces.map(UsersPageReportResult::new).collect(Collectors.toList());
+
+        final List<User> users = new ArrayList<>();
+        pages.forEach(page -> users.addAll(page.users));
+        users.sort(Comparator.comparingLong(User::getUid));
+
+        final boolean hasMore = users.size() > limit || pages.stream().anyMatch(page -> page.hasMore);
+        return new UsersPageReportResult(users.size() > limit ? new ArrayList<>(users.subList(0, limit)) : users, hasMore);
+    }
+
+    @AllArgsConstructor
+    @EqualsAndHashCode
+    @Getter
+    @ToString
+    public static final class User implements WriteBytesMarshallable {
+
+        private final long uid;
+        private final UserStatus userStatus;
+
+        // currency -> balance
+        private final IntLongHashMap accounts;
+
+        // symbol -> margin position
+        private final IntObjectHashMap<SingleUserReportResult.Position> positions;
+
+        private User(final BytesIn bytes) {
+            this.uid = bytes.readLong();
+            this.userStatus = UserStatus.of(bytes.readByte());
+            this.accounts = SerializationUtils.readIntLongHashMap(bytes);
+            this.positions = SerializationUtils.readIntHashMap(bytes, SingleUserReportResult.Position::new);
+        }
+
+        @Override
+        public void writeMarshallable(final BytesOut bytes) {
+            bytes.writeLong(uid);
+            bytes.writeByte(userStatus.getCode());
+            SerializationUtils.marshallIntLongHashMap(accounts, bytes);
+            SerializationUtils.marshallIntHashMap(positions, bytes);
+        }
+    }
+}
@@ -71,6 +71,9 @@ public enum CommandResultCode {
     STATE_PERSIST_RISK_ENGINE_FAILED(-8010),
     STATE_PERSIST_MATCHING_ENGINE_FAILED(-8020),
 
+    // rejected by API admission control, command was not published
+    OVERLOADED(-9100),
+
     DROP(-9999);
 
     // codes below -10000 are reserved for gateways
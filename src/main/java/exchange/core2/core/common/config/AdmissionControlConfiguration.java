@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.ToString;
+
+
+/**
+ * Admission control configuration for non-blocking ExchangeApi.trySubmit* methods.
+ * <p>
+ * High-water mark is a ring buffer occupancy fraction (0..1] - when exceeded, commands of the class are rejected
+ * with OVERLOADED result code without being published. Lower marks for new orders let cancels in while new orders are shed.
+ */
+@AllArgsConstructor
+@Getter
+@Builder
+@ToString
+public final class AdmissionControlConfiguration {
+
+    public static final AdmissionControlConfiguration DEFAULT = AdmissionControlConfiguration.builder()
+            .newOrdersHighWaterMark(0.75)
+            .modifyOrdersHighWaterMark(0.9)
+            .cancelOrdersHighWaterMark(1.0)
+            .otherCommandsHighWaterMark(1.0)
+            .build();
+
+    /*
+     * PLACE_ORDER
+     */
+    private final double newOrdersHighWaterMark;
+
+    /*
+     * MOVE_ORDER, REDUCE_ORDER
+     */
+    private final double modifyOrdersHighWaterMark;
+
+    /*
+     * CANCEL_ORDER
+     */
+    private final double cancelOrdersHighWaterMark;
+
+    /*
+     * All other commands (user management, order book requests, etc)
+     */
+    private final double otherCommandsHighWaterMark;
+
+    public double getHighWaterMark(final CommandClass commandClass) {
+        switch (commandClass) {
+            case NEW_ORDER:
+                return newOrdersHighWaterMark;
+            case MODIFY_ORDER:
+                return modifyOrdersHighWaterMark;
+            case CANCEL_ORDER:
+                return cancelOrdersHighWaterMark;
+            default:
+                return otherCommandsHighWaterMark;
+        }
+    }
+
+    public enum CommandClass {
+        NEW_ORDER,
+        MODIFY_ORDER,
+        CANCEL_ORDER,
+        OTHER
+    }
+}
@@ -45,6 +45,11 @@ public final class ExchangeConfiguration {
      */
     private final SerializationConfiguration serializationCfg;
 
+    /*
+     * Admission control (non-blocking API) configuration
+     */
+    private final AdmissionControlConfiguration admissionControlCfg;
+
     @Override
     public String toString() {
         return "ExchangeConfiguration{" +
@@ -54,6 +59,7 @@ public final class ExchangeConfiguration {
                 "\n  reportsQueriesCfg=" + reportsQueriesCfg +
                 "\n  loggingCfg=" + loggingCfg +
                 "\n  serializationCfg=" + serializationCfg +
+                "\n  admissionControlCfg=" + admissionControlCfg +
                 '}';
     }
 
@@ -69,6 +75,7 @@ public final class ExchangeConfiguration {
                 .performanceCfg(PerformanceConfiguration.DEFAULT)
                 .reportsQueriesCfg(ReportsQueriesConfiguration.DEFAULT)
                 .loggingCfg(LoggingConfiguration.DEFAULT)
-                .serializationCfg(SerializationConfiguration.DEFAULT);
+                .serializationCfg(SerializationConfiguration.DEFAULT)
+                .admissionControlCfg(AdmissionControlConfiguration.DEFAULT);
     }
 }
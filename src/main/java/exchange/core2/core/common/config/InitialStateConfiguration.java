@@ -45,6 +45,13 @@ public final class InitialStateConfiguration {
      */
     private final boolean throwIfSnapshotNotFound;
 
+    /*
+     * Bootstrap file (see BootstrapFile) loaded by every risk engine and matching engine shard on clean start.
+     * Ignored when loading from snapshot. Set to null to start with empty state.
+     * With journaling enabled, bootstrapped state is persisted as a snapshot on startup.
+     */
+    private final String bootstrapFile;
+
     // TODO ignore journal
 
     public boolean fromSnapshot() {
@@ -81,6 +88,23 @@ public final class InitialStateConfiguration {
                 .build();
     }
 
+    /**
+     * Clean start configuration with initial state loaded from bootstrap file.
+     * Loaded state is not journaled, with journaling enabled exchange persists a snapshot right after start.
+     *
+     * @param exchangeId    Exchange ID
+     * @param bootstrapFile bootstrap file path
+     * @return clean start configuration with bootstrap file.
+     */
+    public static InitialStateConfiguration fromBootstrapFile(String exchangeId, String bootstrapFile) {
+
+        return InitialStateConfiguration.builder()
+                .exchangeId(exchangeId)
+                .snapshotId(0)
+                .bootstrapFile(bootstrapFile)
+                .build();
+    }
+
     /**
      * Configuration that loads from snapshot, without journal replay with journaling off.
      *
@@ -94,6 +94,19 @@ public final class PerformanceConfiguration {
      */
     private final Supplier<LZ4Compressor> binaryCommandsLz4CompressorFactory;
 
+    /*
+     * Record per-stage pipeline latency histograms from startup.
+     * Can be switched on/off at runtime using ExchangeCore.setLatencyMetricsEnabled.
+     */
+    private final boolean latencyMetricsEnabled;
+
+    /*
+     * Size of asynchronous output ring (number of records, must be power of 2), 0 - disabled.
+     * When enabled, results handler copies command results and trade/reduce/reject events into the ring,
+     * so that consumers can read them from own threads without back-pressuring the pipeline.
+     */
+    private final int outputRingSize;
+
     @Override
     public String toString() {
         return "PerformanceConfiguration{" +
@@ -108,6 +121,8 @@ public final class PerformanceConfiguration {
                 ", waitStrategy=" + waitStrategy +
                 ", orderBookFactory=" + (orderBookFactory == null ? null : orderBookFactory.getClass().getSimpleName()) +
                 ", binaryCommandsLz4CompressorFactory=" + (binaryCommandsLz4CompressorFactory == null ? null : binaryCommandsLz4CompressorFactory.getClass().getSimpleName()) +
+                ", latencyMetricsEnabled=" + latencyMetricsEnabled +
+                ", outputRingSize=" + outputRingSize +
                 '}';
     }
 
@@ -126,7 +141,9 @@ public final class PerformanceConfiguration {
                 .threadFactory(Thread::new)
                 .waitStrategy(CoreWaitStrategy.BLOCKING)
                 .binaryCommandsLz4CompressorFactory(() -> LZ4Factory.fastestInstance().highCompressor())
-                .orderBookFactory(OrderBookNaiveImpl::new);
+                .orderBookFactory(OrderBookNaiveImpl::new)
+                .latencyMetricsEnabled(false)
+                .outputRingSize(0);
     }
 
     public static PerformanceConfiguration.PerformanceConfigurationBuilder latencyPerformanceBuilder() {
@@ -142,7 +159,9 @@ public final class PerformanceConfiguration {
                 .threadFactory(new AffinityThreadFactory(AffinityThreadFactory.ThreadAffinityMode.THREAD_AFFINITY_ENABLE_PER_LOGICAL_CORE))
                 .waitStrategy(CoreWaitStrategy.BUSY_SPIN)
                 .binaryCommandsLz4CompressorFactory(() -> LZ4Factory.fastestInstance().highCompressor())
-                .orderBookFactory(OrderBookDirectImpl::new);
+                .orderBookFactory(OrderBookDirectImpl::new)
+                .latencyMetricsEnabled(false)
+                .outputRingSize(0);
     }
 
     public static PerformanceConfiguration.PerformanceConfigurationBuilder throughputPerformanceBuilder() {
@@ -158,6 +177,8 @@ public final class PerformanceConfiguration {
                 .threadFactory(new AffinityThreadFactory(AffinityThreadFactory.ThreadAffinityMode.THREAD_AFFINITY_ENABLE_PER_LOGICAL_CORE))
                 .waitStrategy(CoreWaitStrategy.BUSY_SPIN)
                 .binaryCommandsLz4CompressorFactory(() -> LZ4Factory.fastestInstance().highCompressor())
-                .orderBookFactory(OrderBookDirectImpl::new);
+                .orderBookFactory(OrderBookDirectImpl::new)
+                .latencyMetricsEnabled(false)
+                .outputRingSize(0);
     }
 }
@@ -13,6 +13,7 @@ import java.lang.reflect.Constructor;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
@@ -23,8 +24,18 @@ public final class ReportsQueriesConfiguration {
 
     public static final ReportsQueriesConfiguration DEFAULT = createStandardConfig();
 
-    private final Map<Integer, Constructor<? extends ReportQuery<?>>> reportConstructors;
-    private final Map<Integer, Constructor<? extends BinaryDataCommand>> binaryCommandConstructors;
+    // type code -> deserializer
+    private final Map<Integer, Factory<ReportQuery<?>>> reportFactories;
+    private final Map<Integer, Factory<BinaryDataCommand>> binaryCommandFactories;
+
+    // threads executing reports against engines read views (0 - read views are disabled, reports are executed by engines only)
+    private final int readViewThreads;
+
+    // engines publish read views every N groups and at every NOP command
+    private final int readViewGroupsInterval;
+
+    // complete binary transfers are decoded by one engine and shared with others (decoded objects must be immutable)
+    private final boolean sharedBinaryDecoding;
 
     /**
      * Creates default reports config
@@ -36,78 +47,171 @@ public final class ReportsQueriesConfiguration {
     }
 
     /**
-     * Creates reports config with additional custom reports
+     * Creates reports config with additional custom reports.
+     * Custom reports are created through reflective BytesIn constructor, {@link #withReportQuery} avoids reflection.
      *
      * @param customReports - custom reports collection
      * @return reports configuration
      */
     public static ReportsQueriesConfiguration createStandardConfig(final Map<Integer, Class<? extends ReportQuery<?>>> customReports) {
 
-        final Map<Integer, Constructor<? extends ReportQuery<?>>> reportConstructors = new HashMap<>();
-        final Map<Integer, Constructor<? extends BinaryDataCommand>> binaryCommandConstructors = new HashMap<>();
+        final Map<Integer, Factory<ReportQuery<?>>> reportFactories = new HashMap<>();
+        final Map<Integer, Factory<BinaryDataCommand>> binaryCommandFactories = new HashMap<>();
 
         // binary commands (not extendable)
-        addBinaryCommandClass(binaryCommandConstructors, BinaryCommandType.ADD_ACCOUNTS, BatchAddAccountsCommand.class);
-        addBinaryCommandClass(binaryCommandConstructors, BinaryCommandType.ADD_SYMBOLS, BatchAddSymbolsCommand.class);
+        binaryCommandFactories.put(BinaryCommandType.ADD_ACCOUNTS.getCode(), new Factory<>(BatchAddAccountsCommand.class, BatchAddAccountsCommand::new));
+        binaryCommandFactories.put(BinaryCommandType.ADD_SYMBOLS.getCode(), new Factory<>(BatchAddSymbolsCommand.class, BatchAddSymbolsCommand::new));
 
         // predefined queries (extendable)
-        addQueryClass(reportConstructors, ReportType.STATE_HASH.getCode(), StateHashReportQuery.class);
-        addQueryClass(reportConstructors, ReportType.SINGLE_USER_REPORT.getCode(), SingleUserReportQuery.class);
-        addQueryClass(reportConstructors, ReportType.TOTAL_CURRENCY_BALANCE.getCode(), TotalCurrencyBalanceReportQuery.class);
+        addQuery(reportFactories, ReportType.STATE_HASH.getCode(), StateHashReportQuery.class, StateHashReportQuery::new);
+        addQuery(reportFactories, ReportType.SINGLE_USER_REPORT.getCode(), SingleUserReportQuery.class, SingleUserReportQuery::new);
+        addQuery(reportFactories, ReportType.TOTAL_CURRENCY_BALANCE.getCode(), TotalCurrencyBalanceReportQuery.class, TotalCurrencyBalanceReportQuery::new);
+        addQuery(reportFactories, ReportType.USERS_PAGE.getCode(), UsersPageReportQuery.class, UsersPageReportQuery::new);
+        addQuery(reportFactories, ReportType.ORDERS_PAGE.getCode(), OrdersPageReportQuery.class, OrdersPageReportQuery::new);
+        addQuery(reportFactories, ReportType.MULTI_SYMBOL_DEPTH.getCode(), MultiSymbolDepthReportQuery.class, MultiSymbolDepthReportQuery::new);
+        addQuery(reportFactories, ReportType.SYMBOL_STATS.getCode(), SymbolStatsReportQuery.class, SymbolStatsReportQuery::new);
 
-        customReports.forEach((code, customReport) -> addQueryClass(reportConstructors, code, customReport));
+        customReports.forEach((code, customReport) -> addQuery(reportFactories, code, customReport, reflectiveCreator(customReport)));
 
         return new ReportsQueriesConfiguration(
-                Collections.unmodifiableMap(reportConstructors),
-                Collections.unmodifiableMap(binaryCommandConstructors));
+                Collections.unmodifiableMap(reportFactories),
+                Collections.unmodifiableMap(binaryCommandFactories),
+                0,
+                0,
+                false);
     }
 
+    /**
+     * Creates same reports config with additional custom report
+     *
+     * @param reportTypeCode   - report type code
+     * @param reportQueryClass - report query class
+     * @param creator          - deserializer, normally constructor reference
+     * @param <Q>              - report query type
+     * @return reports configuration
+     */
+    public <Q extends ReportQuery<?>> ReportsQueriesConfiguration withReportQuery(final int reportTypeCode,
+                                                                                final Class<Q> reportQueryClass,
+                                                                                final Function<BytesIn, Q> creator) {
+        final Map<Integer, Factory<ReportQuery<?>>> factories = new HashMap<>(reportFactories);
+        addQuery(factories, reportTypeCode, reportQueryClass, creator);
+        return new ReportsQueriesConfiguration(Collections.unmodifiableMap(factories), binaryCommandFactories, readViewThreads, readViewGroupsInterval, sharedBinaryDecoding);
+    }
 
-    private static void addQueryClass(final Map<Integer, Constructor<? extends ReportQuery<?>>> reportConstructors,
-                                      final int reportTypeCode,
-                                      final Class<? extends ReportQuery<?>> reportQueryClass) {
+    /**
+     * Creates same reports config with off-pipeline reports execution enabled.
+     * Risk engines and matching engine replicas (one extra pipeline thread per matching engine) publish immutable read views,
+     * reports supporting read views are executed by separate threads.
+     *
+     * @param threads        - number of report execution threads
+     * @param groupsInterval - publish read views every N groups (NOP command always publishes)
+     * @return reports configuration
+     */
+    public ReportsQueriesConfiguration withReadViews(final int threads, final int groupsInterval) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one report thread required, got " + threads);
+        }
+        if (groupsInterval < 1) {
+            throw new IllegalArgumentException("Invalid read views groups interval " + groupsInterval);
+        }
+        return new ReportsQueriesConfiguration(reportFactories, binaryCommandFactories, threads, groupsInterval, sharedBinaryDecoding);
+    }
 
-        final Constructor<? extends ReportQuery<?>> existing = reportConstructors.get(reportTypeCode);
+    /**
+     * Creates same reports config where every binary command or query is decompressed and deserialized once
+     * and the object is shared by all matching and risk engines.
+     * All custom queries must be immutable.
+     *
+     * @return reports configuration
+     */
+    public ReportsQueriesConfiguration withSharedBinaryDecoding() {
+        return new ReportsQueriesConfiguration(reportFactories, binaryCommandFactories, readViewThreads, readViewGroupsInterval, true);
+    }
 
-        if (existing != null) {
-            throw new IllegalArgumentException("Configuration error: report type code " + reportTypeCode + " is already occupied by " + existing.getDeclaringClass().getName());
-        }
+    public boolean isReadViewsEnabled() {
+        return readViewThreads > 0;
+    }
 
-        try {
-            reportConstructors.put(reportTypeCode, reportQueryClass.getConstructor(BytesIn.class));
-        } catch (final NoSuchMethodException ex) {
-            throw new IllegalArgumentException("Configuration error: report class " + reportQueryClass.getName() + "deserialization constructor accepting BytesIn");
+
+    private static void addQuery(final Map<Integer, Factory<ReportQuery<?>>> reportFactories,
+                                 final int reportTypeCode,
+                                 final Class<? extends ReportQuery<?>> reportQueryClass,
+                                 final Function<BytesIn, ? extends ReportQuery<?>> creator) {
+
+        final Factory<ReportQuery<?>> existing = reportFactories.get(reportTypeCode);
+
+        if (existing != null) {
+            throw new IllegalArgumentException("Configuration error: report type code " + reportTypeCode + " is already occupied by " + existing.getObjectClass().getName());
         }
 
+        reportFactories.put(reportTypeCode, new Factory<>(reportQueryClass, creator));
     }
 
-    private static void addBinaryCommandClass(Map<Integer, Constructor<? extends BinaryDataCommand>> binaryCommandConstructors,
-                                              BinaryCommandType type,
-                                              Class<? extends BinaryDataCommand> binaryCommandClass) {
+    private static Function<BytesIn, ReportQuery<?>> reflectiveCreator(final Class<? extends ReportQuery<?>> reportQueryClass) {
+
+        final Constructor<? extends ReportQuery<?>> constructor;
         try {
-            binaryCommandConstructors.put(type.getCode(), binaryCommandClass.getConstructor(BytesIn.class));
+            constructor = reportQueryClass.getConstructor(BytesIn.class);
         } catch (final NoSuchMethodException ex) {
-            throw new IllegalArgumentException(ex);
+            throw new IllegalArgumentException("Configuration error: report class " + reportQueryClass.getName() + "deserialization constructor accepting BytesIn");
         }
+
+        return bytesIn -> {
+            try {
+                return constructor.newInstance(bytesIn);
+            } catch (final ReflectiveOperationException ex) {
+                throw new IllegalStateException("Failed to deserialize report instance of class " + reportQueryClass.getSimpleName(), ex);
+            }
+        };
     }
 
-    private ReportsQueriesConfiguration(final Map<Integer, Constructor<? extends ReportQuery<?>>> reportConstructors,
-                                        final Map<Integer, Constructor<? extends BinaryDataCommand>> binaryCommandConstructors) {
-        this.reportConstructors = reportConstructors;
-        this.binaryCommandConstructors = binaryCommandConstructors;
+    private ReportsQueriesConfiguration(final Map<Integer, Factory<ReportQuery<?>>> reportFactories,
+                                        final Map<Integer, Factory<BinaryDataCommand>> binaryCommandFactories,
+                                        final int readViewThreads,
+                                        final int readViewGroupsInterval,
+                                        final boolean sharedBinaryDecoding) {
+        this.reportFactories = reportFactories;
+        this.binaryCommandFactories = binaryCommandFactories;
+        this.readViewThreads = readViewThreads;
+        this.readViewGroupsInterval = readViewGroupsInterval;
+        this.sharedBinaryDecoding = sharedBinaryDecoding;
     }
 
     @Override
     public String toString() {
         return "ReportsQueriesConfiguration{" +
-                "reportConstructors=[" + reportToString(reportConstructors) +
-                "], binaryCommandConstructors=[" + reportToString(binaryCommandConstructors) +
-                "]}";
+                "reportFactories=[" + reportToString(reportFactories) +
+                "], binaryCommandFactories=[" + reportToString(binaryCommandFactories) +
+                "], readViewThreads=" + readViewThreads +
+                ", readViewGroupsInterval=" + readViewGroupsInterval +
+                ", sharedBinaryDecoding=" + sharedBinaryDecoding +
+                "}";
     }
 
-    private static String reportToString(final Map<Integer, ? extends Constructor<?>> mapping) {
+    private static String reportToString(final Map<Integer, ? extends Factory<?>> mapping) {
         return mapping.entrySet().stream()
-                .map(entry -> String.format("%d:%s", entry.getKey(), entry.getValue().getDeclaringClass().getSimpleName()))
+                .map(entry -> String.format("%d:%s", entry.getKey(), entry.getValue().getObjectClass().getSimpleName()))
                 .collect(Collectors.joining(", "));
     }
+
+    /**
+     * Deserializer of a query or binary command
+     *
+     * @param <T> - base type
+     */
+    @Getter
+    public static final class Factory<T> {
+
+        private final Class<? extends T> objectClass;
+        private final Function<BytesIn, ? extends T> creator;
+
+        public Factory(final Class<? extends T> objectClass, final Function<BytesIn, ? extends T> creator) {
+            this.objectClass = objectClass;
+            this.creator = creator;
+        }
+
+        public T create(final BytesIn bytesIn) {
+            return creator.apply(bytesIn);
+        }
+    }
 }
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.metrics;
+
+import exchange.core2.core.common.cmd.OrderCommandType;
+
+/**
+ * Per command type counters owned by a single module shard.
+ */
+public final class CommandTypeCounters {
+
+    private final PaddedCounter[] counters;
+
+    public CommandTypeCounters(final MetricsRegistry registry, final String prefix) {
+        final OrderCommandType[] types = OrderCommandType.values();
+        this.counters = new PaddedCounter[types.length];
+        for (OrderCommandType type : types) {
+            counters[type.ordinal()] = registry.counter(prefix + ".commands." + type.name());
+        }
+    }
+
+    public void increment(final OrderCommandType type) {
+        counters[type.ordinal()].increment();
+    }
+
+    public long get(final OrderCommandType type) {
+        return counters[type.ordinal()].get();
+    }
+}
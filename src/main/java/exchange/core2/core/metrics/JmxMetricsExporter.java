@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Registers a dynamic MBean exposing every metric as a read-only long attribute.
+ * Values are read from the registry on each JMX request, so export should be called once.
+ */
+@Slf4j
+public final class JmxMetricsExporter implements MetricsExporter {
+
+    private final ObjectName objectName;
+    private final MBeanServer mBeanServer;
+
+    public JmxMetricsExporter(final String objectName) {
+        try {
+            this.objectName = new ObjectName(objectName);
+        } catch (MalformedObjectNameException ex) {
+            throw new IllegalArgumentException("Invalid JMX object name: " + objectName, ex);
+        }
+        this.mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    }
+
+    @Override
+    public void export(final MetricsRegistry registry) {
+        try {
+            mBeanServer.registerMBean(new RegistryMBean(registry), objectName);
+            log.info("Registered metrics MBean {}", objectName);
+        } catch (JMException ex) {
+            throw new IllegalStateException("Can not register metrics MBean " + objectName, ex);
+        }
+    }
+
+    public void unregister() {
+        try {
+            if (mBeanServer.isRegistered(objectName)) {
+                mBeanServer.unregisterMBean(objectName);
+            }
+        } catch (JMException ex) {
+            throw new IllegalStateException("Can not unregister metrics MBean " + objectName, ex);
+        }
+    }
+
+    private static final class RegistryMBean implements DynamicMBean {
+
+        private final MetricsRegistry registry;
+
+        private RegistryMBean(MetricsRegistry registry) {
+            this.registry = registry;
+        }
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            try {
+                return registry.getValue(attribute);
+            } catch (IllegalArgumentException ex) {
+                throw new AttributeNotFoundException(attribute);
+            }
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            final AttributeList list = new AttributeList();
+            for (String name : attributes) {
+                if (registry.getNames().contains(name)) {
+                    list.add(new Attribute(name, registry.getValue(name)));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            final MBeanAttributeInfo[] attributes = registry.getNames().stream()
+                    .map(name -> new MBeanAttributeInfo(name, "long", name, true, false, false))
+                    .toArray(MBeanAttributeInfo[]::new);
+            return new MBeanInfo(getClass().getName(), "Exchange core metrics", attributes, null, null, null);
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException("Metrics are read-only: " + attribute.getName());
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws MBeanException {
+            throw new MBeanException(new UnsupportedOperationException(actionName));
+        }
+    }
+}
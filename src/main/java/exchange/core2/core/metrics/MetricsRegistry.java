@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.metrics;
+
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Registry of named runtime metrics.
+ * <p>
+ * Metrics are registered once when modules are created - hot path only increments counters it owns.
+ * Values are read by exporters from any thread (eventually consistent).
+ */
+public final class MetricsRegistry {
+
+    private final ConcurrentSkipListMap<String, LongSupplier> metrics = new ConcurrentSkipListMap<>();
+
+    /**
+     * Create and register single-writer counter
+     *
+     * @param name - unique metric name
+     * @return new counter
+     */
+    public PaddedCounter counter(final String name) {
+        final PaddedCounter counter = new PaddedCounter();
+        gauge(name, counter::get);
+        return counter;
+    }
+
+    /**
+     * Register value calculated on demand (called from exporter thread, must be threadsafe)
+     *
+     * @param name     - unique metric name
+     * @param supplier - value supplier
+     */
+    public void gauge(final String name, final LongSupplier supplier) {
+        if (metrics.putIfAbsent(name, supplier) != null) {
+            throw new IllegalArgumentException("Metric already registered: " + name);
+        }
+    }
+
+    public NavigableSet<String> getNames() {
+        return metrics.navigableKeySet();
+    }
+
+    public long getValue(final String name) {
+        final LongSupplier supplier = metrics.get(name);
+        if (supplier == null) {
+            throw new IllegalArgumentException("Unknown metric: " + name);
+        }
+        return supplier.getAsLong();
+    }
+
+    /**
+     * @return current values of all metrics, sorted by name
+     */
+    public Map<String, Long> snapshot() {
+        final Map<String, Long> values = new LinkedHashMap<>();
+        metrics.forEach((name, supplier) -> values.put(name, supplier.getAsLong()));
+        return values;
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.metrics;
+
+import static net.openhft.chronicle.core.UnsafeMemory.UNSAFE;
+
+abstract class PaddedCounterLhsPadding {
+    protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+abstract class PaddedCounterValue extends PaddedCounterLhsPadding {
+    protected volatile long value;
+}
+
+abstract class PaddedCounterRhsPadding extends PaddedCounterValue {
+    protected long p9, p10, p11, p12, p13, p14, p15;
+}
+
+/**
+ * Single-writer counter padded to its own cache line (same layout as disruptor Sequence).
+ * Writer uses ordered stores (no CAS), any thread can read.
+ */
+public final class PaddedCounter extends PaddedCounterRhsPadding {
+
+    private static final long VALUE_OFFSET;
+
+    static {
+        try {
+            VALUE_OFFSET = UNSAFE.objectFieldOffset(PaddedCounterValue.class.getDeclaredField("value"));
+        } catch (NoSuchFieldException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Increment counter. Must be called from the owner thread only.
+     */
+    public void increment() {
+        UNSAFE.putOrderedLong(this, VALUE_OFFSET, value + 1);
+    }
+
+    /**
+     * Add delta to counter. Must be called from the owner thread only.
+     *
+     * @param delta - value to add
+     */
+    public void add(final long delta) {
+        UNSAFE.putOrderedLong(this, VALUE_OFFSET, value + delta);
+    }
+
+    public long get() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(value);
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.metrics;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Per-stage pipeline latency recorder.
+ * <p>
+ * Grouping processor stamps every command with the time it entered the pipeline (once per batch),
+ * every following stage records time elapsed since that stamp when it completes the command.
+ * So values are cumulative - stage contribution is a difference between stage and its upstream stage.
+ * <p>
+ * Each stage shard owns its own recorder (single writer), histograms are preallocated and never resized.
+ * Recording can be switched off at runtime - then it costs one volatile read per stage and one array store in G.
+ */
+@Slf4j
+public final class PipelineLatencyRecorder {
+
+    // values above are clamped, so histograms are never resized
+    public static final long HIGHEST_TRACKABLE_NS = 10_000_000_000L;
+    public static final int SIGNIFICANT_DIGITS = 3;
+
+    private final long[] entryTimestampsNs;
+    private final int indexMask;
+
+    // [stage][shardId]
+    private final SingleWriterRecorder[][] recorders;
+
+    private volatile boolean enabled;
+
+    private long intervalStartMs = System.currentTimeMillis();
+
+    public PipelineLatencyRecorder(final int ringBufferSize,
+                                   final int matchingEnginesNum,
+                                   final int riskEnginesNum,
+                                   final boolean enabled) {
+
+        if (Integer.bitCount(ringBufferSize) != 1) {
+            throw new IllegalArgumentException("ringBufferSize must be a power of 2");
+        }
+
+        this.entryTimestampsNs = new long[ringBufferSize];
+        this.indexMask = ringBufferSize - 1;
+        this.enabled = enabled;
+
+        final PipelineStage[] stages = PipelineStage.values();
+        this.recorders = new SingleWriterRecorder[stages.length][];
+        for (PipelineStage stage : stages) {
+            final int shards;
+            if (stage == PipelineStage.MATCHING_ENGINE) {
+                shards = matchingEnginesNum;
+            } else if (stage == PipelineStage.RISK_HOLD || stage == PipelineStage.RISK_RELEASE) {
+                shards = riskEnginesNum;
+            } else {
+                shards = 1;
+            }
+            final SingleWriterRecorder[] stageRecorders = new SingleWriterRecorder[shards];
+            for (int i = 0; i < shards; i++) {
+                stageRecorders[i] = new SingleWriterRecorder(HIGHEST_TRACKABLE_NS, SIGNIFICANT_DIGITS);
+            }
+            recorders[stage.ordinal()] = stageRecorders;
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(final boolean enabled) {
+        log.info("Pipeline latency recording {}", enabled ? "enabled" : "disabled");
+        this.enabled = enabled;
+    }
+
+    /**
+     * Called by grouping processor before processing a batch.
+     *
+     * @return batch entry timestamp, or 0 if recording is disabled
+     */
+    public long groupingBatchStart() {
+        return enabled ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Called by grouping processor for every command of the batch (including disabled case, to clear old stamp).
+     *
+     * @param seq     - sequence
+     * @param entryNs - batch entry timestamp
+     */
+    public void markEntry(final long seq, final long entryNs) {
+        entryTimestampsNs[(int) seq & indexMask] = entryNs;
+    }
+
+    /**
+     * Called by grouping processor after batch is processed.
+     *
+     * @param entryNs   - batch entry timestamp
+     * @param batchSize - number of commands in the batch
+     */
+    public void recordGroupingBatch(final long entryNs, final long batchSize) {
+        if (entryNs != 0L) {
+            recorders[PipelineStage.GROUPING.ordinal()][0].recordValueWithCount(clamp(System.nanoTime() - entryNs), batchSize);
+        }
+    }
+
+    /**
+     * Record latency of the command completed by stage shard. Must be called from the stage shard thread only.
+     *
+     * @param stage   - pipeline stage
+     * @param shardId - stage shard (0 for single-threaded stages)
+     * @param seq     - sequence
+     */
+    public void record(final PipelineStage stage, final int shardId, final long seq) {
+        if (enabled) {
+            final long entryNs = entryTimestampsNs[(int) seq & indexMask];
+            if (entryNs != 0L) {
+                recorders[stage.ordinal()][shardId].recordValue(clamp(System.nanoTime() - entryNs));
+            }
+        }
+    }
+
+    /**
+     * Collect interval histograms (since previous snapshot) merged across stage shards.
+     *
+     * @return latency snapshot
+     */
+    public synchronized PipelineLatencySnapshot snapshot() {
+        final Map<PipelineStage, Histogram> histograms = new EnumMap<>(PipelineStage.class);
+        for (PipelineStage stage : PipelineStage.values()) {
+            final Histogram merged = new Histogram(HIGHEST_TRACKABLE_NS, SIGNIFICANT_DIGITS);
+            for (SingleWriterRecorder recorder : recorders[stage.ordinal()]) {
+                merged.add(recorder.getIntervalHistogram());
+            }
+            histograms.put(stage, merged);
+        }
+        final long intervalEndMs = System.currentTimeMillis();
+        final PipelineLatencySnapshot snapshot = new PipelineLatencySnapshot(histograms, intervalStartMs, intervalEndMs);
+        intervalStartMs = intervalEndMs;
+        return snapshot;
+    }
+
+    private static long clamp(final long ns) {
+        return ns < 0L ? 0L : Math.min(ns, HIGHEST_TRACKABLE_NS);
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.metrics;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.HdrHistogram.Histogram;
+
+import java.util.Map;
+
+/**
+ * Pipeline latency histograms (nanoseconds) collected over an interval.
+ * Values are measured from the moment a command entered grouping processor.
+ */
+@AllArgsConstructor
+@Getter
+public final class PipelineLatencySnapshot {
+
+    private static final double[] PERCENTILES = new double[]{50, 90, 99, 99.9, 99.99};
+
+    private final Map<PipelineStage, Histogram> histograms;
+    private final long intervalStartMs;
+    private final long intervalEndMs;
+
+    public Histogram getHistogram(final PipelineStage stage) {
+        return histograms.get(stage);
+    }
+
+    public long getValueAtPercentile(final PipelineStage stage, final double percentile) {
+        return histograms.get(stage).getValueAtPercentile(percentile);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("PipelineLatencySnapshot{");
+        sb.append("intervalMs=").append(intervalEndMs - intervalStartMs);
+        histograms.forEach((stage, histogram) -> {
+            if (histogram.getTotalCount() == 0) {
+                return;
+            }
+            sb.append(", ").append(stage.getShortName()).append("[n=").append(histogram.getTotalCount());
+            for (double p : PERCENTILES) {
+                sb.append(' ').append(p).append("%=").append(histogram.getValueAtPercentile(p) / 1000).append("us");
+            }
+            sb.append(" max=").append(histogram.getMaxValue() / 1000).append("us]");
+        });
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.metrics;
+
+import lombok.Getter;
+
+/**
+ * Disruptor pipeline stages, in processing order.
+ */
+@Getter
+public enum PipelineStage {
+
+    GROUPING("G"),
+    JOURNALING("J"),
+    RISK_HOLD("R1"),
+    MATCHING_ENGINE("ME"),
+    RISK_RELEASE("R2"),
+    RESULTS_HANDLER("E");
+
+    private final String shortName;
+
+    PipelineStage(String shortName) {
+        this.shortName = shortName;
+    }
+}
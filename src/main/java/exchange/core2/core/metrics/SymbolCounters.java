@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.metrics;
+
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.cmd.OrderCommand;
+
+/**
+ * Cumulative per-symbol activity counters of a matching engine shard.
+ * <p>
+ * Owned by matching engine thread (not thread safe), not persisted - counting starts from engine start.
+ * Rates can be calculated as difference between two reports divided by interval.
+ */
+public final class SymbolCounters {
+
+    // matching commands (place, cancel, move, reduce) including rejected
+    public long commands;
+
+    public long trades;
+    public long tradedVolume;
+
+    // last trade (0 if no trades yet)
+    public long lastTradePrice;
+    public long lastTradeSize;
+    public long lastTradeTimestamp;
+
+    /**
+     * Account matching command and its trade events
+     *
+     * @param cmd - processed command
+     */
+    public void onCommand(final OrderCommand cmd) {
+        commands++;
+        MatcherTradeEvent event = cmd.matcherEvent;
+        while (event != null) {
+            if (event.eventType == MatcherEventType.TRADE) {
+                trades++;
+                tradedVolume += event.size;
+                lastTradePrice = event.price;
+                lastTradeSize = event.size;
+                lastTradeTimestamp = cmd.timestamp;
+            }
+            event = event.nextEvent;
+        }
+    }
+}
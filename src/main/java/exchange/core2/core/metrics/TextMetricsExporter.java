@@ -0,0 +1,41 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.metrics;
+
+import lombok.AllArgsConstructor;
+
+import java.util.function.Consumer;
+
+/**
+ * Dumps all metrics as text, one "name value" line per metric.
+ * Intended to be called periodically (e.g. with log::info as a sink).
+ */
+@AllArgsConstructor
+public final class TextMetricsExporter implements MetricsExporter {
+
+    private final Consumer<String> sink;
+
+    public static String dump(final MetricsRegistry registry) {
+        final StringBuilder sb = new StringBuilder();
+        registry.snapshot().forEach((name, value) -> sb.append(name).append(' ').append(value).append('\n'));
+        return sb.toString();
+    }
+
+    @Override
+    public void export(final MetricsRegistry registry) {
+        sink.accept(dump(registry));
+    }
+}
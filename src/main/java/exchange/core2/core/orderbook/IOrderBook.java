@@ -77,10 +77,10 @@ public interface IOrderBook extends WriteBytesMarshallable, StateHash {
      */
     CommandResultCode moveOrder(OrderCommand cmd);
 
-    // testing only ?
+    // number of resting orders (constant time for direct implementation)
     int getOrdersNum(OrderAction action);
 
-    // testing only ?
+    // total remaining volume of resting orders (constant time for direct implementation)
     long getTotalOrdersVolume(OrderAction action);
 
     // testing only ?
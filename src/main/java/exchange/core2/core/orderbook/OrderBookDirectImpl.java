@@ -58,6 +58,12 @@ public final class OrderBookDirectImpl implements IOrderBook {
     private DirectOrder bestAskOrder = null;
     private DirectOrder bestBidOrder = null;
 
+    // totals per side, maintained together with buckets
+    private int askOrdersNum = 0;
+    private int bidOrdersNum = 0;
+    private long askOrdersVolume = 0L;
+    private long bidOrdersVolume = 0L;
+
     // Object pools
     private final ObjectsPool objectsPool;
 
@@ -274,6 +280,8 @@ public final class OrderBookDirectImpl implements IOrderBook {
             if (makerCompleted) {
                 makerOrder.parent.numOrders--;
             }
+            // maker is ask for bid taker
+            updateTotals(isBidAction, makerCompleted ? -1 : 0, -tradeSize);
 
             final MatcherTradeEvent tradeEvent = eventsHelper.sendTradeEvent(makerOrder, makerCompleted, remainingSize == 0, tradeSize,
                     isBidAction ? takerReserveBidPrice : makerOrder.reserveBidPrice);
@@ -390,6 +398,7 @@ public final class OrderBookDirectImpl implements IOrderBook {
         } else {
             order.size -= reduceBy;
             order.parent.volume -= reduceBy;
+            updateTotals(order.action == OrderAction.ASK, 0, -reduceBy);
         }
 
         cmd.matcherEvent = eventsHelper.sendReduceEvent(order, reduceBy, canRemove);
@@ -448,6 +457,7 @@ public final class OrderBookDirectImpl implements IOrderBook {
         final Bucket bucket = order.parent;
         bucket.volume -= order.size - order.filled;
         bucket.numOrders--;
+        updateTotals(order.action == OrderAction.ASK, -1, -(order.size - order.filled));
         Bucket bucketRemoved = null;
 
         if (bucket.tail == order) {
@@ -489,6 +499,7 @@ public final class OrderBookDirectImpl implements IOrderBook {
         final boolean isAsk = order.action == OrderAction.ASK;
         final LongAdaptiveRadixTreeMap<Bucket> buckets = isAsk ? askPriceBuckets : bidPriceBuckets;
         final Bucket toBucket = buckets.get(order.price);
+        updateTotals(isAsk, 1, order.size - order.filled);
 
         if (toBucket != null) {
             // update tail if bucket already exists
@@ -561,20 +572,24 @@ public final class OrderBookDirectImpl implements IOrderBook {
         }
     }
 
+    private void updateTotals(final boolean isAsk, final int ordersDelta, final long volumeDelta) {
+        if (isAsk) {
+            askOrdersNum += ordersDelta;
+            askOrdersVolume += volumeDelta;
+        } else {
+            bidOrdersNum += ordersDelta;
+            bidOrdersVolume += volumeDelta;
+        }
+    }
+
     @Override
     public int getOrdersNum(OrderAction action) {
-        final LongAdaptiveRadixTreeMap<Bucket> buckets = action == OrderAction.ASK ? askPriceBuckets : bidPriceBuckets;
-        final MutableInteger accum = new MutableInteger();
-        buckets.forEach((p, b) -> accum.value += b.numOrders, Integer.MAX_VALUE);
-        return accum.value;
+        return action == OrderAction.ASK ? askOrdersNum : bidOrdersNum;
     }
 
     @Override
     public long getTotalOrdersVolume(OrderAction action) {
-        final LongAdaptiveRadixTreeMap<Bucket> buckets = action == OrderAction.ASK ? askPriceBuckets : bidPriceBuckets;
-        final MutableLong accum = new MutableLong();
-        buckets.forEach((p, b) -> accum.value += b.volume, Integer.MAX_VALUE);
-        return accum.value;
+        return action == OrderAction.ASK ? askOrdersVolume : bidOrdersVolume;
     }
 
     @Override
@@ -684,6 +699,19 @@ public final class OrderBookDirectImpl implements IOrderBook {
             thrw("last order is not a tail");
         }
 
+        final MutableInteger totalOrders = new MutableInteger();
+        final MutableLong totalVolume = new MutableLong();
+        buckets.forEach((p, b) -> {
+            totalOrders.value += b.numOrders;
+            totalVolume.value += b.volume;
+        }, Integer.MAX_VALUE);
+        if (totalOrders.value != (asksChain ? askOrdersNum : bidOrdersNum)) {
+            thrw("orders number does not match buckets");
+        }
+        if (totalVolume.value != (asksChain ? askOrdersVolume : bidOrdersVolume)) {
+            thrw("orders volume does not match buckets");
+        }
+
 //        log.debug("-------- validateChain ----- asksChain={} ", asksChain);
         buckets.forEach((price, bucket) -> {
 //            log.debug("Remove {} ", price);
@@ -30,11 +30,13 @@ import exchange.core2.core.utils.HashingUtils;
 import exchange.core2.core.utils.SerializationUtils;
 import exchange.core2.core.utils.UnsafeUtils;
 import lombok.extern.slf4j.Slf4j;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
 import net.openhft.chronicle.bytes.*;
 import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.Optional;
@@ -49,11 +51,30 @@ import java.util.function.Consumer;
 @Slf4j
 public final class BinaryCommandsProcessor implements WriteBytesMarshallable, StateHash {
 
-    // TODO connect object pool
+    // released transfer records kept for reuse
+    private static final int RECORDS_POOL_SIZE = 8;
+
+    // bigger buffers are not kept after transfer completed (64K longs = 512KB)
+    private static final int MAX_POOLED_RECORD_LONGS = 65536;
+
+    private static final LZ4FastDecompressor LZ4_DECOMPRESSOR = LZ4Factory.fastestInstance().fastDecompressor();
 
     // transactionId -> TransferRecord (long array + bitset)
     private final LongObjectHashMap<TransferRecord> incomingData;
 
+    private final ArrayDeque<TransferRecord> recordsPool = new ArrayDeque<>(RECORDS_POOL_SIZE);
+
+    // reusable decompression buffers
+    private ByteBuffer compressedBuffer = ByteBuffer.allocate(0);
+    private ByteBuffer uncompressedBuffer = ByteBuffer.allocate(0);
+    private Bytes<ByteBuffer> uncompressedBytes = Bytes.wrapForRead(uncompressedBuffer);
+
+    // reusable report result serialization buffer
+    private final NativeBytes<Void> resultBytes = Bytes.allocateElasticDirect(128);
+
+    // shared decoding (null - disabled)
+    private final SharedBinaryDecoder sharedDecoder;
+
     // TODO improve type (Object is not ok)
     private final Consumer<BinaryDataCommand> completeMessagesHandler;
 
@@ -76,6 +97,7 @@ public final class BinaryCommandsProcessor implements WriteBytesMarshallable, St
         this.eventsHelper = new OrderBookEventsHelper(sharedPool::getChain);
         this.queriesConfiguration = queriesConfiguration;
         this.section = section;
+        this.sharedDecoder = sharedPool.getBinaryDecoder();
     }
 
     public BinaryCommandsProcessor(final Consumer<BinaryDataCommand> completeMessagesHandler,
@@ -90,20 +112,14 @@ public final class BinaryCommandsProcessor implements WriteBytesMarshallable, St
         this.eventsHelper = new OrderBookEventsHelper(sharedPool::getChain);
         this.section = section;
         this.queriesConfiguration = queriesConfiguration;
+        this.sharedDecoder = sharedPool.getBinaryDecoder();
     }
 
     public CommandResultCode acceptBinaryFrame(OrderCommand cmd) {
 
         final int transferId = cmd.userCookie;
 
-        final TransferRecord record = incomingData.getIfAbsentPut(
-                transferId,
-                () -> {
-                    final int bytesLength = (int) (cmd.orderId >> 32) & 0x7FFF_FFFF;
-                    final int longArraySize = SerializationUtils.requiredLongArraySize(bytesLength, ExchangeApi.LONGS_PER_MESSAGE);
-//            log.debug("EXPECTED: bytesLength={} longArraySize={}", bytesLength, longArraySize);
-                    return new TransferRecord(longArraySize);
-                });
+        final TransferRecord record = getOrCreateRecord(transferId, cmd.orderId);
 
         record.addWord(cmd.orderId);
         record.addWord(cmd.price);
@@ -116,24 +132,28 @@ public final class BinaryCommandsProcessor implements WriteBytesMarshallable, St
 
             incomingData.removeKey(transferId);
 
-            final BytesIn bytesIn = SerializationUtils.longsLz4ToWire(record.dataArray, record.wordsTransfered).bytes();
-
             if (cmd.command == OrderCommandType.BINARY_DATA_QUERY) {
 
-                deserializeQuery(bytesIn)
-                        .flatMap(reportQueriesHandler::handleReport)
+                final Optional<ReportQuery<?>> query = sharedDecoder != null
+                        ? sharedDecoder.decode(transferId, cmd.timestamp, () -> deserializeQuery(decompress(record)))
+                        : deserializeQuery(decompress(record));
+                releaseRecord(record);
+
+                query.flatMap(reportQueriesHandler::handleReport)
                         .ifPresent(res -> {
-                            final NativeBytes<Void> bytes = Bytes.allocateElasticDirect(128);
-                            res.writeMarshallable(bytes);
-                            final MatcherTradeEvent binaryEventsChain = eventsHelper.createBinaryEventsChain(cmd.timestamp, section, bytes);
+                            resultBytes.clear();
+                            res.writeMarshallable(resultBytes);
+                            final MatcherTradeEvent binaryEventsChain = eventsHelper.createBinaryEventsChain(cmd.timestamp, section, resultBytes);
                             UnsafeUtils.appendEventsVolatile(cmd, binaryEventsChain);
                         });
 
             } else if (cmd.command == OrderCommandType.BINARY_DATA_COMMAND) {
 
-//                log.debug("Unpack {} words", record.wordsTransfered);
-                final BinaryDataCommand binaryDataCommand = deserializeBinaryCommand(bytesIn);
-//                log.debug("Succeed");
+                final BinaryDataCommand binaryDataCommand = sharedDecoder != null
+                        ? sharedDecoder.decode(transferId, cmd.timestamp, () -> deserializeBinaryCommand(decompress(record)))
+                        : deserializeBinaryCommand(decompress(record));
+                releaseRecord(record);
+
                 completeMessagesHandler.accept(binaryDataCommand);
 
             } else {
@@ -147,20 +167,73 @@ public final class BinaryCommandsProcessor implements WriteBytesMarshallable, St
         }
     }
 
+    private TransferRecord getOrCreateRecord(final int transferId, final long firstWord) {
+
+        final TransferRecord existing = incomingData.get(transferId);
+        if (existing != null) {
+            return existing;
+        }
+
+        // first frame contains total length, so buffer does not grow
+        final int bytesLength = (int) (firstWord >> 32) & 0x7FFF_FFFF;
+        final int longArraySize = SerializationUtils.requiredLongArraySize(bytesLength, ExchangeApi.LONGS_PER_MESSAGE);
+//        log.debug("EXPECTED: bytesLength={} longArraySize={}", bytesLength, longArraySize);
+
+        TransferRecord record = recordsPool.pollLast();
+        if (record == null) {
+            record = new TransferRecord(longArraySize);
+        } else {
+            record.reset(longArraySize);
+        }
+        incomingData.put(transferId, record);
+        return record;
+    }
+
+    private void releaseRecord(final TransferRecord record) {
+        if (recordsPool.size() < RECORDS_POOL_SIZE && record.dataArray.length <= MAX_POOLED_RECORD_LONGS) {
+            record.clear();
+            recordsPool.addLast(record);
+        }
+    }
+
+    /**
+     * Decompress transfer into reusable buffer (valid until next call)
+     */
+    private BytesIn decompress(final TransferRecord record) {
+
+        final int compressedSize = record.wordsTransfered * 8;
+        if (compressedBuffer.capacity() < compressedSize) {
+            compressedBuffer = ByteBuffer.allocate(compressedSize);
+        }
+        compressedBuffer.clear();
+        compressedBuffer.asLongBuffer().put(record.dataArray, 0, record.wordsTransfered);
+
+        final int originalSizeBytes = compressedBuffer.getInt(0);
+        if (uncompressedBuffer.capacity() < originalSizeBytes) {
+            uncompressedBuffer = ByteBuffer.allocate(originalSizeBytes);
+            uncompressedBytes = Bytes.wrapForRead(uncompressedBuffer);
+        }
+
+        LZ4_DECOMPRESSOR.decompress(compressedBuffer, 4, uncompressedBuffer, 0, originalSizeBytes);
+
+        uncompressedBytes.readPositionRemaining(0, originalSizeBytes);
+        return uncompressedBytes;
+    }
+
     private BinaryDataCommand deserializeBinaryCommand(BytesIn bytesIn) {
 
         final int classCode = bytesIn.readInt();
 
-        final Constructor<? extends BinaryDataCommand> constructor = queriesConfiguration.getBinaryCommandConstructors().get(classCode);
-        if (constructor == null) {
+        final ReportsQueriesConfiguration.Factory<BinaryDataCommand> factory = queriesConfiguration.getBinaryCommandFactories().get(classCode);
+        if (factory == null) {
             throw new IllegalStateException("Unknown Binary Data Command class code: " + classCode);
         }
 
         try {
-            return constructor.newInstance(bytesIn);
+            return factory.create(bytesIn);
 
-        } catch (final IllegalAccessException | InstantiationException | InvocationTargetException ex) {
-            throw new IllegalStateException("Failed to deserialize Binary Data Command instance of class " + constructor.getDeclaringClass().getSimpleName(), ex);
+        } catch (final RuntimeException ex) {
+            throw new IllegalStateException("Failed to deserialize Binary Data Command instance of class " + factory.getObjectClass().getSimpleName(), ex);
         }
     }
 
@@ -168,17 +241,17 @@ public final class BinaryCommandsProcessor implements WriteBytesMarshallable, St
 
         final int classCode = bytesIn.readInt();
 
-        final Constructor<? extends ReportQuery<?>> constructor = queriesConfiguration.getReportConstructors().get(classCode);
-        if (constructor == null) {
+        final ReportsQueriesConfiguration.Factory<ReportQuery<?>> factory = queriesConfiguration.getReportFactories().get(classCode);
+        if (factory == null) {
             log.error("Unknown Report Query class code: {}", classCode);
             return Optional.empty();
         }
 
         try {
-            return Optional.of(constructor.newInstance(bytesIn));
+            return Optional.of(factory.create(bytesIn));
 
-        } catch (final IllegalAccessException | InstantiationException | InvocationTargetException ex) {
-            log.error("Failed to deserialize report instance of class {} error: {}", constructor.getDeclaringClass().getSimpleName(), ex.getMessage());
+        } catch (final RuntimeException ex) {
+            log.error("Failed to deserialize report instance of class {} error: {}", factory.getObjectClass().getSimpleName(), ex.getMessage());
             return Optional.empty();
         }
     }
@@ -209,27 +282,47 @@ public final class BinaryCommandsProcessor implements WriteBytesMarshallable, St
 
     private static class TransferRecord implements WriteBytesMarshallable, StateHash {
 
+        // buffer can be bigger than expected length if record is reused
         private long[] dataArray;
+        private int length;
         private int wordsTransfered;
 
         public TransferRecord(int expectedLength) {
             this.wordsTransfered = 0;
+            this.length = expectedLength;
             this.dataArray = new long[expectedLength];
         }
 
         public TransferRecord(BytesIn bytes) {
             wordsTransfered = bytes.readInt();
             this.dataArray = SerializationUtils.readLongArray(bytes);
+            this.length = dataArray.length;
+        }
+
+        private void reset(int expectedLength) {
+            if (dataArray.length < expectedLength) {
+                dataArray = new long[expectedLength];
+            }
+            length = expectedLength;
+        }
+
+        // words after wordsTransfered are always zero
+        private void clear() {
+            Arrays.fill(dataArray, 0, wordsTransfered, 0L);
+            wordsTransfered = 0;
         }
 
         public void addWord(long word) {
 
-            if (wordsTransfered == dataArray.length) {
+            if (wordsTransfered == length) {
                 // should never happen
-                log.warn("Resizing incoming transfer buffer to {} longs", dataArray.length * 2);
-                long[] newArray = new long[dataArray.length * 2];
-                System.arraycopy(dataArray, 0, newArray, 0, dataArray.length);
-                dataArray = newArray;
+                log.warn("Resizing incoming transfer buffer to {} longs", length * 2);
+                if (dataArray.length < length * 2) {
+                    long[] newArray = new long[length * 2];
+                    System.arraycopy(dataArray, 0, newArray, 0, length);
+                    dataArray = newArray;
+                }
+                length *= 2;
             }
 
             dataArray[wordsTransfered++] = word;
@@ -239,12 +332,21 @@ public final class BinaryCommandsProcessor implements WriteBytesMarshallable, St
         @Override
         public void writeMarshallable(BytesOut bytes) {
             bytes.writeInt(wordsTransfered);
-            SerializationUtils.marshallLongArray(dataArray, bytes);
+            // same layout as marshallLongArray
+            bytes.writeInt(length);
+            for (int i = 0; i < length; i++) {
+                bytes.writeLong(dataArray[i]);
+            }
         }
 
         @Override
         public int stateHash() {
-            return Objects.hash(Arrays.hashCode(dataArray), wordsTransfered);
+            // same as Arrays.hashCode for first length words
+            int hash = 1;
+            for (int i = 0; i < length; i++) {
+                hash = 31 * hash + Long.hashCode(dataArray[i]);
+            }
+            return Objects.hash(hash, wordsTransfered);
         }
     }
 
@@ -22,6 +22,8 @@ import exchange.core2.core.common.cmd.CommandResultCode;
 import exchange.core2.core.common.cmd.OrderCommand;
 import exchange.core2.core.common.cmd.OrderCommandType;
 import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.ReportsQueriesConfiguration;
+import exchange.core2.core.metrics.PipelineLatencyRecorder;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.concurrent.atomic.AtomicInteger;
@@ -47,14 +49,21 @@ public final class GroupingProcessor implements EventProcessor {
 
     private final SharedPool sharedPool;
 
+    private final PipelineLatencyRecorder latencyRecorder;
+
     private final int msgsInGroupLimit;
     private final long maxGroupDurationNs;
 
+    // NOP closes a group, so read views get published (only needed when read views are enabled)
+    private final boolean nopClosesGroup;
+
     public GroupingProcessor(RingBuffer<OrderCommand> ringBuffer,
                              SequenceBarrier sequenceBarrier,
                              PerformanceConfiguration perfCfg,
+                             ReportsQueriesConfiguration reportsCfg,
                              CoreWaitStrategy coreWaitStrategy,
-                             SharedPool sharedPool) {
+                             SharedPool sharedPool,
+                             PipelineLatencyRecorder latencyRecorder) {
 
         if (perfCfg.getMsgsInGroupLimit() > perfCfg.getRingBufferSize() / 4) {
             throw new IllegalArgumentException("msgsInGroupLimit should be less than quarter ringBufferSize");
@@ -65,7 +74,9 @@ public final class GroupingProcessor implements EventProcessor {
         this.waitSpinningHelper = new WaitSpinningHelper(ringBuffer, sequenceBarrier, GROUP_SPIN_LIMIT, coreWaitStrategy);
         this.msgsInGroupLimit = perfCfg.getMsgsInGroupLimit();
         this.maxGroupDurationNs = perfCfg.getMaxGroupDurationNs();
+        this.nopClosesGroup = reportsCfg.isReadViewsEnabled();
         this.sharedPool = sharedPool;
+        this.latencyRecorder = latencyRecorder;
     }
 
     @Override
@@ -136,10 +147,14 @@ public final class GroupingProcessor implements EventProcessor {
                 long availableSequence = waitSpinningHelper.tryWaitFor(nextSequence);
 
                 if (nextSequence <= availableSequence) {
+                    final long batchEntryNs = latencyRecorder.groupingBatchStart();
+                    final long batchSize = availableSequence - nextSequence + 1;
                     while (nextSequence <= availableSequence) {
 
                         final OrderCommand cmd = ringBuffer.get(nextSequence);
 
+                        latencyRecorder.markEntry(nextSequence, batchEntryNs);
+
                         nextSequence++;
 
                         if (cmd.command == OrderCommandType.GROUPING_CONTROL) {
@@ -155,9 +170,11 @@ public final class GroupingProcessor implements EventProcessor {
                         }
 
                         // some commands should trigger R2 stage to avoid unprocessed events that could affect accounting state
+                        // NOP is also a sync point for read views (published at group boundaries)
                         if (cmd.command == OrderCommandType.RESET
                                 || cmd.command == OrderCommandType.PERSIST_STATE_MATCHING
-                                || cmd.command == OrderCommandType.GROUPING_CONTROL) {
+                                || cmd.command == OrderCommandType.GROUPING_CONTROL
+                                || (nopClosesGroup && cmd.command == OrderCommandType.NOP)) {
                             groupCounter++;
                             msgsInGroup = 0;
                         }
@@ -221,6 +238,7 @@ public final class GroupingProcessor implements EventProcessor {
                         }
 
                     }
+                    latencyRecorder.recordGroupingBatch(batchEntryNs, batchSize);
                     sequence.set(availableSequence);
                     waitSpinningHelper.signalAllWhenBlocking();
                     groupLastNs = System.nanoTime() + maxGroupDurationNs;
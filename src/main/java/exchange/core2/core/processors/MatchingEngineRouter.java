@@ -26,8 +26,12 @@ import exchange.core2.core.common.cmd.CommandResultCode;
 import exchange.core2.core.common.cmd.OrderCommand;
 import exchange.core2.core.common.cmd.OrderCommandType;
 import exchange.core2.core.common.config.*;
+import exchange.core2.core.metrics.CommandTypeCounters;
+import exchange.core2.core.metrics.MetricsRegistry;
+import exchange.core2.core.metrics.SymbolCounters;
 import exchange.core2.core.orderbook.IOrderBook;
 import exchange.core2.core.orderbook.OrderBookEventsHelper;
+import exchange.core2.core.processors.journaling.BootstrapFile;
 import exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration;
 import exchange.core2.core.processors.journaling.ISerializationProcessor;
 import exchange.core2.core.utils.SerializationUtils;
@@ -36,10 +40,13 @@ import lombok.Builder;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import net.openhft.chronicle.bytes.BytesIn;
 import net.openhft.chronicle.bytes.BytesOut;
 import net.openhft.chronicle.bytes.WriteBytesMarshallable;
 import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
 
+import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
@@ -58,6 +65,15 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
     // symbol->OB
     private final IntObjectHashMap<IOrderBook> orderBooks;
 
+    // symbol->activity counters (not persisted)
+    private final IntObjectHashMap<SymbolCounters> symbolCounters = new IntObjectHashMap<>();
+
+    // symbols changed since full snapshot deltaBaseSnapshotId
+    private final IntHashSet dirtySymbols;
+
+    // full snapshot which delta snapshots can refer to (0 - none)
+    private long deltaBaseSnapshotId;
+
     private final IOrderBook.OrderBookFactory orderBookFactory;
 
     private final OrderBookEventsHelper eventsHelper;
@@ -82,12 +98,15 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
     private final LoggingConfiguration loggingCfg;
     private final boolean logDebug;
 
+    private final CommandTypeCounters commandCounters;
+
     public MatchingEngineRouter(final int shardId,
                                 final long numShards,
                                 final ISerializationProcessor serializationProcessor,
                                 final IOrderBook.OrderBookFactory orderBookFactory,
                                 final SharedPool sharedPool,
-                                final ExchangeConfiguration exchangeCfg) {
+                                final ExchangeConfiguration exchangeCfg,
+                                final MetricsRegistry metricsRegistry) {
 
         if (Long.bitCount(numShards) != 1) {
             throw new IllegalArgumentException("Invalid number of shards " + numShards + " - must be power of 2");
@@ -102,6 +121,7 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
         this.shardMask = numShards - 1;
         this.serializationProcessor = serializationProcessor;
         this.orderBookFactory = orderBookFactory;
+        this.commandCounters = new CommandTypeCounters(metricsRegistry, "me." + shardId);
         this.eventsHelper = new OrderBookEventsHelper(sharedPool::getChain);
 
         this.loggingCfg = exchangeCfg.getLoggingCfg();
@@ -117,37 +137,24 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
         objectsPoolConfig.put(ObjectsPool.ART_NODE_256, 1024 * 4);
         this.objectsPool = new ObjectsPool(objectsPoolConfig);
 
-        if (ISerializationProcessor.canLoadFromSnapshot(serializationProcessor, initStateCfg, shardId, MODULE_ME)) {
+        final boolean fromSnapshot = ISerializationProcessor.canLoadFromSnapshot(serializationProcessor, initStateCfg, shardId, MODULE_ME);
+        if (fromSnapshot) {
 
             final DeserializedData deserialized = serializationProcessor.loadData(
                     initStateCfg.getSnapshotId(),
                     ISerializationProcessor.SerializedModuleType.MATCHING_ENGINE_ROUTER,
                     shardId,
                     bytesIn -> {
-                        if (shardId != bytesIn.readInt()) {
-                            throw new IllegalStateException("wrong shardId");
-                        }
-                        if (shardMask != bytesIn.readLong()) {
-                            throw new IllegalStateException("wrong shardMask");
-                        }
-
-                        final BinaryCommandsProcessor bcp = new BinaryCommandsProcessor(
-                                this::handleBinaryMessage,
-                                this::handleReportQuery,
-                                sharedPool,
-                                exchangeCfg.getReportsQueriesCfg(),
-                                bytesIn,
-                                shardId + 1024);
-
-                        final IntObjectHashMap<IOrderBook> ob = SerializationUtils.readIntHashMap(
-                                bytesIn,
-                                bytes -> IOrderBook.create(bytes, objectsPool, eventsHelper, loggingCfg));
-
-                        return DeserializedData.builder().binaryCommandsProcessor(bcp).orderBooks(ob).build();
+                        final int header = bytesIn.readInt();
+                        return header == ISerializationProcessor.DELTA_SNAPSHOT_MARKER
+                                ? readDeltaSnapshot(bytesIn, sharedPool, exchangeCfg)
+                                : readFullSnapshot(bytesIn, header, initStateCfg.getSnapshotId(), sharedPool, exchangeCfg);
                     });
 
             this.binaryCommandsProcessor = deserialized.binaryCommandsProcessor;
             this.orderBooks = deserialized.orderBooks;
+            this.dirtySymbols = deserialized.dirtySymbols;
+            this.deltaBaseSnapshotId = deserialized.baseSnapshotId;
 
         } else {
             this.binaryCommandsProcessor = new BinaryCommandsProcessor(
@@ -158,6 +165,8 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
                     shardId + 1024);
 
             this.orderBooks = new IntObjectHashMap<>();
+            this.dirtySymbols = new IntHashSet();
+            this.deltaBaseSnapshotId = 0;
         }
 
         final OrdersProcessingConfiguration ordersProcCfg = exchangeCfg.getOrdersProcessingCfg();
@@ -166,6 +175,33 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
         final PerformanceConfiguration perfCfg = exchangeCfg.getPerformanceCfg();
         this.cfgSendL2ForEveryCmd = perfCfg.isSendL2ForEveryCmd();
         this.cfgL2RefreshDepth = perfCfg.getL2RefreshDepth();
+
+        if (!fromSnapshot && initStateCfg.getBootstrapFile() != null) {
+            loadBootstrapFile(Paths.get(initStateCfg.getBootstrapFile()));
+        }
+    }
+
+    /**
+     * Create order books for all symbols and place resting orders of this shard symbols.
+     */
+    private void loadBootstrapFile(final Path path) {
+        try (final BootstrapFile bootstrapFile = BootstrapFile.open(path)) {
+            bootstrapFile.readSymbols(this::addSymbol);
+            bootstrapFile.readOrdersBySymbol(shardId, shardMask, cmd -> {
+                final IOrderBook orderBook = orderBooks.get(cmd.symbol);
+                if (orderBook == null) {
+                    throw new IllegalStateException("Can not bootstrap order " + cmd.orderId + ": unknown symbol " + cmd.symbol);
+                }
+                orderBook.newOrder(cmd);
+                if (cmd.matcherEvent != null) {
+                    // trade or rejection would change risk engine state
+                    throw new IllegalStateException("Can not bootstrap order " + cmd.orderId + ": crosses the book or duplicate id");
+                }
+            });
+            log.info("ME{} loaded bootstrap file {}: {} order books", shardId, path, orderBooks.size());
+        } catch (final IOException ex) {
+            throw new IllegalStateException("Can not load bootstrap file " + path, ex);
+        }
     }
 
     public void processOrder(long seq, OrderCommand cmd) {
@@ -179,9 +215,11 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
                 || command == OrderCommandType.ORDER_BOOK_REQUEST) {
             // process specific symbol group only
             if (symbolForThisHandler(cmd.symbol)) {
+                commandCounters.increment(command);
                 processMatchingCommand(cmd);
             }
         } else if (command == OrderCommandType.BINARY_DATA_QUERY || command == OrderCommandType.BINARY_DATA_COMMAND) {
+            commandCounters.increment(command);
 
             final CommandResultCode resultCode = binaryCommandsProcessor.acceptBinaryFrame(cmd);
             if (shardId == 0) {
@@ -190,31 +228,53 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
 
         } else if (command == OrderCommandType.RESET) {
             // process all symbols groups, only processor 0 writes result
+            commandCounters.increment(command);
             orderBooks.clear();
+            symbolCounters.clear();
             binaryCommandsProcessor.reset();
+            dirtySymbols.clear();
+            deltaBaseSnapshotId = 0;
             if (shardId == 0) {
                 cmd.resultCode = CommandResultCode.SUCCESS;
             }
 
         } else if (command == OrderCommandType.NOP) {
+            commandCounters.increment(command);
             if (shardId == 0) {
                 cmd.resultCode = CommandResultCode.SUCCESS;
             }
 
         } else if (command == OrderCommandType.PERSIST_STATE_MATCHING) {
-            final boolean isSuccess = serializationProcessor.storeData(
-                    cmd.orderId,
-                    seq,
-                    cmd.timestamp,
-                    ISerializationProcessor.SerializedModuleType.MATCHING_ENGINE_ROUTER,
-                    shardId,
-                    this);
+            commandCounters.increment(command);
+            final boolean isSuccess = persistState(cmd, seq);
             // Send ACCEPTED because this is a first command in series. Risk engine is second - so it will return SUCCESS
             UnsafeUtils.setResultVolatile(cmd, isSuccess, CommandResultCode.ACCEPTED, CommandResultCode.STATE_PERSIST_MATCHING_ENGINE_FAILED);
         }
 
     }
 
+    private boolean persistState(final OrderCommand cmd, final long seq) {
+
+        final long baseSnapshotId = cmd.price;
+
+        if (baseSnapshotId == 0) {
+            final boolean isSuccess = serializationProcessor.storeData(cmd.orderId, seq, cmd.timestamp, MODULE_ME, shardId, this);
+            if (isSuccess) {
+                // following delta snapshots will contain changes since this snapshot
+                deltaBaseSnapshotId = cmd.orderId;
+                dirtySymbols.clear();
+            }
+            return isSuccess;
+        }
+
+        if (baseSnapshotId != deltaBaseSnapshotId) {
+            log.warn("Can not create delta snapshot {} based on {}, changes are tracked since snapshot {}", cmd.orderId, baseSnapshotId, deltaBaseSnapshotId);
+            return false;
+        }
+
+        return serializationProcessor.storeData(cmd.orderId, seq, cmd.timestamp, MODULE_ME, shardId, this::writeDeltaMarshallable);
+    }
+
     private void handleBinaryMessage(Object message) {
 
         if (message instanceof BatchAddSymbolsCommand) {
@@ -245,6 +305,7 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
 
         if (orderBooks.get(spec.symbolId) == null) {
             orderBooks.put(spec.symbolId, orderBookFactory.create(spec, objectsPool, eventsHelper, loggingCfg));
+            dirtySymbols.add(spec.symbolId);
         } else {
             log.warn("OrderBook for symbol id={} already exists! Can not add symbol: {}", spec.symbolId, spec);
         }
@@ -258,6 +319,11 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
         } else {
             cmd.resultCode = IOrderBook.processCommand(orderBook, cmd);
 
+            if (cmd.command != OrderCommandType.ORDER_BOOK_REQUEST) {
+                symbolCounters.getIfAbsentPut(cmd.symbol, SymbolCounters::new).onCommand(cmd);
+                dirtySymbols.add(cmd.symbol);
+            }
+
             // posting market data for risk processor makes sense only if command execution is successful, otherwise it will be ignored (possible garbage from previous cycle)
             // TODO don't need for EXCHANGE mode order books?
             // TODO doing this for many order books simultaneously can introduce hiccups
@@ -279,10 +345,110 @@ public final class MatchingEngineRouter implements WriteBytesMarshallable {
         SerializationUtils.marshallIntHashMap(orderBooks, bytes);
     }
 
+    /**
+     * Delta snapshot: marker, base snapshot id, shard, binary commands processor, changed order books only
+     */
+    private void writeDeltaMarshallable(BytesOut bytes) {
+        bytes.writeInt(ISerializationProcessor.DELTA_SNAPSHOT_MARKER).writeLong(deltaBaseSnapshotId);
+        bytes.writeInt(shardId).writeLong(shardMask);
+        binaryCommandsProcessor.writeMarshallable(bytes);
+
+        bytes.writeInt(dirtySymbols.size());
+        dirtySymbols.each(symbol -> {
+            bytes.writeInt(symbol);
+            orderBooks.get(symbol).writeMarshallable(bytes);
+        });
+    }
+
+    private DeserializedData readFullSnapshot(final BytesIn bytesIn,
+                                              final int snapshotShardId,
+                                              final long snapshotId,
+                                              final SharedPool sharedPool,
+                                              final ExchangeConfiguration exchangeCfg) {
+
+        if (shardId != snapshotShardId) {
+            throw new IllegalStateException("wrong shardId");
+        }
+        if (shardMask != bytesIn.readLong()) {
+            throw new IllegalStateException("wrong shardMask");
+        }
+
+        final BinaryCommandsProcessor bcp = new BinaryCommandsProcessor(
+                this::handleBinaryMessage,
+                this::handleReportQuery,
+                sharedPool,
+                exchangeCfg.getReportsQueriesCfg(),
+                bytesIn,
+                shardId + 1024);
+
+        final IntObjectHashMap<IOrderBook> ob = SerializationUtils.readIntHashMap(
+                bytesIn,
+                bytes -> IOrderBook.create(bytes, objectsPool, eventsHelper, loggingCfg));
+
+        return DeserializedData.builder()
+                .binaryCommandsProcessor(bcp)
+                .orderBooks(ob)
+                .dirtySymbols(new IntHashSet())
+                .baseSnapshotId(snapshotId)
+                .build();
+    }
+
+    private DeserializedData readDeltaSnapshot(final BytesIn bytesIn,
+                                               final SharedPool sharedPool,
+                                               final ExchangeConfiguration exchangeCfg) {
+
+        final long baseSnapshotId = bytesIn.readLong();
+
+        final DeserializedData base = serializationProcessor.loadData(
+                baseSnapshotId,
+                MODULE_ME,
+                shardId,
+                baseBytesIn -> {
+                    final int header = baseBytesIn.readInt();
+                    if (header == ISerializationProcessor.DELTA_SNAPSHOT_MARKER) {
+                        throw new IllegalStateException("Base snapshot " + baseSnapshotId + " is a delta snapshot");
+                    }
+                    return readFullSnapshot(baseBytesIn, header, baseSnapshotId, sharedPool, exchangeCfg);
+                });
+
+        if (shardId != bytesIn.readInt()) {
+            throw new IllegalStateException("wrong shardId");
+        }
+        if (shardMask != bytesIn.readLong()) {
+            throw new IllegalStateException("wrong shardMask");
+        }
+
+        final BinaryCommandsProcessor bcp = new BinaryCommandsProcessor(
+                this::handleBinaryMessage,
+                this::handleReportQuery,
+                sharedPool,
+                exchangeCfg.getReportsQueriesCfg(),
+                bytesIn,
+                shardId + 1024);
+
+        // replace changed order books, keep tracking them as changed since base snapshot
+        final IntHashSet dirty = new IntHashSet();
+        final int changedNum = bytesIn.readInt();
+        for (int i = 0; i < changedNum; i++) {
+            final int symbol = bytesIn.readInt();
+            base.orderBooks.put(symbol, IOrderBook.create(bytesIn, objectsPool, eventsHelper, loggingCfg));
+            dirty.add(symbol);
+        }
+
+        return DeserializedData.builder()
+                .binaryCommandsProcessor(bcp)
+                .orderBooks(base.orderBooks)
+                .dirtySymbols(dirty)
+                .baseSnapshotId(baseSnapshotId)
+                .build();
+    }
+
     @Builder
     @RequiredArgsConstructor
     private static class DeserializedData {
         private final BinaryCommandsProcessor binaryCommandsProcessor;
         private final IntObjectHashMap<IOrderBook> orderBooks;
+        private final IntHashSet dirtySymbols;
+        private final long baseSnapshotId;
     }
 }
@@ -29,8 +29,14 @@ import exchange.core2.core.common.config.ExchangeConfiguration;
 import exchange.core2.core.common.config.InitialStateConfiguration;
 import exchange.core2.core.common.config.LoggingConfiguration;
 import exchange.core2.core.common.config.OrdersProcessingConfiguration;
+import exchange.core2.core.common.config.ReportsQueriesConfiguration;
+import exchange.core2.core.metrics.CommandTypeCounters;
+import exchange.core2.core.metrics.MetricsRegistry;
+import exchange.core2.core.processors.journaling.BootstrapFile;
 import exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration;
 import exchange.core2.core.processors.journaling.ISerializationProcessor;
+import exchange.core2.core.processors.views.ReadViewPublisher;
+import exchange.core2.core.processors.views.RiskEngineReadView;
 import exchange.core2.core.utils.CoreArithmeticUtils;
 import exchange.core2.core.utils.SerializationUtils;
 import exchange.core2.core.utils.UnsafeUtils;
@@ -38,6 +44,7 @@ import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
+import net.openhft.chronicle.bytes.Bytes;
 import net.openhft.chronicle.bytes.BytesIn;
 import net.openhft.chronicle.bytes.BytesMarshallable;
 import net.openhft.chronicle.bytes.BytesOut;
@@ -45,6 +52,8 @@ import net.openhft.chronicle.bytes.WriteBytesMarshallable;
 import org.eclipse.collections.impl.map.mutable.primitive.IntLongHashMap;
 import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
@@ -71,6 +80,9 @@ public final class RiskEngine implements WriteBytesMarshallable {
     private final IntLongHashMap suspends;
     private final ObjectsPool objectsPool;
 
+    // full snapshot which delta snapshots can refer to (0 - none), changed profiles are tracked by userProfileService
+    private long deltaBaseSnapshotId;
+
     // sharding by symbolId
     private final int shardId;
     private final long shardMask;
@@ -85,11 +97,22 @@ public final class RiskEngine implements WriteBytesMarshallable {
 
     private final boolean logDebug;
 
+    private final CommandTypeCounters commandCounters;
+
+    // read views for off-pipeline reports (null - disabled)
+    private final ReadViewPublisher<RiskEngineReadView> readViews;
+    private final int readViewGroupsInterval;
+    private final Bytes<ByteBuffer> readViewBuffer;
+    private long readViewGroup = 0;
+    private long nextReadViewGroup = 0;
+    private boolean readViewRebuild = false;
+
     public RiskEngine(final int shardId,
                       final long numShards,
                       final ISerializationProcessor serializationProcessor,
                       final SharedPool sharedPool,
-                      final ExchangeConfiguration exchangeConfiguration) {
+                      final ExchangeConfiguration exchangeConfiguration,
+                      final MetricsRegistry metricsRegistry) {
 
         if (Long.bitCount(numShards) != 1) {
             throw new IllegalArgumentException("Invalid number of shards " + numShards + " - must be power of 2");
@@ -103,6 +126,7 @@ public final class RiskEngine implements WriteBytesMarshallable {
         this.shardId = shardId;
         this.shardMask = numShards - 1;
         this.serializationProcessor = serializationProcessor;
+        this.commandCounters = new CommandTypeCounters(metricsRegistry, "re." + shardId);
 
         // initialize object pools // TODO move to perf config
         final HashMap<Integer, Integer> objectsPoolConfig = new HashMap<>();
@@ -111,7 +135,8 @@ public final class RiskEngine implements WriteBytesMarshallable {
 
         this.logDebug = exchangeConfiguration.getLoggingCfg().getLoggingLevels().contains(LoggingConfiguration.LoggingLevel.LOGGING_RISK_DEBUG);
 
-        if (ISerializationProcessor.canLoadFromSnapshot(serializationProcessor, initStateCfg, shardId, MODULE_RE)) {
+        final boolean fromSnapshot = ISerializationProcessor.canLoadFromSnapshot(serializationProcessor, initStateCfg, shardId, MODULE_RE);
+        if (fromSnapshot) {
 
             // TODO refactor, change to creator (simpler init)`
             final State state = serializationProcessor.loadData(
@@ -119,34 +144,10 @@ public final class RiskEngine implements WriteBytesMarshallable {
                     MODULE_RE,
                     shardId,
                     bytesIn -> {
-                        if (shardId != bytesIn.readInt()) {
-                            throw new IllegalStateException("wrong shardId");
-                        }
-                        if (shardMask != bytesIn.readLong()) {
-                            throw new IllegalStateException("wrong shardMask");
-                        }
-                        final SymbolSpecificationProvider symbolSpecificationProvider = new SymbolSpecificationProvider(bytesIn);
-                        final UserProfileService userProfileService = new UserProfileService(bytesIn);
-                        final BinaryCommandsProcessor binaryCommandsProcessor = new BinaryCommandsProcessor(
-                                this::handleBinaryMessage,
-                                this::handleReportQuery,
-                                sharedPool,
-                                exchangeConfiguration.getReportsQueriesCfg(),
-                                bytesIn,
-                                shardId);
-                        final IntObjectHashMap<LastPriceCacheRecord> lastPriceCache = SerializationUtils.readIntHashMap(bytesIn, LastPriceCacheRecord::new);
-                        final IntLongHashMap fees = SerializationUtils.readIntLongHashMap(bytesIn);
-                        final IntLongHashMap adjustments = SerializationUtils.readIntLongHashMap(bytesIn);
-                        final IntLongHashMap suspends = SerializationUtils.readIntLongHashMap(bytesIn);
-
-                        return new State(
-                                symbolSpecificationProvider,
-                                userProfileService,
-                                binaryCommandsProcessor,
-                                lastPriceCache,
-                                fees,
-                                adjustments,
-                                suspends);
+                        final int header = bytesIn.readInt();
+                        return header == ISerializationProcessor.DELTA_SNAPSHOT_MARKER
+                                ? readDeltaSnapshot(bytesIn, sharedPool, exchangeConfiguration)
+                                : readFullSnapshot(bytesIn, header, initStateCfg.getSnapshotId(), sharedPool, exchangeConfiguration);
                     });
 
             this.symbolSpecificationProvider = state.symbolSpecificationProvider;
@@ -156,6 +157,7 @@ public final class RiskEngine implements WriteBytesMarshallable {
             this.fees = state.fees;
             this.adjustments = state.adjustments;
             this.suspends = state.suspends;
+            this.deltaBaseSnapshotId = state.baseSnapshotId;
 
         } else {
             this.symbolSpecificationProvider = new SymbolSpecificationProvider();
@@ -170,11 +172,56 @@ public final class RiskEngine implements WriteBytesMarshallable {
             this.fees = new IntLongHashMap();
             this.adjustments = new IntLongHashMap();
             this.suspends = new IntLongHashMap();
+            this.deltaBaseSnapshotId = 0;
         }
 
         final OrdersProcessingConfiguration ordersProcCfg = exchangeConfiguration.getOrdersProcessingCfg();
         this.cfgIgnoreRiskProcessing = ordersProcCfg.getRiskProcessingMode() == OrdersProcessingConfiguration.RiskProcessingMode.NO_RISK_PROCESSING;
         this.cfgMarginTradingEnabled = ordersProcCfg.getMarginTradingMode() == OrdersProcessingConfiguration.MarginTradingMode.MARGIN_TRADING_ENABLED;
+
+        if (!fromSnapshot && initStateCfg.getBootstrapFile() != null) {
+            loadBootstrapFile(Paths.get(initStateCfg.getBootstrapFile()));
+        }
+
+        final ReportsQueriesConfiguration reportsCfg = exchangeConfiguration.getReportsQueriesCfg();
+        if (reportsCfg.isReadViewsEnabled()) {
+            this.readViews = new ReadViewPublisher<>();
+            this.readViewGroupsInterval = reportsCfg.getReadViewGroupsInterval();
+            this.readViewBuffer = Bytes.elasticHeapByteBuffer(1024);
+            userProfileService.enableViewTracking();
+            readViews.publish(RiskEngineReadView.create(null, -1L, this, null, readViewBuffer));
+        } else {
+            this.readViews = null;
+            this.readViewGroupsInterval = 0;
+            this.readViewBuffer = null;
+        }
+    }
+
+    /**
+     * Load symbols, users of this shard and reserve funds for their resting orders.
+     */
+    private void loadBootstrapFile(final Path path) {
+        try (final BootstrapFile bootstrapFile = BootstrapFile.open(path)) {
+            bootstrapFile.readSymbols(this::addSymbol);
+            bootstrapFile.readUsers(shardId, shardMask, (accounts, uid) -> {
+                if (!userProfileService.addEmptyUserProfile(uid)) {
+                    throw new IllegalStateException("Duplicate user " + uid + " in bootstrap file");
+                }
+                // same transaction ids as for batch accounts command, applied in increasing order
+                for (final int currency : accounts.keySet().toSortedArray()) {
+                    adjustBalance(uid, currency, accounts.get(currency), BatchAddAccountsCommand.initialBalanceTransactionId(currency), BalanceAdjustmentType.ADJUSTMENT);
+                }
+            });
+            bootstrapFile.readOrdersByUid(shardId, shardMask, cmd -> {
+                final CommandResultCode resultCode = placeOrderRiskCheck(cmd);
+                if (resultCode != CommandResultCode.VALID_FOR_MATCHING_ENGINE) {
+                    throw new IllegalStateException("Can not bootstrap order " + cmd.orderId + ": " + resultCode);
+                }
+            });
+            log.info("RE{} loaded bootstrap file {}: {} users", shardId, path, userProfileService.getUserProfiles().size());
+        } catch (final IOException ex) {
+            throw new IllegalStateException("Can not load bootstrap file " + path, ex);
+        }
     }
 
     @ToString
@@ -230,6 +277,10 @@ public final class RiskEngine implements WriteBytesMarshallable {
      * @return true if caller should publish sequence even if batch was not processed yet
      */
     public boolean preProcessCommand(final long seq, final OrderCommand cmd) {
+        if (readViews != null && cmd.eventsGroup != readViewGroup) {
+            publishReadView(seq, cmd);
+        }
+        countCommand(cmd);
         switch (cmd.command) {
             case MOVE_ORDER:
             case CANCEL_ORDER:
@@ -291,13 +342,7 @@ public final class RiskEngine implements WriteBytesMarshallable {
                 return true;// true = publish sequence before finishing processing whole batch
 
             case PERSIST_STATE_RISK:
-                final boolean isSuccess = serializationProcessor.storeData(
-                        cmd.orderId,
-                        seq,
-                        cmd.timestamp,
-                        MODULE_RE,
-                        shardId,
-                        this);
+                final boolean isSuccess = persistState(cmd, seq);
                 UnsafeUtils.setResultVolatile(cmd, isSuccess, CommandResultCode.SUCCESS, CommandResultCode.STATE_PERSIST_RISK_ENGINE_FAILED);
                 return false;
         }
@@ -305,6 +350,40 @@ public final class RiskEngine implements WriteBytesMarshallable {
     }
 
 
+    /**
+     * Called for first command of the group - previous groups are already processed by R2 stage at this point,
+     * so the state includes all commands up to seq-1. Matching engines publish views of the same versions.
+     */
+    private void publishReadView(final long seq, final OrderCommand cmd) {
+        readViewGroup = cmd.eventsGroup;
+        if (cmd.command == OrderCommandType.NOP || readViewGroup >= nextReadViewGroup) {
+            final RiskEngineReadView previous = readViewRebuild ? null : readViews.latest();
+            readViews.publish(RiskEngineReadView.create(previous, seq - 1, this, userProfileService.takeViewDirtyUids(), readViewBuffer));
+            readViewRebuild = false;
+            nextReadViewGroup = readViewGroup + readViewGroupsInterval;
+        }
+    }
+
+    private void countCommand(final OrderCommand cmd) {
+        switch (cmd.command) {
+            case PLACE_ORDER:
+            case MOVE_ORDER:
+            case CANCEL_ORDER:
+            case REDUCE_ORDER:
+            case ADD_USER:
+            case BALANCE_ADJUSTMENT:
+            case SUSPEND_USER:
+            case RESUME_USER:
+                // user commands are counted by the shard owning the uid
+                if (uidForThisHandler(cmd.uid)) {
+                    commandCounters.increment(cmd.command);
+                }
+                break;
+            default:
+                commandCounters.increment(cmd.command);
+        }
+    }
+
     private CommandResultCode adjustBalance(long uid, int currency, long amountDiff, long fundingTransactionId, BalanceAdjustmentType adjustmentType) {
         final CommandResultCode res = userProfileService.balanceAdjustment(uid, currency, amountDiff, fundingTransactionId);
         if (res == CommandResultCode.SUCCESS) {
@@ -326,20 +405,14 @@ public final class RiskEngine implements WriteBytesMarshallable {
         if (message instanceof BatchAddSymbolsCommand) {
 
             final IntObjectHashMap<CoreSymbolSpecification> symbols = ((BatchAddSymbolsCommand) message).getSymbols();
-            symbols.forEach(spec -> {
-                if (spec.type == SymbolType.CURRENCY_EXCHANGE_PAIR || cfgMarginTradingEnabled) {
-                    symbolSpecificationProvider.addSymbol(spec);
-                } else {
-                    log.warn("Margin symbols are not allowed: {}", spec);
-                }
-            });
+            symbols.forEach(this::addSymbol);
 
         } else if (message instanceof BatchAddAccountsCommand) {
 
             ((BatchAddAccountsCommand) message).getUsers().forEachKeyValue((uid, accounts) -> {
                 if (userProfileService.addEmptyUserProfile(uid)) {
                     accounts.forEachKeyValue((cur, bal) ->
-                            adjustBalance(uid, cur, bal, 1_000_000_000 + cur, BalanceAdjustmentType.ADJUSTMENT));
+                            adjustBalance(uid, cur, bal, BatchAddAccountsCommand.initialBalanceTransactionId(cur), BalanceAdjustmentType.ADJUSTMENT));
                 } else {
                     log.debug("User already exist: {}", uid);
                 }
@@ -347,6 +420,14 @@ public final class RiskEngine implements WriteBytesMarshallable {
         }
     }
 
+    private void addSymbol(final CoreSymbolSpecification spec) {
+        if (spec.type == SymbolType.CURRENCY_EXCHANGE_PAIR || cfgMarginTradingEnabled) {
+            symbolSpecificationProvider.addSymbol(spec);
+        } else {
+            log.warn("Margin symbols are not allowed: {}", spec);
+        }
+    }
+
     private <R extends ReportResult> Optional<R> handleReportQuery(ReportQuery<R> reportQuery) {
         return reportQuery.process(this);
     }
@@ -810,7 +891,125 @@ public final class RiskEngine implements WriteBytesMarshallable {
         SerializationUtils.marshallIntLongHashMap(suspends, bytes);
     }
 
+    private boolean persistState(final OrderCommand cmd, final long seq) {
+
+        final long baseSnapshotId = cmd.price;
+
+        if (baseSnapshotId == 0) {
+            final boolean isSuccess = serializationProcessor.storeData(cmd.orderId, seq, cmd.timestamp, MODULE_RE, shardId, this);
+            if (isSuccess) {
+                // following delta snapshots will contain changes since this snapshot
+                deltaBaseSnapshotId = cmd.orderId;
+                userProfileService.resetDirtyTracking();
+            }
+            return isSuccess;
+        }
+
+        if (baseSnapshotId != deltaBaseSnapshotId) {
+            log.warn("Can not create delta snapshot {} based on {}, changes are tracked since snapshot {}", cmd.orderId, baseSnapshotId, deltaBaseSnapshotId);
+            return false;
+        }
+
+        return serializationProcessor.storeData(cmd.orderId, seq, cmd.timestamp, MODULE_RE, shardId, this::writeDeltaMarshallable);
+    }
+
+    /**
+     * Delta snapshot: marker, base snapshot id, shard, changed user profiles only, other (small) state in full
+     */
+    private void writeDeltaMarshallable(BytesOut bytes) {
+
+        bytes.writeInt(ISerializationProcessor.DELTA_SNAPSHOT_MARKER).writeLong(deltaBaseSnapshotId);
+        bytes.writeInt(shardId).writeLong(shardMask);
+
+        symbolSpecificationProvider.writeMarshallable(bytes);
+        userProfileService.writeDirtyProfiles(bytes);
+        binaryCommandsProcessor.writeMarshallable(bytes);
+        SerializationUtils.marshallIntHashMap(lastPriceCache, bytes);
+        SerializationUtils.marshallIntLongHashMap(fees, bytes);
+        SerializationUtils.marshallIntLongHashMap(adjustments, bytes);
+        SerializationUtils.marshallIntLongHashMap(suspends, bytes);
+    }
+
+    private State readFullSnapshot(final BytesIn bytesIn,
+                                   final int snapshotShardId,
+                                   final long snapshotId,
+                                   final SharedPool sharedPool,
+                                   final ExchangeConfiguration exchangeConfiguration) {
+
+        if (shardId != snapshotShardId) {
+            throw new IllegalStateException("wrong shardId");
+        }
+        if (shardMask != bytesIn.readLong()) {
+            throw new IllegalStateException("wrong shardMask");
+        }
+        final SymbolSpecificationProvider symbolSpecificationProvider = new SymbolSpecificationProvider(bytesIn);
+        final UserProfileService userProfileService = new UserProfileService(bytesIn);
+        userProfileService.resetDirtyTracking();
+        return readRemainingState(bytesIn, symbolSpecificationProvider, userProfileService, snapshotId, sharedPool, exchangeConfiguration);
+    }
+
+    private State readDeltaSnapshot(final BytesIn bytesIn,
+                                    final SharedPool sharedPool,
+                                    final ExchangeConfiguration exchangeConfiguration) {
+
+        final long baseSnapshotId = bytesIn.readLong();
+
+        final State base = serializationProcessor.loadData(
+                baseSnapshotId,
+                MODULE_RE,
+                shardId,
+                baseBytesIn -> {
+                    final int header = baseBytesIn.readInt();
+                    if (header == ISerializationProcessor.DELTA_SNAPSHOT_MARKER) {
+                        throw new IllegalStateException("Base snapshot " + baseSnapshotId + " is a delta snapshot");
+                    }
+                    return readFullSnapshot(baseBytesIn, header, baseSnapshotId, sharedPool, exchangeConfiguration);
+                });
+
+        if (shardId != bytesIn.readInt()) {
+            throw new IllegalStateException("wrong shardId");
+        }
+        if (shardMask != bytesIn.readLong()) {
+            throw new IllegalStateException("wrong shardMask");
+        }
+        final SymbolSpecificationProvider symbolSpecificationProvider = new SymbolSpecificationProvider(bytesIn);
+        final UserProfileService userProfileService = base.userProfileService;
+        userProfileService.readDirtyProfiles(bytesIn);
+        return readRemainingState(bytesIn, symbolSpecificationProvider, userProfileService, baseSnapshotId, sharedPool, exchangeConfiguration);
+    }
+
+    private State readRemainingState(final BytesIn bytesIn,
+                                     final SymbolSpecificationProvider symbolSpecificationProvider,
+                                     final UserProfileService userProfileService,
+                                     final long baseSnapshotId,
+                                     final SharedPool sharedPool,
+                                     final ExchangeConfiguration exchangeConfiguration) {
+
+        final BinaryCommandsProcessor binaryCommandsProcessor = new BinaryCommandsProcessor(
+                this::handleBinaryMessage,
+                this::handleReportQuery,
+                sharedPool,
+                exchangeConfiguration.getReportsQueriesCfg(),
+                bytesIn,
+                shardId);
+        final IntObjectHashMap<LastPriceCacheRecord> lastPriceCache = SerializationUtils.readIntHashMap(bytesIn, LastPriceCacheRecord::new);
+        final IntLongHashMap fees = SerializationUtils.readIntLongHashMap(bytesIn);
+        final IntLongHashMap adjustments = SerializationUtils.readIntLongHashMap(bytesIn);
+        final IntLongHashMap suspends = SerializationUtils.readIntLongHashMap(bytesIn);
+
+        return new State(
+                symbolSpecificationProvider,
+                userProfileService,
+                binaryCommandsProcessor,
+                lastPriceCache,
+                fees,
+                adjustments,
+                suspends,
+                baseSnapshotId);
+    }
+
     public void reset() {
+        deltaBaseSnapshotId = 0;
         userProfileService.reset();
         symbolSpecificationProvider.reset();
         binaryCommandsProcessor.reset();
@@ -818,6 +1017,7 @@ public final class RiskEngine implements WriteBytesMarshallable {
         fees.clear();
         adjustments.clear();
         suspends.clear();
+        readViewRebuild = true;
     }
 
     @AllArgsConstructor
@@ -830,5 +1030,6 @@ public final class RiskEngine implements WriteBytesMarshallable {
         private final IntLongHashMap fees;
         private final IntLongHashMap adjustments;
         private final IntLongHashMap suspends;
+        private final long baseSnapshotId;
     }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Decodes complete binary transfer once and shares decoded object between all matching and risk engines.
+ * <p>
+ * Every engine receives same frames, so the first engine completing the transfer decodes it,
+ * others take decoded object. Entry is removed after all engines took it.
+ */
+public final class SharedBinaryDecoder {
+
+    // number of engines processing every binary frame
+    private final int consumersNum;
+
+    private final ConcurrentHashMap<Long, Entry> decoded = new ConcurrentHashMap<>();
+
+    public SharedBinaryDecoder(final int consumersNum) {
+        if (consumersNum < 1) {
+            throw new IllegalArgumentException("Invalid consumers number " + consumersNum);
+        }
+        this.consumersNum = consumersNum;
+    }
+
+    /**
+     * Get decoded object, decoding it if this is the first engine.
+     * Threadsafe.
+     *
+     * @param transferId - transfer id
+     * @param timestamp  - timestamp of the last frame (distinguishes reused transfer ids)
+     * @param decoder    - decoder (called once per transfer)
+     * @param <T>        - decoded object type
+     * @return decoded object
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T decode(final int transferId, final long timestamp, final Supplier<T> decoder) {
+        final Long key = ((long) transferId << 32) ^ timestamp;
+        final Entry entry = decoded.computeIfAbsent(key, k -> new Entry(decoder.get(), consumersNum));
+        if (entry.remaining.decrementAndGet() == 0) {
+            decoded.remove(key);
+        }
+        return (T) entry.value;
+    }
+
+    /**
+     * @return number of transfers not yet taken by all engines
+     */
+    public int getPendingTransfers() {
+        return decoded.size();
+    }
+
+    private static final class Entry {
+
+        private final Object value;
+        private final AtomicInteger remaining;
+
+        private Entry(final Object value, final int consumersNum) {
+            this.value = value;
+            this.remaining = new AtomicInteger(consumersNum);
+        }
+    }
+}
@@ -16,10 +16,12 @@
 package exchange.core2.core.processors;
 
 import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.metrics.MetricsRegistry;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
 
 @Slf4j
 public final class SharedPool {
@@ -29,6 +31,16 @@ public final class SharedPool {
     @Getter
     private final int chainLength;
 
+    // shared decoding of binary commands and queries (null - each engine decodes itself)
+    @Getter
+    private final SharedBinaryDecoder binaryDecoder;
+
+    // pool statistics (multiple writers)
+    private final LongAdder chainsRequested = new LongAdder();
+    private final LongAdder chainsCreated = new LongAdder();
+    private final LongAdder chainsReturned = new LongAdder();
+    private final LongAdder chainsDiscarded = new LongAdder();
+
     public static SharedPool createTestSharedPool() {
         return new SharedPool(8, 4, 256);
     }
@@ -41,6 +53,18 @@ public final class SharedPool {
      * @param chainLength     - target chain length. Longer chain means rare requests for new chains. However longer chains can cause event placeholders starvation.
      */
     public SharedPool(final int poolMaxSize, final int poolInitialSize, final int chainLength) {
+        this(poolMaxSize, poolInitialSize, chainLength, null);
+    }
+
+    /**
+     * Create new shared pool
+     *
+     * @param poolMaxSize     - max size of pool. Will skip new chains if chains buffer is full.
+     * @param poolInitialSize - initial number of pre-generated chains. Recommended to set higher than number of modules - (RE+ME)*2.
+     * @param chainLength     - target chain length. Longer chain means rare requests for new chains. However longer chains can cause event placeholders starvation.
+     * @param binaryDecoder   - shared binary commands decoder (nullable)
+     */
+    public SharedPool(final int poolMaxSize, final int poolInitialSize, final int chainLength, final SharedBinaryDecoder binaryDecoder) {
 
         if (poolInitialSize > poolMaxSize) {
             throw new IllegalArgumentException("too big poolInitialSize");
@@ -48,6 +72,7 @@ public final class SharedPool {
 
         this.eventChainsBuffer = new LinkedBlockingQueue<>(poolMaxSize);
         this.chainLength = chainLength;
+        this.binaryDecoder = binaryDecoder;
 
         for (int i = 0; i < poolInitialSize; i++) {
             this.eventChainsBuffer.add(MatcherTradeEvent.createEventChain(chainLength));
@@ -61,9 +86,11 @@ public final class SharedPool {
      * @return chain, otherwise null
      */
     public MatcherTradeEvent getChain() {
+        chainsRequested.increment();
         MatcherTradeEvent poll = eventChainsBuffer.poll();
 //        log.debug("<<< POLL CHAIN HEAD  size={}", poll == null ? 0 : poll.getChainSize());
         if (poll == null) {
+            chainsCreated.increment();
             poll = MatcherTradeEvent.createEventChain(chainLength);
         }
 
@@ -79,6 +106,25 @@ public final class SharedPool {
     public void putChain(MatcherTradeEvent head) {
         boolean offer = eventChainsBuffer.offer(head);
 //        log.debug(">>> OFFER CHAIN HEAD  size={} orrder={}", head.getChainSize(), offer);
+        if (offer) {
+            chainsReturned.increment();
+        } else {
+            chainsDiscarded.increment();
+        }
+    }
+
+    /**
+     * Register pool hit/miss statistics
+     *
+     * @param registry - metrics registry
+     */
+    public void registerMetrics(final MetricsRegistry registry) {
+        registry.gauge("sharedPool.requested", chainsRequested::sum);
+        registry.gauge("sharedPool.misses", chainsCreated::sum);
+        registry.gauge("sharedPool.hits", () -> chainsRequested.sum() - chainsCreated.sum());
+        registry.gauge("sharedPool.returned", chainsReturned::sum);
+        registry.gauge("sharedPool.discarded", chainsDiscarded::sum);
+        registry.gauge("sharedPool.available", eventChainsBuffer::size);
     }
 
 }
@@ -72,6 +72,13 @@ public final class SymbolSpecificationProvider implements WriteBytesMarshallable
         symbolSpecs.put(symbol, spec);
     }
 
+    /**
+     * @return copy of symbol specifications map (specifications are immutable)
+     */
+    public IntObjectHashMap<CoreSymbolSpecification> copySymbolSpecs() {
+        return new IntObjectHashMap<>(symbolSpecs);
+    }
+
     /**
      * Reset state
      */
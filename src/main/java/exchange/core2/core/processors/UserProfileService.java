@@ -27,6 +27,7 @@ import net.openhft.chronicle.bytes.BytesIn;
 import net.openhft.chronicle.bytes.BytesOut;
 import net.openhft.chronicle.bytes.WriteBytesMarshallable;
 import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
 
 /**
  * Stateful (!) User profile service
@@ -36,18 +37,43 @@ import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
 @Slf4j
 public final class UserProfileService implements WriteBytesMarshallable, StateHash {
 
+    // distinguishes sized layout from the old one (old layout starts with non-negative number of profiles)
+    private static final int SIZED_FORMAT_MARKER = -2;
+
     /*
      * State: uid to UserProfile
      */
     @Getter
     private final LongObjectHashMap<UserProfile> userProfiles;
 
+    /*
+     * uids of profiles accessed for modification since last full snapshot (null - not tracked)
+     */
+    private LongHashSet dirtyUids = null;
+
+    /*
+     * uids of profiles accessed for modification since last read view was published (null - not tracked)
+     */
+    private LongHashSet viewDirtyUids = null;
+
     public UserProfileService() {
         this.userProfiles = new LongObjectHashMap<>(1024);
     }
 
     public UserProfileService(BytesIn bytes) {
-        this.userProfiles = SerializationUtils.readLongHashMap(bytes, UserProfile::new);
+        // old layout (snapshots written before sized format) starts with number of profiles
+        final int header = bytes.readInt();
+        this.userProfiles = header == SIZED_FORMAT_MARKER
+                ? SerializationUtils.readLongHashMapSized(bytes, UserProfile::new)
+                : readProfiles(bytes, header);
+    }
+
+    private static LongObjectHashMap<UserProfile> readProfiles(final BytesIn bytes, final int length) {
+        final LongObjectHashMap<UserProfile> profiles = new LongObjectHashMap<>(length);
+        for (int i = 0; i < length; i++) {
+            profiles.put(bytes.readLong(), new UserProfile(bytes));
+        }
+        return profiles;
     }
 
     /**
@@ -57,10 +83,12 @@ public final class UserProfileService implements WriteBytesMarshallable, StateHa
      * @return user profile
      */
     public UserProfile getUserProfile(long uid) {
+        markDirty(uid);
         return userProfiles.get(uid);
     }
 
     public UserProfile getUserProfileOrAddSuspended(long uid) {
+        markDirty(uid);
         return userProfiles.getIfAbsentPut(uid, () -> new UserProfile(uid, UserStatus.SUSPENDED));
     }
 
@@ -113,6 +141,7 @@ public final class UserProfileService implements WriteBytesMarshallable, StateHa
      * @return true if user was added
      */
     public boolean addEmptyUserProfile(long uid) {
+        markDirty(uid);
         if (userProfiles.get(uid) == null) {
             userProfiles.put(uid, new UserProfile(uid, UserStatus.ACTIVE));
             return true;
@@ -134,6 +163,7 @@ public final class UserProfileService implements WriteBytesMarshallable, StateHa
      * @return result code
      */
     public CommandResultCode suspendUserProfile(long uid) {
+        markDirty(uid);
         final UserProfile userProfile = userProfiles.get(uid);
         if (userProfile == null) {
             return CommandResultCode.USER_MGMT_USER_NOT_FOUND;
@@ -156,6 +186,7 @@ public final class UserProfileService implements WriteBytesMarshallable, StateHa
     }
 
     public CommandResultCode resumeUserProfile(long uid) {
+        markDirty(uid);
         final UserProfile userProfile = userProfiles.get(uid);
         if (userProfile == null) {
             // create new empty user profile
@@ -178,13 +209,98 @@ public final class UserProfileService implements WriteBytesMarshallable, StateHa
      */
     public void reset() {
         userProfiles.clear();
+        dirtyUids = null;
+        if (viewDirtyUids != null) {
+            viewDirtyUids.clear();
+        }
+    }
+
+    private void markDirty(long uid) {
+        if (dirtyUids != null) {
+            dirtyUids.add(uid);
+        }
+        if (viewDirtyUids != null) {
+            viewDirtyUids.add(uid);
+        }
+    }
+
+    /**
+     * Start tracking profiles changed since last read view
+     */
+    public void enableViewTracking() {
+        if (viewDirtyUids == null) {
+            viewDirtyUids = new LongHashSet();
+        }
+    }
+
+    /**
+     * Take profiles changed since previous call and start tracking from scratch
+     *
+     * @return changed uids
+     */
+    public LongHashSet takeViewDirtyUids() {
+        final LongHashSet changed = viewDirtyUids;
+        viewDirtyUids = new LongHashSet();
+        return changed;
+    }
+
+    /**
+     * Start tracking changed profiles from scratch (called after full snapshot is taken)
+     */
+    public void resetDirtyTracking() {
+        if (dirtyUids == null) {
+            dirtyUids = new LongHashSet();
+        } else {
+            dirtyUids.clear();
+        }
+    }
+
+    public boolean isDirtyTrackingEnabled() {
+        return dirtyUids != null;
+    }
+
+    /**
+     * Write profiles changed since last full snapshot (removed profiles are written as absent)
+     *
+     * @param bytes output
+     */
+    public void writeDirtyProfiles(BytesOut bytes) {
+        bytes.writeInt(dirtyUids.size());
+        dirtyUids.each(uid -> {
+            bytes.writeLong(uid);
+            final UserProfile userProfile = userProfiles.get(uid);
+            bytes.writeBoolean(userProfile != null);
+            if (userProfile != null) {
+                userProfile.writeMarshallable(bytes);
+            }
+        });
+    }
+
+    /**
+     * Apply profiles written by writeDirtyProfiles on top of base snapshot state, keep them tracked as changed
+     *
+     * @param bytes input
+     */
+    public void readDirtyProfiles(BytesIn bytes) {
+        resetDirtyTracking();
+        final int size = bytes.readInt();
+        for (int i = 0; i < size; i++) {
+            final long uid = bytes.readLong();
+            dirtyUids.add(uid);
+            if (bytes.readBoolean()) {
+                userProfiles.put(uid, new UserProfile(bytes));
+            } else {
+                userProfiles.remove(uid);
+            }
+        }
     }
 
     @Override
     public void writeMarshallable(BytesOut bytes) {
 
-        // write symbolSpecs
-        SerializationUtils.marshallLongHashMap(userProfiles, bytes);
+        // write user profiles (sized - can be loaded in parallel)
+        bytes.writeInt(SIZED_FORMAT_MARKER);
+        SerializationUtils.marshallLongHashMapSized(userProfiles, bytes);
     }
 
     @Override
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.metrics.PaddedCounter;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.concurrent.OneToOneConcurrentArrayQueue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Writes journal blocks on a dedicated I/O thread.
+ * Journaling thread fills one block while another one is being written (double buffering),
+ * so it only waits if the disk can not keep up with both buffers.
+ * <p>
+ * Blocks are written in submission order. Switching the target file forces and closes the previous one.
+ * Written blocks are passed to the shipper (if any) by I/O thread, so follower never receives a block before it is written locally.
+ */
+@Slf4j
+final class AsyncJournalWriter {
+
+    private static final long IDLE_PARK_NS = 20_000L;
+
+    private final JournalDurabilityMode mode;
+    private final long forceIntervalNs;
+    private final long forceBytes;
+
+    private final OneToOneConcurrentArrayQueue<Block> submitted;
+    private final OneToOneConcurrentArrayQueue<Block> free;
+
+    private final PaddedCounter forcesCounter;
+    private final PaddedCounter stallsCounter;
+
+    // can be null
+    private final IJournalShipper shipper;
+
+    private final Thread thread;
+
+    private volatile boolean stopped = false;
+    private volatile IOException failure = null;
+
+    // I/O thread state
+    private RandomAccessFile currentFile;
+    private long unforcedBytes = 0;
+    private long lastForceNs = System.nanoTime();
+
+    /**
+     * Data to be written into file. Exactly one of the buffers is submitted as payload.
+     */
+    static final class Block {
+        final ByteBuffer rawBuffer;
+        final ByteBuffer lz4Buffer;
+
+        ByteBuffer payload;
+        RandomAccessFile file;
+        long lastSeq;
+
+        Block(int rawSize, int lz4Size) {
+            this.rawBuffer = ByteBuffer.allocateDirect(rawSize);
+            this.lz4Buffer = ByteBuffer.allocateDirect(lz4Size);
+        }
+    }
+
+    AsyncJournalWriter(final JournalDurabilityMode mode,
+                       final long forceIntervalNs,
+                       final long forceBytes,
+                       final int buffersNum,
+                       final int rawSize,
+                       final int lz4Size,
+                       final PaddedCounter forcesCounter,
+                       final PaddedCounter stallsCounter,
+                       final IJournalShipper shipper,
+                       final String threadName) {
+
+        if (mode == JournalDurabilityMode.STRICT_SYNC) {
+            throw new IllegalArgumentException("Strict mode journal is written synchronously");
+        }
+        if (buffersNum < 2) {
+            throw new IllegalArgumentException("At least two buffers required, got " + buffersNum);
+        }
+
+        this.mode = mode;
+        this.forceIntervalNs = forceIntervalNs;
+        this.forceBytes = forceBytes;
+        this.forcesCounter = forcesCounter;
+        this.stallsCounter = stallsCounter;
+        this.shipper = shipper;
+
+        this.submitted = new OneToOneConcurrentArrayQueue<>(buffersNum);
+        this.free = new OneToOneConcurrentArrayQueue<>(buffersNum);
+        for (int i = 0; i < buffersNum; i++) {
+            free.offer(new Block(rawSize, lz4Size));
+        }
+
+        this.thread = new Thread(this::run, threadName);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Take empty block for filling. Waits only if all blocks are still queued for writing.
+     * Journaling thread only.
+     */
+    Block acquire() throws IOException {
+        Block block = free.poll();
+        if (block == null) {
+            stallsCounter.increment();
+            while ((block = free.poll()) == null) {
+                checkFailure();
+                LockSupport.parkNanos(IDLE_PARK_NS);
+            }
+        }
+        return block;
+    }
+
+    /**
+     * Submit block for writing into the file. Journaling thread only.
+     *
+     * @param lastSeq - sequence of the last command in the block (for shipping)
+     */
+    void submit(final Block block, final ByteBuffer payload, final RandomAccessFile file, final long lastSeq) throws IOException {
+        checkFailure();
+        block.payload = payload;
+        block.file = file;
+        block.lastSeq = lastSeq;
+        // can not fail - number of blocks is equal to queue capacity
+        submitted.offer(block);
+    }
+
+    /**
+     * Write remaining blocks, force and close current file, then stop I/O thread. Journaling thread only.
+     */
+    void close() throws IOException {
+        stopped = true;
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() throws IOException {
+        final IOException ex = failure;
+        if (ex != null) {
+            throw new IOException("Journal I/O thread failed", ex);
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                final Block block = submitted.poll();
+                if (block != null) {
+                    write(block);
+                    continue;
+                }
+
+                if (unforcedBytes != 0 && System.nanoTime() - lastForceNs >= forceIntervalNs) {
+                    force();
+                }
+
+                if (stopped && submitted.isEmpty()) {
+                    break;
+                }
+
+                LockSupport.parkNanos(IDLE_PARK_NS);
+            }
+
+            force();
+            closeCurrentFile();
+
+        } catch (IOException ex) {
+            log.error("Journal I/O failure", ex);
+            failure = ex;
+        }
+    }
+
+    private void write(final Block block) throws IOException {
+
+        if (block.file != currentFile) {
+            force();
+            closeCurrentFile();
+            currentFile = block.file;
+        }
+
+        final ByteBuffer payload = block.payload;
+        final int position = payload.position();
+        final FileChannel channel = currentFile.getChannel();
+        while (payload.hasRemaining()) {
+            channel.write(payload);
+        }
+        unforcedBytes += payload.limit();
+
+        if (shipper != null && payload.limit() > position) {
+            payload.position(position);
+            shipper.ship(block.lastSeq, payload);
+        }
+
+        block.rawBuffer.clear();
+        block.lz4Buffer.clear();
+        block.payload = null;
+        block.file = null;
+
+        free.offer(block);
+
+        if ((mode == JournalDurabilityMode.GROUP_COMMIT && unforcedBytes >= forceBytes)
+                || System.nanoTime() - lastForceNs >= forceIntervalNs) {
+            force();
+        }
+    }
+
+    private void force() throws IOException {
+        if (currentFile != null && unforcedBytes != 0) {
+            currentFile.getChannel().force(false);
+            forcesCounter.increment();
+            unforcedBytes = 0;
+        }
+        lastForceNs = System.nanoTime();
+    }
+
+    private void closeCurrentFile() throws IOException {
+        if (currentFile != null) {
+            currentFile.close();
+            currentFile = null;
+        }
+    }
+}
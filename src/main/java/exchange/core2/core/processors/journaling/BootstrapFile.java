@@ -0,0 +1,385 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.common.CoreSymbolSpecification;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.SymbolType;
+import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.IoUtil;
+import org.eclipse.collections.impl.map.mutable.primitive.IntLongHashMap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Prepared initial state (symbols, users with balances, resting orders) which risk engine and matching engine shards
+ * load directly during construction, bypassing binary commands fragmentation and the journal.
+ * <p>
+ * Layout: header, symbols section, then for each partition: users, orders by uid, orders by symbol sections.
+ * Header: magic (int), version (int), partitions number (int), symbols number (int),
+ * sections table: offset (long), length (long).
+ * Users and orders are partitioned by uid (or symbol) modulo partitions number (power of 2),
+ * so every shard maps and reads only its own partitions. Number of shards should not exceed number of partitions.
+ * <p>
+ * Resting orders are placed in file order (time priority) and should not cross each other.
+ */
+@Slf4j
+public final class BootstrapFile implements AutoCloseable {
+
+    static final int MAGIC = 0x45434253; // "ECBS"
+    static final int VERSION_1 = 1;
+
+    private static final int SECTIONS_PER_PARTITION = 3;
+    private static final int SECTION_USERS = 0;
+    private static final int SECTION_ORDERS_BY_UID = 1;
+    private static final int SECTION_ORDERS_BY_SYMBOL = 2;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int partitions;
+    private final int symbolsNum;
+
+    // symbols section first, then partition sections
+    private final long[] sectionOffsets;
+    private final long[] sectionLengths;
+
+    private BootstrapFile(final Path path,
+                          final FileChannel channel,
+                          final int partitions,
+                          final int symbolsNum,
+                          final long[] sectionOffsets,
+                          final long[] sectionLengths) {
+        this.path = path;
+        this.channel = channel;
+        this.partitions = partitions;
+        this.symbolsNum = symbolsNum;
+        this.sectionOffsets = sectionOffsets;
+        this.sectionLengths = sectionLengths;
+    }
+
+    /**
+     * Open bootstrap file and read its sections table.
+     *
+     * @param path - bootstrap file
+     * @return reader (thread-confined)
+     * @throws IOException if file can not be read
+     */
+    public static BootstrapFile open(final Path path) throws IOException {
+
+        final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            final ByteBuffer header = readFully(channel, 0, 16);
+            if (header.getInt() != MAGIC) {
+                throw new IllegalStateException("Not a bootstrap file: " + path);
+            }
+            final int version = header.getInt();
+            if (version != VERSION_1) {
+                throw new IllegalStateException("Unsupported bootstrap file version " + version + " in " + path);
+            }
+            final int partitions = header.getInt();
+            final int symbolsNum = header.getInt();
+
+            final int sectionsNum = 1 + partitions * SECTIONS_PER_PARTITION;
+            final ByteBuffer table = readFully(channel, 16, sectionsNum * 16);
+            final long[] offsets = new long[sectionsNum];
+            final long[] lengths = new long[sectionsNum];
+            for (int i = 0; i < sectionsNum; i++) {
+                offsets[i] = table.getLong();
+                lengths[i] = table.getLong();
+            }
+            return new BootstrapFile(path, channel, partitions, symbolsNum, offsets, lengths);
+
+        } catch (final IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    public void readSymbols(final Consumer<CoreSymbolSpecification> handler) throws IOException {
+        final MappedByteBuffer section = mapSection(0);
+        try {
+            for (int i = 0; i < symbolsNum; i++) {
+                handler.accept(readSymbol(section));
+            }
+        } finally {
+            IoUtil.unmap(section);
+        }
+    }
+
+    /**
+     * Read users of the shard partitions.
+     *
+     * @param handler - receives balances (reused map) and uid
+     */
+    public void readUsers(final int shardId, final long shardMask, final ObjLongConsumer<IntLongHashMap> handler) throws IOException {
+
+        final IntLongHashMap balances = new IntLongHashMap();
+
+        for (int partition = firstPartition(shardId, shardMask); partition < partitions; partition += (int) shardMask + 1) {
+            final MappedByteBuffer section = mapSection(sectionIdx(partition, SECTION_USERS));
+            try {
+                while (section.hasRemaining()) {
+                    final long uid = section.getLong();
+                    final int accountsNum = section.getInt();
+                    balances.clear();
+                    for (int i = 0; i < accountsNum; i++) {
+                        balances.put(section.getInt(), section.getLong());
+                    }
+                    handler.accept(balances, uid);
+                }
+            } finally {
+                IoUtil.unmap(section);
+            }
+        }
+    }
+
+    /**
+     * Read resting orders of the shard partitions (partitioned by uid), for risk engine.
+     *
+     * @param handler - receives reused PLACE_ORDER command
+     */
+    public void readOrdersByUid(final int shardId, final long shardMask, final Consumer<OrderCommand> handler) throws IOException {
+        readOrders(shardId, shardMask, SECTION_ORDERS_BY_UID, handler);
+    }
+
+    /**
+     * Read resting orders of the shard partitions (partitioned by symbol), for matching engine.
+     *
+     * @param handler - receives reused PLACE_ORDER command
+     */
+    public void readOrdersBySymbol(final int shardId, final long shardMask, final Consumer<OrderCommand> handler) throws IOException {
+        readOrders(shardId, shardMask, SECTION_ORDERS_BY_SYMBOL, handler);
+    }
+
+    private void readOrders(final int shardId, final long shardMask, final int sectionType, final Consumer<OrderCommand> handler) throws IOException {
+
+        final OrderCommand cmd = new OrderCommand();
+
+        for (int partition = firstPartition(shardId, shardMask); partition < partitions; partition += (int) shardMask + 1) {
+            final MappedByteBuffer section = mapSection(sectionIdx(partition, sectionType));
+            try {
+                while (section.hasRemaining()) {
+                    cmd.command = OrderCommandType.PLACE_ORDER;
+                    cmd.orderType = OrderType.GTC;
+                    cmd.uid = section.getLong();
+                    cmd.orderId = section.getLong();
+                    cmd.symbol = section.getInt();
+                    cmd.price = section.getLong();
+                    cmd.reserveBidPrice = section.getLong();
+                    cmd.size = section.getLong();
+                    cmd.action = OrderAction.of(section.get());
+                    cmd.timestamp = section.getLong();
+                    cmd.userCookie = section.getInt();
+                    cmd.resultCode = CommandResultCode.NEW;
+                    cmd.matcherEvent = null;
+                    cmd.marketData = null;
+                    handler.accept(cmd);
+                }
+            } finally {
+                IoUtil.unmap(section);
+            }
+        }
+    }
+
+    private int firstPartition(final int shardId, final long shardMask) {
+        if (shardMask + 1 > partitions) {
+            throw new IllegalArgumentException("Bootstrap file " + path + " has " + partitions + " partitions, can not load " + (shardMask + 1) + " shards");
+        }
+        return shardId;
+    }
+
+    private static int sectionIdx(final int partition, final int sectionType) {
+        return 1 + partition * SECTIONS_PER_PARTITION + sectionType;
+    }
+
+    private MappedByteBuffer mapSection(final int sectionIdx) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, sectionOffsets[sectionIdx], sectionLengths[sectionIdx]);
+    }
+
+    private static CoreSymbolSpecification readSymbol(final ByteBuffer bb) {
+        return CoreSymbolSpecification.builder()
+                .symbolId(bb.getInt())
+                .type(SymbolType.of(bb.get()))
+                .baseCurrency(bb.getInt())
+                .quoteCurrency(bb.getInt())
+                .baseScaleK(bb.getLong())
+                .quoteScaleK(bb.getLong())
+                .takerFee(bb.getLong())
+                .makerFee(bb.getLong())
+                .marginBuy(bb.getLong())
+                .marginSell(bb.getLong())
+                .build();
+    }
+
+    private static ByteBuffer readFully(final FileChannel channel, long position, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of bootstrap file at position " + position);
+            }
+            position += read;
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Collects initial state in memory and writes bootstrap file.
+     */
+    public static final class Writer {
+
+        private final int partitions;
+        private final ByteArrayOutputStream symbolsBytes = new ByteArrayOutputStream();
+        private final DataOutputStream symbols = new DataOutputStream(symbolsBytes);
+        private final ByteArrayOutputStream[] sectionsBytes;
+        private final DataOutputStream[] sections;
+        private int symbolsNum = 0;
+
+        public Writer(final int partitions) {
+            if (Integer.bitCount(partitions) != 1) {
+                throw new IllegalArgumentException("Invalid number of partitions " + partitions + " - must be power of 2");
+            }
+            this.partitions = partitions;
+            this.sectionsBytes = new ByteArrayOutputStream[partitions * SECTIONS_PER_PARTITION];
+            this.sections = new DataOutputStream[partitions * SECTIONS_PER_PARTITION];
+            for (int i = 0; i < sections.length; i++) {
+                sectionsBytes[i] = new ByteArrayOutputStream();
+                sections[i] = new DataOutputStream(sectionsBytes[i]);
+            }
+        }
+
+        public Writer addSymbol(final CoreSymbolSpecification spec) throws IOException {
+            symbols.writeInt(spec.symbolId);
+            symbols.writeByte(spec.type.getCode());
+            symbols.writeInt(spec.baseCurrency);
+            symbols.writeInt(spec.quoteCurrency);
+            symbols.writeLong(spec.baseScaleK);
+            symbols.writeLong(spec.quoteScaleK);
+            symbols.writeLong(spec.takerFee);
+            symbols.writeLong(spec.makerFee);
+            symbols.writeLong(spec.marginBuy);
+            symbols.writeLong(spec.marginSell);
+            symbolsNum++;
+            return this;
+        }
+
+        /**
+         * Add user with initial balances (applied as adjustments, same as batch accounts command).
+         */
+        public Writer addUser(final long uid, final IntLongHashMap balances) throws IOException {
+            final DataOutputStream out = section(uid, SECTION_USERS);
+            out.writeLong(uid);
+            out.writeInt(balances.size());
+            // sorted for repeatable file content
+            for (final int currency : balances.keySet().toSortedArray()) {
+                out.writeInt(currency);
+                out.writeLong(balances.get(currency));
+            }
+            return this;
+        }
+
+        /**
+         * Add resting GTC order, funds are reserved by risk engine as for regular order placement.
+         */
+        public Writer addOrder(final ApiPlaceOrder order) throws IOException {
+            if (order.orderType != OrderType.GTC) {
+                throw new IllegalArgumentException("Only GTC orders can be bootstrapped, got " + order.orderType);
+            }
+            writeOrder(section(order.uid, SECTION_ORDERS_BY_UID), order);
+            writeOrder(section(order.symbol, SECTION_ORDERS_BY_SYMBOL), order);
+            return this;
+        }
+
+        private DataOutputStream section(final long key, final int sectionType) {
+            return sections[(int) (key & (partitions - 1)) * SECTIONS_PER_PARTITION + sectionType];
+        }
+
+        private static void writeOrder(final DataOutputStream out, final ApiPlaceOrder order) throws IOException {
+            out.writeLong(order.uid);
+            out.writeLong(order.orderId);
+            out.writeInt(order.symbol);
+            out.writeLong(order.price);
+            out.writeLong(order.reservePrice);
+            out.writeLong(order.size);
+            out.writeByte(order.action.getCode());
+            out.writeLong(order.timestamp);
+            out.writeInt(order.userCookie);
+        }
+
+        /**
+         * Write bootstrap file (atomically replacing existing one).
+         */
+        public void write(final Path path) throws IOException {
+
+            final int sectionsNum = 1 + sections.length;
+            final ByteBuffer header = ByteBuffer.allocate(16 + sectionsNum * 16);
+            header.putInt(MAGIC);
+            header.putInt(VERSION_1);
+            header.putInt(partitions);
+            header.putInt(symbolsNum);
+
+            long offset = header.capacity();
+            header.putLong(offset).putLong(symbolsBytes.size());
+            offset += symbolsBytes.size();
+            for (final ByteArrayOutputStream section : sectionsBytes) {
+                header.putLong(offset).putLong(section.size());
+                offset += section.size();
+            }
+            header.flip();
+
+            final Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+            try (final FileChannel channel = FileChannel.open(tmpPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                writeFully(channel, header);
+                writeFully(channel, ByteBuffer.wrap(symbolsBytes.toByteArray()));
+                for (final ByteArrayOutputStream section : sectionsBytes) {
+                    writeFully(channel, ByteBuffer.wrap(section.toByteArray()));
+                }
+                channel.force(false);
+            }
+            Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            log.info("Written bootstrap file {}: {} symbols, {} bytes", path, symbolsNum, offset);
+        }
+
+        private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+}
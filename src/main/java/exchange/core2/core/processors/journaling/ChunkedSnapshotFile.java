@@ -0,0 +1,566 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import lombok.extern.slf4j.Slf4j;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.NativeBytes;
+import net.openhft.chronicle.bytes.NativeBytesStore;
+import net.openhft.chronicle.bytes.WriteBytesMarshallable;
+import org.agrona.IoUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snapshot file made of independently LZ4-compressed fixed-size blocks.
+ * <p>
+ * Layout: header, blocks (in completion order), block index.
+ * Header: magic (int), version (int), block size (int), blocks number (int), raw length (long), index offset (long).
+ * Index entry (per block, in image order): file offset (long), stored length (int), raw length (int),
+ * xxHash32 of stored bytes (int, since version 2).
+ * Block is stored uncompressed if stored length equals raw length.
+ * <p>
+ * Blocks are compressed in parallel and written with positional writes as soon as compressed
+ * (module can be streamed into blocks while it is serialized), reader maps and decompresses blocks in parallel using the index.
+ */
+@Slf4j
+final class ChunkedSnapshotFile {
+
+    static final int MAGIC = 0x45435343; // "ECSC"
+    static final int VERSION_1 = 1;
+    static final int VERSION_2 = 2;
+
+    static final int HEADER_SIZE = 32;
+    static final int INDEX_ENTRY_SIZE_V1 = 16;
+    static final int INDEX_ENTRY_SIZE = 20;
+
+    static final int MIN_BLOCK_SIZE = 64 * 1024;
+
+    private ChunkedSnapshotFile() {
+    }
+
+    /**
+     * Compress image blocks on provided pool and write them into a new file.
+     *
+     * @param path       - file to create
+     * @param image      - serialized module image (remaining bytes are written), not modified
+     * @param blockSize  - raw block size
+     * @param compressor - LZ4 compressor (thread-safe)
+     * @param pool       - compression pool
+     * @throws IOException if writing failed
+     */
+    static void write(final Path path,
+                      final ByteBuffer image,
+                      final int blockSize,
+                      final LZ4Compressor compressor,
+                      final ForkJoinPool pool) throws IOException {
+
+        try (final Writer writer = new Writer(path, blockSize, compressor, pool)) {
+            final ByteBuffer src = image.duplicate();
+            while (src.hasRemaining()) {
+                final ByteBuffer block = src.duplicate();
+                block.limit(Math.min(src.position() + blockSize, src.limit()));
+                writer.writeBlock(block);
+                src.position(block.limit());
+            }
+            writer.finish();
+        }
+    }
+
+    /**
+     * Streaming writer of a new chunked snapshot file.
+     * <p>
+     * Every full block is compressed on provided pool and written with positional write while the rest is still produced.
+     * Blocks in flight are limited by a small set of reused block buffers, so memory use does not depend on state size.
+     * <p>
+     * File is deleted on close unless finished.
+     */
+    static final class Writer implements AutoCloseable {
+
+        // raw block buffers per compression thread
+        private static final int BLOCKS_PER_THREAD = 2;
+
+        private final Path path;
+        private final FileChannel channel;
+        private final int blockSize;
+        private final LZ4Compressor compressor;
+        private final ForkJoinPool pool;
+
+        // free block buffers, caller waits for one when all are in flight
+        private final BlockingQueue<ByteBuffer> freeBlocks;
+        private final int maxBlocks;
+        private int allocatedBlocks = 0;
+
+        private final AtomicLong nextOffset = new AtomicLong(HEADER_SIZE);
+        private final List<ForkJoinTask<StoredBlock>> tasks = new ArrayList<>();
+        private volatile Throwable failure;
+
+        // streamed module: first block is written last (it starts with image length)
+        private ByteBuffer head;
+
+        private long rawLength = 0;
+        private boolean finished = false;
+        private boolean closed = false;
+
+        /**
+         * @param path       - file to create
+         * @param blockSize  - raw block size
+         * @param compressor - LZ4 compressor (thread-safe)
+         * @param pool       - compression pool
+         * @throws IOException if file can not be created
+         */
+        Writer(final Path path,
+               final int blockSize,
+               final LZ4Compressor compressor,
+               final ForkJoinPool pool) throws IOException {
+
+            if (blockSize < MIN_BLOCK_SIZE) {
+                throw new IllegalArgumentException("Snapshot block size should be at least " + MIN_BLOCK_SIZE + ", got " + blockSize);
+            }
+
+            this.path = path;
+            this.blockSize = blockSize;
+            this.compressor = compressor;
+            this.pool = pool;
+            this.maxBlocks = pool.getParallelism() * BLOCKS_PER_THREAD;
+            this.freeBlocks = new ArrayBlockingQueue<>(maxBlocks);
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+
+        /**
+         * Serialize module as a wire document (same image as RAW wire writeBytes produces) into blocks.
+         * Called once, before finish.
+         *
+         * @param module - module to serialize
+         */
+        void writeModule(final WriteBytesMarshallable module) {
+
+            if (!tasks.isEmpty()) {
+                throw new IllegalStateException("Snapshot " + path + " already has blocks");
+            }
+
+            final BlockBytes bytes = new BlockBytes(this);
+            try {
+                // document header, set when image length is known
+                bytes.writeInt(0);
+                module.writeMarshallable(bytes);
+                bytes.complete();
+            } finally {
+                bytes.release();
+            }
+        }
+
+        /**
+         * @return beginning of streamed module image (at least first block or entire image if shorter), read-only
+         */
+        ByteBuffer head() {
+            if (head == null) {
+                throw new IllegalStateException("Module is not written into " + path);
+            }
+            return head.asReadOnlyBuffer();
+        }
+
+        /**
+         * Copy remaining bytes as next block and hand it over for compression and writing.
+         * Waits if all block buffers are in flight.
+         *
+         * @param src - raw block data, at most block size
+         */
+        void writeBlock(final ByteBuffer src) {
+            final ByteBuffer block = acquireBlock();
+            block.put(src);
+            block.flip();
+            rawLength += block.remaining();
+            tasks.add(submit(block, true));
+        }
+
+        /**
+         * Wait for all blocks, then write index and header and force file content to the device.
+         *
+         * @throws IOException if any block or index can not be written
+         */
+        void finish() throws IOException {
+
+            final int blocksNum = tasks.size();
+            final StoredBlock[] blocks = awaitBlocks();
+
+            final long indexOffset = nextOffset.get();
+            final ByteBuffer index = ByteBuffer.allocate(blocksNum * INDEX_ENTRY_SIZE);
+            for (final StoredBlock block : blocks) {
+                index.putLong(block.offset);
+                index.putInt(block.storedLength);
+                index.putInt(block.rawLength);
+                index.putInt(block.checksum);
+            }
+            index.flip();
+            writeFully(channel, index, indexOffset);
+
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC);
+            header.putInt(VERSION_2);
+            header.putInt(blockSize);
+            header.putInt(blocksNum);
+            header.putLong(rawLength);
+            header.putLong(indexOffset);
+            header.flip();
+            writeFully(channel, header, 0);
+
+            channel.force(false);
+            finished = true;
+
+            log.debug("Written {} blocks ({} bytes raw) into {}", blocksNum, rawLength, path);
+        }
+
+        /**
+         * Close file, delete it if not finished (after in-flight blocks are done).
+         */
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!finished) {
+                for (final ForkJoinTask<StoredBlock> task : tasks) {
+                    if (task != null) {
+                        task.quietlyJoin();
+                    }
+                }
+            }
+            channel.close();
+            if (!finished) {
+                Files.deleteIfExists(path);
+            }
+        }
+
+        private void writeHead(final ByteBuffer src) {
+            head = ByteBuffer.allocate(src.remaining());
+            head.put(src);
+            head.flip();
+            rawLength += head.remaining();
+            // placeholder, submitted when image length is known
+            tasks.add(null);
+        }
+
+        private void completeHead(final int documentLength) {
+            head.duplicate().order(ByteOrder.nativeOrder()).putInt(0, documentLength);
+            tasks.set(0, submit(head.duplicate(), false));
+        }
+
+        private ByteBuffer acquireBlock() {
+            if (failure != null) {
+                throw new IllegalStateException("Can not write snapshot block into " + path, failure);
+            }
+            ByteBuffer block = freeBlocks.poll();
+            if (block == null) {
+                if (allocatedBlocks < maxBlocks) {
+                    allocatedBlocks++;
+                    block = ByteBuffer.allocate(blockSize);
+                } else {
+                    try {
+                        block = freeBlocks.take();
+                    } catch (final InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        throw new IllegalStateException("Interrupted while writing snapshot " + path, ex);
+                    }
+                }
+            }
+            block.clear();
+            return block;
+        }
+
+        private ForkJoinTask<StoredBlock> submit(final ByteBuffer block, final boolean reuse) {
+            return pool.submit(() -> {
+                try {
+                    final int blockRawLength = block.remaining();
+                    final ByteBuffer stored = compressBlock(block, compressor);
+                    final int storedLength = stored.remaining();
+                    final int checksum = JournalBlockChecksum.hash(stored, stored.position(), storedLength);
+                    final long offset = nextOffset.getAndAdd(storedLength);
+                    writeFully(channel, stored, offset);
+                    return new StoredBlock(offset, storedLength, blockRawLength, checksum);
+                } catch (final IOException | RuntimeException ex) {
+                    failure = ex;
+                    throw ex;
+                } finally {
+                    if (reuse) {
+                        freeBlocks.offer(block);
+                    }
+                }
+            });
+        }
+
+        private StoredBlock[] awaitBlocks() throws IOException {
+            final StoredBlock[] blocks = new StoredBlock[tasks.size()];
+            for (int i = 0; i < blocks.length; i++) {
+                try {
+                    blocks[i] = tasks.get(i).get();
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while writing snapshot " + path, ex);
+                } catch (final ExecutionException ex) {
+                    throw new IOException("Can not write snapshot block into " + path, ex.getCause());
+                }
+            }
+            return blocks;
+        }
+    }
+
+    /**
+     * Serialization target of streamed module.
+     * <p>
+     * Keeps only unfinished block in memory: before any write moves write position,
+     * all full blocks are handed over to the writer and the tail is moved to the beginning.
+     */
+    private static final class BlockBytes extends NativeBytes<ByteBuffer> {
+
+        // wire document length is limited by header flag bits
+        private static final int MAX_DOCUMENT_LENGTH = (1 << 30) - 1;
+
+        private final Writer writer;
+        private final int blockSize;
+
+        private long emittedLength = 0;
+
+        BlockBytes(final Writer writer) {
+            super(NativeBytesStore.elasticByteBuffer(writer.blockSize, Bytes.MAX_BYTE_BUFFER_CAPACITY), Bytes.MAX_BYTE_BUFFER_CAPACITY);
+            // store is reserved by this bytes instance
+            bytesStore.release();
+            this.writer = writer;
+            this.blockSize = writer.blockSize;
+        }
+
+        @Override
+        protected long writeOffsetPositionMoved(final long adding, final long advance) {
+            emitFullBlocks();
+            return super.writeOffsetPositionMoved(adding, advance);
+        }
+
+        @Override
+        public void ensureCapacity(final long size) {
+            // size is based on write position before emitting
+            super.ensureCapacity(size - emitFullBlocks());
+        }
+
+        void complete() {
+            emitFullBlocks();
+
+            final long imageLength = emittedLength + writePosition();
+            if (imageLength - 4 > MAX_DOCUMENT_LENGTH) {
+                throw new IllegalStateException("Module image is too large: " + imageLength + " bytes");
+            }
+
+            final ByteBuffer tail = blockView(0, writePosition());
+            if (emittedLength == 0) {
+                writer.writeHead(tail);
+            } else if (tail.hasRemaining()) {
+                writer.writeBlock(tail);
+            }
+            writer.completeHead((int) (imageLength - 4));
+        }
+
+        /**
+         * @return number of bytes emitted (write position moved back by this value)
+         */
+        private long emitFullBlocks() {
+            final long position = writePosition();
+            if (position < blockSize) {
+                return 0;
+            }
+
+            long emitted = 0;
+            while (position - emitted >= blockSize) {
+                final ByteBuffer block = blockView(emitted, emitted + blockSize);
+                if (emittedLength == 0) {
+                    writer.writeHead(block);
+                } else {
+                    writer.writeBlock(block);
+                }
+                emitted += blockSize;
+                emittedLength += blockSize;
+            }
+
+            bytesStore.move(emitted, 0, position - emitted);
+            writePosition(position - emitted);
+            return emitted;
+        }
+
+        private ByteBuffer blockView(final long from, final long to) {
+            final ByteBuffer buffer = bytesStore.underlyingObject().duplicate();
+            buffer.limit(Math.toIntExact(to));
+            buffer.position(Math.toIntExact(from));
+            return buffer;
+        }
+    }
+
+    private static final class StoredBlock {
+
+        private final long offset;
+        private final int storedLength;
+        private final int rawLength;
+        private final int checksum;
+
+        private StoredBlock(final long offset, final int storedLength, final int rawLength, final int checksum) {
+            this.offset = offset;
+            this.storedLength = storedLength;
+            this.rawLength = rawLength;
+            this.checksum = checksum;
+        }
+    }
+
+    /**
+     * Check if the file starts with chunked snapshot header.
+     */
+    static boolean isChunked(final Path path) throws IOException {
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining()) {
+                if (channel.read(magic) < 0) {
+                    return false;
+                }
+            }
+            return magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Read and decompress all blocks into a new direct buffer.
+     * Blocks are memory-mapped and decompressed in parallel on provided pool.
+     *
+     * @param path - snapshot file
+     * @param pool - decompression pool
+     * @return module image
+     * @throws IOException if reading failed
+     */
+    static ByteBuffer readImage(final Path path, final ForkJoinPool pool) throws IOException {
+
+        final LZ4FastDecompressor decompressor = LZ4Factory.fastestInstance().fastDecompressor();
+
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            final ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IllegalStateException("Not a chunked snapshot file: " + path);
+            }
+            final int version = header.getInt();
+            if (version != VERSION_1 && version != VERSION_2) {
+                throw new IllegalStateException("Unsupported chunked snapshot version " + version + " in " + path);
+            }
+            final boolean checked = version == VERSION_2;
+            final int blockSize = header.getInt();
+            final int blocksNum = header.getInt();
+            final int rawLength = Math.toIntExact(header.getLong());
+            final long indexOffset = header.getLong();
+
+            final ByteBuffer index = readFully(channel, indexOffset, blocksNum * (checked ? INDEX_ENTRY_SIZE : INDEX_ENTRY_SIZE_V1));
+
+            final ByteBuffer image = ByteBuffer.allocateDirect(rawLength);
+
+            final List<ForkJoinTask<?>> tasks = new ArrayList<>(blocksNum);
+            for (int i = 0; i < blocksNum; i++) {
+                final long offset = index.getLong();
+                final int storedLength = index.getInt();
+                final int blockRawLength = index.getInt();
+                final int checksum = checked ? index.getInt() : 0;
+                final int imageOffset = i * blockSize;
+                final int blockIdx = i;
+
+                tasks.add(pool.submit(() -> {
+                    final MappedByteBuffer block = channel.map(FileChannel.MapMode.READ_ONLY, offset, storedLength);
+                    try {
+                        if (checked && JournalBlockChecksum.hash(block, 0, storedLength) != checksum) {
+                            throw new IllegalStateException("Snapshot block " + blockIdx + " checksum mismatch (data corrupted)");
+                        }
+                        if (storedLength == blockRawLength) {
+                            final ByteBuffer dst = image.duplicate();
+                            dst.position(imageOffset);
+                            dst.put(block);
+                        } else {
+                            decompressor.decompress(block, 0, image, imageOffset, blockRawLength);
+                        }
+                    } finally {
+                        IoUtil.unmap(block);
+                    }
+                    return null;
+                }));
+            }
+
+            for (final ForkJoinTask<?> task : tasks) {
+                try {
+                    task.get();
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while reading snapshot " + path, ex);
+                } catch (final ExecutionException ex) {
+                    throw new IOException("Can not read snapshot block from " + path, ex.getCause());
+                }
+            }
+
+            return image;
+        }
+    }
+
+    private static ByteBuffer compressBlock(final ByteBuffer src, final LZ4Compressor compressor) {
+
+        final int rawLength = src.remaining();
+        final ByteBuffer dst = ByteBuffer.allocate(compressor.maxCompressedLength(rawLength));
+        final int compressedLength = compressor.compress(src, src.position(), rawLength, dst, 0, dst.capacity());
+
+        if (compressedLength >= rawLength) {
+            // incompressible - store as is
+            return src;
+        }
+        dst.limit(compressedLength);
+        return dst;
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static ByteBuffer readFully(final FileChannel channel, long position, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of snapshot file at position " + position);
+            }
+            position += read;
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
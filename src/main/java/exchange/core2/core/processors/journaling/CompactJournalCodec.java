@@ -0,0 +1,392 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import org.eclipse.collections.impl.map.mutable.primitive.IntIntHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongIntHashMap;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compact journal record format (version 1).
+ * <p>
+ * Journal file starts with FORMAT_MARKER followed by version byte.
+ * Codec state (previous values and dictionaries) is reset at the start of every file,
+ * so encoder and decoder should process records of a file sequentially.
+ * <p>
+ * Record: command code (1 byte), then varint-encoded fields:
+ * seq and timestamp and eventsGroup as delta to previous record, serviceFlags as is,
+ * orderId and price as delta to previous order command, reserveBidPrice as difference to price,
+ * sizes and cookies as zigzag varints.
+ * Uid and symbol are written as dictionary index (1-based) or 0 followed by literal value;
+ * literal is added into the dictionary until it reaches its capacity.
+ * Binary data words are written fixed-width.
+ */
+final class CompactJournalCodec {
+
+    // not used by any command type
+    static final byte FORMAT_MARKER = (byte) -2;
+
+    static final byte VERSION_1 = 1;
+
+    private static final int UID_DICTIONARY_CAPACITY = 16384;
+    private static final int SYMBOL_DICTIONARY_CAPACITY = 4096;
+
+    private long prevSeq;
+    private long prevTimestamp;
+    private long prevEventsGroup;
+    private long prevOrderId;
+    private long prevPrice;
+
+    // encoder dictionaries
+    private final LongIntHashMap uidIndexes = new LongIntHashMap();
+    private final IntIntHashMap symbolIndexes = new IntIntHashMap();
+
+    // decoder dictionaries
+    private final long[] uids = new long[UID_DICTIONARY_CAPACITY];
+    private final int[] symbols = new int[SYMBOL_DICTIONARY_CAPACITY];
+    private int uidsNum;
+    private int symbolsNum;
+
+    // decoder state mark
+    private long markSeq;
+    private long markTimestamp;
+    private long markEventsGroup;
+    private long markOrderId;
+    private long markPrice;
+    private int markUidsNum;
+    private int markSymbolsNum;
+
+    /**
+     * Reset state and write file header. Should be called for empty buffer of a new file.
+     */
+    void startFile(final ByteBuffer buffer) {
+        reset();
+        buffer.put(FORMAT_MARKER);
+        buffer.put(VERSION_1);
+    }
+
+    /**
+     * Reset state after reading file header.
+     */
+    void startFile(final DataInput input) throws IOException {
+        final byte version = input.readByte();
+        if (version != VERSION_1) {
+            throw new IllegalStateException("Unsupported compact journal version: " + version);
+        }
+        reset();
+    }
+
+    void encode(final OrderCommand cmd, final long seq, final ByteBuffer buffer) {
+
+        final OrderCommandType cmdType = cmd.command;
+
+        buffer.put(cmdType.getCode());
+        putVarLong(buffer, zigzag(seq - prevSeq));
+        putVarLong(buffer, zigzag(cmd.timestamp - prevTimestamp));
+        putVarLong(buffer, cmd.serviceFlags & 0xFFFF_FFFFL);
+        putVarLong(buffer, zigzag(cmd.eventsGroup - prevEventsGroup));
+        prevSeq = seq;
+        prevTimestamp = cmd.timestamp;
+        prevEventsGroup = cmd.eventsGroup;
+
+        switch (cmdType) {
+            case MOVE_ORDER:
+                putUid(buffer, cmd.uid);
+                putSymbol(buffer, cmd.symbol);
+                putOrderId(buffer, cmd.orderId);
+                putPrice(buffer, cmd.price);
+                break;
+
+            case CANCEL_ORDER:
+                putUid(buffer, cmd.uid);
+                putSymbol(buffer, cmd.symbol);
+                putOrderId(buffer, cmd.orderId);
+                break;
+
+            case REDUCE_ORDER:
+                putUid(buffer, cmd.uid);
+                putSymbol(buffer, cmd.symbol);
+                putOrderId(buffer, cmd.orderId);
+                putVarLong(buffer, zigzag(cmd.size));
+                break;
+
+            case PLACE_ORDER:
+                putUid(buffer, cmd.uid);
+                putSymbol(buffer, cmd.symbol);
+                putOrderId(buffer, cmd.orderId);
+                putPrice(buffer, cmd.price);
+                putVarLong(buffer, zigzag(cmd.reserveBidPrice - cmd.price));
+                putVarLong(buffer, zigzag(cmd.size));
+                putVarLong(buffer, zigzag(cmd.userCookie));
+                buffer.put((byte) ((cmd.orderType.getCode() << 1) | cmd.action.getCode()));
+                break;
+
+            case BALANCE_ADJUSTMENT:
+                putUid(buffer, cmd.uid);
+                putSymbol(buffer, cmd.symbol);
+                putVarLong(buffer, zigzag(cmd.orderId));
+                putVarLong(buffer, zigzag(cmd.price));
+                buffer.put(cmd.orderType.getCode());
+                break;
+
+            case ADD_USER:
+            case SUSPEND_USER:
+            case RESUME_USER:
+                putVarLong(buffer, zigzag(cmd.uid));
+                break;
+
+            case BINARY_DATA_COMMAND:
+                buffer.put((byte) cmd.symbol);
+                buffer.putLong(cmd.orderId);
+                buffer.putLong(cmd.price);
+                buffer.putLong(cmd.reserveBidPrice);
+                buffer.putLong(cmd.size);
+                buffer.putLong(cmd.uid);
+                break;
+
+            default:
+                // no payload
+        }
+    }
+
+    /**
+     * Decode record (except command code, which is already read) into provided command object.
+     * For BALANCE_ADJUSTMENT adjustment type code is returned in orderType field.
+     */
+    void decode(final OrderCommandType cmdType, final DataInput input, final OrderCommand cmd) throws IOException {
+
+        cmd.command = cmdType;
+
+        prevSeq += unzigzag(readVarLong(input));
+        prevTimestamp += unzigzag(readVarLong(input));
+        cmd.serviceFlags = (int) readVarLong(input);
+        prevEventsGroup += unzigzag(readVarLong(input));
+        cmd.timestamp = prevTimestamp;
+        cmd.eventsGroup = prevEventsGroup;
+
+        switch (cmdType) {
+            case MOVE_ORDER:
+                cmd.uid = readUid(input);
+                cmd.symbol = readSymbol(input);
+                cmd.orderId = readOrderId(input);
+                cmd.price = readPrice(input);
+                break;
+
+            case CANCEL_ORDER:
+                cmd.uid = readUid(input);
+                cmd.symbol = readSymbol(input);
+                cmd.orderId = readOrderId(input);
+                break;
+
+            case REDUCE_ORDER:
+                cmd.uid = readUid(input);
+                cmd.symbol = readSymbol(input);
+                cmd.orderId = readOrderId(input);
+                cmd.size = unzigzag(readVarLong(input));
+                break;
+
+            case PLACE_ORDER:
+                cmd.uid = readUid(input);
+                cmd.symbol = readSymbol(input);
+                cmd.orderId = readOrderId(input);
+                cmd.price = readPrice(input);
+                cmd.reserveBidPrice = cmd.price + unzigzag(readVarLong(input));
+                cmd.size = unzigzag(readVarLong(input));
+                cmd.userCookie = (int) unzigzag(readVarLong(input));
+                final byte actionAndType = input.readByte();
+                cmd.action = OrderAction.of((byte) (actionAndType & 0b1));
+                cmd.orderType = OrderType.of((byte) ((actionAndType >> 1) & 0b1111));
+                break;
+
+            case BALANCE_ADJUSTMENT:
+                cmd.uid = readUid(input);
+                cmd.symbol = readSymbol(input);
+                cmd.orderId = unzigzag(readVarLong(input));
+                cmd.price = unzigzag(readVarLong(input));
+                cmd.orderType = OrderType.of(input.readByte());
+                cmd.size = 0;
+                break;
+
+            case ADD_USER:
+            case SUSPEND_USER:
+            case RESUME_USER:
+                cmd.uid = unzigzag(readVarLong(input));
+                cmd.orderId = -1;
+                cmd.symbol = -1;
+                break;
+
+            case BINARY_DATA_COMMAND:
+                cmd.symbol = input.readByte();
+                cmd.orderId = input.readLong();
+                cmd.price = input.readLong();
+                cmd.reserveBidPrice = input.readLong();
+                cmd.size = input.readLong();
+                cmd.uid = input.readLong();
+                break;
+
+            default:
+                // no payload
+        }
+    }
+
+    /**
+     * Remember decoder state, so decoding of incomplete record can be rolled back.
+     * Dictionaries are append-only, only their sizes are remembered.
+     */
+    void markDecoderState() {
+        markSeq = prevSeq;
+        markTimestamp = prevTimestamp;
+        markEventsGroup = prevEventsGroup;
+        markOrderId = prevOrderId;
+        markPrice = prevPrice;
+        markUidsNum = uidsNum;
+        markSymbolsNum = symbolsNum;
+    }
+
+    void rollbackDecoderState() {
+        prevSeq = markSeq;
+        prevTimestamp = markTimestamp;
+        prevEventsGroup = markEventsGroup;
+        prevOrderId = markOrderId;
+        prevPrice = markPrice;
+        uidsNum = markUidsNum;
+        symbolsNum = markSymbolsNum;
+    }
+
+    /**
+     * @return sequence of the last decoded record
+     */
+    long getLastSeq() {
+        return prevSeq;
+    }
+
+    private void reset() {
+        prevSeq = 0;
+        prevTimestamp = 0;
+        prevEventsGroup = 0;
+        prevOrderId = 0;
+        prevPrice = 0;
+        uidIndexes.clear();
+        symbolIndexes.clear();
+        uidsNum = 0;
+        symbolsNum = 0;
+    }
+
+    private void putOrderId(final ByteBuffer buffer, final long orderId) {
+        putVarLong(buffer, zigzag(orderId - prevOrderId));
+        prevOrderId = orderId;
+    }
+
+    private long readOrderId(final DataInput input) throws IOException {
+        prevOrderId += unzigzag(readVarLong(input));
+        return prevOrderId;
+    }
+
+    private void putPrice(final ByteBuffer buffer, final long price) {
+        putVarLong(buffer, zigzag(price - prevPrice));
+        prevPrice = price;
+    }
+
+    private long readPrice(final DataInput input) throws IOException {
+        prevPrice += unzigzag(readVarLong(input));
+        return prevPrice;
+    }
+
+    private void putUid(final ByteBuffer buffer, final long uid) {
+        final int idx = uidIndexes.getIfAbsent(uid, -1);
+        if (idx != -1) {
+            putVarLong(buffer, idx + 1);
+        } else {
+            buffer.put((byte) 0);
+            putVarLong(buffer, zigzag(uid));
+            if (uidIndexes.size() < UID_DICTIONARY_CAPACITY) {
+                uidIndexes.put(uid, uidIndexes.size());
+            }
+        }
+    }
+
+    private long readUid(final DataInput input) throws IOException {
+        final int idx = (int) readVarLong(input);
+        if (idx != 0) {
+            return uids[idx - 1];
+        }
+        final long uid = unzigzag(readVarLong(input));
+        if (uidsNum < UID_DICTIONARY_CAPACITY) {
+            uids[uidsNum++] = uid;
+        }
+        return uid;
+    }
+
+    private void putSymbol(final ByteBuffer buffer, final int symbol) {
+        final int idx = symbolIndexes.getIfAbsent(symbol, -1);
+        if (idx != -1) {
+            putVarLong(buffer, idx + 1);
+        } else {
+            buffer.put((byte) 0);
+            putVarLong(buffer, zigzag(symbol));
+            if (symbolIndexes.size() < SYMBOL_DICTIONARY_CAPACITY) {
+                symbolIndexes.put(symbol, symbolIndexes.size());
+            }
+        }
+    }
+
+    private int readSymbol(final DataInput input) throws IOException {
+        final int idx = (int) readVarLong(input);
+        if (idx != 0) {
+            return symbols[idx - 1];
+        }
+        final int symbol = (int) unzigzag(readVarLong(input));
+        if (symbolsNum < SYMBOL_DICTIONARY_CAPACITY) {
+            symbols[symbolsNum++] = symbol;
+        }
+        return symbol;
+    }
+
+    static void putVarLong(final ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static long readVarLong(final DataInput input) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final byte b = input.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return result;
+            }
+        }
+        throw new IllegalStateException("Malformed varint (data corrupted)");
+    }
+
+    static long zigzag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
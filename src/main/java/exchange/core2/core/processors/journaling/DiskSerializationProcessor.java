@@ -17,13 +17,13 @@ package exchange.core2.core.processors.journaling;
 
 import exchange.core2.core.ExchangeApi;
 import exchange.core2.core.common.BalanceAdjustmentType;
-import exchange.core2.core.common.OrderAction;
-import exchange.core2.core.common.OrderType;
 import exchange.core2.core.common.cmd.OrderCommand;
 import exchange.core2.core.common.cmd.OrderCommandType;
 import exchange.core2.core.common.config.ExchangeConfiguration;
 import exchange.core2.core.common.config.InitialStateConfiguration;
 import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.metrics.MetricsRegistry;
+import exchange.core2.core.metrics.PaddedCounter;
 import lombok.extern.slf4j.Slf4j;
 import net.jpountz.lz4.*;
 import net.jpountz.xxhash.XXHashFactory;
@@ -33,19 +33,32 @@ import net.openhft.chronicle.bytes.WriteBytesMarshallable;
 import net.openhft.chronicle.wire.InputStreamToWire;
 import net.openhft.chronicle.wire.Wire;
 import net.openhft.chronicle.wire.WireType;
+import org.agrona.BufferUtil;
 import org.agrona.collections.MutableLong;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.NavigableMap;
-import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.function.ObjLongConsumer;
 
 
 @Slf4j
@@ -60,15 +73,54 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 
     private final long baseSeq;
 
-    private final ByteBuffer journalWriteBuffer;
-    private final ByteBuffer lz4WriteBuffer;
+    private final JournalDurabilityMode durabilityMode;
+    private final long forceIntervalNs;
+    private final long groupCommitBytes;
+
+    // double-buffered writer, only for non-strict durability modes (started with first journal file)
+    private AsyncJournalWriter asyncWriter;
+    private AsyncJournalWriter.Block currentBlock;
+
+    // compact records encoder (optional), state is reset for every new file
+    private final CompactJournalCodec journalCodec;
+
+    // 0 - replay journal on calling thread
+    private final int journalReplayThreads;
+
+    // preallocated memory-mapped journal segments (optional)
+    private final MappedJournalSegments mappedSegments;
+
+    // hot-standby replication (null - disabled)
+    private final IJournalShipper journalShipper;
+
+    private ByteBuffer journalWriteBuffer;
+    private ByteBuffer lz4WriteBuffer;
+
+    // space reserved for checksum header at the beginning of every block (0 - no checksums)
+    private final int blockHeaderSize;
 
     // TODO configurable
     private final LZ4Compressor lz4CompressorSnapshot;
+
+    // background snapshot compression and writing (null - done by module thread)
+    private final ExecutorService snapshotWriter;
+    private final AtomicInteger pendingSnapshots = new AtomicInteger();
+
+    // snapshots not stored because of capture or write errors (any mode)
+    private final AtomicLong failedSnapshots = new AtomicLong();
+
+    // chunked snapshot format (null - single LZ4 frame stream)
+    private final ForkJoinPool snapshotCompressPool;
+    private final int snapshotBlockSize;
     private final LZ4Compressor lz4CompressorJournal;
-    private final LZ4SafeDecompressor lz4SafeDecompressor = LZ4Factory.fastestInstance().safeDecompressor();
 
-    private ConcurrentSkipListMap<Long, SnapshotDescriptor> snapshotsIndex;
+    // binary catalog of stored snapshots and journal partitions
+    private final SnapshotCatalog catalog;
+    private final int numMatchingEngines;
+    private final int numRiskEngines;
+
+    // removes files of old recovery points (null - keep everything)
+    private final JournalRetentionManager retentionManager;
 
     private SnapshotDescriptor lastSnapshotDescriptor;
     private JournalDescriptor lastJournalDescriptor;
@@ -85,8 +137,35 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 
     private long writtenBytes = 0;
 
+    // sparse seq->offset index of current journal file
+    private JournalIndex.Writer indexWriter;
+    private boolean indexPointPending = false;
+    private long lastIndexedOffset = 0;
+    private long blockFirstSeq = -1;
+
+    // currently written journal partition (for catalog)
+    private long partitionSnapshotId;
+    private int partitionId = 0;
+    private long partitionFirstSeq = -1;
+    private long partitionLastSeq = -1;
+
+    // journal metrics (written by journaling thread only)
+    private final PaddedCounter journalBytesCounter = new PaddedCounter();
+    private final PaddedCounter journalFlushesCounter = new PaddedCounter();
+    private final PaddedCounter journalFilesCounter = new PaddedCounter();
+    private final PaddedCounter journalForcesCounter = new PaddedCounter();
+    private final PaddedCounter journalIoStallsCounter = new PaddedCounter();
+
     private static final int MAX_COMMAND_SIZE_BYTES = 256;
 
+    // state image grows on demand, in-flight background snapshot holds only its actual size
+    private static final int INITIAL_IMAGE_SIZE = 1024 * 1024;
+
+    private static final long EXECUTOR_SHUTDOWN_TIMEOUT_SEC = 30;
+
+    // minimal distance between indexed blocks
+    private static final long INDEX_INTERVAL_BYTES = 256 * 1024;
+
 //    private List<Integer> batchSizes = new ArrayList<>(100000);
 //    final SingleWriterRecorder hdrRecorderRaw = new SingleWriterRecorder(Integer.MAX_VALUE, 2);
 //    final SingleWriterRecorder hdrRecorderLz4 = new SingleWriterRecorder(Integer.MAX_VALUE, 2);
@@ -106,20 +185,89 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
         this.lastJournalDescriptor = null; // no journal
         this.lastSnapshotDescriptor = SnapshotDescriptor.createEmpty(perfCfg.getMatchingEnginesNum(), perfCfg.getRiskEnginesNum());
 
+        this.numMatchingEngines = perfCfg.getMatchingEnginesNum();
+        this.numRiskEngines = perfCfg.getRiskEnginesNum();
+        try {
+            this.catalog = new SnapshotCatalog(resolveCatalogPath(folder, exchangeId));
+        } catch (final IOException ex) {
+            throw new IllegalStateException("Can not read snapshot catalog", ex);
+        }
+
+        // continue journal of the loaded snapshot after already written partitions
+        this.filesCounter = findJournalPartitions(baseSnapshotId).size();
+
         final int journalBufferSize = diskConfig.getJournalBufferSize();
 
-        this.journalFileMaxSize = diskConfig.getJournalFileMaxSize() - journalBufferSize;
+        // mapped segment can not exceed 2GB
+        final long fileMaxSize = diskConfig.isJournalMmapSegments()
+                ? Math.min(diskConfig.getJournalFileMaxSize(), Integer.MAX_VALUE)
+                : diskConfig.getJournalFileMaxSize();
+
+        this.journalFileMaxSize = fileMaxSize - journalBufferSize;
 
         this.journalBufferFlushTrigger = journalBufferSize - MAX_COMMAND_SIZE_BYTES; // less than max command size in bytes
         this.journalBatchCompressThreshold = diskConfig.getJournalBatchCompressThreshold();
 
-        this.journalWriteBuffer = ByteBuffer.allocateDirect(journalBufferSize);
-
         this.lz4CompressorJournal = diskConfig.getJournalLz4CompressorFactory().get();
         this.lz4CompressorSnapshot = diskConfig.getSnapshotLz4CompressorFactory().get();
 
-        final int maxCompressedBlockLength = lz4CompressorJournal.maxCompressedLength(journalBufferSize);
-        this.lz4WriteBuffer = ByteBuffer.allocate(maxCompressedBlockLength);
+        this.snapshotWriter = diskConfig.isSnapshotBackgroundCompression()
+                ? Executors.newSingleThreadExecutor(r -> {
+                    final Thread thread = new Thread(r, "S-WRITER-" + exchangeId);
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
+
+        this.snapshotCompressPool = diskConfig.isSnapshotChunkedFormat()
+                ? new ForkJoinPool(Math.max(1, diskConfig.getSnapshotCompressThreads()))
+                : null;
+        this.snapshotBlockSize = diskConfig.getSnapshotBlockSize();
+        if (snapshotCompressPool != null && snapshotBlockSize < ChunkedSnapshotFile.MIN_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Snapshot block size should be at least " + ChunkedSnapshotFile.MIN_BLOCK_SIZE + ", got " + snapshotBlockSize);
+        }
+
+        this.durabilityMode = diskConfig.getJournalDurabilityMode() != null
+                ? diskConfig.getJournalDurabilityMode()
+                : JournalDurabilityMode.STRICT_SYNC;
+
+        this.forceIntervalNs = durabilityMode == JournalDurabilityMode.GROUP_COMMIT
+                ? TimeUnit.MICROSECONDS.toNanos(diskConfig.getJournalGroupCommitIntervalUs())
+                : TimeUnit.MILLISECONDS.toNanos(diskConfig.getJournalForceIntervalMs());
+        this.groupCommitBytes = diskConfig.getJournalGroupCommitBytes();
+
+        this.journalReplayThreads = diskConfig.getJournalReplayThreads();
+
+        this.journalCodec = diskConfig.isJournalCompactRecords() ? new CompactJournalCodec() : null;
+
+        this.blockHeaderSize = diskConfig.isJournalBlockChecksums() ? JournalBlockChecksum.HEADER_SIZE : 0;
+
+        this.journalShipper = diskConfig.getJournalShipperFactory() != null ? diskConfig.getJournalShipperFactory().get() : null;
+
+        this.retentionManager = diskConfig.getRetentionRecoveryPoints() > 0
+                ? new JournalRetentionManager(
+                folder,
+                exchangeId,
+                catalog,
+                diskConfig.getRetentionRecoveryPoints(),
+                exchangeConfig.getSerializationCfg().isEnableJournaling(),
+                diskConfig.getRetentionArchiveFolder() != null ? Paths.get(diskConfig.getRetentionArchiveFolder()) : null)
+                : null;
+
+        this.mappedSegments = diskConfig.isJournalMmapSegments()
+                ? new MappedJournalSegments(fileMaxSize, folder.resolve(exchangeId + "_segment.spare"), durabilityMode, forceIntervalNs, groupCommitBytes, journalForcesCounter, "J-SEG-" + exchangeId)
+                : null;
+        if (mappedSegments != null && exchangeConfig.getSerializationCfg().isEnableJournaling()) {
+            // first partition also opens prepared segment
+            mappedSegments.prepareNext();
+        }
+
+        // non-strict channel modes take buffers from async writer
+        if (durabilityMode == JournalDurabilityMode.STRICT_SYNC || mappedSegments != null) {
+            this.journalWriteBuffer = ByteBuffer.allocateDirect(journalBufferSize);
+            this.lz4WriteBuffer = ByteBuffer.allocate(maxBlockPayloadSize(journalBufferSize));
+            resetBlockBuffers();
+        }
     }
 
     @Override
@@ -132,8 +280,155 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 
         final Path path = resolveSnapshotPath(snapshotId, type, instanceId);
 
+        if (Files.exists(path)) {
+            log.error("Snapshot file already exists: {}", path);
+            return false;
+        }
+
+        // write into temporary file first, so incomplete snapshot is never visible
+        final Path tmpPath = path.resolveSibling(path.getFileName() + ".tmp");
+
+        // serialize module state at the persist sequence (on module thread, cost is proportional to state size)
+        final SnapshotFileWrite fileWrite;
+        final long deltaBaseSnapshotId;
+        if (snapshotCompressPool != null) {
+            // full blocks are compressed and written by pool while serialization continues
+            final ChunkedSnapshotFile.Writer writer;
+            try {
+                writer = new ChunkedSnapshotFile.Writer(tmpPath, snapshotBlockSize, lz4CompressorSnapshot, snapshotCompressPool);
+            } catch (final IOException ex) {
+                failedSnapshots.incrementAndGet();
+                log.error("Can not create snapshot file {}: ", tmpPath, ex);
+                return false;
+            }
+            try {
+                writer.writeModule(obj);
+            } catch (final RuntimeException ex) {
+                closeQuietly(writer);
+                failedSnapshots.incrementAndGet();
+                log.error("Can not capture state for snapshot {}: ", path, ex);
+                return false;
+            }
+            deltaBaseSnapshotId = findDeltaBase(writer.head());
+            fileWrite = () -> {
+                try (final ChunkedSnapshotFile.Writer w = writer) {
+                    w.finish();
+                }
+            };
+        } else {
+            final Bytes<ByteBuffer> image = Bytes.elasticByteBuffer(INITIAL_IMAGE_SIZE);
+            try {
+                final Wire wire = WireType.RAW.apply(image);
+                wire.writeBytes(obj);
+            } catch (final RuntimeException ex) {
+                image.release();
+                failedSnapshots.incrementAndGet();
+                log.error("Can not capture state for snapshot {}: ", path, ex);
+                return false;
+            }
+            final ByteBuffer head = image.underlyingObject().duplicate();
+            head.limit(Math.toIntExact(image.readLimit()));
+            deltaBaseSnapshotId = findDeltaBase(head);
+            fileWrite = () -> {
+                try {
+                    writeLz4FrameSnapshot(tmpPath, image);
+                } finally {
+                    image.release();
+                }
+            };
+        }
+
+        if (snapshotWriter == null) {
+            final boolean isSuccess = writeSnapshot(path, tmpPath, fileWrite, snapshotId, deltaBaseSnapshotId, seq, timestampNs, type, instanceId);
+            if (!isSuccess) {
+                failedSnapshots.incrementAndGet();
+            }
+            return isSuccess;
+        }
+
+        // compression and disk writes are done by background thread, module continues processing
+        // failures are only logged and counted (snapshot.failed), failed snapshot never appears in the catalog
+        pendingSnapshots.incrementAndGet();
+        snapshotWriter.execute(() -> {
+            try {
+                if (!writeSnapshot(path, tmpPath, fileWrite, snapshotId, deltaBaseSnapshotId, seq, timestampNs, type, instanceId)) {
+                    failedSnapshots.incrementAndGet();
+                }
+            } catch (final RuntimeException ex) {
+                failedSnapshots.incrementAndGet();
+                log.error("Can not write snapshot {}: ", path, ex);
+            } finally {
+                pendingSnapshots.decrementAndGet();
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Completes temporary snapshot file, releases captured state in any case.
+     */
+    @FunctionalInterface
+    private interface SnapshotFileWrite {
+        void complete() throws IOException;
+    }
+
+    /**
+     * @param head - beginning of serialized module image
+     * @return base snapshot id if module image is a delta snapshot, 0 otherwise
+     */
+    private static long findDeltaBase(final ByteBuffer head) {
+        // wire document header (int) is followed by delta marker (int) and base snapshot id (long)
+        final ByteBuffer buffer = head.duplicate().order(ByteOrder.nativeOrder());
+        return buffer.limit() >= 16 && buffer.getInt(4) == DELTA_SNAPSHOT_MARKER ? buffer.getLong(8) : 0L;
+    }
+
+    private boolean writeSnapshot(final Path path,
+                                  final Path tmpPath,
+                                  final SnapshotFileWrite fileWrite,
+                                  final long snapshotId,
+                                  final long deltaBaseSnapshotId,
+                                  final long seq,
+                                  final long timestampNs,
+                                  final SerializedModuleType type,
+                                  final int instanceId) {
+
         log.debug("Writing state into file {} ...", path);
 
+        try {
+            fileWrite.complete();
+        } catch (final IOException ex) {
+            log.error("Can not write snapshot file: ", ex);
+            deleteQuietly(tmpPath);
+            return false;
+        }
+
+        try {
+            Files.move(tmpPath, path, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("completed {}", path);
+        } catch (final IOException ex) {
+            log.error("Can not move snapshot file into place: ", ex);
+            deleteQuietly(tmpPath);
+            return false;
+        }
+
+        try {
+            if (deltaBaseSnapshotId != 0) {
+                catalog.appendDeltaBase(snapshotId, deltaBaseSnapshotId);
+            }
+            final boolean completed = catalog.appendSnapshotModule(snapshotId, baseSeq + seq, timestampNs, type, instanceId, numMatchingEngines, numRiskEngines);
+            if (completed && retentionManager != null) {
+                retentionManager.schedule();
+            }
+        } catch (final IOException ex) {
+            log.error("Can not write snapshot catalog: ", ex);
+            return false;
+        }
+
+        return true;
+    }
+
+    private void writeLz4FrameSnapshot(final Path path, final Bytes<ByteBuffer> image) throws IOException {
+
         try (final OutputStream os = Files.newOutputStream(path, StandardOpenOption.CREATE_NEW);
              final OutputStream bos = new BufferedOutputStream(os);
              final LZ4FrameOutputStream lz4os = new LZ4FrameOutputStream(
@@ -142,34 +437,77 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
                      -1,
                      lz4CompressorSnapshot,
                      XXHashFactory.fastestInstance().hash32(),
-                     LZ4FrameOutputStream.FLG.Bits.BLOCK_INDEPENDENCE);
-             final WireToOutputStream2 wireToOutputStream = new WireToOutputStream2(WireType.RAW, lz4os)) {
+                     LZ4FrameOutputStream.FLG.Bits.BLOCK_INDEPENDENCE,
+                     LZ4FrameOutputStream.FLG.Bits.BLOCK_CHECKSUM,
+                     LZ4FrameOutputStream.FLG.Bits.CONTENT_CHECKSUM);
+             final DataOutputStream dos = new DataOutputStream(lz4os)) {
 
-            final Wire wire = wireToOutputStream.getWire();
+            dos.writeInt(Math.toIntExact(image.readRemaining()));
 
-            wire.writeBytes(obj);
+            final byte[] buf = new byte[1024 * 1024];
+            while (image.readRemaining() > 0) {
+                final int read = image.read(buf);
+                dos.write(buf, 0, read);
+            }
+        }
+    }
 
-            log.debug("done serializing, flushing {} ...", path);
-            wireToOutputStream.flush();
-            //bos.flush();
-            log.debug("completed {}", path);
+    private static void closeQuietly(final ChunkedSnapshotFile.Writer writer) {
+        try {
+            writer.close();
+        } catch (final IOException ex) {
+            log.warn("Can not discard snapshot file: {}", ex.getMessage());
+        }
+    }
 
+    private static void deleteQuietly(final Path path) {
+        try {
+            Files.deleteIfExists(path);
         } catch (final IOException ex) {
-            log.error("Can not write snapshot file: ", ex);
-            return false;
+            log.warn("Can not delete {}: {}", path, ex.getMessage());
         }
+    }
 
-        synchronized (this) {
-            // TODO improve format
-            try (final OutputStream os = Files.newOutputStream(resolveMainLogPath(), StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
-                os.write((System.currentTimeMillis() + " seq=" + seq + " timestampNs=" + timestampNs + " snapshotId=" + snapshotId + " type=" + type.code + " instance=" + instanceId + "\n").getBytes());
-            } catch (final IOException ex) {
-                log.error("Can not write main log file: ", ex);
-                return false;
-            }
+    @Override
+    public void awaitPendingSnapshots() {
+        if (snapshotWriter == null) {
+            return;
         }
+        try {
+            // single writer thread - completes after all previously submitted snapshots
+            snapshotWriter.submit(() -> {
+            }).get();
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
 
-        return true;
+    @Override
+    public void close() {
+        awaitPendingSnapshots();
+        if (snapshotWriter != null) {
+            shutdownExecutor(snapshotWriter);
+        }
+        if (snapshotCompressPool != null) {
+            shutdownExecutor(snapshotCompressPool);
+        }
+        // retention can be scheduled by snapshot writer, so it is stopped last
+        if (retentionManager != null) {
+            retentionManager.close();
+        }
+    }
+
+    static void shutdownExecutor(final ExecutorService executor) {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(EXECUTOR_SHUTDOWN_TIMEOUT_SEC, TimeUnit.SECONDS)) {
+                log.warn("Executor did not terminate in {}s", EXECUTOR_SHUTDOWN_TIMEOUT_SEC);
+            }
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     @Override
@@ -181,20 +519,31 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
         final Path path = resolveSnapshotPath(snapshotId, type, instanceId);
 
         log.debug("Loading state from {}", path);
-        try (final InputStream is = Files.newInputStream(path, StandardOpenOption.READ);
-             final InputStream bis = new BufferedInputStream(is);
-             final LZ4FrameInputStream lz4is = new LZ4FrameInputStream(bis)) {
-
-            // TODO improve reading algorithm
-            final InputStreamToWire inputStreamToWire = new InputStreamToWire(WireType.RAW, lz4is);
-            final Wire wire = inputStreamToWire.readOne();
+        try {
+            if (ChunkedSnapshotFile.isChunked(path)) {
+                final ForkJoinPool pool = snapshotCompressPool != null ? snapshotCompressPool : ForkJoinPool.commonPool();
+                final ByteBuffer image = ChunkedSnapshotFile.readImage(path, pool);
+                final Bytes<ByteBuffer> bytes = Bytes.wrapForRead(image);
+                try {
+                    log.debug("start de-serializing...");
+                    return readModule(WireType.RAW.apply(bytes), initFunc);
+                } finally {
+                    bytes.release();
+                    BufferUtil.free(image);
+                }
+            }
 
-            log.debug("start de-serializing...");
+            try (final InputStream is = Files.newInputStream(path, StandardOpenOption.READ);
+                 final InputStream bis = new BufferedInputStream(is);
+                 final LZ4FrameInputStream lz4is = new LZ4FrameInputStream(bis)) {
 
-            AtomicReference<T> ref = new AtomicReference<>();
-            wire.readBytes(bytes -> ref.set(initFunc.apply(bytes)));
+                // TODO improve reading algorithm
+                final InputStreamToWire inputStreamToWire = new InputStreamToWire(WireType.RAW, lz4is);
+                final Wire wire = inputStreamToWire.readOne();
 
-            return ref.get();
+                log.debug("start de-serializing...");
+                return readModule(wire, initFunc);
+            }
 
         } catch (final IOException ex) {
             log.error("Can not read snapshot file: ", ex);
@@ -202,40 +551,12 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
         }
     }
 
-    public class WireToOutputStream2 implements AutoCloseable {
-        private final Bytes<ByteBuffer> bytes = Bytes.elasticByteBuffer(128 * 1024 * 1024);
-        private final Wire wire;
-        private final DataOutputStream dos;
-
-        public WireToOutputStream2(WireType wireType, OutputStream os) {
-            wire = wireType.apply(bytes);
-            dos = new DataOutputStream(os);
-        }
-
-        public Wire getWire() {
-            wire.clear();
-            return wire;
-        }
-
-        public void flush() throws IOException {
-            int length = Math.toIntExact(bytes.readRemaining());
-            dos.writeInt(length);
-
-            final byte[] buf = new byte[1024 * 1024];
-
-            while (bytes.readPosition() < bytes.readLimit()) {
-                int read = bytes.read(buf);
-                dos.write(buf, 0, read);
-            }
-        }
-
-        @Override
-        public void close() {
-            bytes.release();
-        }
+    private static <T> T readModule(final Wire wire, final Function<BytesIn, T> initFunc) {
+        final AtomicReference<T> ref = new AtomicReference<>();
+        wire.readBytes(bytes -> ref.set(initFunc.apply(bytes)));
+        return ref.get();
     }
 
-
     // single threaded
     @Override
     public void writeToJournal(OrderCommand cmd, long dSeq, boolean eob) throws IOException {
@@ -249,14 +570,30 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
             log.info("Enabled journaling at seq = {} ({}+{})", enableJournalAfterSeq + 1, baseSeq, dSeq);
         }
 
-        boolean debug = false;
-
 //        log.debug("Writing {}", cmd);
 
         final OrderCommandType cmdType = cmd.command;
 
         if (cmdType == OrderCommandType.SHUTDOWN_SIGNAL) {
-            flushBufferSync(false, cmd.timestamp);
+            if (isJournalFileOpened()) {
+                flushBufferSync(false, cmd.timestamp);
+                closePartition(cmd.timestamp);
+            }
+            if (mappedSegments != null) {
+                mappedSegments.close();
+            }
+            if (indexWriter != null) {
+                indexWriter.close();
+                indexWriter = null;
+            }
+            if (journalShipper != null) {
+                journalShipper.close();
+            }
+            if (asyncWriter != null) {
+                asyncWriter.close();
+                asyncWriter = null;
+                raf.close();
+            }
             log.debug("Shutdown signal received, flushed to disk");
             return;
         }
@@ -266,12 +603,55 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
             return;
         }
 
-        if (channel == null) {
+        if (!isJournalFileOpened()) {
             startNewFile(cmd.timestamp);
         }
 
         final ByteBuffer buffer = journalWriteBuffer;
 
+        if (blockFirstSeq == -1) {
+            blockFirstSeq = baseSeq + dSeq;
+        }
+        if (partitionFirstSeq == -1) {
+            partitionFirstSeq = baseSeq + dSeq;
+        }
+        partitionLastSeq = baseSeq + dSeq;
+
+        if (journalCodec != null) {
+            journalCodec.encode(cmd, baseSeq + dSeq, buffer);
+        } else {
+            writeFixedWidthRecord(cmd, dSeq, buffer);
+        }
+
+        if (cmdType == OrderCommandType.PERSIST_STATE_RISK) {
+
+            // register snapshot change
+            registerNextSnapshot(cmd.orderId, baseSeq + dSeq, cmd.timestamp);
+
+            // start new file
+            baseSnapshotId = cmd.orderId;
+            filesCounter = 0;
+
+            flushBufferSync(true, cmd.timestamp);
+
+        } else if (cmdType == OrderCommandType.RESET) {
+
+            // forcing to start next journal file on reset (useful for testing)
+            flushBufferSync(true, cmd.timestamp);
+
+        } else if (eob || buffer.position() >= journalBufferFlushTrigger) {
+
+            // flushing on end of batch or when buffer is full
+            flushBufferSync(false, cmd.timestamp);
+        }
+
+    }
+
+    private void writeFixedWidthRecord(final OrderCommand cmd, final long dSeq, final ByteBuffer buffer) {
+
+        final boolean debug = false;
+        final OrderCommandType cmdType = cmd.command;
+
         // mandatory fields
         buffer.put(cmdType.getCode()); // 1 byte
         buffer.putLong(baseSeq + dSeq); // 8 bytes - can be compressed as delta
@@ -355,29 +735,6 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 //                cmdType == OrderCommandType.PERSIST_STATE_RISK) {
 //            buffer.putLong(cmd.orderId); // 8 bytes
         }
-
-        if (cmdType == OrderCommandType.PERSIST_STATE_RISK) {
-
-            // register snapshot change
-            registerNextSnapshot(cmd.orderId, baseSeq + dSeq, cmd.timestamp);
-
-            // start new file
-            baseSnapshotId = cmd.orderId;
-            filesCounter = 0;
-
-            flushBufferSync(true, cmd.timestamp);
-
-        } else if (cmdType == OrderCommandType.RESET) {
-
-            // forcing to start next journal file on reset (useful for testing)
-            flushBufferSync(true, cmd.timestamp);
-
-        } else if (eob || buffer.position() >= journalBufferFlushTrigger) {
-
-            // flushing on end of batch or when buffer is full
-            flushBufferSync(false, cmd.timestamp);
-        }
-
     }
 
     @Override
@@ -395,12 +752,104 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 
     @Override
     public NavigableMap<Long, SnapshotDescriptor> findAllSnapshotPoints() {
-        return snapshotsIndex;
+        return catalog.buildSnapshotIndex();
+    }
+
+    /**
+     * Find the latest snapshot having all modules stored and its journal tail, using snapshot catalog.
+     *
+     * @param exchangeId - exchange id
+     * @param diskConfig - disk serialization configuration (storage folder)
+     * @return configuration to load the latest snapshot and replay its journal, or clean start (journaling) if nothing was stored
+     */
+    public static InitialStateConfiguration findLastKnownState(String exchangeId, DiskSerializationProcessorConfiguration diskConfig) {
+
+        final Path folder = Paths.get(diskConfig.getStorageFolder());
+
+        final SnapshotCatalog.RecoveryPoint recoveryPoint;
+        try {
+            recoveryPoint = new SnapshotCatalog(resolveCatalogPath(folder, exchangeId)).findLatestRecoveryPoint();
+        } catch (final IOException ex) {
+            throw new IllegalStateException("Can not read snapshot catalog", ex);
+        }
+
+        final long snapshotId = recoveryPoint.getSnapshotId();
+
+        // last partition is not in the catalog if it was not closed properly
+        final boolean hasJournal = !recoveryPoint.getJournal().isEmpty()
+                || Files.exists(folder.resolve(journalFileName(exchangeId, 1, snapshotId)));
+
+        log.info("Last known state: snapshot {} seq={}, journal partitions: {}, last journal seq: {}",
+                snapshotId, recoveryPoint.getSeq(), recoveryPoint.getJournal().size(), recoveryPoint.getLastJournalSeq());
+
+        return InitialStateConfiguration.builder()
+                .exchangeId(exchangeId)
+                .snapshotId(snapshotId)
+                .snapshotBaseSeq(recoveryPoint.getSeq())
+                .throwIfSnapshotNotFound(true)
+                .journalTimestampNs(hasJournal ? Long.MAX_VALUE : 0)
+                .build();
     }
 
     @Override
-    public void replayJournalStep(long snapshotId, long seqFrom, long seqTo, ExchangeApi exchangeApi) {
-        throw new UnsupportedOperationException();
+    public void replayJournalStep(long snapshotId, long seqFrom, long seqTo, ExchangeApi api) {
+
+        if (seqTo <= seqFrom) {
+            return;
+        }
+
+        final List<Path> partitions = findJournalPartitions(snapshotId);
+        final long firstSeq = seqFrom + 1;
+
+        // find partition and indexed block containing first sequence
+        int startPartition = 0;
+        long startOffset = 0;
+        try {
+            final long[][] indexes = new long[partitions.size()][];
+            boolean indexed = true;
+            for (int i = 0; i < partitions.size() && indexed; i++) {
+                indexes[i] = JournalIndex.read(resolveJournalIndexPath(i + 1, snapshotId));
+                indexed = indexes[i] != null;
+            }
+
+            if (indexed) {
+                for (int i = 0; i < partitions.size(); i++) {
+                    if (indexes[i].length != 0 && indexes[i][0] <= firstSeq) {
+                        startPartition = i;
+                    }
+                }
+                if (!partitions.isEmpty()) {
+                    startOffset = JournalIndex.findOffset(indexes[startPartition], firstSeq);
+                }
+            } else {
+                log.info("Journal index is not available for snapshot {}, scanning from the beginning", snapshotId);
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Can not read journal index", ex);
+        }
+
+        log.debug("Replaying journal step ({}, {}] from partition {} offset {}", seqFrom, seqTo, startPartition + 1, startOffset);
+
+        api.groupingControl(0, 0);
+
+        final JournalRecordReader reader = new JournalRecordReader();
+        final ObjLongConsumer<OrderCommand> handler = (cmd, seq) -> {
+            if (seq > seqTo) {
+                reader.stop();
+            } else if (seq > seqFrom) {
+                replayCommand(cmd, api);
+            }
+        };
+
+        for (int i = startPartition; i < partitions.size() && !reader.isStopped(); i++) {
+            try (final FileChannel fc = FileChannel.open(partitions.get(i), StandardOpenOption.READ)) {
+                fc.position(i == startPartition ? startOffset : 0);
+                final DataInputStream dis = new DataInputStream(new BufferedInputStream(Channels.newInputStream(fc)));
+                reader.readFile(dis, handler);
+            } catch (IOException ex) {
+                log.debug("File end reached through exception");
+            }
+        }
     }
 
     @Override
@@ -416,9 +865,19 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 
         api.groupingControl(0, 0);
 
+        if (journalReplayThreads > 0) {
+            return new JournalReplayPipeline(journalReplayThreads).replay(findJournalPartitions(initialCfg.getSnapshotId()), api);
+        }
 
         final MutableLong lastSeq = new MutableLong();
-        // TODO refactor reading, use EOF flag
+        final JournalRecordReader reader = new JournalRecordReader();
+        final ObjLongConsumer<OrderCommand> handler = (cmd, seq) -> {
+            if (seq != lastSeq.value + 1) {
+                log.warn("Sequence gap {}->{} ({})", lastSeq, seq, seq - lastSeq.value);
+            }
+            lastSeq.value = seq;
+            replayCommand(cmd, api);
+        };
 
         int partitionCounter = 1;
         while (true) {
@@ -430,7 +889,7 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
                  final BufferedInputStream bis = new BufferedInputStream(fis);
                  final DataInputStream dis = new DataInputStream(bis)) {
 
-                readCommands(dis, api, lastSeq, false);
+                reader.readFile(dis, handler);
                 partitionCounter++;
                 log.debug("File end reached, try next partition {}...", partitionCounter);
 
@@ -445,193 +904,64 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
         }
     }
 
+    private static void replayCommand(final OrderCommand cmd, final ExchangeApi api) {
 
-    private void readCommands(final DataInputStream jr,
-                              final ExchangeApi api,
-                              final MutableLong lastSeq,
-                              boolean insideCompressedBlock) throws IOException {
-
-        while (jr.available() != 0) {
-
-            boolean debug = false;
-//            boolean debug = insideCompressedBlock;
-
-            final byte cmd = jr.readByte();
-
-            if (debug) log.debug("COMPR STEP lastSeq={} ", lastSeq);
-
-            if (cmd == OrderCommandType.RESERVED_COMPRESSED.getCode()) {
-
-                if (insideCompressedBlock) {
-                    throw new IllegalStateException("Recursive compression block (data corrupted)");
-                }
-
-                int size = jr.readInt();
-                int origSize = jr.readInt();
-
-//                log.debug("{}->{}", size, origSize);
-
-                if (size > 1000000) {
-                    throw new IllegalStateException("Bad compressed block size = " + size + "(data corrupted)");
-                }
-
-                if (origSize > 1000000) {
-                    throw new IllegalStateException("Bad original block size = " + size + "(data corrupted)");
-                }
-
-                byte[] compressedArray = new byte[size];
-                int read = jr.read(compressedArray);
-                if (read < size) {
-                    throw new IOException("Can not read full block (only " + read + " bytes, not all " + size + " bytes) ");
-                }
-
-//                log.debug("Decoding block {}", origSize);
-                byte[] originalArray = lz4SafeDecompressor.decompress(compressedArray, origSize);
-
-                // read compressed block recursively
-                try (final ByteArrayInputStream bis = new ByteArrayInputStream(originalArray);
-                     final DataInputStream dis = new DataInputStream(bis)) {
-
-                    readCommands(dis, api, lastSeq, true);
-                }
-
-            } else {
-
-                final long seq = jr.readLong();
-
-                final long timestampNs = jr.readLong();
-                final int serviceFlags = jr.readInt();
-                final long eventsGroup = jr.readLong();
-                final OrderCommandType cmdType = OrderCommandType.fromCode(cmd);
-
-                if (seq != lastSeq.value + 1) {
-                    log.warn("Sequence gap {}->{} ({})", lastSeq, seq, seq - lastSeq.value);
-//                    log.debug("timestampNs={} eventsGroup={} serviceFlags={} cmdType={}", timestampNs, eventsGroup, serviceFlags, cmdType);
-                }
-
-                lastSeq.value = seq;
-
-//                log.debug("command seq={} {}", lastSeq, cmdType);
-
-                if (debug) log.debug("eventsGroup={} serviceFlags={} cmdType={}", eventsGroup, serviceFlags, cmdType);
-
-                if (cmdType == OrderCommandType.MOVE_ORDER) {
-
-                    final long uid = jr.readLong(); // 8 bytes can be compressed as dictionary
-                    final int symbol = jr.readInt();// 4 bytes can be compressed as dictionary
-                    final long orderId = jr.readLong(); // 8 bytes - can be compressed as delta
-                    final long price = jr.readLong(); // 8 bytes - can be compressed as delta
-
-                    if (debug) log.debug("move order seq={} t={} orderId={} symbol={} uid={} price={}", lastSeq, timestampNs, orderId, symbol, uid, price);
-
-                    api.moveOrder(serviceFlags, eventsGroup, timestampNs, price, orderId, symbol, uid);
-
-                } else if (cmdType == OrderCommandType.CANCEL_ORDER) {
-
-                    final long uid = jr.readLong(); // 8 bytes can be compressed as dictionary
-                    final int symbol = jr.readInt();// 4 bytes can be compressed as dictionary
-                    final long orderId = jr.readLong(); // 8 bytes - can be compressed as delta
-
-                    if (debug) log.debug("cancel order seq={} t={} orderId={} symbol={} uid={}", lastSeq, timestampNs, orderId, symbol, uid);
-
-                    api.cancelOrder(serviceFlags, eventsGroup, timestampNs, orderId, symbol, uid);
-
-                } else if (cmdType == OrderCommandType.REDUCE_ORDER) {
-
-                    final long uid = jr.readLong(); // 8 bytes can be compressed as dictionary
-                    final int symbol = jr.readInt();// 4 bytes can be compressed as dictionary
-                    final long orderId = jr.readLong(); // 8 bytes - can be compressed as delta
-                    final long reduceSize = jr.readLong(); // 8 bytes - can be compressed as low value
+        final int serviceFlags = cmd.serviceFlags;
+        final long eventsGroup = cmd.eventsGroup;
+        final long timestampNs = cmd.timestamp;
 
-                    if (debug) log.debug("reduce order seq={} t={} orderId={} symbol={} uid={} reduceSize={}", lastSeq, timestampNs, orderId, symbol, uid, reduceSize);
+        switch (cmd.command) {
+            case MOVE_ORDER:
+                api.moveOrder(serviceFlags, eventsGroup, timestampNs, cmd.price, cmd.orderId, cmd.symbol, cmd.uid);
+                break;
 
-                    api.reduceOrder(serviceFlags, eventsGroup, timestampNs, reduceSize, orderId, symbol, uid);
+            case CANCEL_ORDER:
+                api.cancelOrder(serviceFlags, eventsGroup, timestampNs, cmd.orderId, cmd.symbol, cmd.uid);
+                break;
 
-                } else if (cmdType == OrderCommandType.PLACE_ORDER) {
+            case REDUCE_ORDER:
+                api.reduceOrder(serviceFlags, eventsGroup, timestampNs, cmd.size, cmd.orderId, cmd.symbol, cmd.uid);
+                break;
 
-                    final long uid = jr.readLong(); // 8 bytes can be compressed as dictionary
-                    final int symbol = jr.readInt();// 4 bytes can be compressed as dictionary
-                    final long orderId = jr.readLong(); // 8 bytes - can be compressed as delta
-                    final long price = jr.readLong(); // 8 bytes - can be compressed as delta
-                    final long reservedBidPrice = jr.readLong(); // 8 bytes - can be compressed (diff to price or 0)
-                    final long size = jr.readLong(); // 8 bytes - can be compressed
-                    final int userCookie = jr.readInt(); // 4 bytes can be compressed as a optional low value
+            case PLACE_ORDER:
+                api.placeNewOrder(serviceFlags, eventsGroup, timestampNs, cmd.orderId, cmd.userCookie, cmd.price, cmd.reserveBidPrice, cmd.size, cmd.action, cmd.orderType, cmd.symbol, cmd.uid);
+                break;
 
-                    final byte actionAndType = jr.readByte(); // 1 byte
-                    final OrderAction orderAction = OrderAction.of((byte) (actionAndType & 0b1));
-                    final OrderType orderType = OrderType.of((byte) ((actionAndType >> 1) & 0b1111));
+            case BALANCE_ADJUSTMENT:
+                api.balanceAdjustment(serviceFlags, eventsGroup, timestampNs, cmd.uid, cmd.orderId, cmd.symbol, cmd.price, BalanceAdjustmentType.of(cmd.orderType.getCode()));
+                break;
 
-                    if (debug)
-                        log.debug("place order seq={} t={} orderId={} symbol={} uid={} price={} reserveBidPrice={} size={} userCookie={} {}/{} actionAndType={}", lastSeq, timestampNs, orderId, symbol, uid, price, reservedBidPrice, size, userCookie, orderAction, orderType, actionAndType);
+            case ADD_USER:
+                api.createUser(serviceFlags, eventsGroup, timestampNs, cmd.uid);
+                break;
 
-                    api.placeNewOrder(serviceFlags, eventsGroup, timestampNs, orderId, userCookie, price, reservedBidPrice, size, orderAction, orderType, symbol, uid);
+            case SUSPEND_USER:
+                api.suspendUser(serviceFlags, eventsGroup, timestampNs, cmd.uid);
+                break;
 
-                } else if (cmdType == OrderCommandType.BALANCE_ADJUSTMENT) {
+            case RESUME_USER:
+                api.resumeUser(serviceFlags, eventsGroup, timestampNs, cmd.uid);
+                break;
 
-                    final long uid = jr.readLong(); // 8 bytes can be compressed as dictionary
-                    final int currency = jr.readInt();// 4 bytes can be compressed as dictionary (currency)
-                    final long transactionId = jr.readLong(); // 8 bytes can be compressed as delta (transaction)
-                    final long amount = jr.readLong(); // 8 bytes - can be compressed as low value (amount)
-                    final BalanceAdjustmentType adjustmentType = BalanceAdjustmentType.of(jr.readByte()); // 1 byte (adjustment or suspend)
+            case BINARY_DATA_COMMAND:
+                api.binaryData(serviceFlags, eventsGroup, timestampNs, (byte) cmd.symbol, cmd.orderId, cmd.price, cmd.reserveBidPrice, cmd.size, cmd.uid);
+                break;
 
-                    if (debug) log.debug("balanceAdjustment seq={}  {} uid:{} curre:{}", lastSeq, timestampNs, uid, currency);
+            case RESET:
+                api.reset(timestampNs);
+                break;
 
-                    api.balanceAdjustment(serviceFlags, eventsGroup, timestampNs, uid, transactionId, currency, amount, adjustmentType);
+            case PERSIST_STATE_MATCHING:
+            case PERSIST_STATE_RISK:
+                // snapshot points are not replayed
+                break;
 
-                } else if (cmdType == OrderCommandType.ADD_USER) {
-
-                    final long uid = jr.readLong(); // 8 bytes can be compressed as dictionary
-
-                    if (debug) log.debug("add user  seq={}  {} uid:{} ", lastSeq, timestampNs, uid);
-
-                    api.createUser(serviceFlags, eventsGroup, timestampNs, uid);
-
-                } else if (cmdType == OrderCommandType.SUSPEND_USER) {
-
-                    final long uid = jr.readLong(); // 8 bytes can be compressed as dictionary
-
-                    if (debug) log.debug("suspend user seq={}  {} uid:{} ", lastSeq, timestampNs, uid);
-
-                    api.suspendUser(serviceFlags, eventsGroup, timestampNs, uid);
-
-                } else if (cmdType == OrderCommandType.RESUME_USER) {
-
-                    final long uid = jr.readLong(); // 8 bytes can be compressed as dictionary
-
-                    if (debug) log.debug("resume user seq={}  {} uid:{} ", lastSeq, timestampNs, uid);
-
-                    api.resumeUser(serviceFlags, eventsGroup, timestampNs, uid);
-
-                } else if (cmdType == OrderCommandType.BINARY_DATA_COMMAND) {
-
-                    final byte lastFlag = jr.readByte(); // 1 byte (0 or -1)
-                    final long word0 = jr.readLong(); // 8 bytes word0
-                    final long word1 = jr.readLong(); // 8 bytes word1
-                    final long word2 = jr.readLong(); // 8 bytes word2
-                    final long word3 = jr.readLong(); // 8 bytes word3
-                    final long word4 = jr.readLong(); // 8 bytes word4
-
-                    if (debug)
-                        log.debug("binary data seq={} t:{} {}", lastSeq, timestampNs, String.format("f=%d word0=%X word1=%X word2=%X word3=%X word4=%X", lastFlag, word0, word1, word2, word3, word4));
-
-                    api.binaryData(serviceFlags, eventsGroup, timestampNs, lastFlag, word0, word1, word2, word3, word4);
-
-                } else if (cmdType == OrderCommandType.RESET) {
-
-                    api.reset(timestampNs);
-
-                } else {
-
-                    log.debug("eventsGroup={} serviceFlags={} cmdType={}", eventsGroup, serviceFlags, cmdType);
-
-                    throw new IllegalStateException("unexpected command");
-                }
-            }
+            default:
+                log.debug("eventsGroup={} serviceFlags={} cmdType={}", eventsGroup, serviceFlags, cmd.command);
+                throw new IllegalStateException("unexpected command");
         }
-
     }
 
-
     @Override
     public void replayJournalFullAndThenEnableJouraling(InitialStateConfiguration initialStateConfiguration, ExchangeApi exchangeApi) {
         long seq = replayJournalFull(initialStateConfiguration, exchangeApi);
@@ -646,6 +976,23 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
         return exists;
     }
 
+    @Override
+    public void registerMetrics(MetricsRegistry registry) {
+        registry.gauge("journal.bytes", journalBytesCounter::get);
+        registry.gauge("journal.flushes", journalFlushesCounter::get);
+        registry.gauge("journal.files", journalFilesCounter::get);
+        registry.gauge("journal.forces", journalForcesCounter::get);
+        registry.gauge("journal.ioStalls", journalIoStallsCounter::get);
+        registry.gauge("snapshot.pending", pendingSnapshots::get);
+        registry.gauge("snapshot.failed", failedSnapshots::get);
+        if (journalShipper != null) {
+            journalShipper.registerMetrics(registry);
+        }
+        if (retentionManager != null) {
+            retentionManager.registerMetrics(registry);
+        }
+    }
+
     private void flushBufferSync(final boolean forceStartNextFile, final long timestampNs) throws IOException {
 
 //        log.debug("Flushing buffer position={}", buffer.position());
@@ -656,52 +1003,130 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 //            batchSizes = new ArrayList<>();
 //        }
 
-        if (journalWriteBuffer.position() < journalBatchCompressThreshold) {
+        final ByteBuffer payload;
+        final long blockOffset = writtenBytes;
+        final int originalLength = journalWriteBuffer.position() - blockHeaderSize; // commands code
+
+        if (originalLength < journalBatchCompressThreshold) {
             // uncompressed write for single messages or small batches
-            writtenBytes += journalWriteBuffer.position();
             journalWriteBuffer.flip();
-//            long t = System.nanoTime();
-            channel.write(journalWriteBuffer);
-//            hdrRecorderRaw.recordValue(System.nanoTime() - t);
-            journalWriteBuffer.clear();
+            payload = journalWriteBuffer;
 
         } else {
             // compressed write for bigger batches
 //            long t = System.nanoTime();
-            int originalLength = journalWriteBuffer.position(); // commands code
             journalWriteBuffer.flip();
+            journalWriteBuffer.position(blockHeaderSize);
+            lz4WriteBuffer.position(blockHeaderSize);
             lz4WriteBuffer.put(OrderCommandType.RESERVED_COMPRESSED.getCode()); // compressed block
             lz4WriteBuffer.putInt(0); // reserve space
             lz4WriteBuffer.putInt(0); // reserve space
             lz4CompressorJournal.compress(journalWriteBuffer, lz4WriteBuffer);
-            journalWriteBuffer.clear();
-            writtenBytes += lz4WriteBuffer.position();
-            int remainingCompressedLength = lz4WriteBuffer.position() - 9; // 1 + 4 + 4
-            lz4WriteBuffer.putInt(1, remainingCompressedLength); // 1 byte offset
-            lz4WriteBuffer.putInt(5, originalLength); // 1 + 4 bytes offset
-            lz4WriteBuffer.flip();
+            int remainingCompressedLength = lz4WriteBuffer.position() - blockHeaderSize - 9; // 1 + 4 + 4
+            if (remainingCompressedLength < originalLength) {
+                lz4WriteBuffer.putInt(blockHeaderSize + 1, remainingCompressedLength); // 1 byte offset
+                lz4WriteBuffer.putInt(blockHeaderSize + 5, originalLength); // 1 + 4 bytes offset
+                lz4WriteBuffer.flip();
 //            hdrRecorderLz4.recordValue(System.nanoTime() - t);
-            channel.write(lz4WriteBuffer);
-            lz4WriteBuffer.clear();
+                payload = lz4WriteBuffer;
+            } else {
+                // not compressible - write original data, so block never exceeds buffer size
+                lz4WriteBuffer.clear();
+                journalWriteBuffer.position(0);
+                payload = journalWriteBuffer;
+            }
+        }
+
+        if (originalLength == 0) {
+            // nothing to write (reserved checksum header only)
+            payload.position(payload.limit());
+        } else if (blockHeaderSize != 0) {
+            JournalBlockChecksum.seal(payload);
+        }
+        writtenBytes += payload.remaining();
+        journalBytesCounter.add(payload.remaining());
+
+        if (mappedSegments != null) {
+            // copy into mapped segment, file is switched in advance (journalFileMaxSize reserves one buffer size)
+            if (payload.remaining() > mappedSegments.remaining()) {
+                throw new IllegalStateException("Journal block of " + payload.remaining() + " bytes does not fit into segment");
+            }
+            final ByteBuffer shipped = journalShipper != null ? payload.duplicate() : null;
+            mappedSegments.append(payload);
+            ship(shipped);
+            resetBlockBuffers();
+        } else if (asyncWriter == null) {
+            // strict mode - batch is durable before results are published
+            final ByteBuffer shipped = journalShipper != null ? payload.duplicate() : null;
+            channel.write(payload);
+            channel.force(false);
+            journalForcesCounter.increment();
+            ship(shipped);
+            resetBlockBuffers();
+        } else {
+            // I/O thread writes (and then ships) the block, continue with another one
+            asyncWriter.submit(currentBlock, payload, raf, partitionLastSeq);
+            acquireNextBlock();
         }
 
+        journalFlushesCounter.increment();
+
+        if (indexPointPending && blockFirstSeq != -1) {
+            indexWriter.append(blockFirstSeq, blockOffset);
+            lastIndexedOffset = blockOffset;
+            indexPointPending = false;
+        }
+        blockFirstSeq = -1;
+
         if (forceStartNextFile || writtenBytes >= journalFileMaxSize) {
 
 //            log.info("RAW {}", LatencyTools.createLatencyReportFast(hdrRecorderRaw.getIntervalHistogram()));
 //            log.info("LZ4-compression {}", LatencyTools.createLatencyReportFast(hdrRecorderLz4.getIntervalHistogram()));
 
             // todo start preparing new file asynchronously, but ONLY ONCE
+            closePartition(timestampNs);
             startNewFile(timestampNs);
             writtenBytes = 0;
+
+        } else if (indexPointPending || writtenBytes - lastIndexedOffset >= INDEX_INTERVAL_BYTES) {
+
+            startIndexedBlock();
         }
     }
 
+    // ship block only after it is written locally
+    private void ship(final ByteBuffer block) {
+        if (block != null && block.hasRemaining()) {
+            journalShipper.ship(partitionLastSeq, block);
+        }
+    }
+
+    private boolean isJournalFileOpened() {
+        return mappedSegments != null ? mappedSegments.isOpen() : channel != null;
+    }
+
     private void startNewFile(final long timestampNs) throws IOException {
         filesCounter++;
-        if (channel != null) {
+
+        partitionSnapshotId = baseSnapshotId;
+        partitionId = filesCounter;
+        partitionFirstSeq = -1;
+        partitionLastSeq = -1;
+
+        if (mappedSegments != null) {
+            mappedSegments.open(resolveJournalPath(filesCounter, baseSnapshotId));
+            mappedSegments.prepareNext();
+            journalFilesCounter.increment();
+            registerNextJournal(baseSnapshotId, timestampNs); // TODO fix time
+            startIndex();
+            return;
+        }
+
+        if (channel != null && asyncWriter == null) {
             channel.close();
             raf.close();
         }
+        // async writer closes previous file after writing all its blocks
         final Path fileName = resolveJournalPath(filesCounter, baseSnapshotId);
 //        log.debug("Starting new journal file: {}", fileName);
 
@@ -709,10 +1134,85 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
             throw new IllegalStateException("File already exists: " + fileName);
         }
 
-        raf = new RandomAccessFile(fileName.toString(), "rwd");
+        raf = new RandomAccessFile(fileName.toString(), "rw");
         channel = raf.getChannel();
+        journalFilesCounter.increment();
+
+        if (asyncWriter == null && durabilityMode != JournalDurabilityMode.STRICT_SYNC) {
+            final int journalBufferSize = journalBufferFlushTrigger + MAX_COMMAND_SIZE_BYTES;
+            asyncWriter = new AsyncJournalWriter(
+                    durabilityMode,
+                    forceIntervalNs,
+                    groupCommitBytes,
+                    2,
+                    journalBufferSize,
+                    maxBlockPayloadSize(journalBufferSize),
+                    journalForcesCounter,
+                    journalIoStallsCounter,
+                    journalShipper,
+                    "J-IO-" + exchangeId);
+            acquireNextBlock();
+        }
 
         registerNextJournal(baseSnapshotId, timestampNs); // TODO fix time
+        startIndex();
+    }
+
+    /**
+     * Register written journal partition in the catalog (all its blocks are flushed).
+     */
+    private void closePartition(final long timestampNs) throws IOException {
+        if (partitionId != 0) {
+            catalog.appendJournalPartition(partitionSnapshotId, partitionId, partitionFirstSeq, partitionLastSeq, writtenBytes, timestampNs);
+            partitionId = 0;
+            if (retentionManager != null) {
+                // journal of the previous snapshot can be retired once its last partition is closed
+                retentionManager.schedule();
+            }
+        }
+    }
+
+    private void startIndex() throws IOException {
+        if (indexWriter != null) {
+            indexWriter.close();
+        }
+        indexWriter = new JournalIndex.Writer(resolveJournalIndexPath(filesCounter, baseSnapshotId));
+        lastIndexedOffset = 0;
+        startIndexedBlock();
+    }
+
+    /**
+     * Next block will be indexed, so reading can be started from it.
+     * Compact format state is reset (buffer is always empty at this point).
+     */
+    private void startIndexedBlock() {
+        indexPointPending = true;
+        if (journalCodec != null) {
+            journalCodec.startFile(journalWriteBuffer);
+        }
+    }
+
+    private void acquireNextBlock() throws IOException {
+        currentBlock = asyncWriter.acquire();
+        journalWriteBuffer = currentBlock.rawBuffer;
+        lz4WriteBuffer = currentBlock.lz4Buffer;
+        journalWriteBuffer.position(blockHeaderSize);
+    }
+
+    /**
+     * Clear buffers for the next block, reserving space for its checksum header.
+     */
+    private void resetBlockBuffers() {
+        journalWriteBuffer.clear();
+        journalWriteBuffer.position(blockHeaderSize);
+        lz4WriteBuffer.clear();
+    }
+
+    /**
+     * @return LZ4 block size limit: checksum header, compressed block header (code, sizes) and compressed data
+     */
+    private int maxBlockPayloadSize(final int journalBufferSize) {
+        return blockHeaderSize + 9 + lz4CompressorJournal.maxCompressedLength(journalBufferSize);
     }
 
     /**
@@ -743,14 +1243,38 @@ public final class DiskSerializationProcessor implements ISerializationProcessor
 
     private Path resolveSnapshotPath(long snapshotId, SerializedModuleType type, int instanceId) {
 
-        return folder.resolve(String.format("%s_snapshot_%d_%s%d.ecs", exchangeId, snapshotId, type.code, instanceId));
+        return folder.resolve(snapshotFileName(exchangeId, snapshotId, type, instanceId));
     }
 
-    private Path resolveMainLogPath() {
-        return folder.resolve(String.format("%s.eca", exchangeId));
+    static String snapshotFileName(String exchangeId, long snapshotId, SerializedModuleType type, int instanceId) {
+        return String.format("%s_snapshot_%d_%s%d.ecs", exchangeId, snapshotId, type.code, instanceId);
+    }
+
+    static Path resolveCatalogPath(Path folder, String exchangeId) {
+        return folder.resolve(String.format("%s.ecc", exchangeId));
     }
 
     private Path resolveJournalPath(int partitionId, long snapshotId) {
-        return folder.resolve(String.format("%s_journal_%d_%04X.ecj", exchangeId, snapshotId, partitionId));
+        return folder.resolve(journalFileName(exchangeId, partitionId, snapshotId));
+    }
+
+    static String journalFileName(String exchangeId, int partitionId, long snapshotId) {
+        return String.format("%s_journal_%d_%04X.ecj", exchangeId, snapshotId, partitionId);
+    }
+
+    static String journalIndexFileName(String exchangeId, int partitionId, long snapshotId) {
+        return String.format("%s_journal_%d_%04X.eci", exchangeId, snapshotId, partitionId);
+    }
+
+    private Path resolveJournalIndexPath(int partitionId, long snapshotId) {
+        return folder.resolve(journalIndexFileName(exchangeId, partitionId, snapshotId));
+    }
+
+    private List<Path> findJournalPartitions(long snapshotId) {
+        final List<Path> partitions = new ArrayList<>();
+        for (int partition = 1; Files.exists(resolveJournalPath(partition, snapshotId)); partition++) {
+            partitions.add(resolveJournalPath(partition, snapshotId));
+        }
+        return partitions;
     }
 }
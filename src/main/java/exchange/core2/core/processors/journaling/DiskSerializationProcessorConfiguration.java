@@ -29,6 +29,21 @@ public class DiskSerializationProcessorConfiguration {
     // note: using LZ4 HIGH will require about twice more time
     private final Supplier<LZ4Compressor> snapshotLz4CompressorFactory;
 
+    // compress and write snapshots on background thread; modules still serialize full state on their own thread at persist sequence
+    // note: storeData returns before snapshot is on disk (failures are counted by snapshot.failed metric),
+    // snapshot appears in main log and catalog once written; with single LZ4 frame format every in-flight snapshot keeps its image in memory
+    private final boolean snapshotBackgroundCompression;
+
+    // write snapshots as independently compressed blocks with block index (instead of single LZ4 frame stream)
+    // module is serialized directly into blocks, only a few blocks per compression thread are kept in memory
+    private final boolean snapshotChunkedFormat;
+
+    // chunked format: raw block size (at least 64KB)
+    private final int snapshotBlockSize;
+
+    // chunked format: number of threads compressing blocks in parallel
+    private final int snapshotCompressThreads;
+
     // -------- journal settings ---------------
 
     private final long journalFileMaxSize;
@@ -43,15 +58,63 @@ public class DiskSerializationProcessorConfiguration {
     // note: using LZ4 HIGH is not recommended because of very high impact on throughput
     private final Supplier<LZ4Compressor> journalLz4CompressorFactory;
 
+    // when journal data is forced to the device, only STRICT_SYNC mode makes results publication wait for the disk
+    private final JournalDurabilityMode journalDurabilityMode;
+
+    // GROUP_COMMIT: force after this time passed since previous force (if anything written)
+    private final long journalGroupCommitIntervalUs;
+
+    // GROUP_COMMIT: force after this amount of bytes written since previous force
+    private final long journalGroupCommitBytes;
+
+    // OS_BUFFERED: periodic force interval
+    private final long journalForceIntervalMs;
+
+    // write records in compact delta/varint format (version 1) instead of fixed-width fields
+    private final boolean journalCompactRecords;
+
+    // write xxHash32 checksum header in front of every journal block, torn last block is skipped on replay
+    private final boolean journalBlockChecksums;
+
+    // number of threads reading and decoding journal files ahead of publishing during replay (0 - read on calling thread)
+    private final int journalReplayThreads;
+
+    // write journal into preallocated memory-mapped segments of journalFileMaxSize (capped at 2GB)
+    private final boolean journalMmapSegments;
+
+    // ships every written journal block to a hot-standby follower (null - no shipping)
+    private final Supplier<IJournalShipper> journalShipperFactory;
+
+    // -------- retention settings ---------------
+
+    // number of latest complete snapshots kept with their journals, older files are retired after every snapshot (0 - keep everything)
+    private final int retentionRecoveryPoints;
+
+    // retired files are moved into this folder (journals recompressed with LZ4 HIGH), null - retired files are deleted
+    private final String retentionArchiveFolder;
+
     public static DiskSerializationProcessorConfiguration createDefaultConfig() {
 
         return DiskSerializationProcessorConfiguration.builder()
                 .storageFolder(DEFAULT_FOLDER)
                 .snapshotLz4CompressorFactory(LZ4_FAST)
+                .snapshotBackgroundCompression(false)
+                .snapshotChunkedFormat(false)
+                .snapshotBlockSize(4 * (int) ONE_MEGABYTE)
+                .snapshotCompressThreads(4)
                 .journalFileMaxSize(4000 * ONE_MEGABYTE)
                 .journalBufferSize(256 * 1024) // 256 KB - TODO calculate based on ringBufferSize
                 .journalBatchCompressThreshold(2048)
                 .journalLz4CompressorFactory(LZ4_FAST)
+                .journalDurabilityMode(JournalDurabilityMode.STRICT_SYNC)
+                .journalGroupCommitIntervalUs(500)
+                .journalGroupCommitBytes(ONE_MEGABYTE)
+                .journalForceIntervalMs(1000)
+                .journalCompactRecords(false)
+                .journalBlockChecksums(true)
+                .journalMmapSegments(false)
+                .journalReplayThreads(2)
+                .retentionRecoveryPoints(0)
                 .build();
     }
 }
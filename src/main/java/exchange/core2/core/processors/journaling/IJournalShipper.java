@@ -0,0 +1,45 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.metrics.MetricsRegistry;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Ships journal blocks (exactly as written into journal files, compressed or not) to a follower.
+ * Transport is implementation specific, follower side is {@link JournalFollower}.
+ */
+public interface IJournalShipper extends AutoCloseable {
+
+    /**
+     * Ship next journal block after it is written into local journal file.
+     * Called from journaling thread or journal I/O thread (one thread at a time), should not block.
+     *
+     * @param lastSeq - sequence of the last command in the block
+     * @param block   - block data (remaining bytes), valid only during the call
+     */
+    void ship(long lastSeq, ByteBuffer block);
+
+    /**
+     * Stop shipping, release transport resources.
+     */
+    @Override
+    void close();
+
+    default void registerMetrics(MetricsRegistry registry) {
+    }
+}
@@ -18,6 +18,7 @@ package exchange.core2.core.processors.journaling;
 import exchange.core2.core.ExchangeApi;
 import exchange.core2.core.common.cmd.OrderCommand;
 import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.metrics.MetricsRegistry;
 import lombok.AllArgsConstructor;
 import net.openhft.chronicle.bytes.BytesIn;
 import net.openhft.chronicle.bytes.WriteBytesMarshallable;
@@ -28,10 +29,19 @@ import java.util.function.Function;
 
 public interface ISerializationProcessor {
 
+    /**
+     * Module snapshot starting with this marker (instead of shardId) is a delta snapshot:
+     * it contains base full snapshot id and only the state changed since the base snapshot.
+     */
+    int DELTA_SNAPSHOT_MARKER = -1;
+
     /**
      * Serialize state into a storage (disk, NAS, etc).<p>
      * Method is threadsafe - called from each module's thread upon receiving serialization command.<p>
      * Method is synchronous - returning true value only when the data was safely stored into independent storage.<p>
+     * Exception: with background snapshot compression (see DiskSerializationProcessorConfiguration.snapshotBackgroundCompression)
+     * true means the state was serialized and accepted for compression and writing. Write failures are logged and counted by snapshot.failed metric,
+     * failed snapshot is never registered in the catalog, so it is not used for recovery.<p>
      *
      * @param snapshotId  - unique snapshot id
      * @param seq         - sequence of serialization
@@ -48,6 +58,19 @@ public interface ISerializationProcessor {
                       int instanceId,
                       WriteBytesMarshallable obj);
 
+    /**
+     * Wait until all snapshots accepted by storeData are stored (relevant for background snapshot compression).
+     */
+    default void awaitPendingSnapshots() {
+    }
+
+    /**
+     * Wait for pending snapshots and stop background threads.<p>
+     * Called by exchange core on shutdown, processor should not be used after that.
+     */
+    default void close() {
+    }
+
     /**
      * Deserialize state from a storage (disk, NAS, etc).<p>
      * Method is threadsafe - called from each module's thread on creation.<p>
@@ -70,7 +93,7 @@ public interface ISerializationProcessor {
      *
      * @param cmd  - command to write
      * @param dSeq - disruptor sequence
-     * @param eob  - if true, journal should commit all previous data synchronously
+     * @param eob  - if true, journal should commit all previous data (synchronously only in strict durability mode)
      * @throws IOException - can throw in case of writing issue (will stop exchange core from responding)
      */
     void writeToJournal(OrderCommand cmd, long dSeq, boolean eob) throws IOException;
@@ -115,6 +138,15 @@ public interface ISerializationProcessor {
      */
     boolean checkSnapshotExists(long snapshotId, SerializedModuleType type, int instanceId);
 
+    /**
+     * Register processor-specific metrics (journal bytes, flushes, etc).
+     * Called once when exchange core is created.
+     *
+     * @param registry - metrics registry
+     */
+    default void registerMetrics(MetricsRegistry registry) {
+    }
+
     @AllArgsConstructor
     enum SerializedModuleType {
         RISK_ENGINE("RE"),
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import net.jpountz.xxhash.XXHash32;
+import net.jpountz.xxhash.XXHashFactory;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Checksum header written in front of every journal block (plain records or LZ4 block):
+ * marker (byte), block length excluding header (int), xxHash32 of the block (int).
+ * <p>
+ * Readers validate the whole block before decoding any of its records,
+ * so a torn last block is skipped entirely, and verifier can walk blocks without decoding them.
+ */
+final class JournalBlockChecksum {
+
+    static final byte MARKER = (byte) -3;
+    static final int HEADER_SIZE = 9;
+
+    private static final int SEED = 0x45434A42; // "ECJB"
+
+    private static final XXHash32 HASH = XXHashFactory.fastestInstance().hash32();
+
+    private JournalBlockChecksum() {
+    }
+
+    /**
+     * Fill header reserved at the beginning of the block.
+     *
+     * @param block - header space and block data between position and limit, position is not changed
+     */
+    static void seal(final ByteBuffer block) {
+        final int start = block.position();
+        final int length = block.limit() - start - HEADER_SIZE;
+        block.put(start, MARKER);
+        block.putInt(start + 1, length);
+        block.putInt(start + 5, hash(block, start + HEADER_SIZE, length));
+    }
+
+    static int hash(final ByteBuffer buffer, final int offset, final int length) {
+        return HASH.hash(buffer, offset, length, SEED);
+    }
+
+    static int hash(final byte[] array, final int offset, final int length) {
+        return HASH.hash(array, offset, length, SEED);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+
+/**
+ * Read-only flyweight view of a journal record provided by {@link JournalTailer}.
+ * Same instance is reused for every record, view is valid only during the handler call.
+ * <p>
+ * Fields are set as corresponding ExchangeApi replay method would set them,
+ * for BALANCE_ADJUSTMENT orderType contains adjustment type code.
+ */
+public final class JournalCommandView {
+
+    private final OrderCommand cmd;
+    private long seq;
+
+    JournalCommandView(final OrderCommand cmd) {
+        this.cmd = cmd;
+    }
+
+    void setSeq(final long seq) {
+        this.seq = seq;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public OrderCommandType getCommand() {
+        return cmd.command;
+    }
+
+    public long getTimestamp() {
+        return cmd.timestamp;
+    }
+
+    public int getServiceFlags() {
+        return cmd.serviceFlags;
+    }
+
+    public long getEventsGroup() {
+        return cmd.eventsGroup;
+    }
+
+    public long getUid() {
+        return cmd.uid;
+    }
+
+    public int getSymbol() {
+        return cmd.symbol;
+    }
+
+    public long getOrderId() {
+        return cmd.orderId;
+    }
+
+    public long getPrice() {
+        return cmd.price;
+    }
+
+    public long getReserveBidPrice() {
+        return cmd.reserveBidPrice;
+    }
+
+    public long getSize() {
+        return cmd.size;
+    }
+
+    public OrderAction getAction() {
+        return cmd.action;
+    }
+
+    public OrderType getOrderType() {
+        return cmd.orderType;
+    }
+
+    public int getUserCookie() {
+        return cmd.userCookie;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + seq + " " + cmd.command + " uid=" + cmd.uid + " symbol=" + cmd.symbol + " orderId=" + cmd.orderId + "]";
+    }
+}
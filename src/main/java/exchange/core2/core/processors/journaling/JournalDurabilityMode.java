@@ -0,0 +1,31 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+/**
+ * Defines when journal data reaches the device and what results publication waits for.
+ */
+public enum JournalDurabilityMode {
+
+    // write and fsync every batch on journaling thread, results are published only after data is durable
+    STRICT_SYNC,
+
+    // write on dedicated I/O thread, fsync when configured interval or amount of bytes is reached
+    GROUP_COMMIT,
+
+    // write on dedicated I/O thread into OS page cache, fsync periodically
+    OS_BUFFERED
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.ExchangeApi;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.metrics.MetricsRegistry;
+import exchange.core2.core.metrics.PaddedCounter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Hot-standby follower: continuously applies journal blocks shipped by the leader into follower exchange core.
+ * <p>
+ * Follower core should start from the same state as the leader at the first shipped block
+ * (clean start or the same snapshot), its own journaling is optional.
+ * Commands are decoded by a dedicated thread and published using batch claims with grouping disabled,
+ * so events groups are the same as on the leader.
+ * After {@link #promote()} follower core accepts regular commands.
+ */
+@Slf4j
+public final class JournalFollower implements ObjLongConsumer<OrderCommand> {
+
+    private static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+
+    private final InputStream input;
+    private final ExchangeApi api;
+    private final Thread applyThread;
+
+    private final JournalRecordReader reader = new JournalRecordReader();
+    private final JournalReplayPipeline.Batch batch = new JournalReplayPipeline.Batch();
+    private byte[] frameBuffer = new byte[64 * 1024];
+
+    private volatile boolean running = true;
+    private volatile boolean failed = false;
+
+    private volatile long leaderSeq = 0;
+    private volatile long publishedSeq = 0;
+    private long lastDecodedSeq = 0;
+
+    private final PaddedCounter receivedBytes = new PaddedCounter();
+
+    /**
+     * Connect to leader shipping journal through {@link SocketJournalShipper} and start applying.
+     *
+     * @param leaderAddress - leader shipping address
+     * @param api           - follower core API
+     * @return started follower
+     * @throws IOException if can not connect
+     */
+    public static JournalFollower connect(final InetSocketAddress leaderAddress, final ExchangeApi api) throws IOException {
+        final Socket socket = new Socket(leaderAddress.getAddress(), leaderAddress.getPort());
+        socket.setTcpNoDelay(true);
+        return new JournalFollower(socket.getInputStream(), api);
+    }
+
+    /**
+     * Start applying frames from a stream (see {@link SocketJournalShipper} for frame format).
+     *
+     * @param input - frames stream, closed on promotion
+     * @param api   - follower core API
+     */
+    public JournalFollower(final InputStream input, final ExchangeApi api) {
+        this.input = input;
+        this.api = api;
+        this.applyThread = new Thread(this::applyLoop, "J-FOLLOWER");
+        this.applyThread.setDaemon(true);
+
+        // use events groups from the journal
+        api.groupingControl(0, 0);
+
+        this.applyThread.start();
+    }
+
+    private void applyLoop() {
+        try (final DataInputStream dis = new DataInputStream(new BufferedInputStream(input, 1024 * 1024))) {
+            while (running) {
+                final long seq;
+                try {
+                    seq = dis.readLong();
+                } catch (final EOFException ex) {
+                    log.info("Leader closed journal stream at seq={}", leaderSeq);
+                    return;
+                }
+                final int length = dis.readInt();
+                if (length < 0 || length > MAX_FRAME_SIZE) {
+                    throw new IllegalStateException("Bad journal frame size " + length + " (data corrupted)");
+                }
+                if (frameBuffer.length < length) {
+                    frameBuffer = new byte[length];
+                }
+                dis.readFully(frameBuffer, 0, length);
+                receivedBytes.add(length + SocketJournalShipper.FRAME_HEADER_SIZE);
+                leaderSeq = seq;
+
+                reader.readBlock(new DataInputStream(new ByteArrayInputStream(frameBuffer, 0, length)), this);
+                publishBatch();
+            }
+        } catch (final IOException ex) {
+            if (running) {
+                failed = true;
+                log.error("Journal stream failed at seq={}: ", publishedSeq, ex);
+            }
+        } catch (final RuntimeException ex) {
+            failed = true;
+            log.error("Can not apply journal block after seq={}: ", publishedSeq, ex);
+        }
+    }
+
+    @Override
+    public void accept(final OrderCommand cmd, final long seq) {
+        lastDecodedSeq = seq;
+        if (cmd.command == OrderCommandType.PERSIST_STATE_MATCHING || cmd.command == OrderCommandType.PERSIST_STATE_RISK) {
+            // leader snapshot points are not applied
+            return;
+        }
+        batch.add(cmd, seq);
+        if (batch.isFull()) {
+            publishBatch();
+        }
+    }
+
+    private void publishBatch() {
+        api.publishReplayedCommands(batch.commands, batch.size);
+        batch.reset();
+        publishedSeq = lastDecodedSeq;
+    }
+
+    /**
+     * Stop applying leader journal and switch follower core to regular processing.
+     * Should be called after the leader is stopped or fenced, blocks received after this call are not applied.
+     *
+     * @return last sequence published into follower core
+     */
+    public long promote() {
+        running = false;
+        try {
+            input.close();
+            applyThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (final IOException ex) {
+            log.warn("Can not close journal stream: ", ex);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while promoting follower", ex);
+        }
+
+        if (applyThread.isAlive()) {
+            // still publishing leader commands - grouping can not be switched back yet
+            throw new IllegalStateException("Follower is still applying leader journal at seq=" + publishedSeq + ", promotion failed");
+        }
+
+        api.groupingControl(0, 1);
+        log.info("Follower promoted at seq={} (leader seq={})", publishedSeq, leaderSeq);
+        return publishedSeq;
+    }
+
+    public long getLeaderSeq() {
+        return leaderSeq;
+    }
+
+    /**
+     * @return last sequence published into follower core ring buffer, processing of it may be still in progress
+     */
+    public long getPublishedSeq() {
+        return publishedSeq;
+    }
+
+    /**
+     * @return number of commands received but not published into follower core yet
+     */
+    public long getLag() {
+        return leaderSeq - publishedSeq;
+    }
+
+    public boolean isFailed() {
+        return failed;
+    }
+
+    public void registerMetrics(final MetricsRegistry registry) {
+        registry.gauge("replication.leaderSeq", this::getLeaderSeq);
+        registry.gauge("replication.publishedSeq", this::getPublishedSeq);
+        registry.gauge("replication.lag", this::getLag);
+        registry.gauge("replication.receivedBytes", receivedBytes::get);
+        registry.gauge("replication.failed", () -> failed ? 1 : 0);
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Sparse index of a journal partition: pairs of (first sequence of a block, block offset in the file).
+ * Entries are written in increasing order for blocks decoding can be started from
+ * (compact format state is reset at every indexed block).
+ */
+final class JournalIndex {
+
+    private static final int ENTRY_SIZE = 16;
+
+    private JournalIndex() {
+    }
+
+    /**
+     * Appends index entries. Journaling thread only.
+     */
+    static final class Writer implements AutoCloseable {
+
+        private final FileChannel channel;
+        private final ByteBuffer entryBuffer = ByteBuffer.allocate(ENTRY_SIZE);
+
+        Writer(final Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        }
+
+        void append(final long seq, final long offset) throws IOException {
+            entryBuffer.clear();
+            entryBuffer.putLong(seq);
+            entryBuffer.putLong(offset);
+            entryBuffer.flip();
+            while (entryBuffer.hasRemaining()) {
+                channel.write(entryBuffer);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Read index file
+     *
+     * @param path - index file path
+     * @return flat array of (seq, offset) pairs, or null if index file does not exist
+     */
+    static long[] read(final Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        final ByteBuffer bb = ByteBuffer.wrap(Files.readAllBytes(path));
+        final long[] entries = new long[(bb.remaining() / ENTRY_SIZE) * 2];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = bb.getLong();
+        }
+        return entries;
+    }
+
+    /**
+     * @return offset of the last indexed block starting at or before given sequence, 0 if there is no such block
+     */
+    static long findOffset(final long[] entries, final long seq) {
+        long offset = 0;
+        for (int i = 0; i < entries.length && entries[i] <= seq; i += 2) {
+            offset = entries[i + 1];
+        }
+        return offset;
+    }
+}
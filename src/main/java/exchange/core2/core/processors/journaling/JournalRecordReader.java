@@ -0,0 +1,305 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import lombok.extern.slf4j.Slf4j;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Decodes journal file records (fixed-width or compact format, optionally in LZ4 blocks and checksummed blocks).
+ * Every record is provided to the handler as the same reusable command object,
+ * with fields set exactly as corresponding ExchangeApi replay method would set them.
+ * <p>
+ * Not thread safe, use one instance per reading thread.
+ */
+@Slf4j
+final class JournalRecordReader {
+
+    private static final int MAX_BLOCK_SIZE = 1000000;
+
+    private static final int LEVEL_FILE = 0;
+    private static final int LEVEL_CHECKED_BLOCK = 1;
+    private static final int LEVEL_COMPRESSED_BLOCK = 2;
+
+    private final LZ4SafeDecompressor lz4SafeDecompressor = LZ4Factory.fastestInstance().safeDecompressor();
+    private final CompactJournalCodec compactCodec = new CompactJournalCodec();
+    private final OrderCommand cmd = new OrderCommand();
+
+    private boolean compactFile;
+    private boolean stopped;
+    private boolean tornBlock;
+    // blocks stream (shipping) - there is no file tail, so any incomplete or damaged block is corruption
+    private boolean strict;
+    private byte[] checkedBlock = new byte[64 * 1024];
+    private int checkedBlockLength;
+
+    /**
+     * Read all records of one journal file.
+     *
+     * @param input   - file data stream
+     * @param handler - receives (command, seq), command is valid only during the call
+     * @throws IOException - if file ends unexpectedly
+     */
+    void readFile(final DataInputStream input, final ObjLongConsumer<OrderCommand> handler) throws IOException {
+        compactFile = false;
+        stopped = false;
+        tornBlock = false;
+        strict = false;
+        readCommands(input, handler, LEVEL_FILE);
+    }
+
+    /**
+     * Read records of one journal block (as written into journal file) received from a stream of blocks.
+     * Format state is kept between blocks, the stream should start from the beginning of a journal file.
+     * Incomplete or damaged block is never skipped - IllegalStateException is thrown before any of its records is provided.
+     *
+     * @param input   - block data
+     * @param handler - receives (command, seq), command is valid only during the call
+     * @throws IOException - if block ends unexpectedly
+     */
+    void readBlock(final DataInputStream input, final ObjLongConsumer<OrderCommand> handler) throws IOException {
+        stopped = false;
+        strict = true;
+        readCommands(input, handler, LEVEL_FILE);
+    }
+
+    /**
+     * Stop reading current file, can be called from the handler.
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * @return true if the last file ended with incomplete or damaged checksummed block (skipped)
+     */
+    boolean isTornBlock() {
+        return tornBlock;
+    }
+
+    private void readCommands(final DataInputStream jr,
+                              final ObjLongConsumer<OrderCommand> handler,
+                              final int level) throws IOException {
+
+        while (!stopped && jr.available() != 0) {
+
+            final byte code = jr.readByte();
+
+            if (code == 0 && level == LEVEL_FILE && !strict) {
+                // zero tail of preallocated segment - no more data in this file
+                return;
+            }
+
+            if (code == CompactJournalCodec.FORMAT_MARKER) {
+                compactCodec.startFile(jr);
+                compactFile = true;
+
+            } else if (code == JournalBlockChecksum.MARKER) {
+
+                if (level != LEVEL_FILE) {
+                    throw new IllegalStateException("Nested checksummed block (data corrupted)");
+                }
+                if (!readCheckedBlock(jr)) {
+                    return;
+                }
+                try (final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(checkedBlock, 0, checkedBlockLength))) {
+                    readCommands(dis, handler, LEVEL_CHECKED_BLOCK);
+                }
+
+            } else if (code == OrderCommandType.RESERVED_COMPRESSED.getCode()) {
+
+                if (level == LEVEL_COMPRESSED_BLOCK) {
+                    throw new IllegalStateException("Recursive compression block (data corrupted)");
+                }
+
+                final int size = jr.readInt();
+                final int origSize = jr.readInt();
+
+                if (size > MAX_BLOCK_SIZE) {
+                    throw new IllegalStateException("Bad compressed block size = " + size + "(data corrupted)");
+                }
+
+                if (origSize > MAX_BLOCK_SIZE) {
+                    throw new IllegalStateException("Bad original block size = " + origSize + "(data corrupted)");
+                }
+
+                final byte[] compressedArray = new byte[size];
+                jr.readFully(compressedArray);
+
+                final byte[] originalArray = lz4SafeDecompressor.decompress(compressedArray, origSize);
+
+                // read compressed block recursively
+                try (final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(originalArray))) {
+                    readCommands(dis, handler, LEVEL_COMPRESSED_BLOCK);
+                }
+
+            } else if (compactFile) {
+
+                compactCodec.decode(OrderCommandType.fromCode(code), jr, cmd);
+                handler.accept(cmd, compactCodec.getLastSeq());
+
+            } else {
+
+                final long seq = readFixedWidthRecord(OrderCommandType.fromCode(code), jr, cmd);
+                handler.accept(cmd, seq);
+            }
+        }
+    }
+
+    /**
+     * Read and validate checksummed block (after marker).
+     * Incomplete or damaged block at the end of file is a torn write: it is skipped and reading stops.
+     *
+     * @return true if block is valid
+     */
+    private boolean readCheckedBlock(final DataInputStream jr) throws IOException {
+
+        final int length;
+        final int checksum;
+        try {
+            length = jr.readInt();
+            checksum = jr.readInt();
+            if (length < 0 || length > MAX_BLOCK_SIZE) {
+                throw new IllegalStateException("Bad checksummed block size = " + length + " (data corrupted)");
+            }
+            if (checkedBlock.length < length) {
+                checkedBlock = new byte[length];
+            }
+            jr.readFully(checkedBlock, 0, length);
+        } catch (final EOFException ex) {
+            if (strict) {
+                throw new IllegalStateException("Incomplete journal block (data corrupted)", ex);
+            }
+            log.warn("Skipped incomplete journal block at the end of file");
+            tornBlock = true;
+            return false;
+        }
+        checkedBlockLength = length;
+
+        if (JournalBlockChecksum.hash(checkedBlock, 0, length) != checksum) {
+            // nothing written after damaged block (end of file or zero tail of preallocated segment)
+            if (!strict && jr.read() <= 0) {
+                log.warn("Skipped damaged journal block at the end of file");
+                tornBlock = true;
+                return false;
+            }
+            throw new IllegalStateException("Journal block checksum mismatch (data corrupted)");
+        }
+        return true;
+    }
+
+    /**
+     * Decode fixed-width record (except command code, which is already read) into provided command object.
+     *
+     * @return record sequence
+     */
+    static long readFixedWidthRecord(final OrderCommandType cmdType, final DataInput jr, final OrderCommand cmd) throws IOException {
+
+        final long seq = jr.readLong();
+
+        cmd.command = cmdType;
+        cmd.timestamp = jr.readLong();
+        cmd.serviceFlags = jr.readInt();
+        cmd.eventsGroup = jr.readLong();
+
+        switch (cmdType) {
+            case MOVE_ORDER:
+                cmd.uid = jr.readLong();
+                cmd.symbol = jr.readInt();
+                cmd.orderId = jr.readLong();
+                cmd.price = jr.readLong();
+                break;
+
+            case CANCEL_ORDER:
+                cmd.uid = jr.readLong();
+                cmd.symbol = jr.readInt();
+                cmd.orderId = jr.readLong();
+                break;
+
+            case REDUCE_ORDER:
+                cmd.uid = jr.readLong();
+                cmd.symbol = jr.readInt();
+                cmd.orderId = jr.readLong();
+                cmd.size = jr.readLong();
+                break;
+
+            case PLACE_ORDER:
+                cmd.uid = jr.readLong();
+                cmd.symbol = jr.readInt();
+                cmd.orderId = jr.readLong();
+                cmd.price = jr.readLong();
+                cmd.reserveBidPrice = jr.readLong();
+                cmd.size = jr.readLong();
+                cmd.userCookie = jr.readInt();
+                final byte actionAndType = jr.readByte();
+                cmd.action = OrderAction.of((byte) (actionAndType & 0b1));
+                cmd.orderType = OrderType.of((byte) ((actionAndType >> 1) & 0b1111));
+                break;
+
+            case BALANCE_ADJUSTMENT:
+                cmd.uid = jr.readLong();
+                cmd.symbol = jr.readInt();
+                cmd.orderId = jr.readLong();
+                cmd.price = jr.readLong();
+                cmd.orderType = OrderType.of(jr.readByte());
+                cmd.size = 0;
+                break;
+
+            case ADD_USER:
+            case SUSPEND_USER:
+            case RESUME_USER:
+                cmd.uid = jr.readLong();
+                cmd.orderId = -1;
+                cmd.symbol = -1;
+                break;
+
+            case BINARY_DATA_COMMAND:
+                cmd.symbol = jr.readByte();
+                cmd.orderId = jr.readLong();
+                cmd.price = jr.readLong();
+                cmd.reserveBidPrice = jr.readLong();
+                cmd.size = jr.readLong();
+                cmd.uid = jr.readLong();
+                break;
+
+            case RESET:
+            case PERSIST_STATE_MATCHING:
+            case PERSIST_STATE_RISK:
+                break;
+
+            default:
+                throw new IllegalStateException("unexpected command " + cmdType);
+        }
+
+        return seq;
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.ExchangeApi;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Pipelined journal replay.
+ * <p>
+ * Reader threads prefetch journal partitions, decompress LZ4 blocks and decode records
+ * into preassembled command batches. Calling thread publishes batches into the ring buffer
+ * in partition order using batch claims, so replay runs at processing speed rather than I/O plus decoding speed.
+ * Number of partitions decoded ahead is limited by number of reader threads, memory by batches prefetch limit.
+ */
+@Slf4j
+final class JournalReplayPipeline {
+
+    static final int BATCH_SIZE = 1024;
+
+    private static final int BATCHES_PREFETCH = 16;
+    private static final int READ_BUFFER_SIZE = 1024 * 1024;
+
+    private final int readerThreads;
+
+    private final ConcurrentLinkedQueue<Batch> freeBatches = new ConcurrentLinkedQueue<>();
+
+    static final class Batch {
+        final OrderCommand[] commands = new OrderCommand[BATCH_SIZE];
+        final long[] seqs = new long[BATCH_SIZE];
+        int size = 0;
+        boolean last = false;
+        Throwable error = null;
+
+        Batch() {
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                commands[i] = new OrderCommand();
+            }
+        }
+
+        void add(final OrderCommand cmd, final long seq) {
+            final OrderCommand dst = commands[size];
+            dst.command = cmd.command;
+            dst.serviceFlags = cmd.serviceFlags;
+            dst.eventsGroup = cmd.eventsGroup;
+            dst.timestamp = cmd.timestamp;
+            dst.orderId = cmd.orderId;
+            dst.symbol = cmd.symbol;
+            dst.uid = cmd.uid;
+            dst.price = cmd.price;
+            dst.reserveBidPrice = cmd.reserveBidPrice;
+            dst.size = cmd.size;
+            dst.action = cmd.action;
+            dst.orderType = cmd.orderType;
+            dst.userCookie = cmd.userCookie;
+            seqs[size] = seq;
+            size++;
+        }
+
+        boolean isFull() {
+            return size == BATCH_SIZE;
+        }
+
+        void reset() {
+            size = 0;
+            last = false;
+            error = null;
+        }
+    }
+
+    JournalReplayPipeline(final int readerThreads) {
+        if (readerThreads < 1) {
+            throw new IllegalArgumentException("At least one reader thread required");
+        }
+        this.readerThreads = readerThreads;
+    }
+
+    /**
+     * Replay all partitions in given order.
+     *
+     * @param partitions - journal files
+     * @param api        - api for publishing commands
+     * @return last replayed sequence (0 if nothing replayed)
+     */
+    long replay(final List<Path> partitions, final ExchangeApi api) {
+
+        if (partitions.isEmpty()) {
+            return 0L;
+        }
+
+        final AtomicInteger threadsCounter = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(readerThreads, partitions.size()), r -> {
+            final Thread thread = new Thread(r, "J-REPLAY-" + threadsCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        final List<BlockingQueue<Batch>> queues = new ArrayList<>(partitions.size());
+        for (final Path path : partitions) {
+            final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(BATCHES_PREFETCH);
+            queues.add(queue);
+            executor.execute(new PartitionReader(path, queue));
+        }
+
+        long lastSeq = 0L;
+        long publishedCommands = 0L;
+
+        try {
+            for (int i = 0; i < partitions.size(); i++) {
+                final BlockingQueue<Batch> queue = queues.get(i);
+                log.debug("Replaying journal file: {}", partitions.get(i));
+
+                boolean last = false;
+                while (!last) {
+                    final Batch batch = queue.take();
+
+                    if (batch.error != null) {
+                        throw new IllegalStateException("Can not read journal " + partitions.get(i), batch.error);
+                    }
+
+                    for (int j = 0; j < batch.size; j++) {
+                        final long seq = batch.seqs[j];
+                        if (seq != lastSeq + 1) {
+                            log.warn("Sequence gap {}->{} ({})", lastSeq, seq, seq - lastSeq);
+                        }
+                        lastSeq = seq;
+                    }
+
+                    api.publishReplayedCommands(batch.commands, batch.size);
+                    publishedCommands += batch.size;
+
+                    last = batch.last;
+                    batch.reset();
+                    freeBatches.offer(batch);
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while replaying journal", ex);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        log.debug("Replayed {} commands from {} journal files, lastSeq={}", publishedCommands, partitions.size(), lastSeq);
+        return lastSeq;
+    }
+
+    private Batch takeFreeBatch() {
+        final Batch batch = freeBatches.poll();
+        return batch != null ? batch : new Batch();
+    }
+
+    private final class PartitionReader implements Runnable, ObjLongConsumer<OrderCommand> {
+
+        private final Path path;
+        private final BlockingQueue<Batch> queue;
+        private Batch batch;
+
+        private PartitionReader(Path path, BlockingQueue<Batch> queue) {
+            this.path = path;
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            batch = takeFreeBatch();
+            try (final FileInputStream fis = new FileInputStream(path.toFile());
+                 final BufferedInputStream bis = new BufferedInputStream(fis, READ_BUFFER_SIZE);
+                 final DataInputStream dis = new DataInputStream(bis)) {
+
+                new JournalRecordReader().readFile(dis, this);
+
+            } catch (IOException ex) {
+                log.debug("File end reached through exception: {}", ex.getMessage());
+
+            } catch (Exception ex) {
+                batch.error = ex;
+            }
+
+            batch.last = true;
+            try {
+                queue.put(batch);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void accept(final OrderCommand cmd, final long seq) {
+            if (cmd.command == OrderCommandType.PERSIST_STATE_MATCHING || cmd.command == OrderCommandType.PERSIST_STATE_RISK) {
+                // snapshot points are not replayed
+                return;
+            }
+            batch.add(cmd, seq);
+            if (batch.isFull()) {
+                try {
+                    queue.put(batch);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while reading " + path, ex);
+                }
+                batch = takeFreeBatch();
+            }
+        }
+    }
+}
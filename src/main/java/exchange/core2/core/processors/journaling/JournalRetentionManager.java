@@ -0,0 +1,212 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.metrics.MetricsRegistry;
+import exchange.core2.core.metrics.PaddedCounter;
+import exchange.core2.core.processors.journaling.ISerializationProcessor.SerializedModuleType;
+import exchange.core2.core.processors.journaling.SnapshotCatalog.RetiredSnapshot;
+import lombok.extern.slf4j.Slf4j;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FrameOutputStream;
+import net.jpountz.xxhash.XXHashFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps only the configured number of latest recovery points (complete snapshots with their journals) in the storage folder.
+ * <p>
+ * Runs on its own thread after every completed snapshot. Older snapshots are retired in the catalog first,
+ * then their files are moved into the archive folder (journals recompressed with LZ4 HIGH) or deleted.
+ * Snapshot files used as a base by a kept delta snapshot are retained until that delta is retired.
+ */
+@Slf4j
+final class JournalRetentionManager {
+
+    private final Path folder;
+    private final String exchangeId;
+    private final SnapshotCatalog catalog;
+    private final int recoveryPoints;
+    private final boolean journaling;
+
+    // null - retired files are deleted
+    private final Path archiveFolder;
+    private final LZ4Compressor archiveCompressor = LZ4Factory.fastestInstance().highCompressor();
+
+    private final ExecutorService executor;
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final PaddedCounter retiredSnapshotsCounter = new PaddedCounter();
+    private final PaddedCounter removedFilesCounter = new PaddedCounter();
+    private final PaddedCounter reclaimedBytesCounter = new PaddedCounter();
+
+    JournalRetentionManager(final Path folder,
+                            final String exchangeId,
+                            final SnapshotCatalog catalog,
+                            final int recoveryPoints,
+                            final boolean journaling,
+                            final Path archiveFolder) {
+
+        if (recoveryPoints < 1) {
+            throw new IllegalArgumentException("At least one recovery point should be kept, got " + recoveryPoints);
+        }
+
+        this.folder = folder;
+        this.exchangeId = exchangeId;
+        this.catalog = catalog;
+        this.recoveryPoints = recoveryPoints;
+        this.journaling = journaling;
+        this.archiveFolder = archiveFolder;
+
+        this.executor = Executors.newSingleThreadExecutor(r -> {
+            final Thread thread = new Thread(r, "J-RETENTION-" + exchangeId);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Schedule retention run, can be called from any thread.
+     * Requests received while a run is pending are coalesced.
+     */
+    void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                scheduled.set(false);
+                try {
+                    retain();
+                } catch (final IOException | RuntimeException ex) {
+                    log.error("Journal retention failed: ", ex);
+                }
+            });
+        }
+    }
+
+    /**
+     * Complete scheduled run and stop retention thread.
+     */
+    void close() {
+        DiskSerializationProcessor.shutdownExecutor(executor);
+    }
+
+    /**
+     * Retire snapshots and journals not needed for the latest recovery points.
+     *
+     * @return number of retired snapshots
+     */
+    int retain() throws IOException {
+
+        final List<RetiredSnapshot> plan = catalog.planRetention(recoveryPoints, journaling);
+
+        for (final RetiredSnapshot snapshot : plan) {
+
+            // catalog never refers to removed files
+            catalog.appendRetired(snapshot.getSnapshotId(), snapshot.getFlags());
+
+            if (snapshot.isJournalRetired()) {
+                final long snapshotId = snapshot.getSnapshotId();
+                for (int partitionId = 1; ; partitionId++) {
+                    final Path journal = folder.resolve(DiskSerializationProcessor.journalFileName(exchangeId, partitionId, snapshotId));
+                    final Path index = folder.resolve(DiskSerializationProcessor.journalIndexFileName(exchangeId, partitionId, snapshotId));
+                    if (!Files.exists(journal) && !Files.exists(index)) {
+                        break;
+                    }
+                    dispose(journal, true);
+                    dispose(index, false);
+                }
+            }
+
+            if (snapshot.isFilesRetired()) {
+                for (int i = 0; i < snapshot.getNumMatchingEngines(); i++) {
+                    disposeSnapshot(snapshot.getSnapshotId(), SerializedModuleType.MATCHING_ENGINE_ROUTER, i);
+                }
+                for (int i = 0; i < snapshot.getNumRiskEngines(); i++) {
+                    disposeSnapshot(snapshot.getSnapshotId(), SerializedModuleType.RISK_ENGINE, i);
+                }
+            }
+
+            retiredSnapshotsCounter.increment();
+            log.info("Retired snapshot {} (flags={})", snapshot.getSnapshotId(), snapshot.getFlags());
+        }
+
+        return plan.size();
+    }
+
+    private void disposeSnapshot(final long snapshotId, final SerializedModuleType type, final int instanceId) throws IOException {
+        final Path path = folder.resolve(DiskSerializationProcessor.snapshotFileName(exchangeId, snapshotId, type, instanceId));
+        // snapshots are compressed already
+        dispose(path, false);
+    }
+
+    /**
+     * Move file into archive folder (optionally recompressing it) or delete it.
+     * Index files are not archived, because they are not needed for reading archived journals.
+     */
+    private void dispose(final Path path, final boolean recompress) throws IOException {
+
+        if (!Files.exists(path)) {
+            return;
+        }
+        final long size = Files.size(path);
+        final String fileName = path.getFileName().toString();
+
+        if (archiveFolder != null && !fileName.endsWith(".eci")) {
+            Files.createDirectories(archiveFolder);
+            if (recompress) {
+                final Path archived = archiveFolder.resolve(fileName + ".lz4");
+                final Path tmpPath = archived.resolveSibling(archived.getFileName() + ".tmp");
+                try (final OutputStream os = Files.newOutputStream(tmpPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+                     final OutputStream bos = new BufferedOutputStream(os);
+                     final LZ4FrameOutputStream lz4os = new LZ4FrameOutputStream(
+                             bos,
+                             LZ4FrameOutputStream.BLOCKSIZE.SIZE_4MB,
+                             -1,
+                             archiveCompressor,
+                             XXHashFactory.fastestInstance().hash32(),
+                             LZ4FrameOutputStream.FLG.Bits.BLOCK_INDEPENDENCE)) {
+                    Files.copy(path, lz4os);
+                }
+                Files.move(tmpPath, archived, StandardCopyOption.ATOMIC_MOVE);
+                Files.delete(path);
+            } else {
+                Files.move(path, archiveFolder.resolve(fileName), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } else {
+            Files.delete(path);
+        }
+
+        removedFilesCounter.increment();
+        reclaimedBytesCounter.add(size);
+        log.debug("Retired {} ({} bytes)", path, size);
+    }
+
+    void registerMetrics(final MetricsRegistry registry) {
+        registry.gauge("retention.retiredSnapshots", retiredSnapshotsCounter::get);
+        registry.gauge("retention.removedFiles", removedFilesCounter::get);
+        registry.gauge("retention.reclaimedBytes", reclaimedBytesCounter::get);
+    }
+}
@@ -0,0 +1,475 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import lombok.extern.slf4j.Slf4j;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import org.agrona.IoUtil;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Reads journal records in order, following live partitions as they are written,
+ * and moving to the next partition or to the journal of the next snapshot.
+ * <p>
+ * Partitions are memory-mapped (in windows), records are decoded directly from the mapping,
+ * LZ4 blocks are decompressed into a reusable buffer. Records are provided as a reusable flyweight view.
+ * Incomplete records at the end of a live partition are not provided until fully written.
+ * Partitions written in mmap segments mode are safe to read only after they are closed.
+ * <p>
+ * Tailer only reads journal files and snapshot catalog, so any number of tailers can run
+ * in separate processes without affecting the exchange core.
+ * Not thread safe.
+ */
+@Slf4j
+public final class JournalTailer implements AutoCloseable {
+
+    private static final int MAP_WINDOW_SIZE = 256 * 1024 * 1024;
+    private static final int MAX_BLOCK_SIZE = 1000000;
+
+    private final Path folder;
+    private final String exchangeId;
+
+    private final LZ4SafeDecompressor decompressor = LZ4Factory.fastestInstance().safeDecompressor();
+    private final CompactJournalCodec compactCodec = new CompactJournalCodec();
+    private final OrderCommand cmd = new OrderCommand();
+    private final JournalCommandView view = new JournalCommandView(cmd);
+
+    // current partition
+    private long snapshotId;
+    private int partitionId;
+    private FileChannel channel;
+    private MappedByteBuffer window;
+    private long windowOffset;
+    private boolean compactFile;
+    private final ByteBufferInput fileInput = new ByteBufferInput();
+
+    // decompressed block being consumed
+    private ByteBuffer block = ByteBuffer.allocate(0);
+    private final ByteBufferInput blockInput = new ByteBufferInput();
+
+    private OrderCommandType lastCommand = null;
+    private long lastSeq;
+    private long skipUntilSeq;
+
+    /**
+     * Start tailing journal of the snapshot from the beginning.
+     *
+     * @param storageFolder - journal folder
+     * @param exchangeId    - exchange id
+     * @param snapshotId    - base snapshot of the journal (0 - clean start)
+     */
+    public JournalTailer(final String storageFolder, final String exchangeId, final long snapshotId) {
+        this(storageFolder, exchangeId, new JournalPosition(snapshotId, 1, -1));
+    }
+
+    /**
+     * Resume tailing after the position.
+     *
+     * @param storageFolder - journal folder
+     * @param exchangeId    - exchange id
+     * @param position      - position returned by {@link #getPosition()}
+     */
+    public JournalTailer(final String storageFolder, final String exchangeId, final JournalPosition position) {
+        this.folder = Paths.get(storageFolder);
+        this.exchangeId = exchangeId;
+        this.lastSeq = position.getSeq();
+        this.skipUntilSeq = position.getSeq();
+
+        long offset = 0;
+        if (position.getSeq() != -1) {
+            try {
+                // start from indexed block containing next record (compact format state is reset there)
+                final long[] index = JournalIndex.read(folder.resolve(DiskSerializationProcessor.journalIndexFileName(exchangeId, position.getPartitionId(), position.getSnapshotId())));
+                offset = index != null ? JournalIndex.findOffset(index, position.getSeq() + 1) : 0;
+            } catch (final IOException ex) {
+                throw new IllegalStateException("Can not read journal index", ex);
+            }
+        }
+        startPartition(position.getSnapshotId(), position.getPartitionId(), offset);
+    }
+
+    /**
+     * Provide available records to the handler.
+     *
+     * @param handler - receives records, view is valid only during the call
+     * @param limit   - maximum number of records
+     * @return number of records provided, 0 if no new records available
+     */
+    public int poll(final Consumer<JournalCommandView> handler, final int limit) {
+        try {
+            int count = 0;
+            while (count < limit) {
+                final int result = step(handler);
+                if (result >= 0) {
+                    count += result;
+                } else if (!remap() && !nextPartition()) {
+                    break;
+                }
+            }
+            return count;
+        } catch (final IOException ex) {
+            throw new IllegalStateException("Can not read journal partition " + partitionId + " of snapshot " + snapshotId, ex);
+        }
+    }
+
+    /**
+     * @return position of the last provided record
+     */
+    public JournalPosition getPosition() {
+        return new JournalPosition(snapshotId, partitionId, lastSeq);
+    }
+
+    @Override
+    public void close() {
+        closePartition();
+    }
+
+    /**
+     * Decode next record or block header.
+     *
+     * @return 1 if record provided, 0 if something was consumed, -1 if no complete data available
+     */
+    private int step(final Consumer<JournalCommandView> handler) throws IOException {
+
+        if (block.hasRemaining()) {
+            return decodeRecord(block.get(), blockInput, handler);
+        }
+
+        if (window == null || !window.hasRemaining()) {
+            return -1;
+        }
+
+        final int start = window.position();
+        final boolean wasCompact = compactFile;
+        compactCodec.markDecoderState();
+        try {
+            final byte code = window.get();
+
+            if (code == 0) {
+                // zero tail of preallocated segment - not written yet
+                window.position(start);
+                return -1;
+            }
+
+            if (code == JournalBlockChecksum.MARKER) {
+                return checkBlock(start);
+            }
+
+            if (code != OrderCommandType.RESERVED_COMPRESSED.getCode()) {
+                return decodeRecord(code, fileInput, handler);
+            }
+
+            final int size = window.getInt();
+            final int origSize = window.getInt();
+            if (size > MAX_BLOCK_SIZE || origSize > MAX_BLOCK_SIZE) {
+                throw new IllegalStateException("Bad compressed block size = " + size + "/" + origSize + " (data corrupted)");
+            }
+            if (window.remaining() < size) {
+                window.position(start);
+                return -1;
+            }
+            if (block.capacity() < origSize) {
+                block = ByteBuffer.allocate(origSize);
+                blockInput.buffer = block;
+            }
+            block.clear();
+            decompressor.decompress(window, window.position(), size, block, 0, origSize);
+            block.limit(origSize);
+            window.position(window.position() + size);
+            return 0;
+
+        } catch (final BufferUnderflowException ex) {
+            // incomplete record - wait until written
+            window.position(start);
+            compactFile = wasCompact;
+            compactCodec.rollbackDecoderState();
+            return -1;
+        }
+    }
+
+    /**
+     * Validate checksummed block before decoding its records from the window.
+     * Block that is not fully visible yet (or still being copied) is retried on next poll.
+     */
+    private int checkBlock(final int start) {
+        final int length = window.getInt();
+        final int checksum = window.getInt();
+        if (length < 0 || length > MAX_BLOCK_SIZE) {
+            throw new IllegalStateException("Bad checksummed block size = " + length + " (data corrupted)");
+        }
+        final int dataStart = window.position();
+        final int end = dataStart + length;
+        if (window.limit() < end) {
+            window.position(start);
+            return -1;
+        }
+        if (JournalBlockChecksum.hash(window, dataStart, length) != checksum) {
+            if (end == window.limit() || window.get(end) == 0) {
+                // nothing written after this block - can be incomplete write
+                window.position(start);
+                return -1;
+            }
+            throw new IllegalStateException("Journal block checksum mismatch at offset " + (windowOffset + start) + " (data corrupted)");
+        }
+        return 0;
+    }
+
+    private int decodeRecord(final byte code, final DataInput input, final Consumer<JournalCommandView> handler) throws IOException {
+
+        if (code == CompactJournalCodec.FORMAT_MARKER) {
+            compactCodec.startFile(input);
+            compactFile = true;
+            return 0;
+        }
+        if (code == OrderCommandType.RESERVED_COMPRESSED.getCode() || code == JournalBlockChecksum.MARKER) {
+            throw new IllegalStateException("Nested block inside compressed block (data corrupted)");
+        }
+
+        final OrderCommandType cmdType = OrderCommandType.fromCode(code);
+        final long seq;
+        if (compactFile) {
+            compactCodec.decode(cmdType, input, cmd);
+            seq = compactCodec.getLastSeq();
+        } else {
+            seq = JournalRecordReader.readFixedWidthRecord(cmdType, input, cmd);
+        }
+
+        if (seq <= skipUntilSeq) {
+            return 0;
+        }
+        lastSeq = seq;
+        lastCommand = cmdType;
+        view.setSeq(seq);
+        handler.accept(view);
+        return 1;
+    }
+
+    /**
+     * Map next window of current partition if more data was written.
+     *
+     * @return true if more data is available
+     */
+    private boolean remap() throws IOException {
+        if (channel == null) {
+            return openChannel();
+        }
+        final long offset = windowOffset + (window != null ? window.position() : 0);
+        final long end = Math.min(channel.size(), offset + MAP_WINDOW_SIZE);
+        final int remaining = window != null ? window.remaining() : 0;
+        if (end - offset <= remaining) {
+            return false;
+        }
+        if (window != null) {
+            IoUtil.unmap(window);
+        }
+        window = channel.map(FileChannel.MapMode.READ_ONLY, offset, end - offset);
+        windowOffset = offset;
+        fileInput.buffer = window;
+        return true;
+    }
+
+    /**
+     * Move to the next partition if current one is closed and fully read.
+     *
+     * @return true if moved
+     */
+    private boolean nextPartition() throws IOException {
+
+        final boolean nextExists = Files.exists(partitionPath(snapshotId, partitionId + 1));
+
+        // journal continues with a new snapshot after its persist command
+        if (!nextExists && lastCommand != OrderCommandType.PERSIST_STATE_RISK) {
+            return false;
+        }
+
+        final SnapshotCatalog.PartitionEntry closed = new SnapshotCatalog(DiskSerializationProcessor.resolveCatalogPath(folder, exchangeId))
+                .findPartition(snapshotId, partitionId);
+        final long readOffset = windowOffset + (window != null ? window.position() : 0);
+        if (closed == null || readOffset < closed.getLength()) {
+            return false;
+        }
+
+        if (nextExists) {
+            startPartition(snapshotId, partitionId + 1, 0);
+            return true;
+        }
+
+        final long nextSnapshotId = findNextSnapshotJournal();
+        if (nextSnapshotId == -1) {
+            return false;
+        }
+        log.debug("Journal continues with snapshot {} after seq={}", nextSnapshotId, lastSeq);
+        startPartition(nextSnapshotId, 1, 0);
+        return true;
+    }
+
+    /**
+     * @return snapshot id of a journal starting right after the last record, -1 if not found (yet)
+     */
+    private long findNextSnapshotJournal() throws IOException {
+        final String prefix = exchangeId + "_journal_";
+        final String suffix = String.format("_%04X.eci", 1);
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(folder, prefix + "*" + suffix)) {
+            for (final Path indexPath : stream) {
+                final String name = indexPath.getFileName().toString();
+                final long candidate = Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length()));
+                final long[] index = JournalIndex.read(indexPath);
+                if (candidate != snapshotId && index != null && index.length != 0 && index[0] == lastSeq + 1) {
+                    return candidate;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void startPartition(final long snapshotId, final int partitionId, final long offset) {
+        closePartition();
+        this.snapshotId = snapshotId;
+        this.partitionId = partitionId;
+        this.windowOffset = offset;
+        this.compactFile = false;
+        this.block.limit(0);
+        this.lastCommand = null;
+    }
+
+    private boolean openChannel() throws IOException {
+        final Path path = partitionPath(snapshotId, partitionId);
+        if (!Files.exists(path)) {
+            return false;
+        }
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        return remap();
+    }
+
+    private void closePartition() {
+        if (window != null) {
+            IoUtil.unmap(window);
+            window = null;
+        }
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (final IOException ex) {
+                log.warn("Can not close journal partition: ", ex);
+            }
+            channel = null;
+        }
+    }
+
+    private Path partitionPath(final long snapshotId, final int partitionId) {
+        return folder.resolve(DiskSerializationProcessor.journalFileName(exchangeId, partitionId, snapshotId));
+    }
+
+    /**
+     * Reads fields directly from a buffer, throws BufferUnderflowException if data is incomplete.
+     */
+    private static final class ByteBufferInput implements DataInput {
+
+        private ByteBuffer buffer;
+
+        @Override
+        public void readFully(final byte[] b) {
+            buffer.get(b);
+        }
+
+        @Override
+        public void readFully(final byte[] b, final int off, final int len) {
+            buffer.get(b, off, len);
+        }
+
+        @Override
+        public int skipBytes(final int n) {
+            final int skip = Math.min(n, buffer.remaining());
+            buffer.position(buffer.position() + skip);
+            return skip;
+        }
+
+        @Override
+        public boolean readBoolean() {
+            return buffer.get() != 0;
+        }
+
+        @Override
+        public byte readByte() {
+            return buffer.get();
+        }
+
+        @Override
+        public int readUnsignedByte() {
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public short readShort() {
+            return buffer.getShort();
+        }
+
+        @Override
+        public int readUnsignedShort() {
+            return buffer.getShort() & 0xFFFF;
+        }
+
+        @Override
+        public char readChar() {
+            return buffer.getChar();
+        }
+
+        @Override
+        public int readInt() {
+            return buffer.getInt();
+        }
+
+        @Override
+        public long readLong() {
+            return buffer.getLong();
+        }
+
+        @Override
+        public float readFloat() {
+            return buffer.getFloat();
+        }
+
+        @Override
+        public double readDouble() {
+            return buffer.getDouble();
+        }
+
+        @Override
+        public String readLine() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String readUTF() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.extern.slf4j.Slf4j;
+import net.jpountz.lz4.LZ4FrameInputStream;
+import org.agrona.BufferUtil;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Offline integrity verifier for journal partitions and snapshot files of one exchange instance.
+ * <p>
+ * Files are verified in parallel. Checksummed journal blocks are validated by walking block headers without decoding records,
+ * journal files without checksums are fully decoded instead. Snapshots are verified through their block or frame checksums.
+ * Incomplete or damaged last block of a journal is reported as torn (recovery skips it), not as an error.
+ */
+@Slf4j
+public final class JournalVerifier {
+
+    private static final int MAX_BLOCK_SIZE = 1000000;
+
+    private JournalVerifier() {
+    }
+
+    /**
+     * Verify all journal and snapshot files of the exchange instance.
+     *
+     * @param folder     - storage folder
+     * @param exchangeId - exchange instance id
+     * @param threads    - number of verification threads
+     * @return verification result
+     * @throws IOException if folder can not be listed
+     */
+    public static Result verify(final String folder, final String exchangeId, final int threads) throws IOException {
+
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one verification thread required, got " + threads);
+        }
+
+        final List<Path> files;
+        try (final Stream<Path> list = Files.list(Paths.get(folder))) {
+            files = list.filter(p -> isJournal(p, exchangeId) || isSnapshot(p, exchangeId))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+
+        final ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            final List<Future<FileResult>> futures = new ArrayList<>(files.size());
+            for (final Path file : files) {
+                futures.add(pool.submit(() -> verifyFile(file, exchangeId, pool)));
+            }
+
+            long bytes = 0;
+            long blocks = 0;
+            final List<String> torn = new ArrayList<>();
+            final List<String> errors = new ArrayList<>();
+            for (int i = 0; i < futures.size(); i++) {
+                final FileResult fileResult;
+                try {
+                    fileResult = futures.get(i).get();
+                } catch (final InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while verifying " + files.get(i), ex);
+                } catch (final ExecutionException ex) {
+                    throw new IOException("Can not verify " + files.get(i), ex.getCause());
+                }
+                bytes += fileResult.bytes;
+                blocks += fileResult.blocks;
+                if (fileResult.torn) {
+                    torn.add(files.get(i).getFileName().toString());
+                }
+                if (fileResult.error != null) {
+                    errors.add(files.get(i).getFileName() + ": " + fileResult.error);
+                }
+            }
+
+            final Result result = new Result(files.size(), bytes, blocks, Collections.unmodifiableList(torn), Collections.unmodifiableList(errors));
+            log.info("Verified {}", result);
+            return result;
+
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static boolean isJournal(final Path path, final String exchangeId) {
+        final String name = path.getFileName().toString();
+        return name.startsWith(exchangeId + "_journal_") && name.endsWith(".ecj");
+    }
+
+    private static boolean isSnapshot(final Path path, final String exchangeId) {
+        final String name = path.getFileName().toString();
+        return name.startsWith(exchangeId + "_snapshot_") && name.endsWith(".ecs");
+    }
+
+    private static FileResult verifyFile(final Path path, final String exchangeId, final ForkJoinPool pool) throws IOException {
+        try {
+            return isJournal(path, exchangeId) ? verifyJournal(path) : verifySnapshot(path, pool);
+        } catch (final IOException | RuntimeException ex) {
+            log.warn("Verification failed for {}: {}", path, ex.getMessage());
+            return new FileResult(Files.size(path), 0, false, ex.toString());
+        }
+    }
+
+    /**
+     * Walk checksummed blocks until zero tail or end of file.
+     * Falls back to decoding all records if the file has blocks without checksum.
+     */
+    private static FileResult verifyJournal(final Path path) throws IOException {
+
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+
+            final long size = channel.size();
+            final ByteBuffer header = ByteBuffer.allocate(JournalBlockChecksum.HEADER_SIZE);
+            ByteBuffer block = ByteBuffer.allocate(256 * 1024);
+
+            long position = 0;
+            long blocks = 0;
+            while (position < size) {
+
+                header.clear();
+                if (size - position < JournalBlockChecksum.HEADER_SIZE) {
+                    header.limit((int) (size - position));
+                }
+                readFully(channel, header, position);
+                header.flip();
+
+                final byte code = header.get();
+                if (code == 0) {
+                    // zero tail of preallocated segment
+                    break;
+                }
+                if (code != JournalBlockChecksum.MARKER) {
+                    return decodeJournal(path, size);
+                }
+                if (header.remaining() < JournalBlockChecksum.HEADER_SIZE - 1) {
+                    return new FileResult(position, blocks, true, null);
+                }
+
+                final int length = header.getInt();
+                final int checksum = header.getInt();
+                final long dataPosition = position + JournalBlockChecksum.HEADER_SIZE;
+                if (length < 0 || length > MAX_BLOCK_SIZE) {
+                    return new FileResult(position, blocks, false, "bad block size " + length + " at offset " + position);
+                }
+                if (dataPosition + length > size) {
+                    return new FileResult(position, blocks, true, null);
+                }
+
+                if (block.capacity() < length) {
+                    block = ByteBuffer.allocate(length);
+                }
+                block.clear().limit(length);
+                readFully(channel, block, dataPosition);
+
+                final long nextPosition = dataPosition + length;
+                if (JournalBlockChecksum.hash(block, 0, length) != checksum) {
+                    if (nextPosition == size || readByte(channel, nextPosition) == 0) {
+                        // last block - torn write
+                        return new FileResult(position, blocks, true, null);
+                    }
+                    return new FileResult(position, blocks, false, "checksum mismatch at offset " + position);
+                }
+
+                blocks++;
+                position = nextPosition;
+            }
+
+            return new FileResult(position, blocks, false, null);
+        }
+    }
+
+    private static FileResult decodeJournal(final Path path, final long size) throws IOException {
+        final JournalRecordReader reader = new JournalRecordReader();
+        try (final InputStream is = Files.newInputStream(path, StandardOpenOption.READ);
+             final DataInputStream dis = new DataInputStream(new BufferedInputStream(is, 1024 * 1024))) {
+            reader.readFile(dis, (cmd, seq) -> {
+            });
+        }
+        return new FileResult(size, 0, reader.isTornBlock(), null);
+    }
+
+    private static FileResult verifySnapshot(final Path path, final ForkJoinPool pool) throws IOException {
+
+        final long size = Files.size(path);
+
+        if (ChunkedSnapshotFile.isChunked(path)) {
+            BufferUtil.free(ChunkedSnapshotFile.readImage(path, pool));
+            return new FileResult(size, 0, false, null);
+        }
+
+        // frame and block checksums (if present) are validated by the stream
+        try (final InputStream is = Files.newInputStream(path, StandardOpenOption.READ);
+             final InputStream lz4is = new LZ4FrameInputStream(new BufferedInputStream(is))) {
+            final byte[] buf = new byte[1024 * 1024];
+            while (lz4is.read(buf) >= 0) {
+                // discard
+            }
+        }
+        return new FileResult(size, 0, false, null);
+    }
+
+    private static byte readByte(final FileChannel channel, final long position) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(1);
+        readFully(channel, buffer, position);
+        return buffer.get(0);
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            final int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of file at position " + position);
+            }
+            position += read;
+        }
+    }
+
+    @AllArgsConstructor
+    private static final class FileResult {
+        private final long bytes;
+        private final long blocks;
+        private final boolean torn;
+        private final String error;
+    }
+
+    /**
+     * Verification summary.
+     */
+    @Getter
+    @AllArgsConstructor
+    @ToString
+    public static final class Result {
+
+        private final int filesChecked;
+        private final long bytesChecked;
+        private final long journalBlocksChecked;
+
+        // journal files with incomplete last block (skipped on recovery)
+        private final List<String> tornFiles;
+
+        // one line per damaged file
+        private final List<String> errors;
+
+        public boolean isValid() {
+            return errors.isEmpty();
+        }
+    }
+}
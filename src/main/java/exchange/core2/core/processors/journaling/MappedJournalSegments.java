@@ -0,0 +1,243 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.metrics.PaddedCounter;
+import lombok.extern.slf4j.Slf4j;
+import org.agrona.IoUtil;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Journal segments preallocated with fixed size and memory-mapped.
+ * Flushing a batch copies it into mapped memory (no syscall, no file growth).
+ * Next segment is created as a spare file and mapped in background, then renamed when the next partition is opened,
+ * so its name (partition number, snapshot id) does not need to be known in advance.
+ * <p>
+ * Unused tail of a segment reads as zeros, zero command code marks end of data for readers.
+ * Segment is truncated to written length when closed normally.
+ * <p>
+ * All methods should be called from journaling thread. Background thread prepares segments,
+ * performs non-strict forces and releases previous segments in submission order.
+ */
+@Slf4j
+final class MappedJournalSegments {
+
+    private final long segmentSize;
+    private final JournalDurabilityMode mode;
+    private final long forceIntervalNs;
+    private final long forceBytes;
+    private final PaddedCounter forcesCounter;
+
+    private final ExecutorService backgroundExecutor;
+    private final AtomicBoolean forcePending = new AtomicBoolean(false);
+
+    private Path currentPath;
+    private MappedByteBuffer current;
+
+    // next segment is prepared under this name
+    private final Path sparePath;
+    private Future<MappedByteBuffer> prepared;
+
+    private long unforcedBytes = 0;
+    private long lastForceNs = System.nanoTime();
+
+    MappedJournalSegments(final long segmentSize,
+                          final Path sparePath,
+                          final JournalDurabilityMode mode,
+                          final long forceIntervalNs,
+                          final long forceBytes,
+                          final PaddedCounter forcesCounter,
+                          final String threadName) {
+
+        if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Mapped journal segment size should be in range (0, 2GB), got " + segmentSize);
+        }
+
+        this.segmentSize = segmentSize;
+        this.sparePath = sparePath;
+        this.mode = mode;
+        this.forceIntervalNs = forceIntervalNs;
+        this.forceBytes = forceBytes;
+        this.forcesCounter = forcesCounter;
+
+        this.backgroundExecutor = Executors.newSingleThreadExecutor(r -> {
+            final Thread thread = new Thread(r, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    boolean isOpen() {
+        return current != null;
+    }
+
+    int remaining() {
+        return current.remaining();
+    }
+
+    /**
+     * Switch to new segment, using prepared spare segment if there is one.
+     * Previous segment is released in background.
+     */
+    void open(final Path path) throws IOException {
+
+        if (Files.exists(path)) {
+            throw new IllegalStateException("File already exists: " + path);
+        }
+
+        final MappedByteBuffer next;
+        if (prepared != null) {
+            next = awaitPrepared();
+            // mapping stays valid after rename
+            Files.move(sparePath, path, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            // not zero-filled - file grown by setLength reads back as zeros
+            next = IoUtil.mapNewFile(path.toFile(), segmentSize, false);
+        }
+
+        if (current != null) {
+            retire(currentPath, current, mode != JournalDurabilityMode.STRICT_SYNC);
+        }
+
+        currentPath = path;
+        current = next;
+        unforcedBytes = 0;
+    }
+
+    /**
+     * Start creating spare segment in background (replaces unused one, if any).
+     */
+    void prepareNext() {
+        discardPrepared();
+        prepared = backgroundExecutor.submit(() -> {
+            // left by previous run
+            Files.deleteIfExists(sparePath);
+            return IoUtil.mapNewFile(sparePath.toFile(), segmentSize, true);
+        });
+    }
+
+    void append(final ByteBuffer payload) {
+
+        final int length = payload.remaining();
+        current.put(payload);
+        unforcedBytes += length;
+
+        if (mode == JournalDurabilityMode.STRICT_SYNC) {
+            current.force();
+            forcesCounter.increment();
+            unforcedBytes = 0;
+            return;
+        }
+
+        final long now = System.nanoTime();
+        if ((mode == JournalDurabilityMode.GROUP_COMMIT && unforcedBytes >= forceBytes) || now - lastForceNs >= forceIntervalNs) {
+            requestForce();
+            unforcedBytes = 0;
+            lastForceNs = now;
+        }
+    }
+
+    /**
+     * Force and release current segment, remove unused prepared segment, stop background thread.
+     */
+    void close() throws IOException {
+        discardPrepared();
+        if (current != null) {
+            retire(currentPath, current, true);
+            current = null;
+            currentPath = null;
+        }
+
+        backgroundExecutor.shutdown();
+        try {
+            backgroundExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing journal segments", ex);
+        }
+    }
+
+    private void requestForce() {
+        if (forcePending.compareAndSet(false, true)) {
+            final MappedByteBuffer segment = current;
+            backgroundExecutor.execute(() -> {
+                forcePending.set(false);
+                segment.force();
+                forcesCounter.increment();
+            });
+        }
+    }
+
+    private void retire(final Path path, final MappedByteBuffer segment, final boolean force) {
+        final int length = segment.position();
+        backgroundExecutor.execute(() -> {
+            if (force) {
+                segment.force();
+                forcesCounter.increment();
+            }
+            IoUtil.unmap(segment);
+            // cut zero tail
+            try (RandomAccessFile raf = new RandomAccessFile(path.toFile(), "rw")) {
+                raf.setLength(length);
+            } catch (IOException ex) {
+                log.warn("Can not truncate journal segment {}: {}", path, ex.getMessage());
+            }
+        });
+    }
+
+    private MappedByteBuffer awaitPrepared() throws IOException {
+        try {
+            return prepared.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for journal segment " + sparePath, ex);
+        } catch (ExecutionException ex) {
+            throw new IOException("Can not prepare journal segment " + sparePath, ex.getCause());
+        } finally {
+            prepared = null;
+        }
+    }
+
+    private void discardPrepared() {
+        if (prepared == null) {
+            return;
+        }
+        final Future<MappedByteBuffer> future = prepared;
+        prepared = null;
+
+        backgroundExecutor.execute(() -> {
+            try {
+                IoUtil.unmap(future.get());
+                Files.deleteIfExists(sparePath);
+            } catch (Exception ex) {
+                log.warn("Can not remove unused journal segment {}: {}", sparePath, ex.getMessage());
+            }
+        });
+    }
+}
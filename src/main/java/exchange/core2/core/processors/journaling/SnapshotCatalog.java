@@ -0,0 +1,487 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.processors.journaling.ISerializationProcessor.SerializedModuleType;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Append-only binary catalog of stored snapshot modules and closed journal partitions.
+ * <p>
+ * Layout: header (magic, version), then fixed-size records.
+ * Snapshot module record: type, snapshot id, seq, timestamp, module, instance, number of ME and RE shards.
+ * Journal partition record: type, base snapshot id, partition id, first seq, last seq, length in bytes, timestamp.
+ * Delta base record: type, snapshot id, base full snapshot id.
+ * Retired record: type, snapshot id, flags (no longer a recovery point and its journal removed, snapshot files removed).
+ * Partially written trailing record (after a crash) is ignored.
+ * <p>
+ * Whole catalog is read at once, so startup can find the latest complete snapshot
+ * and its journal tail without listing and probing snapshot files.
+ */
+@Slf4j
+final class SnapshotCatalog {
+
+    static final int MAGIC = 0x45434343; // "ECCC"
+    static final int VERSION_1 = 1;
+
+    static final int HEADER_SIZE = 8;
+    static final int RECORD_SIZE = 48;
+
+    private static final int RECORD_SNAPSHOT_MODULE = 1;
+    private static final int RECORD_JOURNAL_PARTITION = 2;
+    private static final int RECORD_DELTA_BASE = 3;
+    private static final int RECORD_RETIRED = 4;
+
+    static final int RETIRED_JOURNAL = 1;
+    static final int RETIRED_FILES = 2;
+
+    private final Path path;
+
+    // snapshotId -> snapshot (in order of first module stored)
+    private final Map<Long, SnapshotEntry> snapshots = new HashMap<>();
+
+    // snapshots having all modules stored, in order of completion
+    private final List<SnapshotEntry> completed = new ArrayList<>();
+
+    // base snapshotId -> closed partitions
+    private final Map<Long, List<PartitionEntry>> partitions = new HashMap<>();
+
+    // delta snapshotId -> base full snapshotId
+    private final Map<Long, Long> deltaBases = new HashMap<>();
+
+    // snapshotId -> retired flags
+    private final Map<Long, Integer> retired = new HashMap<>();
+
+    SnapshotCatalog(final Path path) throws IOException {
+        this.path = path;
+        if (Files.exists(path)) {
+            read(ByteBuffer.wrap(Files.readAllBytes(path)));
+        }
+    }
+
+    /**
+     * @return true if all modules of the snapshot are stored now
+     */
+    synchronized boolean appendSnapshotModule(final long snapshotId,
+                                              final long seq,
+                                              final long timestampNs,
+                                              final SerializedModuleType type,
+                                              final int instanceId,
+                                              final int numMatchingEngines,
+                                              final int numRiskEngines) throws IOException {
+
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putInt(RECORD_SNAPSHOT_MODULE);
+        record.putLong(snapshotId);
+        record.putLong(seq);
+        record.putLong(timestampNs);
+        record.putInt(type.ordinal());
+        record.putInt(instanceId);
+        record.putInt(numMatchingEngines);
+        record.putInt(numRiskEngines);
+        append(record);
+
+        return onSnapshotModule(snapshotId, seq, timestampNs, type, instanceId, numMatchingEngines, numRiskEngines);
+    }
+
+    synchronized void appendJournalPartition(final long snapshotId,
+                                             final int partitionId,
+                                             final long firstSeq,
+                                             final long lastSeq,
+                                             final long length,
+                                             final long timestampNs) throws IOException {
+
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putInt(RECORD_JOURNAL_PARTITION);
+        record.putLong(snapshotId);
+        record.putInt(partitionId);
+        record.putLong(firstSeq);
+        record.putLong(lastSeq);
+        record.putLong(length);
+        record.putLong(timestampNs);
+        append(record);
+
+        onJournalPartition(new PartitionEntry(snapshotId, partitionId, firstSeq, lastSeq, length, timestampNs));
+    }
+
+    synchronized void appendDeltaBase(final long snapshotId, final long baseSnapshotId) throws IOException {
+
+        if (deltaBases.getOrDefault(snapshotId, 0L) == baseSnapshotId) {
+            // already recorded by another module
+            return;
+        }
+
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putInt(RECORD_DELTA_BASE);
+        record.putLong(snapshotId);
+        record.putLong(baseSnapshotId);
+        append(record);
+
+        deltaBases.put(snapshotId, baseSnapshotId);
+    }
+
+    synchronized void appendRetired(final long snapshotId, final int flags) throws IOException {
+
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putInt(RECORD_RETIRED);
+        record.putLong(snapshotId);
+        record.putInt(flags);
+        append(record);
+
+        onRetired(snapshotId, flags);
+    }
+
+    /**
+     * Find snapshots and journals not needed for the latest recovery points.
+     * Journal of a snapshot is retired once the journal is switched to the next snapshot (older than the oldest kept recovery point),
+     * snapshot files are retired unless the snapshot is a delta base of a kept recovery point.
+     *
+     * @param recoveryPoints - number of latest complete snapshots to keep
+     * @param journaling     - journal is written (otherwise snapshots are retired without waiting for closed journal partitions)
+     * @return snapshots to retire (empty if nothing to do)
+     */
+    synchronized List<RetiredSnapshot> planRetention(final int recoveryPoints, final boolean journaling) {
+
+        if (recoveryPoints <= 0 || completed.size() <= recoveryPoints) {
+            return Collections.emptyList();
+        }
+
+        final List<SnapshotEntry> kept = completed.subList(completed.size() - recoveryPoints, completed.size());
+        final long oldestKeptSeq = kept.get(0).seq;
+        final Set<Long> keptFiles = new HashSet<>();
+        for (final SnapshotEntry entry : kept) {
+            keptFiles.add(entry.snapshotId);
+            keptFiles.add(deltaBases.getOrDefault(entry.snapshotId, entry.snapshotId));
+        }
+
+        final TreeMap<Long, SnapshotEntry> snapshotsBySeq = new TreeMap<>();
+        snapshots.values().forEach(entry -> snapshotsBySeq.put(entry.seq, entry));
+
+        final Set<Long> ids = new TreeSet<>(snapshots.keySet());
+        ids.addAll(partitions.keySet());
+
+        final List<RetiredSnapshot> plan = new ArrayList<>();
+        for (final long snapshotId : ids) {
+
+            final SnapshotEntry entry = snapshots.get(snapshotId);
+            if (snapshotId != 0 && entry == null) {
+                // journal of unknown snapshot
+                continue;
+            }
+            final long seq = entry != null ? entry.seq : 0;
+            if (seq >= oldestKeptSeq) {
+                continue;
+            }
+
+            int flags = 0;
+            if (!isRetired(snapshotId, RETIRED_JOURNAL) && (!journaling || isJournalSwitched(snapshotId, snapshotsBySeq.higherEntry(seq)))) {
+                flags |= RETIRED_JOURNAL;
+            }
+            if (entry != null && !keptFiles.contains(snapshotId) && !isRetired(snapshotId, RETIRED_FILES)) {
+                flags |= RETIRED_FILES;
+            }
+            if (flags != 0) {
+                plan.add(new RetiredSnapshot(
+                        snapshotId,
+                        flags,
+                        entry != null ? entry.numMatchingEngines : 0,
+                        entry != null ? entry.numRiskEngines : 0));
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Journal is switched to the next snapshot after its PERSIST_STATE_RISK record, so partition containing that record is the last one.
+     */
+    private boolean isJournalSwitched(final long snapshotId, final Map.Entry<Long, SnapshotEntry> next) {
+        final long lastSeq = partitions.getOrDefault(snapshotId, Collections.emptyList()).stream().mapToLong(p -> p.lastSeq).max().orElse(-1);
+        return next != null && next.getValue().riskSeq != -1 && lastSeq >= next.getValue().riskSeq;
+    }
+
+    /**
+     * @return latest snapshot having all modules stored (or clean start if there is no such snapshot) with its closed journal partitions
+     */
+    synchronized RecoveryPoint findLatestRecoveryPoint() {
+
+        final long snapshotId;
+        final long seq;
+        if (completed.isEmpty()) {
+            snapshotId = 0;
+            seq = 0;
+        } else {
+            final SnapshotEntry latest = completed.get(completed.size() - 1);
+            snapshotId = latest.snapshotId;
+            seq = latest.seq;
+        }
+
+        final List<PartitionEntry> journal = partitions.getOrDefault(snapshotId, Collections.emptyList());
+        final long lastSeq = journal.stream().mapToLong(p -> p.lastSeq).reduce(seq, Math::max);
+
+        return new RecoveryPoint(snapshotId, seq, lastSeq, new ArrayList<>(journal));
+    }
+
+    /**
+     * @return closed journal partition record, or null if partition is not closed yet
+     */
+    synchronized PartitionEntry findPartition(final long snapshotId, final int partitionId) {
+        for (final PartitionEntry partition : partitions.getOrDefault(snapshotId, Collections.emptyList())) {
+            if (partition.partitionId == partitionId) {
+                return partition;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return complete snapshots by sequence, with their closed journal partitions
+     */
+    synchronized NavigableMap<Long, SnapshotDescriptor> buildSnapshotIndex() {
+
+        final NavigableMap<Long, SnapshotDescriptor> index = new TreeMap<>();
+
+        SnapshotDescriptor prev = null;
+        if (partitions.containsKey(0L)) {
+            // journal recorded from clean start
+            final SnapshotDescriptor empty = SnapshotDescriptor.createEmpty(0, 0);
+            addJournals(empty, partitions.get(0L));
+            index.put(0L, empty);
+            prev = empty;
+        }
+
+        for (final SnapshotEntry entry : completed) {
+            final SnapshotDescriptor descriptor = new SnapshotDescriptor(entry.snapshotId, entry.seq, entry.timestampNs, prev, entry.numMatchingEngines, entry.numRiskEngines);
+            addJournals(descriptor, partitions.getOrDefault(entry.snapshotId, Collections.emptyList()));
+            index.put(entry.seq, descriptor);
+            prev = descriptor;
+        }
+
+        return index;
+    }
+
+    private static void addJournals(final SnapshotDescriptor snapshot, final List<PartitionEntry> journal) {
+        JournalDescriptor prev = null;
+        for (final PartitionEntry partition : journal) {
+            if (partition.firstSeq == -1) {
+                continue;
+            }
+            final JournalDescriptor descriptor = new JournalDescriptor(partition.timestampNs, partition.firstSeq, snapshot, prev);
+            descriptor.setSeqLast(partition.lastSeq);
+            snapshot.getJournals().put(partition.firstSeq, descriptor);
+            prev = descriptor;
+        }
+    }
+
+    private void append(final ByteBuffer record) throws IOException {
+
+        // fixed size record, unused tail is zero
+        record.clear();
+
+        try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+
+            long position = channel.size();
+            if (position < HEADER_SIZE) {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putInt(MAGIC);
+                header.putInt(VERSION_1);
+                header.flip();
+                writeFully(channel, header, 0);
+                position = HEADER_SIZE;
+            } else {
+                // overwrite partially written record if any
+                position -= (position - HEADER_SIZE) % RECORD_SIZE;
+            }
+
+            writeFully(channel, record, position);
+            channel.force(false);
+        }
+    }
+
+    private void read(final ByteBuffer bb) {
+
+        if (bb.remaining() < HEADER_SIZE) {
+            return;
+        }
+        if (bb.getInt() != MAGIC) {
+            throw new IllegalStateException("Not a snapshot catalog file: " + path);
+        }
+        final int version = bb.getInt();
+        if (version != VERSION_1) {
+            throw new IllegalStateException("Unsupported snapshot catalog version " + version + " in " + path);
+        }
+
+        final SerializedModuleType[] types = SerializedModuleType.values();
+
+        while (bb.remaining() >= RECORD_SIZE) {
+            final int recordStart = bb.position();
+            final int recordType = bb.getInt();
+            if (recordType == RECORD_SNAPSHOT_MODULE) {
+                final long snapshotId = bb.getLong();
+                final long seq = bb.getLong();
+                final long timestampNs = bb.getLong();
+                final SerializedModuleType type = types[bb.getInt()];
+                final int instanceId = bb.getInt();
+                final int numME = bb.getInt();
+                final int numRE = bb.getInt();
+                onSnapshotModule(snapshotId, seq, timestampNs, type, instanceId, numME, numRE);
+            } else if (recordType == RECORD_JOURNAL_PARTITION) {
+                final long snapshotId = bb.getLong();
+                final int partitionId = bb.getInt();
+                final long firstSeq = bb.getLong();
+                final long lastSeq = bb.getLong();
+                final long length = bb.getLong();
+                final long timestampNs = bb.getLong();
+                onJournalPartition(new PartitionEntry(snapshotId, partitionId, firstSeq, lastSeq, length, timestampNs));
+            } else if (recordType == RECORD_DELTA_BASE) {
+                final long snapshotId = bb.getLong();
+                deltaBases.put(snapshotId, bb.getLong());
+            } else if (recordType == RECORD_RETIRED) {
+                final long snapshotId = bb.getLong();
+                onRetired(snapshotId, bb.getInt());
+            } else {
+                throw new IllegalStateException("Unknown record type " + recordType + " at position " + recordStart + " in " + path);
+            }
+            bb.position(recordStart + RECORD_SIZE);
+        }
+
+        log.debug("Loaded catalog {}: {} complete snapshots, {} journal partitions", path, completed.size(), partitions.values().stream().mapToInt(List::size).sum());
+    }
+
+    private boolean onSnapshotModule(final long snapshotId,
+                                     final long seq,
+                                     final long timestampNs,
+                                     final SerializedModuleType type,
+                                     final int instanceId,
+                                     final int numME,
+                                     final int numRE) {
+
+        final SnapshotEntry entry = snapshots.computeIfAbsent(snapshotId, id -> new SnapshotEntry(id, seq, timestampNs, numME, numRE));
+        final boolean wasComplete = entry.isComplete();
+        (type == SerializedModuleType.MATCHING_ENGINE_ROUTER ? entry.storedME : entry.storedRE).set(instanceId);
+        if (type == SerializedModuleType.RISK_ENGINE) {
+            entry.riskSeq = seq;
+        }
+        if (!wasComplete && entry.isComplete()) {
+            completed.add(entry);
+            return true;
+        }
+        return false;
+    }
+
+    private void onJournalPartition(final PartitionEntry partition) {
+        partitions.computeIfAbsent(partition.snapshotId, id -> new ArrayList<>()).add(partition);
+    }
+
+    private void onRetired(final long snapshotId, final int flags) {
+        retired.merge(snapshotId, flags, (a, b) -> a | b);
+        if ((flags & RETIRED_JOURNAL) != 0) {
+            // not a recovery point anymore
+            completed.removeIf(entry -> entry.snapshotId == snapshotId);
+            partitions.remove(snapshotId);
+        }
+    }
+
+    private boolean isRetired(final long snapshotId, final int flag) {
+        return (retired.getOrDefault(snapshotId, 0) & flag) != 0;
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static final class SnapshotEntry {
+
+        private final long snapshotId;
+        private final long seq;
+        private final long timestampNs;
+        private final int numMatchingEngines;
+        private final int numRiskEngines;
+
+        private final BitSet storedME = new BitSet();
+        private final BitSet storedRE = new BitSet();
+
+        // seq of PERSIST_STATE_RISK command (matching engine snapshot is taken at the previous seq)
+        private long riskSeq = -1;
+
+        private boolean isComplete() {
+            return storedME.cardinality() == numMatchingEngines && storedRE.cardinality() == numRiskEngines;
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static final class PartitionEntry {
+
+        private final long snapshotId;
+        private final int partitionId;
+        private final long firstSeq; // -1 if partition is empty
+        private final long lastSeq;
+        private final long length;
+        private final long timestampNs;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static final class RetiredSnapshot {
+
+        private final long snapshotId; // 0 - clean start journal
+        private final int flags;
+        private final int numMatchingEngines;
+        private final int numRiskEngines;
+
+        boolean isJournalRetired() {
+            return (flags & RETIRED_JOURNAL) != 0;
+        }
+
+        boolean isFilesRetired() {
+            return (flags & RETIRED_FILES) != 0;
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    static final class RecoveryPoint {
+
+        private final long snapshotId; // 0 - clean start
+        private final long seq;
+        private final long lastJournalSeq;
+        private final List<PartitionEntry> journal;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.metrics.MetricsRegistry;
+import exchange.core2.core.metrics.PaddedCounter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ships journal blocks to a single follower connected over TCP socket.
+ * <p>
+ * Frame: last sequence (long), block length (int), block data.
+ * Blocks are copied into reusable frames and sent by a separate thread, so journaling never waits for the follower.
+ * Blocks are queued from the start, follower can connect later, but while queue capacity is not exceeded.
+ * If queue overflows or connection is lost, shipping stops - follower should be recreated from a snapshot.
+ */
+@Slf4j
+public final class SocketJournalShipper implements IJournalShipper {
+
+    static final int FRAME_HEADER_SIZE = 12;
+
+    private static final int INITIAL_FRAME_SIZE = 64 * 1024;
+
+    private final ServerSocketChannel serverChannel;
+    private final BlockingQueue<ByteBuffer> queue;
+
+    // sent frames are returned for reuse, new frame is allocated only if all are queued or block does not fit
+    private final BlockingQueue<ByteBuffer> freeFrames;
+    private final Thread senderThread;
+
+    private volatile boolean running = true;
+    private volatile boolean broken = false;
+    private volatile long shippedSeq = 0;
+
+    private final PaddedCounter shippedBytes = new PaddedCounter();
+
+    /**
+     * Start listening for follower connection.
+     *
+     * @param address       - listening address (port 0 - any free port)
+     * @param queueCapacity - maximum number of blocks waiting to be sent
+     * @throws IOException if can not bind
+     */
+    public SocketJournalShipper(final InetSocketAddress address, final int queueCapacity) throws IOException {
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(address);
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.freeFrames = new ArrayBlockingQueue<>(queueCapacity);
+        this.senderThread = new Thread(this::sendLoop, "J-SHIP-" + getLocalAddress().getPort());
+        this.senderThread.setDaemon(true);
+        this.senderThread.start();
+    }
+
+    public InetSocketAddress getLocalAddress() {
+        try {
+            return (InetSocketAddress) serverChannel.getLocalAddress();
+        } catch (final IOException ex) {
+            throw new IllegalStateException("Can not get listening address", ex);
+        }
+    }
+
+    public boolean isBroken() {
+        return broken;
+    }
+
+    @Override
+    public void ship(final long lastSeq, final ByteBuffer block) {
+        if (broken) {
+            return;
+        }
+        final ByteBuffer frame = acquireFrame(FRAME_HEADER_SIZE + block.remaining());
+        frame.putLong(lastSeq);
+        frame.putInt(block.remaining());
+        frame.put(block);
+        frame.flip();
+        if (!queue.offer(frame)) {
+            broken = true;
+            queue.clear();
+            log.error("Journal shipping queue overflow at seq={}, follower should be recreated from a snapshot", lastSeq);
+        }
+    }
+
+    private ByteBuffer acquireFrame(final int size) {
+        final ByteBuffer frame = freeFrames.poll();
+        if (frame == null || frame.capacity() < size) {
+            return ByteBuffer.allocate(Math.max(size, INITIAL_FRAME_SIZE));
+        }
+        frame.clear();
+        return frame;
+    }
+
+    private void sendLoop() {
+        try (final SocketChannel follower = serverChannel.accept()) {
+            log.info("Follower connected: {}", follower.getRemoteAddress());
+
+            // on close send remaining blocks
+            while (!broken && (running || !queue.isEmpty())) {
+                final ByteBuffer frame = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (frame == null) {
+                    continue;
+                }
+                final long seq = frame.getLong(0);
+                shippedBytes.add(frame.remaining());
+                while (frame.hasRemaining()) {
+                    follower.write(frame);
+                }
+                shippedSeq = seq;
+                freeFrames.offer(frame);
+            }
+
+        } catch (final AsynchronousCloseException ex) {
+            log.debug("Closed before follower connected");
+        } catch (final IOException ex) {
+            broken = true;
+            log.error("Follower connection lost, follower should be recreated from a snapshot: ", ex);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            serverChannel.close();
+            senderThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (final IOException ex) {
+            log.warn("Can not close listening socket: ", ex);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void registerMetrics(final MetricsRegistry registry) {
+        registry.gauge("replication.shippedSeq", () -> shippedSeq);
+        registry.gauge("replication.shippedBytes", shippedBytes::get);
+        registry.gauge("replication.queuedBlocks", queue::size);
+        registry.gauge("replication.broken", () -> broken ? 1 : 0);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.output;
+
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommandType;
+
+/**
+ * Preallocated output ring slot. Holds either command result or one matcher event of that command.
+ * <p>
+ * stamp is a ring sequence of the record, or -1 while writer is updating the slot (seqlock).
+ */
+final class OutputRecord {
+
+    static final byte KIND_COMMAND = 0;
+    static final byte KIND_EVENT = 1;
+
+    volatile long stamp = -1L;
+
+    byte kind;
+
+    // command result
+    long commandSeq;
+    OrderCommandType command;
+    CommandResultCode resultCode;
+    long orderId;
+    int symbol;
+    long price;
+    long size;
+    long reserveBidPrice;
+    OrderAction action;
+    OrderType orderType;
+    long uid;
+    long timestamp;
+    int userCookie;
+    int eventsNum;
+    // events not stored because ring is too small (truncated command)
+    int droppedEvents;
+
+    // matcher event
+    MatcherEventType eventType;
+    int section;
+    boolean activeOrderCompleted;
+    long matchedOrderId;
+    long matchedOrderUid;
+    boolean matchedOrderCompleted;
+    long eventPrice;
+    long eventSize;
+    long bidderHoldPrice;
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.output;
+
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.metrics.MetricsRegistry;
+import exchange.core2.core.metrics.PaddedCounter;
+import lombok.extern.slf4j.Slf4j;
+
+import static net.openhft.chronicle.core.UnsafeMemory.UNSAFE;
+
+/**
+ * Preallocated broadcast ring for command results and matcher events (TRADE/REDUCE/REJECT).
+ * <p>
+ * Written by results handler thread only, never waits for subscribers - slow subscriber gets overrun
+ * and skips lost records instead of back-pressuring the pipeline.
+ * Every subscriber has its own cursor (see OutputSubscriber) and lag metric.
+ * <p>
+ * L2 market data and binary events (reports) are not copied.
+ * Command with more matcher events than ring can hold is truncated: first capacity-1 events are copied,
+ * number of dropped events is stored in command record and counted by output.truncated metric.
+ */
+@Slf4j
+public final class OutputRing {
+
+    private final OutputRecord[] records;
+    private final int capacity;
+    private final int indexMask;
+
+    // number of published records, written by results handler thread only
+    private final PaddedCounter published = new PaddedCounter();
+
+    // number of commands published with truncated events chain
+    private final PaddedCounter truncated = new PaddedCounter();
+
+    private final MetricsRegistry metricsRegistry;
+
+    public OutputRing(final int capacity, final MetricsRegistry metricsRegistry) {
+
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Output ring capacity must be a power of 2");
+        }
+
+        this.capacity = capacity;
+        this.indexMask = capacity - 1;
+        this.records = new OutputRecord[capacity];
+        for (int i = 0; i < capacity; i++) {
+            records[i] = new OutputRecord();
+        }
+
+        this.metricsRegistry = metricsRegistry;
+        metricsRegistry.gauge("output.published", published::get);
+        metricsRegistry.gauge("output.truncated", truncated::get);
+    }
+
+    /**
+     * Copy command result and its matcher events into the ring. Must be called from single thread.
+     *
+     * @param seq - command sequence
+     * @param cmd - processed command
+     */
+    public void publish(final long seq, final OrderCommand cmd) {
+
+        long recordSeq = published.get();
+
+        int totalEvents = 0;
+        for (MatcherTradeEvent evt = cmd.matcherEvent; evt != null; evt = evt.nextEvent) {
+            if (evt.eventType != MatcherEventType.BINARY_EVENT) {
+                totalEvents++;
+            }
+        }
+
+        // one slot is required for command itself
+        final int eventsNum = Math.min(totalEvents, capacity - 1);
+        if (eventsNum != totalEvents) {
+            truncated.increment();
+        }
+
+        final OutputRecord cr = claim(recordSeq);
+        cr.kind = OutputRecord.KIND_COMMAND;
+        cr.commandSeq = seq;
+        cr.command = cmd.command;
+        cr.resultCode = cmd.resultCode;
+        cr.orderId = cmd.orderId;
+        cr.symbol = cmd.symbol;
+        cr.price = cmd.price;
+        cr.size = cmd.size;
+        cr.reserveBidPrice = cmd.reserveBidPrice;
+        cr.action = cmd.action;
+        cr.orderType = cmd.orderType;
+        cr.uid = cmd.uid;
+        cr.timestamp = cmd.timestamp;
+        cr.userCookie = cmd.userCookie;
+        cr.eventsNum = eventsNum;
+        cr.droppedEvents = totalEvents - eventsNum;
+        cr.stamp = recordSeq++;
+
+        int written = 0;
+        for (MatcherTradeEvent evt = cmd.matcherEvent; evt != null && written < eventsNum; evt = evt.nextEvent) {
+            if (evt.eventType == MatcherEventType.BINARY_EVENT) {
+                continue;
+            }
+            final OutputRecord er = claim(recordSeq);
+            er.kind = OutputRecord.KIND_EVENT;
+            er.commandSeq = seq;
+            er.eventType = evt.eventType;
+            er.section = evt.section;
+            er.activeOrderCompleted = evt.activeOrderCompleted;
+            er.matchedOrderId = evt.matchedOrderId;
+            er.matchedOrderUid = evt.matchedOrderUid;
+            er.matchedOrderCompleted = evt.matchedOrderCompleted;
+            er.eventPrice = evt.price;
+            er.eventSize = evt.size;
+            er.bidderHoldPrice = evt.bidderHoldPrice;
+            er.stamp = recordSeq++;
+            written++;
+        }
+
+        published.add(1 + eventsNum);
+    }
+
+    /**
+     * Create new subscriber starting from the current ring position.
+     * Registers output.[name].lag and output.[name].lost metrics.
+     *
+     * @param name - unique subscriber name
+     * @return subscriber (should be polled from single thread)
+     */
+    public OutputSubscriber subscribe(final String name) {
+        final OutputSubscriber subscriber = new OutputSubscriber(this, published.get());
+        metricsRegistry.gauge("output." + name + ".lag", subscriber::getLag);
+        metricsRegistry.gauge("output." + name + ".lost", subscriber::getLostRecords);
+        log.info("Output ring subscriber {} starts from record {}", name, published.get());
+        return subscriber;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    long getPublished() {
+        return published.get();
+    }
+
+    OutputRecord getRecord(final long recordSeq) {
+        return records[(int) recordSeq & indexMask];
+    }
+
+    private OutputRecord claim(final long recordSeq) {
+        final OutputRecord record = records[(int) recordSeq & indexMask];
+        record.stamp = -1L;
+        // make invalidation visible before any field is updated
+        UNSAFE.storeFence();
+        return record;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.output;
+
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.metrics.PaddedCounter;
+
+import java.util.Arrays;
+import java.util.function.ObjLongConsumer;
+
+import static net.openhft.chronicle.core.UnsafeMemory.UNSAFE;
+
+/**
+ * Output ring reader with its own cursor. Not threadsafe - poll from a single (consumer) thread.
+ * <p>
+ * Commands are delivered as reusable OrderCommand instance with reconstructed matcher events chain,
+ * so any existing results consumer (e.g. SimpleEventsProcessor) can be attached.
+ * Instance and events are valid only during the callback.
+ */
+public final class OutputSubscriber {
+
+    private final OutputRing ring;
+    private final int capacity;
+
+    // next record to read
+    private long position;
+
+    // visible to metrics exporters
+    private final PaddedCounter consumed = new PaddedCounter();
+    private final PaddedCounter lostRecords = new PaddedCounter();
+
+    private final OrderCommand cmd = new OrderCommand();
+    private long commandSeq;
+    private int droppedEvents;
+    private MatcherTradeEvent[] eventsPool = new MatcherTradeEvent[0];
+
+    OutputSubscriber(final OutputRing ring, final long position) {
+        this.ring = ring;
+        this.capacity = ring.getCapacity();
+        this.position = position;
+        this.consumed.add(position);
+    }
+
+    /**
+     * Deliver available commands to consumer.
+     *
+     * @param consumer    - results consumer
+     * @param maxCommands - max number of commands to deliver
+     * @return number of delivered commands
+     */
+    public int poll(final ObjLongConsumer<OrderCommand> consumer, final int maxCommands) {
+
+        int delivered = 0;
+
+        while (delivered < maxCommands) {
+
+            final long available = ring.getPublished();
+            if (position >= available) {
+                break;
+            }
+
+            if (available - position > capacity) {
+                skipTo(available - capacity);
+                continue;
+            }
+
+            final OutputRecord record = ring.getRecord(position);
+            if (record.stamp != position) {
+                skipTo(Math.max(position + 1, ring.getPublished() - capacity));
+                continue;
+            }
+
+            if (record.kind != OutputRecord.KIND_COMMAND) {
+                // landed in the middle of overrun command
+                skipTo(position + 1);
+                continue;
+            }
+
+            if (readCommand(record)) {
+                consumer.accept(cmd, commandSeq);
+                delivered++;
+            }
+        }
+
+        return delivered;
+    }
+
+    /**
+     * @return number of records published but not consumed yet
+     */
+    public long getLag() {
+        return ring.getPublished() - consumed.get();
+    }
+
+    /**
+     * @return number of matcher events of the command in the current callback which did not fit into the ring (0 - complete chain)
+     */
+    public int getDroppedEvents() {
+        return droppedEvents;
+    }
+
+    /**
+     * @return number of records lost because subscriber was overrun
+     */
+    public long getLostRecords() {
+        return lostRecords.get();
+    }
+
+    private boolean readCommand(final OutputRecord record) {
+
+        final long commandPosition = position;
+
+        commandSeq = record.commandSeq;
+        cmd.command = record.command;
+        cmd.resultCode = record.resultCode;
+        cmd.orderId = record.orderId;
+        cmd.symbol = record.symbol;
+        cmd.price = record.price;
+        cmd.size = record.size;
+        cmd.reserveBidPrice = record.reserveBidPrice;
+        cmd.action = record.action;
+        cmd.orderType = record.orderType;
+        cmd.uid = record.uid;
+        cmd.timestamp = record.timestamp;
+        cmd.userCookie = record.userCookie;
+        cmd.marketData = null;
+        final int eventsNum = record.eventsNum;
+        droppedEvents = record.droppedEvents;
+
+        if (!isStillValid(record, commandPosition)) {
+            return false;
+        }
+
+        if (eventsPool.length < eventsNum) {
+            final int oldLength = eventsPool.length;
+            eventsPool = Arrays.copyOf(eventsPool, Math.max(eventsNum, oldLength * 2));
+            for (int i = oldLength; i < eventsPool.length; i++) {
+                eventsPool[i] = new MatcherTradeEvent();
+            }
+        }
+
+        MatcherTradeEvent prev = null;
+        for (int i = 0; i < eventsNum; i++) {
+            final long eventPosition = commandPosition + 1 + i;
+            final OutputRecord er = ring.getRecord(eventPosition);
+            final MatcherTradeEvent evt = eventsPool[i];
+            evt.eventType = er.eventType;
+            evt.section = er.section;
+            evt.activeOrderCompleted = er.activeOrderCompleted;
+            evt.matchedOrderId = er.matchedOrderId;
+            evt.matchedOrderUid = er.matchedOrderUid;
+            evt.matchedOrderCompleted = er.matchedOrderCompleted;
+            evt.price = er.eventPrice;
+            evt.size = er.eventSize;
+            evt.bidderHoldPrice = er.bidderHoldPrice;
+            evt.nextEvent = null;
+            if (!isStillValid(er, eventPosition)) {
+                return false;
+            }
+            if (prev == null) {
+                cmd.matcherEvent = evt;
+            } else {
+                prev.nextEvent = evt;
+            }
+            prev = evt;
+        }
+        if (eventsNum == 0) {
+            cmd.matcherEvent = null;
+        }
+
+        position = commandPosition + 1 + eventsNum;
+        consumed.add(1 + eventsNum);
+        return true;
+    }
+
+    private boolean isStillValid(final OutputRecord record, final long expectedStamp) {
+        UNSAFE.loadFence();
+        if (record.stamp == expectedStamp) {
+            return true;
+        }
+        // overwritten while reading
+        skipTo(Math.max(position + 1, ring.getPublished() - capacity));
+        return false;
+    }
+
+    private void skipTo(final long newPosition) {
+        lostRecords.add(newPosition - position);
+        consumed.add(newPosition - position);
+        position = newPosition;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.views;
+
+import exchange.core2.core.orderbook.IOrderBook;
+import lombok.Getter;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+
+/**
+ * Immutable copy of matching engine shard order books.
+ * <p>
+ * Created by {@link MatchingEngineReplica}, next view copies only order books changed since previous view and shares the rest.
+ * Order books must be used for reading only.
+ */
+@Getter
+public final class MatchingEngineReadView implements ReadView {
+
+    private final long version;
+
+    private final int shardId;
+    private final long shardMask;
+
+    // symbol -> order book copy
+    private final IntObjectHashMap<IOrderBook> orderBooks;
+
+    MatchingEngineReadView(final long version,
+                           final int shardId,
+                           final long shardMask,
+                           final IntObjectHashMap<IOrderBook> orderBooks) {
+        this.version = version;
+        this.shardId = shardId;
+        this.shardMask = shardMask;
+        this.orderBooks = orderBooks;
+    }
+
+    public IOrderBook getOrderBook(final int symbol) {
+        return orderBooks.get(symbol);
+    }
+}
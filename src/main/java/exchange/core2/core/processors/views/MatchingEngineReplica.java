@@ -0,0 +1,228 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.views;
+
+import com.lmax.disruptor.EventHandler;
+import exchange.core2.collections.objpool.ObjectsPool;
+import exchange.core2.core.common.CoreSymbolSpecification;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.api.binary.BatchAddSymbolsCommand;
+import exchange.core2.core.common.api.binary.BinaryDataCommand;
+import exchange.core2.core.common.api.reports.ReportQuery;
+import exchange.core2.core.common.api.reports.ReportResult;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.common.config.LoggingConfiguration;
+import exchange.core2.core.orderbook.IOrderBook;
+import exchange.core2.core.orderbook.OrderBookEventsHelper;
+import exchange.core2.core.processors.BinaryCommandsProcessor;
+import exchange.core2.core.processors.MatchingEngineRouter;
+import exchange.core2.core.processors.SharedPool;
+import lombok.Getter;
+import net.openhft.chronicle.bytes.Bytes;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.IntHashSet;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Optional;
+
+/**
+ * Follows one matching engine shard on own thread (after matching engine stage) and publishes its read views.
+ * <p>
+ * Replica keeps own copy of shard order books and applies commands which were successfully executed by matching engine,
+ * matching is deterministic, so replica books always have same state as matching engine books for the same sequence.
+ * Copying changed order books into views happens on replica thread, matching engine thread does not do any read views work.
+ * Replica can lag behind matching engine up to ring buffer size, reports are delayed accordingly.
+ */
+public final class MatchingEngineReplica implements EventHandler<OrderCommand> {
+
+    @Getter
+    private final ReadViewPublisher<MatchingEngineReadView> readViews = new ReadViewPublisher<>();
+
+    private final int shardId;
+    private final long shardMask;
+
+    // symbol->OB (replica)
+    private final IntObjectHashMap<IOrderBook> orderBooks;
+
+    // reassembles binary commands (symbols can be added at any time)
+    private final BinaryCommandsProcessor binaryCommandsProcessor;
+
+    private final IOrderBook.OrderBookFactory orderBookFactory;
+    private final ObjectsPool objectsPool;
+    private final OrderBookEventsHelper eventsHelper = new OrderBookEventsHelper(MatcherTradeEvent::new);
+    private final LoggingConfiguration loggingCfg;
+
+    // copies never return objects, small pool is enough
+    private final ObjectsPool copiesPool;
+    private final Bytes<ByteBuffer> copyBuffer = Bytes.elasticHeapByteBuffer(64 * 1024);
+
+    // commands are applied to a copy, ring buffer slot is read-only for replica
+    private final OrderCommand replayCmd = new OrderCommand();
+
+    private final int groupsInterval;
+    private final IntHashSet changedSymbols = new IntHashSet();
+    private long viewGroup = 0;
+    private long nextViewGroup = 0;
+    private boolean rebuild = false;
+
+    /**
+     * Create replica of matching engine state (should be called before matching engine starts processing commands).
+     *
+     * @param matchingEngine - matching engine shard
+     * @param exchangeCfg    - exchange configuration
+     */
+    public MatchingEngineReplica(final MatchingEngineRouter matchingEngine, final ExchangeConfiguration exchangeCfg) {
+
+        this.shardId = matchingEngine.getShardId();
+        this.shardMask = matchingEngine.getShardMask();
+        this.orderBookFactory = matchingEngine.getOrderBookFactory();
+        this.loggingCfg = matchingEngine.getLoggingCfg();
+        this.groupsInterval = exchangeCfg.getReportsQueriesCfg().getReadViewGroupsInterval();
+
+        final HashMap<Integer, Integer> objectsPoolConfig = new HashMap<>();
+        objectsPoolConfig.put(ObjectsPool.DIRECT_ORDER, 1024 * 64);
+        objectsPoolConfig.put(ObjectsPool.DIRECT_BUCKET, 1024 * 4);
+        objectsPoolConfig.put(ObjectsPool.ART_NODE_4, 1024 * 2);
+        objectsPoolConfig.put(ObjectsPool.ART_NODE_16, 1024);
+        objectsPoolConfig.put(ObjectsPool.ART_NODE_48, 512);
+        objectsPoolConfig.put(ObjectsPool.ART_NODE_256, 256);
+        this.objectsPool = new ObjectsPool(objectsPoolConfig);
+
+        final HashMap<Integer, Integer> copiesPoolConfig = new HashMap<>();
+        objectsPoolConfig.keySet().forEach(type -> copiesPoolConfig.put(type, 16));
+        this.copiesPool = new ObjectsPool(copiesPoolConfig);
+
+        // start from matching engine state (loaded from snapshot or bootstrap file)
+        this.orderBooks = new IntObjectHashMap<>(matchingEngine.getOrderBooks().size());
+        matchingEngine.getOrderBooks().forEachKeyValue((symbol, ob) -> orderBooks.put(symbol, copyOf(ob, objectsPool)));
+
+        copyBuffer.clear();
+        matchingEngine.getBinaryCommandsProcessor().writeMarshallable(copyBuffer);
+        this.binaryCommandsProcessor = new BinaryCommandsProcessor(
+                this::handleBinaryMessage,
+                this::handleReportQuery,
+                // replica never produces binary events
+                new SharedPool(2, 1, 16),
+                exchangeCfg.getReportsQueriesCfg(),
+                copyBuffer,
+                shardId + 2048);
+
+        readViews.publish(createView(-1L));
+    }
+
+    @Override
+    public void onEvent(final OrderCommand cmd, final long seq, final boolean endOfBatch) {
+
+        // same versions are published by risk engines
+        if (cmd.eventsGroup != viewGroup) {
+            viewGroup = cmd.eventsGroup;
+            if (cmd.command == OrderCommandType.NOP || viewGroup >= nextViewGroup) {
+                readViews.publish(createView(seq - 1));
+                nextViewGroup = viewGroup + groupsInterval;
+            }
+        }
+
+        final OrderCommandType command = cmd.command;
+
+        if (command == OrderCommandType.MOVE_ORDER
+                || command == OrderCommandType.CANCEL_ORDER
+                || command == OrderCommandType.PLACE_ORDER
+                || command == OrderCommandType.REDUCE_ORDER) {
+
+            // failed commands do not change order books
+            if (cmd.resultCode == CommandResultCode.SUCCESS && ((cmd.symbol & shardMask) == shardId)) {
+                applyMatchingCommand(cmd);
+            }
+
+        } else if (command == OrderCommandType.BINARY_DATA_COMMAND) {
+            binaryCommandsProcessor.acceptBinaryFrame(cmd);
+
+        } else if (command == OrderCommandType.RESET) {
+            orderBooks.clear();
+            binaryCommandsProcessor.reset();
+            changedSymbols.clear();
+            rebuild = true;
+        }
+    }
+
+    private void applyMatchingCommand(final OrderCommand cmd) {
+
+        final IOrderBook orderBook = orderBooks.get(cmd.symbol);
+        if (orderBook == null) {
+            throw new IllegalStateException("ME" + shardId + " replica has no order book for symbol " + cmd.symbol);
+        }
+
+        cmd.writeTo(replayCmd);
+        replayCmd.resultCode = CommandResultCode.VALID_FOR_MATCHING_ENGINE;
+        replayCmd.matcherEvent = null;
+        replayCmd.marketData = null;
+
+        final CommandResultCode resultCode = IOrderBook.processCommand(orderBook, replayCmd);
+        if (resultCode != CommandResultCode.SUCCESS) {
+            throw new IllegalStateException("ME" + shardId + " replica diverged: " + resultCode + " for " + cmd);
+        }
+
+        // events are not used by replica
+        replayCmd.matcherEvent = null;
+        changedSymbols.add(cmd.symbol);
+    }
+
+    private void handleBinaryMessage(final BinaryDataCommand message) {
+        if (message instanceof BatchAddSymbolsCommand) {
+            ((BatchAddSymbolsCommand) message).getSymbols().forEach(this::addSymbol);
+        }
+    }
+
+    // queries frames are not passed to replica
+    private <R extends ReportResult> Optional<R> handleReportQuery(final ReportQuery<R> reportQuery) {
+        return Optional.empty();
+    }
+
+    private void addSymbol(final CoreSymbolSpecification spec) {
+        if (orderBooks.get(spec.symbolId) == null) {
+            orderBooks.put(spec.symbolId, orderBookFactory.create(spec, objectsPool, eventsHelper, loggingCfg));
+            changedSymbols.add(spec.symbolId);
+        }
+    }
+
+    private MatchingEngineReadView createView(final long version) {
+
+        final MatchingEngineReadView previous = rebuild ? null : readViews.latest();
+        rebuild = false;
+
+        final IntObjectHashMap<IOrderBook> copies;
+        if (previous == null) {
+            copies = new IntObjectHashMap<>(orderBooks.size());
+            orderBooks.forEachKeyValue((symbol, ob) -> copies.put(symbol, copyOf(ob, copiesPool)));
+        } else {
+            copies = new IntObjectHashMap<>(previous.getOrderBooks());
+            changedSymbols.forEach(symbol -> copies.put(symbol, copyOf(orderBooks.get(symbol), copiesPool)));
+        }
+        changedSymbols.clear();
+
+        return new MatchingEngineReadView(version, shardId, shardMask, copies);
+    }
+
+    private IOrderBook copyOf(final IOrderBook orderBook, final ObjectsPool pool) {
+        copyBuffer.clear();
+        orderBook.writeMarshallable(copyBuffer);
+        return IOrderBook.create(copyBuffer, pool, eventsHelper, loggingCfg);
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.views;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Keeps few most recent read views of one engine shard.
+ * <p>
+ * Single writer (engine thread), any number of readers. History lets readers find a version published by all shards,
+ * even if some shard has already moved forward.
+ *
+ * @param <V> view type
+ */
+public final class ReadViewPublisher<V extends ReadView> {
+
+    private static final int HISTORY_SIZE = 16;
+    private static final int HISTORY_MASK = HISTORY_SIZE - 1;
+
+    private final AtomicReferenceArray<V> history = new AtomicReferenceArray<>(HISTORY_SIZE);
+
+    // number of views published so far
+    private volatile long published = 0;
+
+    /**
+     * Publish next view (called by engine thread only).
+     *
+     * @param view - view with version higher than previous one
+     */
+    public void publish(final V view) {
+        final long n = published;
+        history.set((int) (n & HISTORY_MASK), view);
+        published = n + 1;
+    }
+
+    /**
+     * @return latest published view or null if nothing was published yet
+     */
+    public V latest() {
+        final long n = published;
+        return n == 0 ? null : history.get((int) ((n - 1) & HISTORY_MASK));
+    }
+
+    /**
+     * Find view by version.
+     *
+     * @param version - view version
+     * @return view or null if not published yet or already evicted from history
+     */
+    public V find(final long version) {
+        final long n = published;
+        for (long i = n - 1; i >= 0 && i >= n - HISTORY_SIZE; i--) {
+            final V view = history.get((int) (i & HISTORY_MASK));
+            if (view == null || view.getVersion() < version) {
+                return null;
+            }
+            if (view.getVersion() == version) {
+                return view;
+            }
+        }
+        return null;
+    }
+}
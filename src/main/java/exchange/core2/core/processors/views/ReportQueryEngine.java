@@ -0,0 +1,198 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.views;
+
+import exchange.core2.core.ExchangeApi;
+import exchange.core2.core.common.api.ApiNop;
+import exchange.core2.core.common.api.reports.ReportQuery;
+import exchange.core2.core.common.api.reports.ReportResult;
+import lombok.AllArgsConstructor;
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.BytesIn;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes reports against read views published by engines, using own threads instead of matching and risk engine threads.
+ * <p>
+ * All shards publish views of the same versions, report is executed against the latest version available for every shard,
+ * so results are consistent (same as pipeline report executed right after that sequence).
+ * Reports not supporting read views are sent through the pipeline.
+ */
+public final class ReportQueryEngine {
+
+    private static final long FIND_VIEWS_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(10);
+
+    private final List<ReadViewPublisher<MatchingEngineReadView>> matchingEngineViews;
+    private final List<ReadViewPublisher<RiskEngineReadView>> riskEngineViews;
+    private final ExchangeApi api;
+    private final ExecutorService executor;
+
+    public ReportQueryEngine(final List<ReadViewPublisher<MatchingEngineReadView>> matchingEngineViews,
+                             final List<ReadViewPublisher<RiskEngineReadView>> riskEngineViews,
+                             final ExchangeApi api,
+                             final int threads) {
+
+        this.matchingEngineViews = matchingEngineViews;
+        this.riskEngineViews = riskEngineViews;
+        this.api = api;
+
+        final AtomicInteger threadsCounter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            final Thread thread = new Thread(r, "Q-REPORT-" + threadsCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Execute report against latest consistent read views.
+     * Result can lag behind the pipeline up to configured number of groups.
+     *
+     * @param query      - report query
+     * @param transferId - transfer id (used only if report is sent through the pipeline)
+     * @param <Q>        - query type
+     * @param <R>        - result type
+     * @return future result
+     */
+    public <Q extends ReportQuery<R>, R extends ReportResult> CompletableFuture<R> processReport(final Q query, final int transferId) {
+
+        if (!query.isReadViewSupported()) {
+            return api.processReport(query, transferId);
+        }
+
+        return processReportFromViews(query, -1L);
+    }
+
+    private <Q extends ReportQuery<R>, R extends ReportResult> CompletableFuture<R> processReportFromViews(final Q query, final long minVersion) {
+
+        return CompletableFuture.supplyAsync(() -> findConsistentViews(minVersion), executor)
+                .thenCompose(views -> {
+                    final List<CompletableFuture<Optional<R>>> sections = new ArrayList<>(views.matchingEngine.size() + views.riskEngine.size());
+                    views.matchingEngine.forEach(view -> sections.add(CompletableFuture.supplyAsync(() -> query.process(view), executor)));
+                    views.riskEngine.forEach(view -> sections.add(CompletableFuture.supplyAsync(() -> query.process(view), executor)));
+                    return CompletableFuture.allOf(sections.toArray(new CompletableFuture[0]))
+                            .thenApply(ignore -> mergeSections(query, sections));
+                });
+    }
+
+    /**
+     * Execute report against read views including all commands published before this call.
+     * NOP command is sent through the pipeline first, engines always publish read views when NOP arrives.
+     * Risk engines publish NOP view before NOP is completed, matching engine replicas can publish it a bit later,
+     * so report waits until all shards reach that version.
+     *
+     * @param query      - report query
+     * @param transferId - transfer id (used only if report is sent through the pipeline)
+     * @param <Q>        - query type
+     * @param <R>        - result type
+     * @return future result
+     */
+    public <Q extends ReportQuery<R>, R extends ReportResult> CompletableFuture<R> processReportSynced(final Q query, final int transferId) {
+
+        if (!query.isReadViewSupported()) {
+            return api.processReport(query, transferId);
+        }
+
+        return api.submitCommandAsync(ApiNop.builder().build()).thenCompose(resultCode -> processReportFromViews(query, latestVersion(riskEngineViews)));
+    }
+
+    /**
+     * @return latest version available for all shards
+     */
+    public long getConsistentVersion() {
+        return findConsistentViews(-1L).version;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private ConsistentViews findConsistentViews(final long minVersion) {
+
+        final long deadline = System.nanoTime() + FIND_VIEWS_TIMEOUT_NS;
+        do {
+            final long version = Math.min(latestVersion(matchingEngineViews), latestVersion(riskEngineViews));
+            if (version >= minVersion) {
+                final List<MatchingEngineReadView> matchingEngine = findAll(matchingEngineViews, version);
+                final List<RiskEngineReadView> riskEngine = findAll(riskEngineViews, version);
+                if (matchingEngine != null && riskEngine != null) {
+                    return new ConsistentViews(version, matchingEngine, riskEngine);
+                }
+            }
+
+            // some shard is behind required version or has moved too far forward - try again
+            Thread.yield();
+        } while (System.nanoTime() < deadline);
+
+        throw new IllegalStateException("Can not find consistent read views");
+    }
+
+    /**
+     * @return latest version published by all given shards
+     */
+    private static <V extends ReadView> long latestVersion(final List<ReadViewPublisher<V>> publishers) {
+        long version = Long.MAX_VALUE;
+        for (final ReadViewPublisher<V> publisher : publishers) {
+            version = Math.min(version, publisher.latest().getVersion());
+        }
+        return version;
+    }
+
+    private static <V extends ReadView> List<V> findAll(final List<ReadViewPublisher<V>> publishers, final long version) {
+        final List<V> views = new ArrayList<>(publishers.size());
+        for (final ReadViewPublisher<V> publisher : publishers) {
+            final V view = publisher.find(version);
+            if (view == null) {
+                return null;
+            }
+            views.add(view);
+        }
+        return views;
+    }
+
+    private static <R extends ReportResult> R mergeSections(final ReportQuery<R> query, final List<CompletableFuture<Optional<R>>> sections) {
+
+        // same serialized form as for sections returned through the pipeline
+        final List<BytesIn> serialized = new ArrayList<>(sections.size());
+        sections.stream()
+                .map(CompletableFuture::join)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .forEach(result -> {
+                    final Bytes<ByteBuffer> bytes = Bytes.elasticHeapByteBuffer(128);
+                    result.writeMarshallable(bytes);
+                    serialized.add(bytes);
+                });
+
+        return query.createResult(serialized.stream());
+    }
+
+    @AllArgsConstructor
+    private static final class ConsistentViews {
+        private final long version;
+        private final List<MatchingEngineReadView> matchingEngine;
+        private final List<RiskEngineReadView> riskEngine;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.views;
+
+import exchange.core2.core.common.CoreSymbolSpecification;
+import exchange.core2.core.common.UserProfile;
+import exchange.core2.core.processors.RiskEngine;
+import lombok.AccessLevel;
+import lombok.Getter;
+import net.openhft.chronicle.bytes.Bytes;
+import org.eclipse.collections.impl.map.mutable.primitive.IntLongHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.IntObjectHashMap;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+
+import java.util.function.Consumer;
+
+/**
+ * Immutable copy of risk engine shard state.
+ * <p>
+ * User profiles are copied into buckets, next view copies only buckets containing changed profiles and shares the rest.
+ * Returned objects must not be modified.
+ */
+@Getter
+public final class RiskEngineReadView implements ReadView {
+
+    private static final int BUCKETS_BITS = 12;
+
+    private final long version;
+
+    private final int shardId;
+    private final long shardMask;
+
+    // uid hash -> profiles copies (null if bucket is empty)
+    @Getter(AccessLevel.NONE)
+    private final LongObjectHashMap<UserProfile>[] buckets;
+    private final int usersNum;
+
+    private final IntObjectHashMap<CoreSymbolSpecification> symbolSpecs;
+    private final IntObjectHashMap<RiskEngine.LastPriceCacheRecord> lastPriceCache;
+    private final IntLongHashMap fees;
+    private final IntLongHashMap adjustments;
+    private final IntLongHashMap suspends;
+
+    private RiskEngineReadView(final long version,
+                               final RiskEngine riskEngine,
+                               final LongObjectHashMap<UserProfile>[] buckets,
+                               final int usersNum) {
+
+        this.version = version;
+        this.shardId = riskEngine.getShardId();
+        this.shardMask = riskEngine.getShardMask();
+        this.buckets = buckets;
+        this.usersNum = usersNum;
+        this.symbolSpecs = riskEngine.getSymbolSpecificationProvider().copySymbolSpecs();
+        this.lastPriceCache = new IntObjectHashMap<>(riskEngine.getLastPriceCache().size());
+        riskEngine.getLastPriceCache().forEachKeyValue((symbol, rec) -> lastPriceCache.put(symbol, new RiskEngine.LastPriceCacheRecord(rec.askPrice, rec.bidPrice)));
+        this.fees = new IntLongHashMap(riskEngine.getFees());
+        this.adjustments = new IntLongHashMap(riskEngine.getAdjustments());
+        this.suspends = new IntLongHashMap(riskEngine.getSuspends());
+    }
+
+    /**
+     * Create next view (called from risk engine thread).
+     *
+     * @param previous    - previous view, or null to copy all profiles
+     * @param version     - sequence of the last command included
+     * @param riskEngine  - risk engine
+     * @param changedUids - uids of profiles changed since previous view
+     * @param buffer      - reusable buffer for profiles copying
+     * @return new view
+     */
+    @SuppressWarnings("unchecked")
+    public static RiskEngineReadView create(final RiskEngineReadView previous,
+                                            final long version,
+                                            final RiskEngine riskEngine,
+                                            final LongHashSet changedUids,
+                                            final Bytes<?> buffer) {
+
+        final LongObjectHashMap<UserProfile> profiles = riskEngine.getUserProfileService().getUserProfiles();
+
+        if (previous == null) {
+            final LongObjectHashMap<UserProfile>[] buckets = new LongObjectHashMap[1 << BUCKETS_BITS];
+            profiles.forEachValue(profile -> {
+                final int idx = bucket(profile.uid);
+                if (buckets[idx] == null) {
+                    buckets[idx] = new LongObjectHashMap<>();
+                }
+                buckets[idx].put(profile.uid, copyOf(profile, buffer));
+            });
+            return new RiskEngineReadView(version, riskEngine, buckets, profiles.size());
+        }
+
+        final LongObjectHashMap<UserProfile>[] buckets = previous.buckets.clone();
+        final boolean[] copied = new boolean[buckets.length];
+        changedUids.each(uid -> {
+            final int idx = bucket(uid);
+            if (!copied[idx]) {
+                copied[idx] = true;
+                buckets[idx] = buckets[idx] == null ? new LongObjectHashMap<>() : new LongObjectHashMap<>(buckets[idx]);
+            }
+            final UserProfile profile = profiles.get(uid);
+            if (profile != null) {
+                buckets[idx].put(uid, copyOf(profile, buffer));
+            } else {
+                buckets[idx].remove(uid);
+            }
+        });
+        return new RiskEngineReadView(version, riskEngine, buckets, profiles.size());
+    }
+
+    /**
+     * @param uid - user id
+     * @return profile copy or null if not found
+     */
+    public UserProfile getUserProfile(final long uid) {
+        final LongObjectHashMap<UserProfile> bucket = buckets[bucket(uid)];
+        return bucket == null ? null : bucket.get(uid);
+    }
+
+    public void forEachUserProfile(final Consumer<UserProfile> consumer) {
+        for (final LongObjectHashMap<UserProfile> bucket : buckets) {
+            if (bucket != null) {
+                bucket.forEachValue(consumer::accept);
+            }
+        }
+    }
+
+    public CoreSymbolSpecification getSymbolSpecification(final int symbol) {
+        return symbolSpecs.get(symbol);
+    }
+
+    public boolean uidForThisHandler(final long uid) {
+        return (shardMask == 0) || ((uid & shardMask) == shardId);
+    }
+
+    private static int bucket(final long uid) {
+        return (int) ((uid * 0x9E3779B97F4A7C15L) >>> (64 - BUCKETS_BITS));
+    }
+
+    private static UserProfile copyOf(final UserProfile profile, final Bytes<?> buffer) {
+        buffer.clear();
+        profile.writeMarshallable(buffer);
+        return new UserProfile(buffer);
+    }
+}
@@ -36,6 +36,8 @@ import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -44,6 +46,9 @@ import java.util.function.Supplier;
 @Slf4j
 public final class SerializationUtils {
 
+    private static final int PARALLEL_READ_MIN_ENTRIES = 16384;
+    private static final int PARALLEL_READ_RANGE_ENTRIES = 4096;
+
 
     public static long[] bytesToLongArray(final NativeBytes<Void> bytes, final int padding) {
         final ByteBuffer byteBuffer = ByteBuffer.allocate((int) bytes.readRemaining());
@@ -280,6 +285,95 @@ public final class SerializationUtils {
         return hashMap;
     }
 
+    /**
+     * Write map with serialized length of each value, so values can be deserialized in parallel.
+     *
+     * @see #readLongHashMapSized(BytesIn, Function)
+     */
+    public static <T extends WriteBytesMarshallable> void marshallLongHashMapSized(final LongObjectHashMap<T> hashMap, final BytesOut bytes) {
+
+        final Bytes<ByteBuffer> valueBytes = Bytes.elasticHeapByteBuffer(1024);
+        try {
+            bytes.writeInt(hashMap.size());
+            hashMap.forEachKeyValue((k, v) -> {
+                valueBytes.clear();
+                v.writeMarshallable(valueBytes);
+                bytes.writeLong(k);
+                bytes.writeInt((int) valueBytes.readRemaining());
+                bytes.write(valueBytes);
+            });
+        } finally {
+            valueBytes.release();
+        }
+    }
+
+    /**
+     * Read map written by marshallLongHashMapSized.
+     * Large maps are split into ranges of entries, values of each range are created on fork-join common pool.
+     * Creator should be thread-safe.
+     */
+    public static <T> LongObjectHashMap<T> readLongHashMapSized(final BytesIn bytes, final Function<BytesIn, T> creator) {
+
+        final int length = bytes.readInt();
+
+        if (length < PARALLEL_READ_MIN_ENTRIES) {
+            final LongObjectHashMap<T> hashMap = new LongObjectHashMap<>(length);
+            for (int i = 0; i < length; i++) {
+                final long key = bytes.readLong();
+                hashMap.put(key, readSizedValue(bytes, creator));
+            }
+            return hashMap;
+        }
+
+        final long[] keys = new long[length];
+        final Object[] values = new Object[length];
+
+        final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        int idx = 0;
+        while (idx < length) {
+
+            // find range boundaries without deserializing values
+            final long rangeStart = bytes.readPosition();
+            final int from = idx;
+            while (idx < length && idx - from < PARALLEL_READ_RANGE_ENTRIES) {
+                bytes.readSkip(8);
+                bytes.readSkip(bytes.readInt());
+                idx++;
+            }
+
+            final byte[] range = new byte[Math.toIntExact(bytes.readPosition() - rangeStart)];
+            bytes.read(rangeStart, range, 0, range.length);
+
+            final int to = idx;
+            tasks.add(ForkJoinPool.commonPool().submit(() -> {
+                final Bytes<byte[]> rangeBytes = Bytes.wrapForRead(range);
+                for (int i = from; i < to; i++) {
+                    keys[i] = rangeBytes.readLong();
+                    values[i] = readSizedValue(rangeBytes, creator);
+                }
+            }));
+        }
+
+        tasks.forEach(ForkJoinTask::join);
+
+        final LongObjectHashMap<T> hashMap = new LongObjectHashMap<>(length);
+        for (int i = 0; i < length; i++) {
+            @SuppressWarnings("unchecked") final T value = (T) values[i];
+            hashMap.put(keys[i], value);
+        }
+        return hashMap;
+    }
+
+    private static <T> T readSizedValue(final BytesIn bytes, final Function<BytesIn, T> creator) {
+        final int size = bytes.readInt();
+        final long start = bytes.readPosition();
+        final T value = creator.apply(bytes);
+        if (bytes.readPosition() != start + size) {
+            throw new IllegalStateException("Value read " + (bytes.readPosition() - start) + " bytes, expected " + size);
+        }
+        return value;
+    }
+
     public static <T extends WriteBytesMarshallable> void marshallIntHashMap(final IntObjectHashMap<T> hashMap, final BytesOut bytes) {
         bytes.writeInt(hashMap.size());
         hashMap.forEachKeyValue((k, v) -> {
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core;
+
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.api.ApiAdjustUserBalance;
+import exchange.core2.core.common.api.ApiCancelOrder;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.core.processors.journaling.DiskSerializationProcessor;
+import exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static exchange.core2.tests.util.TestCommands.persist;
+import static exchange.core2.tests.util.TestCommands.placeOrder;
+import static exchange.core2.tests.util.TestConstants.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNot.not;
+
+public final class DeltaSnapshotTest {
+
+    @Test
+    public void shouldRestoreStateFromDeltaSnapshot() throws Exception {
+
+        final String exchangeId = ExchangeTestContainer.timeBasedExchangeId();
+
+        // snapshot files are not left in the default dumps folder
+        final Path folder = Files.createTempDirectory("delta-snapshot-test");
+        final DiskSerializationProcessorConfiguration diskCfg = DiskSerializationProcessorConfiguration.builder()
+                .storageFolder(folder.toString())
+                .snapshotLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .journalFileMaxSize(64 * 1024 * 1024)
+                .journalBufferSize(64 * 1024)
+                .journalBatchCompressThreshold(2048)
+                .journalLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .build();
+        final SerializationConfiguration serializationCfg = SerializationConfiguration.builder()
+                .enableJournaling(false)
+                .serializationProcessorFactory(cfg -> new DiskSerializationProcessor(cfg, diskCfg))
+                .build();
+        final long fullSnapshotId = System.currentTimeMillis() * 1000;
+        final long deltaSnapshotId = fullSnapshotId + 1;
+
+        final int stateHash;
+        final int updatedHash;
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(
+                PerformanceConfiguration.DEFAULT,
+                InitialStateConfiguration.cleanStart(exchangeId),
+                serializationCfg)) {
+
+            container.initFeeSymbols();
+            container.initFeeUsers();
+
+            container.submitCommandSync(placeOrder(UID_1, 101L, OrderAction.ASK, 160000L, 7L), CommandResultCode.SUCCESS);
+            container.submitCommandSync(placeOrder(UID_2, 202L, OrderAction.ASK, 159900L, 10L), CommandResultCode.SUCCESS);
+
+            assertThat(persist(container, fullSnapshotId, 0), is(CommandResultCode.SUCCESS));
+
+            // delta can only be based on the last full snapshot
+            assertThat(persist(container, fullSnapshotId + 100, fullSnapshotId - 1), is(not(CommandResultCode.SUCCESS)));
+
+            // modify order book and user profiles
+            container.submitCommandSync(placeOrder(UID_3, 303L, OrderAction.BID, 160000L, 12L), CommandResultCode.SUCCESS);
+            container.submitCommandSync(ApiCancelOrder.builder().uid(UID_1).orderId(101L).symbol(SYMBOL_EXCHANGE_FEE).build(), CommandResultCode.SUCCESS);
+            container.submitCommandSync(ApiAdjustUserBalance.builder().uid(UID_4).transactionId(100L).amount(5_000L).currency(CURRENECY_XBT).build(), CommandResultCode.SUCCESS);
+            container.initFeeUser(1440005L);
+
+            assertThat(persist(container, deltaSnapshotId, fullSnapshotId), is(CommandResultCode.SUCCESS));
+
+            stateHash = container.requestStateHash();
+        }
+
+        try (final ExchangeTestContainer recreated = ExchangeTestContainer.create(
+                PerformanceConfiguration.DEFAULT,
+                InitialStateConfiguration.fromSnapshotOnly(exchangeId, deltaSnapshotId, 0),
+                serializationCfg)) {
+
+            assertThat(recreated.requestStateHash(), is(stateHash));
+
+            // restored core keeps tracking changes against the same full snapshot
+            recreated.submitCommandSync(placeOrder(UID_2, 204L, OrderAction.ASK, 161000L, 1L), CommandResultCode.SUCCESS);
+            assertThat(persist(recreated, deltaSnapshotId + 1, fullSnapshotId), is(CommandResultCode.SUCCESS));
+            updatedHash = recreated.requestStateHash();
+        }
+
+        try (final ExchangeTestContainer recreatedAgain = ExchangeTestContainer.create(
+                PerformanceConfiguration.DEFAULT,
+                InitialStateConfiguration.fromSnapshotOnly(exchangeId, deltaSnapshotId + 1, 0),
+                serializationCfg)) {
+
+            assertThat(recreatedAgain.requestStateHash(), is(updatedHash));
+        }
+    }
+}
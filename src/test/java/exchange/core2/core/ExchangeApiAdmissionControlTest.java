@@ -0,0 +1,114 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core;
+
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.Sequence;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.api.ApiCancelOrder;
+import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.config.AdmissionControlConfiguration;
+import exchange.core2.core.common.config.AdmissionControlConfiguration.CommandClass;
+import net.jpountz.lz4.LZ4Factory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class ExchangeApiAdmissionControlTest {
+
+    private RingBuffer<OrderCommand> ringBuffer;
+    private ExchangeApi api;
+
+    @BeforeEach
+    public void before() {
+        ringBuffer = RingBuffer.createMultiProducer(OrderCommand::new, 16);
+        // consumer that never moves - ring will fill up
+        ringBuffer.addGatingSequences(new Sequence(-1));
+        api = new ExchangeApi(ringBuffer, LZ4Factory.fastestInstance().fastCompressor(), AdmissionControlConfiguration.DEFAULT);
+    }
+
+    @Test
+    public void shouldShedNewOrdersBeforeCancels() {
+
+        // new orders high-water mark is 0.75 -> 12 of 16 slots
+        for (int i = 0; i < 12; i++) {
+            assertThat(api.trySubmitCommand(placeOrder(i)), is(CommandResultCode.ACCEPTED));
+        }
+        assertThat(api.trySubmitCommand(placeOrder(12)), is(CommandResultCode.OVERLOADED));
+        assertThat(api.getRejectedCount(CommandClass.NEW_ORDER), is(1L));
+
+        // cancels are accepted until ring is full
+        for (int i = 0; i < 4; i++) {
+            assertThat(api.trySubmitCommand(cancelOrder(i)), is(CommandResultCode.ACCEPTED));
+        }
+        assertThat(api.trySubmitCommand(cancelOrder(5)), is(CommandResultCode.OVERLOADED));
+        assertThat(api.getRejectedCount(CommandClass.CANCEL_ORDER), is(1L));
+
+        assertThat(ringBuffer.getCursor(), is(15L));
+    }
+
+    @Test
+    public void shouldCompleteFutureImmediatelyWhenOverloaded() {
+
+        for (int i = 0; i < 12; i++) {
+            final CompletableFuture<CommandResultCode> future = api.trySubmitCommandAsync(placeOrder(i));
+            assertFalse(future.isDone());
+        }
+
+        final CompletableFuture<CommandResultCode> rejected = api.trySubmitCommandAsync(placeOrder(12));
+        assertTrue(rejected.isDone());
+        assertThat(rejected.join(), is(CommandResultCode.OVERLOADED));
+    }
+
+    @Test
+    public void shouldValidateHighWaterMarks() {
+        final AdmissionControlConfiguration cfg = AdmissionControlConfiguration.builder()
+                .newOrdersHighWaterMark(0)
+                .modifyOrdersHighWaterMark(1)
+                .cancelOrdersHighWaterMark(1)
+                .otherCommandsHighWaterMark(1)
+                .build();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> new ExchangeApi(ringBuffer, LZ4Factory.fastestInstance().fastCompressor(), cfg));
+    }
+
+    private static ApiPlaceOrder placeOrder(long orderId) {
+        return ApiPlaceOrder.builder()
+                .uid(1L)
+                .orderId(orderId)
+                .price(100L)
+                .size(1L)
+                .action(OrderAction.BID)
+                .orderType(OrderType.GTC)
+                .symbol(5)
+                .build();
+    }
+
+    private static ApiCancelOrder cancelOrder(long orderId) {
+        return ApiCancelOrder.builder().uid(1L).orderId(orderId).symbol(5).build();
+    }
+}
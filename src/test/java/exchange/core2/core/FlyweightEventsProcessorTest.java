@@ -0,0 +1,165 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core;
+
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.core.Is.is;
+
+public final class FlyweightEventsProcessorTest {
+
+    private final List<String> events = new ArrayList<>();
+
+    private FlyweightEventsProcessor processor;
+
+    @BeforeEach
+    public void before() {
+        events.clear();
+        processor = new FlyweightEventsProcessor(new IFlyweightEventsHandler() {
+            @Override
+            public void commandResult(CommandView cmd) {
+                events.add("R " + cmd.getCommand() + " " + cmd.getResultCode() + " " + cmd.getOrderId() + " " + cmd.getSeq());
+            }
+
+            @Override
+            public void tradeEvent(TradeEventView tradeEvent) {
+                final StringBuilder sb = new StringBuilder("T ").append(tradeEvent.getTakerOrderId())
+                        .append(' ').append(tradeEvent.getTotalVolume())
+                        .append(' ').append(tradeEvent.getTradesNum())
+                        .append(' ').append(tradeEvent.isTakeOrderCompleted());
+                while (tradeEvent.nextTrade()) {
+                    sb.append(" [").append(tradeEvent.getMakerOrderId()).append(' ').append(tradeEvent.getPrice())
+                            .append(' ').append(tradeEvent.getVolume()).append(']');
+                }
+                events.add(sb.toString());
+            }
+
+            @Override
+            public void rejectEvent(SingleEventView rejectEvent) {
+                events.add("J " + rejectEvent.getOrderId() + " " + rejectEvent.getVolume());
+            }
+
+            @Override
+            public void reduceEvent(SingleEventView reduceEvent) {
+                events.add("D " + reduceEvent.getOrderId() + " " + reduceEvent.getVolume() + " " + reduceEvent.isOrderCompleted());
+            }
+
+            @Override
+            public void orderBook(OrderBookView orderBook) {
+                events.add("B " + orderBook.getSymbol() + " " + orderBook.getAskSize() + " " + orderBook.getAskPrice(0)
+                        + " " + orderBook.getBidSize() + " " + orderBook.getBidVolume(0));
+            }
+        });
+    }
+
+    @Test
+    public void shouldDeliverTradesAndRejectThroughReusedViews() {
+
+        final OrderCommand cmd = samplePlaceOrderCommand();
+        cmd.matcherEvent = trade(1001L, 20100L, 50L, false,
+                trade(1002L, 20110L, 30L, false,
+                        MatcherTradeEvent.builder().eventType(MatcherEventType.REJECT).price(20115L).size(20L).build()));
+
+        processor.accept(cmd, 77L);
+        processor.accept(cmd, 78L);
+
+        assertThat(events, contains(
+                "R PLACE_ORDER SUCCESS 123 77",
+                "T 123 80 2 false [1001 20100 50] [1002 20110 30]",
+                "J 123 20",
+                "R PLACE_ORDER SUCCESS 123 78",
+                "T 123 80 2 false [1001 20100 50] [1002 20110 30]",
+                "J 123 20"));
+    }
+
+    @Test
+    public void shouldDeliverReduceAndOrderBook() {
+
+        final OrderCommand cmd = samplePlaceOrderCommand();
+        cmd.command = OrderCommandType.REDUCE_ORDER;
+        cmd.matcherEvent = MatcherTradeEvent.builder()
+                .eventType(MatcherEventType.REDUCE).activeOrderCompleted(true).size(100L).build();
+
+        final L2MarketData marketData = new L2MarketData(1, 1);
+        marketData.askSize = 1;
+        marketData.askPrices[0] = 20200L;
+        marketData.bidSize = 1;
+        marketData.bidVolumes[0] = 15L;
+        cmd.marketData = marketData;
+
+        processor.accept(cmd, 5L);
+
+        assertThat(events, contains(
+                "R REDUCE_ORDER SUCCESS 123 5",
+                "D 123 100 true",
+                "B 3 1 20200 1 15"));
+    }
+
+    @Test
+    public void shouldStopAfterUnexpectedEventFollowingReduce() {
+
+        final OrderCommand cmd = samplePlaceOrderCommand();
+        cmd.matcherEvent = MatcherTradeEvent.builder()
+                .eventType(MatcherEventType.REDUCE).size(100L)
+                .nextEvent(MatcherTradeEvent.builder().eventType(MatcherEventType.REDUCE).build())
+                .build();
+        cmd.marketData = new L2MarketData(0, 0);
+
+        processor.accept(cmd, 5L);
+
+        assertThat(events.size(), is(2));
+    }
+
+    private static MatcherTradeEvent trade(long makerOrderId, long price, long size, boolean activeCompleted, MatcherTradeEvent next) {
+        return MatcherTradeEvent.builder()
+                .eventType(MatcherEventType.TRADE)
+                .activeOrderCompleted(activeCompleted)
+                .matchedOrderId(makerOrderId)
+                .matchedOrderUid(10332L)
+                .price(price)
+                .size(size)
+                .nextEvent(next)
+                .build();
+    }
+
+    private static OrderCommand samplePlaceOrderCommand() {
+        final OrderCommand cmd = new OrderCommand();
+        cmd.command = OrderCommandType.PLACE_ORDER;
+        cmd.orderId = 123L;
+        cmd.symbol = 3;
+        cmd.price = 20110L;
+        cmd.size = 100L;
+        cmd.action = OrderAction.BID;
+        cmd.orderType = OrderType.GTC;
+        cmd.uid = 29851L;
+        cmd.resultCode = CommandResultCode.SUCCESS;
+        return cmd;
+    }
+}
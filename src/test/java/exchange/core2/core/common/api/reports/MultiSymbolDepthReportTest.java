@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.api.reports;
+
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.ReportsQueriesConfiguration;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import org.junit.jupiter.api.Test;
+
+import static exchange.core2.tests.util.TestConstants.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class MultiSymbolDepthReportTest {
+
+    private static final PerformanceConfiguration PERF_CFG = PerformanceConfiguration.baseBuilder()
+            .matchingEnginesNum(2)
+            .riskEnginesNum(2)
+            .build();
+
+    private static final int DEPTH = 3;
+
+    @Test
+    public void shouldReturnDepthOfAllSymbols() throws Exception {
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(
+                PERF_CFG,
+                ReportsQueriesConfiguration.createStandardConfig().withReadViews(1, 4))) {
+
+            container.addSymbol(SYMBOLSPEC_ETH_XBT);
+            container.addSymbol(SYMBOLSPECFEE_XBT_LTC);
+            container.initFeeUsers();
+
+            long orderId = 1;
+            for (int i = 0; i < 5; i++) {
+                container.submitCommandSync(placeOrder(UID_1, orderId++, SYMBOL_EXCHANGE, OrderAction.BID, 400L - i), CommandResultCode.SUCCESS);
+                container.submitCommandSync(placeOrder(UID_2, orderId++, SYMBOL_EXCHANGE, OrderAction.BID, 400L - i), CommandResultCode.SUCCESS);
+            }
+            for (int i = 0; i < 2; i++) {
+                container.submitCommandSync(placeOrder(UID_3 + i, orderId++, SYMBOL_EXCHANGE_FEE, OrderAction.ASK, 160000L + i * 10), CommandResultCode.SUCCESS);
+            }
+
+            final L2MarketData expectedExchange = container.getApi().requestOrderBookAsync(SYMBOL_EXCHANGE, DEPTH).get();
+            final L2MarketData expectedExchangeFee = container.getApi().requestOrderBookAsync(SYMBOL_EXCHANGE_FEE, DEPTH).get();
+
+            final MultiSymbolDepthReportResult all = container.getApi().processReport(new MultiSymbolDepthReportQuery(DEPTH), 0).get();
+            assertThat(all.getSymbolsNum(), is(2));
+            assertThat(all.getSymbols()[0], is(SYMBOL_EXCHANGE));
+            assertThat(all.getL2MarketData(all.indexOf(SYMBOL_EXCHANGE)), is(expectedExchange));
+            assertThat(all.getL2MarketData(all.indexOf(SYMBOL_EXCHANGE_FEE)), is(expectedExchangeFee));
+            assertThat(all.getBidLevels()[0], is(DEPTH));
+            assertThat(all.getBidOrders()[0], is(2L));
+            assertThat(all.getAskLevels()[1], is(2));
+
+            // same result from read views
+            assertThat(container.getReportQueryEngine().processReportSynced(new MultiSymbolDepthReportQuery(DEPTH), 0).get(), is(all));
+
+            // selected symbols only, unknown symbols are ignored
+            final MultiSymbolDepthReportResult selected = container.getApi().processReport(
+                    new MultiSymbolDepthReportQuery(new int[]{SYMBOL_EXCHANGE_FEE, 123456}, DEPTH), 0).get();
+            assertThat(selected.getSymbolsNum(), is(1));
+            assertThat(selected.getL2MarketData(0), is(expectedExchangeFee));
+            assertThat(selected.indexOf(SYMBOL_EXCHANGE), is(-1));
+        }
+    }
+
+    private static ApiPlaceOrder placeOrder(long uid, long orderId, int symbol, OrderAction action, long price) {
+        return ApiPlaceOrder.builder()
+                .uid(uid)
+                .orderId(orderId)
+                .action(action)
+                .orderType(OrderType.GTC)
+                .symbol(symbol)
+                .price(price)
+                .reservePrice(price)
+                .size(1L)
+                .build();
+    }
+}
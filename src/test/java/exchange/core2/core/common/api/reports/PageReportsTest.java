@@ -0,0 +1,121 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.api.reports;
+
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.api.ApiAddUser;
+import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.ReportsQueriesConfiguration;
+import exchange.core2.core.processors.views.ReportQueryEngine;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static exchange.core2.tests.util.TestConstants.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class PageReportsTest {
+
+    private static final PerformanceConfiguration PERF_CFG = PerformanceConfiguration.baseBuilder()
+            .matchingEnginesNum(2)
+            .riskEnginesNum(2)
+            .build();
+
+    private static final int PAGE_SIZE = 3;
+
+    @Test
+    public void shouldExportStateByPages() throws Exception {
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(
+                PERF_CFG,
+                ReportsQueriesConfiguration.createStandardConfig().withReadViews(1, 4))) {
+
+            final ReportQueryEngine engine = container.getReportQueryEngine();
+
+            container.addSymbol(SYMBOLSPEC_ETH_XBT);
+            container.addSymbol(SYMBOLSPECFEE_XBT_LTC);
+            container.initFeeUsers();
+
+            final List<Long> expectedUids = new ArrayList<>();
+            for (long uid = 100; uid < 120; uid++) {
+                container.submitCommandSync(ApiAddUser.builder().uid(uid).build(), CommandResultCode.SUCCESS);
+                expectedUids.add(uid);
+            }
+            expectedUids.add(UID_1);
+            expectedUids.add(UID_2);
+            expectedUids.add(UID_3);
+            expectedUids.add(UID_4);
+
+            final List<Long> expectedOrderIds = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                container.submitCommandSync(placeOrder(UID_1 + i % 4, 500L + i, SYMBOL_EXCHANGE, OrderAction.BID, 400L - i), CommandResultCode.SUCCESS);
+                expectedOrderIds.add(500L + i);
+            }
+            for (int i = 0; i < 10; i++) {
+                // order ids are not in price order
+                container.submitCommandSync(placeOrder(UID_1 + i % 4, 1009L - i, SYMBOL_EXCHANGE_FEE, OrderAction.ASK, 160000L + i * 10), CommandResultCode.SUCCESS);
+                expectedOrderIds.add(1000L + i);
+            }
+
+            // users
+            final List<UsersPageReportResult.User> users = new ArrayList<>();
+            UsersPageReportQuery usersQuery = new UsersPageReportQuery(Long.MIN_VALUE, PAGE_SIZE);
+            while (usersQuery != null) {
+                final UsersPageReportResult page = container.getApi().processReport(usersQuery, 0).get();
+                assertThat(page.getUsers().size() <= PAGE_SIZE, is(true));
+                assertThat(engine.processReportSynced(usersQuery, 0).get(), is(page));
+                users.addAll(page.getUsers());
+                usersQuery = usersQuery.nextPage(page);
+            }
+            assertThat(users.stream().map(UsersPageReportResult.User::getUid).collect(Collectors.toList()), is(expectedUids));
+            assertThat(users.get(20).getAccounts().get(CURRENECY_LTC), is(1000_0000_0000L));
+
+            // orders
+            final List<OrdersPageReportResult.SymbolOrder> orders = new ArrayList<>();
+            OrdersPageReportQuery ordersQuery = new OrdersPageReportQuery(Integer.MIN_VALUE, Long.MIN_VALUE, PAGE_SIZE);
+            while (ordersQuery != null) {
+                final OrdersPageReportResult page = container.getApi().processReport(ordersQuery, 0).get();
+                assertThat(page.getOrders().size() <= PAGE_SIZE, is(true));
+                assertThat(engine.processReportSynced(ordersQuery, 0).get(), is(page));
+                orders.addAll(page.getOrders());
+                ordersQuery = ordersQuery.nextPage(page);
+            }
+            assertThat(orders.stream().map(o -> o.getOrder().getOrderId()).collect(Collectors.toList()), is(expectedOrderIds));
+            assertThat(orders.get(0).getSymbol(), is(SYMBOL_EXCHANGE));
+            assertThat(orders.get(8).getSymbol(), is(SYMBOL_EXCHANGE_FEE));
+        }
+    }
+
+    private static ApiPlaceOrder placeOrder(long uid, long orderId, int symbol, OrderAction action, long price) {
+        return ApiPlaceOrder.builder()
+                .uid(uid)
+                .orderId(orderId)
+                .action(action)
+                .orderType(OrderType.GTC)
+                .symbol(symbol)
+                .price(price)
+                .reservePrice(price)
+                .size(1L)
+                .build();
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.common.api.reports;
+
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.api.ApiCancelOrder;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import org.junit.jupiter.api.Test;
+
+import static exchange.core2.tests.util.TestCommands.placeOrder;
+import static exchange.core2.tests.util.TestConstants.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class SymbolStatsReportTest {
+
+    private static final PerformanceConfiguration PERF_CFG = PerformanceConfiguration.baseBuilder()
+            .matchingEnginesNum(2)
+            .riskEnginesNum(2)
+            .build();
+
+    @Test
+    public void shouldReportSymbolStats() throws Exception {
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(PERF_CFG)) {
+
+            container.addSymbol(SYMBOLSPEC_ETH_XBT);
+            container.addSymbol(SYMBOLSPECFEE_XBT_LTC);
+            container.initFeeUsers();
+
+            container.submitCommandSync(placeOrder(UID_1, 1L, OrderAction.BID, 159000L, 5L), CommandResultCode.SUCCESS);
+            container.submitCommandSync(placeOrder(UID_2, 2L, OrderAction.BID, 159500L, 3L), CommandResultCode.SUCCESS);
+            container.submitCommandSync(placeOrder(UID_2, 3L, OrderAction.BID, 158000L, 1L), CommandResultCode.SUCCESS);
+            container.submitCommandSync(placeOrder(UID_3, 4L, OrderAction.ASK, 161000L, 7L), CommandResultCode.SUCCESS);
+            container.submitCommandSync(
+                    ApiCancelOrder.builder().uid(UID_2).orderId(3L).symbol(SYMBOL_EXCHANGE_FEE).build(),
+                    CommandResultCode.SUCCESS);
+
+            // matches 3 lots of order 2 and 2 lots of order 1
+            container.submitCommandSync(placeOrder(UID_4, 5L, OrderAction.ASK, 159000L, 5L), CommandResultCode.SUCCESS);
+
+            final SymbolStatsReportResult report = container.getApi().processReport(new SymbolStatsReportQuery(), 0).get();
+            assertThat(report.getSymbolStats().size(), is(2));
+
+            final SymbolStatsReportResult.SymbolStats stats = report.getSymbolStats().get(SYMBOL_EXCHANGE_FEE);
+            assertThat(stats.getCommands(), is(6L));
+            assertThat(stats.getTrades(), is(2L));
+            assertThat(stats.getTradedVolume(), is(5L));
+            assertThat(stats.getLastTradePrice(), is(159000L));
+            assertThat(stats.getLastTradeSize(), is(2L));
+            assertThat(stats.getAskOrders(), is(1));
+            assertThat(stats.getBidOrders(), is(1));
+            assertThat(stats.getAskVolume(), is(7L));
+            assertThat(stats.getBidVolume(), is(3L));
+            assertThat(stats.getBestAsk(), is(161000L));
+            assertThat(stats.getBestBid(), is(159000L));
+
+            // symbol without activity
+            final SymbolStatsReportResult.SymbolStats empty = report.getSymbolStats().get(SYMBOL_EXCHANGE);
+            assertThat(empty.getCommands(), is(0L));
+            assertThat(empty.getBidOrders(), is(0));
+            assertThat(empty.getBestAsk(), is(0L));
+
+            // selected symbols only
+            final SymbolStatsReportResult selected = container.getApi().processReport(new SymbolStatsReportQuery(SYMBOL_EXCHANGE_FEE), 0).get();
+            assertThat(selected.getSymbolStats().size(), is(1));
+            assertThat(selected.getSymbolStats().get(SYMBOL_EXCHANGE_FEE), is(stats));
+        }
+    }
+}
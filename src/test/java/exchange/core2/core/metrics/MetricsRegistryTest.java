@@ -0,0 +1,81 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.metrics;
+
+import exchange.core2.core.common.cmd.OrderCommandType;
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class MetricsRegistryTest {
+
+    @Test
+    public void shouldRegisterCountersAndGauges() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final PaddedCounter counter = registry.counter("b.counter");
+        final AtomicLong source = new AtomicLong(7);
+        registry.gauge("a.gauge", source::get);
+
+        counter.increment();
+        counter.add(10);
+
+        assertThat(registry.getValue("b.counter"), is(11L));
+        assertThat(registry.getValue("a.gauge"), is(7L));
+        assertThat(registry.snapshot().keySet().iterator().next(), is("a.gauge"));
+
+        assertThrows(IllegalArgumentException.class, () -> registry.gauge("a.gauge", () -> 0));
+        assertThrows(IllegalArgumentException.class, () -> registry.getValue("unknown"));
+    }
+
+    @Test
+    public void shouldCountCommandTypes() {
+        final MetricsRegistry registry = new MetricsRegistry();
+        final CommandTypeCounters counters = new CommandTypeCounters(registry, "me.0");
+
+        counters.increment(OrderCommandType.PLACE_ORDER);
+        counters.increment(OrderCommandType.PLACE_ORDER);
+        counters.increment(OrderCommandType.CANCEL_ORDER);
+
+        assertThat(counters.get(OrderCommandType.PLACE_ORDER), is(2L));
+        assertThat(registry.getValue("me.0.commands.CANCEL_ORDER"), is(1L));
+        assertThat(registry.getValue("me.0.commands.MOVE_ORDER"), is(0L));
+
+        assertThat(TextMetricsExporter.dump(registry), containsString("me.0.commands.PLACE_ORDER 2\n"));
+    }
+
+    @Test
+    public void shouldExportToJmx() throws Exception {
+        final MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("journal.flushes").add(5);
+
+        final String name = "exchange.core2:type=Metrics,name=MetricsRegistryTest";
+        final JmxMetricsExporter exporter = new JmxMetricsExporter(name);
+        exporter.export(registry);
+        try {
+            final Object value = ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName(name), "journal.flushes");
+            assertThat(value, is(5L));
+        } finally {
+            exporter.unregister();
+        }
+    }
+}
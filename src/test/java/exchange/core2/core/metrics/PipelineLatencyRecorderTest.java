@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class PipelineLatencyRecorderTest {
+
+    @Test
+    public void shouldRecordCumulativeStageLatencies() {
+        final PipelineLatencyRecorder recorder = new PipelineLatencyRecorder(16, 2, 1, true);
+
+        final long entryNs = recorder.groupingBatchStart();
+        assertTrue(entryNs != 0L);
+        for (long seq = 0; seq < 4; seq++) {
+            recorder.markEntry(seq, entryNs);
+        }
+        recorder.recordGroupingBatch(entryNs, 4);
+
+        for (long seq = 0; seq < 4; seq++) {
+            recorder.record(PipelineStage.RISK_HOLD, 0, seq);
+            recorder.record(PipelineStage.MATCHING_ENGINE, 0, seq);
+            recorder.record(PipelineStage.MATCHING_ENGINE, 1, seq);
+            recorder.record(PipelineStage.RESULTS_HANDLER, 0, seq);
+        }
+
+        final PipelineLatencySnapshot snapshot = recorder.snapshot();
+        assertThat(snapshot.getHistogram(PipelineStage.GROUPING).getTotalCount(), is(4L));
+        assertThat(snapshot.getHistogram(PipelineStage.JOURNALING).getTotalCount(), is(0L));
+        assertThat(snapshot.getHistogram(PipelineStage.RISK_HOLD).getTotalCount(), is(4L));
+        // two shards merged
+        assertThat(snapshot.getHistogram(PipelineStage.MATCHING_ENGINE).getTotalCount(), is(8L));
+        assertThat(snapshot.getHistogram(PipelineStage.RESULTS_HANDLER).getTotalCount(), is(4L));
+
+        // interval histograms are reset after snapshot
+        assertThat(recorder.snapshot().getHistogram(PipelineStage.RISK_HOLD).getTotalCount(), is(0L));
+    }
+
+    @Test
+    public void shouldSkipRecordingWhenDisabled() {
+        final PipelineLatencyRecorder recorder = new PipelineLatencyRecorder(16, 1, 1, true);
+
+        recorder.markEntry(0, recorder.groupingBatchStart());
+        recorder.setEnabled(false);
+        recorder.record(PipelineStage.RISK_HOLD, 0, 0);
+
+        // disabled grouping clears stamp, so stale entry is not used after re-enabling
+        recorder.markEntry(0, recorder.groupingBatchStart());
+        recorder.setEnabled(true);
+        recorder.record(PipelineStage.RISK_RELEASE, 0, 0);
+
+        final PipelineLatencySnapshot snapshot = recorder.snapshot();
+        assertThat(snapshot.getHistogram(PipelineStage.RISK_HOLD).getTotalCount(), is(0L));
+        assertThat(snapshot.getHistogram(PipelineStage.RISK_RELEASE).getTotalCount(), is(0L));
+    }
+
+    @Test
+    public void shouldRejectNonPowerOfTwoRingSize() {
+        assertThrows(IllegalArgumentException.class, () -> new PipelineLatencyRecorder(1000, 1, 1, false));
+    }
+}
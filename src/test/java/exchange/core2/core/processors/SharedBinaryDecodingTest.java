@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import exchange.core2.core.common.CoreSymbolSpecification;
+import exchange.core2.core.common.api.reports.TotalCurrencyBalanceReportResult;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.ReportsQueriesConfiguration;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static exchange.core2.tests.util.TestConstants.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class SharedBinaryDecodingTest {
+
+    private static final PerformanceConfiguration PERF_CFG = PerformanceConfiguration.baseBuilder()
+            .matchingEnginesNum(2)
+            .riskEnginesNum(2)
+            .build();
+
+    @Test
+    public void shouldProduceSameStateWithSharedDecoding() throws Exception {
+
+        final List<CoreSymbolSpecification> symbols = ExchangeTestContainer.generateRandomSymbols(
+                2000, CURRENCIES_FUTURES, ExchangeTestContainer.AllowedSymbolTypes.BOTH);
+
+        final int stateHash;
+        final TotalCurrencyBalanceReportResult balances;
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(PERF_CFG)) {
+            container.addSymbols(symbols);
+            container.usersInit(1000, CURRENCIES_FUTURES);
+            stateHash = container.requestStateHash();
+            balances = container.totalBalanceReport();
+        }
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(
+                PERF_CFG,
+                ReportsQueriesConfiguration.createStandardConfig().withSharedBinaryDecoding())) {
+            container.addSymbols(symbols);
+            container.usersInit(1000, CURRENCIES_FUTURES);
+            assertThat(container.requestStateHash(), is(stateHash));
+            assertThat(container.totalBalanceReport(), is(balances));
+        }
+    }
+
+    @Test
+    public void shouldDecodeOncePerTransfer() {
+
+        final SharedBinaryDecoder decoder = new SharedBinaryDecoder(3);
+        final AtomicInteger decoded = new AtomicInteger();
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(decoder.decode(7, 1000L, () -> "obj" + decoded.incrementAndGet()), is("obj1"));
+        }
+        assertThat(decoder.getPendingTransfers(), is(0));
+
+        // same transfer id reused later
+        assertThat(decoder.decode(7, 2000L, () -> "obj" + decoded.incrementAndGet()), is("obj2"));
+        assertThat(decoder.getPendingTransfers(), is(1));
+    }
+}
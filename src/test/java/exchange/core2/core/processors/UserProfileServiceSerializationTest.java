@@ -0,0 +1,94 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors;
+
+import exchange.core2.core.common.UserProfile;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.utils.SerializationUtils;
+import net.openhft.chronicle.bytes.Bytes;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class UserProfileServiceSerializationTest {
+
+    @Test
+    public void shouldRestoreSmallService() {
+        checkRoundTrip(100);
+    }
+
+    @Test
+    public void shouldRestoreLargeServiceInParallel() {
+        checkRoundTrip(50_000);
+    }
+
+    @Test
+    public void shouldRestoreServiceWrittenInOldLayout() {
+
+        final UserProfileService service = createService(100);
+
+        // layout used before sized format was introduced
+        final Bytes<ByteBuffer> bytes = Bytes.elasticByteBuffer();
+        SerializationUtils.marshallLongHashMap(service.getUserProfiles(), bytes);
+        final long written = bytes.writePosition();
+
+        final UserProfileService restored = new UserProfileService(bytes);
+
+        assertThat(bytes.readPosition(), is(written));
+        assertThat(restored.getUserProfiles().size(), is(99));
+        assertThat(restored.stateHash(), is(service.stateHash()));
+
+        bytes.release();
+    }
+
+    private static UserProfileService createService(int users) {
+        final UserProfileService service = new UserProfileService();
+        for (long uid = 1; uid <= users; uid++) {
+            service.addEmptyUserProfile(uid);
+            for (int currency = 0; currency < uid % 4; currency++) {
+                assertThat(service.balanceAdjustment(uid, currency, uid * 100 + currency, uid * 10 + currency), is(CommandResultCode.SUCCESS));
+            }
+        }
+        assertThat(service.suspendUserProfile(8), is(CommandResultCode.SUCCESS));
+        return service;
+    }
+
+    private static void checkRoundTrip(int users) {
+
+        final UserProfileService service = createService(users);
+
+        final Bytes<ByteBuffer> bytes = Bytes.elasticByteBuffer();
+        service.writeMarshallable(bytes);
+        final long written = bytes.writePosition();
+
+        final UserProfileService restored = new UserProfileService(bytes);
+
+        assertThat(bytes.readPosition(), is(written));
+        // suspended profile is removed
+        assertThat(restored.getUserProfiles().size(), is(users - 1));
+        assertThat(restored.getUserProfile(8) == null, is(true));
+        assertThat(restored.stateHash(), is(service.stateHash()));
+
+        final UserProfile profile = restored.getUserProfile(users - 1);
+        assertThat(profile.uid, is((long) users - 1));
+        assertThat(profile.accounts.size(), is((int) ((users - 1) % 4)));
+
+        bytes.release();
+    }
+}
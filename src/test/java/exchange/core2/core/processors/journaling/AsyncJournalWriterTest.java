@@ -0,0 +1,84 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.metrics.PaddedCounter;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class AsyncJournalWriterTest {
+
+    @Test
+    public void shouldWriteBlocksInOrderAndSwitchFiles() throws IOException {
+
+        final Path folder = Files.createTempDirectory("journal-io-test");
+        final Path file1 = folder.resolve("j1.ecj");
+        final Path file2 = folder.resolve("j2.ecj");
+
+        final PaddedCounter forces = new PaddedCounter();
+        final AsyncJournalWriter writer = new AsyncJournalWriter(
+                JournalDurabilityMode.GROUP_COMMIT, 1_000_000L, 1024L * 1024L, 2, 64, 64, forces, new PaddedCounter(), null, "J-IO-test");
+
+        final RandomAccessFile raf1 = new RandomAccessFile(file1.toFile(), "rw");
+        final RandomAccessFile raf2 = new RandomAccessFile(file2.toFile(), "rw");
+
+        for (int i = 0; i < 10; i++) {
+            final AsyncJournalWriter.Block block = writer.acquire();
+            block.rawBuffer.putInt(i);
+            block.rawBuffer.flip();
+            writer.submit(block, block.rawBuffer, i < 6 ? raf1 : raf2, i);
+        }
+
+        final AsyncJournalWriter.Block block = writer.acquire();
+        block.lz4Buffer.putInt(10);
+        block.lz4Buffer.flip();
+        writer.submit(block, block.lz4Buffer, raf2, 10);
+
+        writer.close();
+
+        // file switch and close force both files
+        assertThat(forces.get(), greaterThanOrEqualTo(2L));
+
+        assertArrayEquals(expectedInts(0, 6), Files.readAllBytes(file1));
+        assertArrayEquals(expectedInts(6, 11), Files.readAllBytes(file2));
+    }
+
+    @Test
+    public void shouldRejectStrictMode() {
+        assertThrows(IllegalArgumentException.class, () -> new AsyncJournalWriter(
+                JournalDurabilityMode.STRICT_SYNC, 0L, 0L, 2, 64, 64, new PaddedCounter(), new PaddedCounter(), null, "J-IO-test"));
+    }
+
+    private static byte[] expectedInts(int from, int to) {
+        final ByteBuffer bb = ByteBuffer.allocate((to - from) * 4);
+        for (int i = from; i < to; i++) {
+            bb.putInt(i);
+        }
+        assertThat(bb.remaining(), is(0));
+        return bb.array();
+    }
+}
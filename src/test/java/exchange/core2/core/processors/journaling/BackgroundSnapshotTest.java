@@ -0,0 +1,148 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.metrics.MetricsRegistry;
+import net.openhft.chronicle.bytes.WriteBytesMarshallable;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static exchange.core2.core.processors.journaling.ISerializationProcessor.SerializedModuleType.MATCHING_ENGINE_ROUTER;
+import static exchange.core2.core.processors.journaling.ISerializationProcessor.SerializedModuleType.RISK_ENGINE;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class BackgroundSnapshotTest {
+
+    @Test
+    public void shouldStoreCapturedImageInBackground() throws IOException {
+
+        final Path folder = Files.createTempDirectory("snapshot-test");
+        final DiskSerializationProcessor processor = createProcessor(folder, "BGS", true);
+
+        final long[] state = new long[300_000];
+        Arrays.setAll(state, i -> i * 31L);
+
+        final WriteBytesMarshallable module = bytes -> {
+            bytes.writeInt(state.length);
+            for (long v : state) {
+                bytes.writeLong(v);
+            }
+        };
+
+        assertThat(processor.storeData(77, 1000, 1, MATCHING_ENGINE_ROUTER, 0, module), is(true));
+
+        // module continues processing and modifies its state - snapshot keeps captured image
+        Arrays.fill(state, -1L);
+
+        assertThat(processor.storeData(77, 1000, 1, RISK_ENGINE, 0, module), is(true));
+
+        processor.close();
+
+        assertThat(processor.checkSnapshotExists(77, MATCHING_ENGINE_ROUTER, 0), is(true));
+        assertThat(processor.checkSnapshotExists(77, RISK_ENGINE, 0), is(true));
+
+        final long[] loaded = processor.loadData(77, MATCHING_ENGINE_ROUTER, 0, bytes -> {
+            final long[] arr = new long[bytes.readInt()];
+            Arrays.setAll(arr, i -> bytes.readLong());
+            return arr;
+        });
+        assertThat(loaded.length, is(state.length));
+        for (int i = 0; i < loaded.length; i++) {
+            assertThat(loaded[i], is(i * 31L));
+        }
+
+        final long[] loadedRisk = processor.loadData(77, RISK_ENGINE, 0, bytes -> {
+            final long[] arr = new long[bytes.readInt()];
+            Arrays.setAll(arr, i -> bytes.readLong());
+            return arr;
+        });
+        assertThat(Arrays.stream(loadedRisk).allMatch(v -> v == -1L), is(true));
+
+        // no temporary files left
+        try (Stream<Path> files = Files.list(folder)) {
+            assertThat(files.noneMatch(p -> p.toString().endsWith(".tmp")), is(true));
+        }
+
+        // same snapshot can not be stored twice
+        assertThat(processor.storeData(77, 1000, 1, RISK_ENGINE, 0, module), is(false));
+    }
+
+    @Test
+    public void shouldCountFailedBackgroundWrites() throws IOException {
+
+        final Path folder = Files.createTempDirectory("snapshot-test");
+        final DiskSerializationProcessor processor = createProcessor(folder, "BGF", true);
+        final MetricsRegistry registry = new MetricsRegistry();
+        processor.registerMetrics(registry);
+
+        // temporary file can not be created
+        Files.createDirectory(folder.resolve(DiskSerializationProcessor.snapshotFileName("BGF", 3, RISK_ENGINE, 0) + ".tmp"));
+
+        // accepted, but fails in background
+        assertThat(processor.storeData(3, 10, 1, RISK_ENGINE, 0, bytes -> bytes.writeLong(1L)), is(true));
+
+        // capture fails on calling thread
+        assertThat(processor.storeData(3, 10, 1, MATCHING_ENGINE_ROUTER, 0, bytes -> {
+            throw new IllegalStateException("test");
+        }), is(false));
+
+        processor.close();
+
+        assertThat(registry.getValue("snapshot.failed"), is(2L));
+        assertThat(registry.getValue("snapshot.pending"), is(0L));
+        assertThat(processor.checkSnapshotExists(3, RISK_ENGINE, 0), is(false));
+        assertThat(processor.findAllSnapshotPoints().isEmpty(), is(true));
+    }
+
+    @Test
+    public void shouldReadSnapshotWrittenInForeground() throws IOException {
+
+        final Path folder = Files.createTempDirectory("snapshot-test");
+
+        final DiskSerializationProcessor writer = createProcessor(folder, "FGS", false);
+        assertThat(writer.storeData(5, 10, 1, RISK_ENGINE, 1, bytes -> bytes.writeLong(123456789L)), is(true));
+
+        final DiskSerializationProcessor reader = createProcessor(folder, "FGS", true);
+        assertThat(reader.loadData(5, RISK_ENGINE, 1, bytes -> bytes.readLong()), is(123456789L));
+    }
+
+    private static DiskSerializationProcessor createProcessor(Path folder, String exchangeId, boolean backgroundCompression) {
+
+        final ExchangeConfiguration exchangeCfg = ExchangeConfiguration.defaultBuilder()
+                .initStateCfg(InitialStateConfiguration.cleanStart(exchangeId))
+                .build();
+
+        final DiskSerializationProcessorConfiguration diskCfg = DiskSerializationProcessorConfiguration.builder()
+                .storageFolder(folder.toString())
+                .snapshotLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .snapshotBackgroundCompression(backgroundCompression)
+                .journalFileMaxSize(64 * 1024 * 1024)
+                .journalBufferSize(64 * 1024)
+                .journalBatchCompressThreshold(2048)
+                .journalLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .build();
+
+        return new DiskSerializationProcessor(exchangeCfg, diskCfg);
+    }
+}
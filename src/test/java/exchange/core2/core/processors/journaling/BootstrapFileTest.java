@@ -0,0 +1,155 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.api.ApiAddUser;
+import exchange.core2.core.common.api.ApiAdjustUserBalance;
+import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.api.binary.BatchAddAccountsCommand;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import org.eclipse.collections.impl.map.mutable.primitive.IntLongHashMap;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static exchange.core2.tests.util.TestCommands.placeOrder;
+import static exchange.core2.tests.util.TestConstants.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class BootstrapFileTest {
+
+    private static final PerformanceConfiguration PERF_CFG = PerformanceConfiguration.baseBuilder()
+            .matchingEnginesNum(2)
+            .riskEnginesNum(2)
+            .build();
+
+    private static final List<ApiPlaceOrder> ORDERS = Arrays.asList(
+            placeOrder(UID_1, 101L, OrderAction.ASK, 160000L, 7L),
+            placeOrder(UID_2, 202L, OrderAction.ASK, 159900L, 10L),
+            placeOrder(UID_3, 303L, OrderAction.BID, 150000L, 12L),
+            placeOrder(UID_4, 404L, OrderAction.BID, 150100L, 3L),
+            placeOrder(UID_1, 105L, OrderAction.ASK, 161000L, 1L));
+
+    @Test
+    public void shouldBootstrapStateEquivalentToCommands() throws Exception {
+
+        final Path bootstrapPath = writeBootstrapFile(Files.createTempDirectory("bootstrap-test"));
+
+        try (final ExchangeTestContainer commands = ExchangeTestContainer.create(PERF_CFG);
+             final ExchangeTestContainer bootstrapped = ExchangeTestContainer.create(
+                     PERF_CFG,
+                     InitialStateConfiguration.fromBootstrapFile("BOOT", bootstrapPath.toString()),
+                     SerializationConfiguration.DEFAULT)) {
+
+            commands.initFeeSymbols();
+            for (long uid : new long[]{UID_1, UID_2, UID_3, UID_4}) {
+                commands.submitCommandSync(ApiAddUser.builder().uid(uid).build(), CommandResultCode.SUCCESS);
+                feeBalances().keySet().toSortedList().forEach(currency -> commands.submitCommandSync(
+                        ApiAdjustUserBalance.builder()
+                                .uid(uid)
+                                .currency(currency)
+                                .amount(feeBalances().get(currency))
+                                .transactionId(BatchAddAccountsCommand.initialBalanceTransactionId(currency))
+                                .build(),
+                        CommandResultCode.SUCCESS));
+            }
+            ORDERS.forEach(order -> commands.submitCommandSync(order, CommandResultCode.SUCCESS));
+
+            assertThat(bootstrapped.requestStateHash(), is(commands.requestStateHash()));
+
+            // resting orders are matched as usual
+            final ApiPlaceOrder taker = placeOrder(UID_3, 306L, OrderAction.BID, 160000L, 12L);
+            commands.submitCommandSync(taker, CommandResultCode.SUCCESS);
+            bootstrapped.submitCommandSync(taker, CommandResultCode.SUCCESS);
+
+            assertThat(bootstrapped.requestStateHash(), is(commands.requestStateHash()));
+        }
+    }
+
+    @Test
+    public void shouldRecoverBootstrappedState() throws Exception {
+
+        final Path folder = Files.createTempDirectory("bootstrap-recovery-test");
+        final Path bootstrapPath = writeBootstrapFile(folder);
+
+        final DiskSerializationProcessorConfiguration diskCfg = DiskSerializationProcessorConfiguration.builder()
+                .storageFolder(folder.toString())
+                .snapshotLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .journalFileMaxSize(64 * 1024 * 1024)
+                .journalBufferSize(64 * 1024)
+                .journalBatchCompressThreshold(2048)
+                .journalLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .build();
+
+        final SerializationConfiguration serializationCfg = SerializationConfiguration.builder()
+                .enableJournaling(true)
+                .serializationProcessorFactory(cfg -> new DiskSerializationProcessor(cfg, diskCfg))
+                .build();
+
+        final int stateHash;
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(
+                PERF_CFG,
+                InitialStateConfiguration.fromBootstrapFile("BOOTREC", bootstrapPath.toString()),
+                serializationCfg)) {
+
+            // journaled after bootstrap snapshot
+            container.submitCommandSync(placeOrder(UID_3, 306L, OrderAction.BID, 160000L, 12L), CommandResultCode.SUCCESS);
+            stateHash = container.requestStateHash();
+        }
+
+        final InitialStateConfiguration lastKnownState = DiskSerializationProcessor.findLastKnownState("BOOTREC", diskCfg);
+        assertThat(lastKnownState.fromSnapshot(), is(true));
+
+        try (final ExchangeTestContainer recreated = ExchangeTestContainer.create(PERF_CFG, lastKnownState, serializationCfg)) {
+            assertThat(recreated.requestStateHash(), is(stateHash));
+        }
+    }
+
+    private static Path writeBootstrapFile(final Path folder) throws IOException {
+        final Path bootstrapPath = folder.resolve("state.ecb");
+
+        final BootstrapFile.Writer writer = new BootstrapFile.Writer(4);
+        writer.addSymbol(SYMBOLSPECFEE_XBT_LTC);
+        writer.addSymbol(SYMBOLSPECFEE_USD_JPY);
+        for (long uid : new long[]{UID_1, UID_2, UID_3, UID_4}) {
+            writer.addUser(uid, feeBalances());
+        }
+        for (ApiPlaceOrder order : ORDERS) {
+            writer.addOrder(order);
+        }
+        writer.write(bootstrapPath);
+        return bootstrapPath;
+    }
+
+    private static IntLongHashMap feeBalances() {
+        final IntLongHashMap balances = new IntLongHashMap();
+        balances.put(CURRENECY_USD, 10_000_00L);
+        balances.put(CURRENECY_JPY, 10_000_000L);
+        balances.put(CURRENECY_XBT, 1_0000_0000L);
+        balances.put(CURRENECY_LTC, 1000_0000_0000L);
+        return balances;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import net.jpountz.lz4.LZ4Factory;
+import net.openhft.chronicle.bytes.Bytes;
+import net.openhft.chronicle.bytes.WriteBytesMarshallable;
+import net.openhft.chronicle.wire.WireType;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static exchange.core2.core.processors.journaling.ISerializationProcessor.SerializedModuleType.MATCHING_ENGINE_ROUTER;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class ChunkedSnapshotFileTest {
+
+    @Test
+    public void shouldWriteAndReadBlocks() throws IOException {
+
+        final Path folder = Files.createTempDirectory("chunked-snapshot-test");
+
+        // compressible and random (incompressible) parts, last block is partial
+        final int length = 10 * ChunkedSnapshotFile.MIN_BLOCK_SIZE + 12345;
+        final ByteBuffer image = ByteBuffer.allocateDirect(length + 100);
+        final Random random = new Random(1L);
+        for (int i = 0; i < length; i++) {
+            image.put((byte) ((i / ChunkedSnapshotFile.MIN_BLOCK_SIZE) % 2 == 0 ? i % 7 : random.nextInt()));
+        }
+        image.flip();
+
+        final Path path = folder.resolve("s.ecs");
+        final ForkJoinPool pool = new ForkJoinPool(3);
+        ChunkedSnapshotFile.write(path, image, ChunkedSnapshotFile.MIN_BLOCK_SIZE, LZ4Factory.fastestInstance().fastCompressor(), pool);
+        pool.shutdown();
+
+        assertThat(image.position(), is(0));
+        assertThat(ChunkedSnapshotFile.isChunked(path), is(true));
+        assertThat(Files.size(path) < length, is(true));
+
+        final ByteBuffer loaded = ChunkedSnapshotFile.readImage(path, ForkJoinPool.commonPool());
+        assertThat(loaded.remaining(), is(length));
+        assertThat(loaded.equals(image), is(true));
+    }
+
+    @Test
+    public void shouldStreamModuleIntoBlocks() throws IOException {
+
+        final Path folder = Files.createTempDirectory("chunked-snapshot-test");
+        final ForkJoinPool pool = new ForkJoinPool(2);
+
+        final Random random = new Random(2L);
+        final byte[] large = new byte[3 * ChunkedSnapshotFile.MIN_BLOCK_SIZE + 17];
+        random.nextBytes(large);
+
+        // primitives, stop bits, strings and writes larger than a block crossing block boundaries
+        final WriteBytesMarshallable module = bytes -> {
+            bytes.writeInt(ISerializationProcessor.DELTA_SNAPSHOT_MARKER);
+            bytes.writeLong(12345L);
+            for (int i = 0; i < 50_000; i++) {
+                bytes.writeLong(i * 31L);
+                bytes.writeStopBit(i);
+                bytes.writeByte((byte) i);
+                if (i % 1000 == 0) {
+                    bytes.write8bit("block" + i);
+                    bytes.write(large);
+                }
+            }
+            final Bytes<ByteBuffer> value = Bytes.elasticByteBuffer();
+            value.write(large);
+            bytes.write(value);
+            value.release();
+        };
+
+        final Bytes<ByteBuffer> expected = Bytes.elasticByteBuffer();
+        WireType.RAW.apply(expected).writeBytes(module);
+
+        final Path path = folder.resolve("s.ecs");
+        try (final ChunkedSnapshotFile.Writer writer = new ChunkedSnapshotFile.Writer(path, ChunkedSnapshotFile.MIN_BLOCK_SIZE, LZ4Factory.fastestInstance().fastCompressor(), pool)) {
+            writer.writeModule(module);
+            assertThat(writer.head().remaining(), is(ChunkedSnapshotFile.MIN_BLOCK_SIZE));
+            assertThat(writer.head().getInt(0), is(Integer.reverseBytes((int) expected.readRemaining() - 4)));
+            writer.finish();
+        }
+
+        final ByteBuffer loaded = ChunkedSnapshotFile.readImage(path, pool);
+        assertThat(loaded.remaining(), is((int) expected.readRemaining()));
+        final ByteBuffer expectedImage = expected.underlyingObject().duplicate();
+        expectedImage.limit((int) expected.readLimit());
+        assertThat(loaded.equals(expectedImage), is(true));
+        expected.release();
+
+        // module shorter than one block
+        final Path smallPath = folder.resolve("small.ecs");
+        try (final ChunkedSnapshotFile.Writer writer = new ChunkedSnapshotFile.Writer(smallPath, ChunkedSnapshotFile.MIN_BLOCK_SIZE, LZ4Factory.fastestInstance().fastCompressor(), pool)) {
+            writer.writeModule(bytes -> bytes.writeLong(7L));
+            assertThat(writer.head().remaining(), is(12));
+            writer.finish();
+        }
+        final Bytes<ByteBuffer> small = Bytes.wrapForRead(ChunkedSnapshotFile.readImage(smallPath, pool));
+        assertThat(small.readInt(), is(8));
+        assertThat(small.readLong(), is(7L));
+
+        // not finished file is removed
+        final Path failedPath = folder.resolve("failed.ecs");
+        try (final ChunkedSnapshotFile.Writer writer = new ChunkedSnapshotFile.Writer(failedPath, ChunkedSnapshotFile.MIN_BLOCK_SIZE, LZ4Factory.fastestInstance().fastCompressor(), pool)) {
+            writer.writeBlock(ByteBuffer.wrap(large, 0, 100));
+        }
+        assertThat(Files.exists(failedPath), is(false));
+
+        pool.shutdown();
+    }
+
+    @Test
+    public void shouldStoreAndLoadChunkedSnapshot() throws IOException {
+
+        final Path folder = Files.createTempDirectory("chunked-snapshot-test");
+
+        final ExchangeConfiguration exchangeCfg = ExchangeConfiguration.defaultBuilder()
+                .initStateCfg(InitialStateConfiguration.cleanStart("CHS"))
+                .build();
+
+        final DiskSerializationProcessorConfiguration diskCfg = DiskSerializationProcessorConfiguration.builder()
+                .storageFolder(folder.toString())
+                .snapshotLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .snapshotChunkedFormat(true)
+                .snapshotBlockSize(ChunkedSnapshotFile.MIN_BLOCK_SIZE)
+                .snapshotCompressThreads(2)
+                .journalFileMaxSize(64 * 1024 * 1024)
+                .journalBufferSize(64 * 1024)
+                .journalBatchCompressThreshold(2048)
+                .journalLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .build();
+
+        final DiskSerializationProcessor processor = new DiskSerializationProcessor(exchangeCfg, diskCfg);
+
+        final int values = 100_000;
+        assertThat(processor.storeData(3, 100, 1, MATCHING_ENGINE_ROUTER, 1, bytes -> {
+            bytes.writeInt(values);
+            for (int i = 0; i < values; i++) {
+                bytes.writeLong(i * 17L);
+            }
+        }), is(true));
+
+        assertThat(ChunkedSnapshotFile.isChunked(folder.resolve("CHS_snapshot_3_ME1.ecs")), is(true));
+
+        final long sum = processor.loadData(3, MATCHING_ENGINE_ROUTER, 1, bytes -> {
+            final int n = bytes.readInt();
+            long s = 0;
+            for (int i = 0; i < n; i++) {
+                assertThat(bytes.readLong(), is(i * 17L));
+                s++;
+            }
+            return s;
+        });
+        assertThat(sum, is((long) values));
+    }
+}
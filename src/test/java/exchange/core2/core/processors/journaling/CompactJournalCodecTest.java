@@ -0,0 +1,159 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+
+public final class CompactJournalCodecTest {
+
+    @Test
+    public void shouldEncodeAndDecodeRecords() throws IOException {
+
+        final List<OrderCommand> commands = new ArrayList<>();
+        commands.add(OrderCommand.newOrder(OrderType.GTC, 10001L, 3001L, 15_000L, 15_200L, 5L, OrderAction.BID));
+        commands.add(OrderCommand.newOrder(OrderType.IOC, 10002L, 3002L, 14_990L, 0L, 1L, OrderAction.ASK));
+        commands.add(OrderCommand.update(10001L, 3001L, 15_010L));
+        commands.add(OrderCommand.cancel(10002L, 3002L));
+        commands.add(OrderCommand.reduce(10001L, 3001L, 2L));
+
+        final OrderCommand adjustment = new OrderCommand();
+        adjustment.command = OrderCommandType.BALANCE_ADJUSTMENT;
+        adjustment.uid = 3001L;
+        adjustment.symbol = 840;
+        adjustment.orderId = 7L;
+        adjustment.price = -1_000_000L;
+        adjustment.orderType = OrderType.of((byte) 1);
+        commands.add(adjustment);
+
+        final OrderCommand addUser = new OrderCommand();
+        addUser.command = OrderCommandType.ADD_USER;
+        addUser.uid = Long.MAX_VALUE;
+        commands.add(addUser);
+
+        final OrderCommand binary = new OrderCommand();
+        binary.command = OrderCommandType.BINARY_DATA_COMMAND;
+        binary.symbol = -1;
+        binary.orderId = 0x1234_5678_9ABC_DEF0L;
+        binary.price = -1L;
+        binary.uid = 42L;
+        commands.add(binary);
+
+        long seq = 1_000_000L;
+        long timestamp = 1_600_000_000_000_000_000L;
+        for (OrderCommand cmd : commands) {
+            cmd.symbol = cmd.command == OrderCommandType.BALANCE_ADJUSTMENT || cmd.command == OrderCommandType.BINARY_DATA_COMMAND ? cmd.symbol : 5;
+            cmd.timestamp = timestamp;
+            cmd.eventsGroup = 17L;
+            cmd.userCookie = cmd.command == OrderCommandType.PLACE_ORDER ? -3 : 0;
+            timestamp += 1500;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(4096);
+        final CompactJournalCodec encoder = new CompactJournalCodec();
+        encoder.startFile(buffer);
+        for (OrderCommand cmd : commands) {
+            encoder.encode(cmd, seq++, buffer);
+        }
+
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(buffer.array(), 0, buffer.position()));
+        final CompactJournalCodec decoder = new CompactJournalCodec();
+        assertThat(input.readByte(), is(CompactJournalCodec.FORMAT_MARKER));
+        decoder.startFile(input);
+
+        seq = 1_000_000L;
+        final OrderCommand decoded = new OrderCommand();
+        for (OrderCommand cmd : commands) {
+            decoder.decode(OrderCommandType.fromCode(input.readByte()), input, decoded);
+
+            assertThat(decoder.getLastSeq(), is(seq++));
+            assertThat(decoded.command, is(cmd.command));
+            assertThat(decoded.timestamp, is(cmd.timestamp));
+            assertThat(decoded.eventsGroup, is(cmd.eventsGroup));
+            assertThat(decoded.serviceFlags, is(cmd.serviceFlags));
+            assertThat(decoded.uid, is(cmd.uid));
+
+            if (cmd.command != OrderCommandType.ADD_USER) {
+                assertThat(decoded.symbol, is(cmd.symbol));
+                assertThat(decoded.orderId, is(cmd.orderId));
+            }
+            if (cmd.command == OrderCommandType.PLACE_ORDER) {
+                assertThat(decoded.price, is(cmd.price));
+                assertThat(decoded.reserveBidPrice, is(cmd.reserveBidPrice));
+                assertThat(decoded.size, is(cmd.size));
+                assertThat(decoded.userCookie, is(cmd.userCookie));
+                assertThat(decoded.action, is(cmd.action));
+                assertThat(decoded.orderType, is(cmd.orderType));
+            }
+            if (cmd.command == OrderCommandType.MOVE_ORDER || cmd.command == OrderCommandType.BALANCE_ADJUSTMENT) {
+                assertThat(decoded.price, is(cmd.price));
+            }
+            if (cmd.command == OrderCommandType.REDUCE_ORDER) {
+                assertThat(decoded.size, is(cmd.size));
+            }
+        }
+        assertThat(input.available(), is(0));
+    }
+
+    @Test
+    public void shouldEncodeSubsequentPlaceOrderCompactly() {
+
+        final ByteBuffer buffer = ByteBuffer.allocate(256);
+        final CompactJournalCodec encoder = new CompactJournalCodec();
+        encoder.startFile(buffer);
+
+        final OrderCommand first = OrderCommand.newOrder(OrderType.GTC, 10001L, 3001L, 15_000L, 15_000L, 5L, OrderAction.BID);
+        first.symbol = 5;
+        first.timestamp = 1_600_000_000_000_000_000L;
+        encoder.encode(first, 100L, buffer);
+
+        final int position = buffer.position();
+        final OrderCommand second = OrderCommand.newOrder(OrderType.GTC, 10002L, 3001L, 15_010L, 15_010L, 3L, OrderAction.BID);
+        second.symbol = 5;
+        second.timestamp = first.timestamp + 900;
+        encoder.encode(second, 101L, buffer);
+
+        // fixed-width record takes 75 bytes
+        assertThat(buffer.position() - position, lessThan(16));
+    }
+
+    @Test
+    public void shouldEncodeVarLongs() throws IOException {
+        final long[] values = {0L, 1L, 127L, 128L, Long.MAX_VALUE, Long.MIN_VALUE, -1L};
+        final ByteBuffer buffer = ByteBuffer.allocate(256);
+        for (long v : values) {
+            CompactJournalCodec.putVarLong(buffer, CompactJournalCodec.zigzag(v));
+        }
+        final DataInputStream input = new DataInputStream(new ByteArrayInputStream(buffer.array(), 0, buffer.position()));
+        for (long v : values) {
+            assertThat(CompactJournalCodec.unzigzag(CompactJournalCodec.readVarLong(input)), is(v));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import com.lmax.disruptor.RingBuffer;
+import exchange.core2.core.ExchangeApi;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.AdmissionControlConfiguration;
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import net.jpountz.lz4.LZ4Factory;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class JournalChecksumTest {
+
+    private static final String EXCHANGE_ID = "CHECKSUM";
+    private static final int COMMANDS = 20_000;
+
+    @Test
+    public void shouldVerifyAndSkipTornLastBlock() throws IOException {
+
+        final Path folder = Files.createTempDirectory("journal-checksum-test");
+        writeJournal(folder);
+
+        final JournalVerifier.Result result = JournalVerifier.verify(folder.toString(), EXCHANGE_ID, 2);
+        assertThat(result.getErrors().toString(), result.isValid(), is(true));
+        assertThat(result.getTornFiles().isEmpty(), is(true));
+        assertThat(result.getFilesChecked(), is(1));
+
+        final Path journal = folder.resolve(DiskSerializationProcessor.journalFileName(EXCHANGE_ID, 1, 0));
+        assertThat(readCommands(journal), is(COMMANDS));
+
+        final List<Integer> blocks = blockOffsets(journal);
+        assertThat(blocks.size() > 10, is(true));
+
+        // damaged last block is a torn write - skipped on recovery
+        final int lastBlock = blocks.get(blocks.size() - 1);
+        final int penultimateBlock = blocks.get(blocks.size() - 2);
+        flipByte(journal, lastBlock + JournalBlockChecksum.HEADER_SIZE);
+        assertThat(readCommands(journal) < COMMANDS, is(true));
+        assertThat(readCommands(journal) > 0, is(true));
+
+        final JournalVerifier.Result tornResult = JournalVerifier.verify(folder.toString(), EXCHANGE_ID, 2);
+        assertThat(tornResult.isValid(), is(true));
+        assertThat(tornResult.getTornFiles().size(), is(1));
+
+        // damaged block in the middle is reported
+        flipByte(journal, penultimateBlock + JournalBlockChecksum.HEADER_SIZE + 1);
+        final JournalVerifier.Result damagedResult = JournalVerifier.verify(folder.toString(), EXCHANGE_ID, 2);
+        assertThat(damagedResult.isValid(), is(false));
+        assertThat(damagedResult.getErrors().size(), is(1));
+
+        assertThrows(IllegalStateException.class, () -> readCommands(journal));
+    }
+
+    private static void writeJournal(Path folder) throws IOException {
+
+        final ExchangeConfiguration exchangeCfg = ExchangeConfiguration.defaultBuilder()
+                .initStateCfg(InitialStateConfiguration.cleanStartJournaling(EXCHANGE_ID))
+                .build();
+
+        final DiskSerializationProcessorConfiguration diskCfg = DiskSerializationProcessorConfiguration.builder()
+                .storageFolder(folder.toString())
+                .snapshotLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .journalFileMaxSize(64 * 1024 * 1024)
+                .journalBufferSize(64 * 1024)
+                .journalBatchCompressThreshold(2048)
+                .journalLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .journalDurabilityMode(JournalDurabilityMode.OS_BUFFERED)
+                .journalGroupCommitIntervalUs(500)
+                .journalGroupCommitBytes(1024 * 1024)
+                .journalForceIntervalMs(1000)
+                .journalBlockChecksums(true)
+                .journalReplayThreads(0)
+                .build();
+
+        final DiskSerializationProcessor processor = new DiskSerializationProcessor(exchangeCfg, diskCfg);
+        final RingBuffer<OrderCommand> writeRing = RingBuffer.createMultiProducer(OrderCommand::new, 1024);
+        processor.enableJournaling(0, new ExchangeApi(writeRing, LZ4Factory.fastestInstance().fastCompressor(), AdmissionControlConfiguration.DEFAULT));
+
+        for (int i = 1; i <= COMMANDS; i++) {
+            final OrderCommand cmd = OrderCommand.newOrder(OrderType.GTC, i, 100L + (i % 13), 10_000L + (i % 100), 10_000L + (i % 100), 1L + (i % 5), OrderAction.BID);
+            cmd.symbol = 1 + (i % 3);
+            cmd.timestamp = 1_000_000L + i;
+            // small and big blocks (compressed inside checksummed block)
+            processor.writeToJournal(cmd, i, i % 7 == 0 || i > COMMANDS / 2 && i % 500 == 0);
+        }
+        final OrderCommand shutdown = new OrderCommand();
+        shutdown.command = OrderCommandType.SHUTDOWN_SIGNAL;
+        processor.writeToJournal(shutdown, COMMANDS + 1, true);
+    }
+
+    private static int readCommands(Path journal) throws IOException {
+        final int[] counter = new int[1];
+        final JournalRecordReader reader = new JournalRecordReader();
+        try (final InputStream is = Files.newInputStream(journal);
+             final DataInputStream dis = new DataInputStream(new BufferedInputStream(is))) {
+            reader.readFile(dis, (cmd, seq) -> counter[0]++);
+        }
+        return counter[0];
+    }
+
+    private static List<Integer> blockOffsets(Path journal) throws IOException {
+        final ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(journal));
+        final List<Integer> offsets = new ArrayList<>();
+        while (file.hasRemaining() && file.get(file.position()) != 0) {
+            offsets.add(file.position());
+            assertThat(file.get(), is(JournalBlockChecksum.MARKER));
+            final int length = file.getInt();
+            file.position(file.position() + 4 + length);
+        }
+        return offsets;
+    }
+
+    private static void flipByte(Path journal, int offset) throws IOException {
+        final byte[] bytes = Files.readAllBytes(journal);
+        bytes[offset] ^= 0x5A;
+        Files.write(journal, bytes);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import com.lmax.disruptor.RingBuffer;
+import exchange.core2.core.ExchangeApi;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.AdmissionControlConfiguration;
+import net.jpountz.lz4.LZ4Factory;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class JournalReplayPipelineTest {
+
+    @Test
+    public void shouldReplayPartitionsInOrder() throws IOException {
+
+        final Path folder = Files.createTempDirectory("journal-replay-test");
+
+        // three partitions, more commands than one batch, mixed formats
+        final List<Path> partitions = new ArrayList<>();
+        long seq = 1;
+        final int[] partitionSizes = {2500, 10, 1300};
+        for (int p = 0; p < partitionSizes.length; p++) {
+            final ByteBuffer buffer = ByteBuffer.allocate(256 * 1024);
+            final CompactJournalCodec codec = new CompactJournalCodec();
+            final boolean compact = p != 1;
+            if (compact) {
+                codec.startFile(buffer);
+            }
+            for (int i = 0; i < partitionSizes[p]; i++) {
+                final OrderCommand cmd = OrderCommand.newOrder(OrderType.GTC, seq, 100L + (seq % 7), 1000L + seq, 1000L + seq, 1L, OrderAction.ASK);
+                cmd.symbol = 3;
+                cmd.timestamp = seq * 10;
+                if (compact) {
+                    codec.encode(cmd, seq, buffer);
+                } else {
+                    writeFixedWidthPlaceOrder(buffer, cmd, seq);
+                }
+                seq++;
+            }
+            final Path path = folder.resolve("p" + p + ".ecj");
+            Files.write(path, Arrays.copyOf(buffer.array(), buffer.position()));
+            partitions.add(path);
+        }
+
+        final RingBuffer<OrderCommand> ringBuffer = RingBuffer.createMultiProducer(OrderCommand::new, 4096);
+        final ExchangeApi api = new ExchangeApi(ringBuffer, LZ4Factory.fastestInstance().fastCompressor(), AdmissionControlConfiguration.DEFAULT);
+
+        final long lastSeq = new JournalReplayPipeline(2).replay(partitions, api);
+
+        assertThat(lastSeq, is(3810L));
+        assertThat(ringBuffer.getCursor(), is(3809L));
+
+        for (long s = 0; s < 3810; s++) {
+            final OrderCommand cmd = ringBuffer.get(s);
+            assertThat(cmd.command, is(OrderCommandType.PLACE_ORDER));
+            assertThat(cmd.resultCode, is(CommandResultCode.NEW));
+            assertThat(cmd.orderId, is(s + 1));
+            assertThat(cmd.price, is(1001L + s));
+            assertThat(cmd.uid, is(100L + ((s + 1) % 7)));
+            assertThat(cmd.timestamp, is((s + 1) * 10));
+            assertThat(cmd.action, is(OrderAction.ASK));
+        }
+    }
+
+    private static void writeFixedWidthPlaceOrder(ByteBuffer buffer, OrderCommand cmd, long seq) {
+        buffer.put(OrderCommandType.PLACE_ORDER.getCode());
+        buffer.putLong(seq);
+        buffer.putLong(cmd.timestamp);
+        buffer.putInt(cmd.serviceFlags);
+        buffer.putLong(cmd.eventsGroup);
+        buffer.putLong(cmd.uid);
+        buffer.putInt(cmd.symbol);
+        buffer.putLong(cmd.orderId);
+        buffer.putLong(cmd.price);
+        buffer.putLong(cmd.reserveBidPrice);
+        buffer.putLong(cmd.size);
+        buffer.putInt(cmd.userCookie);
+        buffer.put((byte) ((cmd.orderType.getCode() << 1) | cmd.action.getCode()));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import com.lmax.disruptor.RingBuffer;
+import exchange.core2.core.ExchangeApi;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.AdmissionControlConfiguration;
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import net.jpountz.lz4.LZ4Factory;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class JournalReplayStepTest {
+
+    private static final int COMMANDS = 200_000;
+
+    @Test
+    public void shouldReplaySequenceRangeFixedWidth() throws IOException {
+        replaySequenceRange(false);
+    }
+
+    @Test
+    public void shouldReplaySequenceRangeCompact() throws IOException {
+        replaySequenceRange(true);
+    }
+
+    private static void replaySequenceRange(boolean compactRecords) throws IOException {
+
+        final Path folder = Files.createTempDirectory("journal-step-test");
+        final String exchangeId = "STEP" + (compactRecords ? "C" : "F");
+
+        final ExchangeConfiguration exchangeCfg = ExchangeConfiguration.defaultBuilder()
+                .initStateCfg(InitialStateConfiguration.cleanStartJournaling(exchangeId))
+                .build();
+
+        final DiskSerializationProcessor processor = new DiskSerializationProcessor(exchangeCfg, diskConfig(folder, compactRecords));
+
+        final RingBuffer<OrderCommand> writeRing = RingBuffer.createMultiProducer(OrderCommand::new, 1024);
+        processor.enableJournaling(0, new ExchangeApi(writeRing, LZ4Factory.fastestInstance().fastCompressor(), AdmissionControlConfiguration.DEFAULT));
+
+        for (int i = 1; i <= COMMANDS; i++) {
+            final OrderCommand cmd = OrderCommand.newOrder(OrderType.GTC, i, 100L + (i % 13), 10_000L + (i % 100), 10_000L + (i % 100), 1L + (i % 5), OrderAction.BID);
+            cmd.symbol = 1 + (i % 3);
+            cmd.timestamp = 1_000_000L + i;
+            processor.writeToJournal(cmd, i, i % 50 == 0);
+        }
+
+        final OrderCommand shutdown = new OrderCommand();
+        shutdown.command = OrderCommandType.SHUTDOWN_SIGNAL;
+        processor.writeToJournal(shutdown, COMMANDS + 1, true);
+
+        // journal is big enough to have several indexed blocks
+        final long[] index = JournalIndex.read(folder.resolve(exchangeId + "_journal_0_0001.eci"));
+        assertThat(index.length > 2, is(true));
+
+        final RingBuffer<OrderCommand> replayRing = RingBuffer.createMultiProducer(OrderCommand::new, 1024);
+        final ExchangeApi replayApi = new ExchangeApi(replayRing, LZ4Factory.fastestInstance().fastCompressor(), AdmissionControlConfiguration.DEFAULT);
+
+        final long seqFrom = 173_450;
+        final long seqTo = 173_700;
+        processor.replayJournalStep(0, seqFrom, seqTo, replayApi);
+
+        // grouping control + replayed commands
+        assertThat(replayRing.getCursor(), is(seqTo - seqFrom));
+        assertThat(replayRing.get(0).command, is(OrderCommandType.GROUPING_CONTROL));
+        for (long s = 1; s <= seqTo - seqFrom; s++) {
+            final OrderCommand cmd = replayRing.get(s);
+            final long orderId = seqFrom + s;
+            assertThat(cmd.command, is(OrderCommandType.PLACE_ORDER));
+            assertThat(cmd.orderId, is(orderId));
+            assertThat(cmd.uid, is(100L + (orderId % 13)));
+            assertThat(cmd.symbol, is((int) (1 + (orderId % 3))));
+            assertThat(cmd.price, is(10_000L + (orderId % 100)));
+            assertThat(cmd.timestamp, is(1_000_000L + orderId));
+        }
+    }
+
+    private static DiskSerializationProcessorConfiguration diskConfig(Path folder, boolean compactRecords) {
+        return DiskSerializationProcessorConfiguration.builder()
+                .storageFolder(folder.toString())
+                .snapshotLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .journalFileMaxSize(64 * 1024 * 1024)
+                .journalBufferSize(64 * 1024)
+                .journalBatchCompressThreshold(2048)
+                .journalLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .journalDurabilityMode(JournalDurabilityMode.OS_BUFFERED)
+                .journalGroupCommitIntervalUs(500)
+                .journalGroupCommitBytes(1024 * 1024)
+                .journalForceIntervalMs(1000)
+                .journalCompactRecords(compactRecords)
+                .journalReplayThreads(0)
+                .build();
+    }
+}
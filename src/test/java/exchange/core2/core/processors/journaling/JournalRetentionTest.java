@@ -0,0 +1,136 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static exchange.core2.tests.util.TestCommands.persist;
+import static exchange.core2.tests.util.TestCommands.placeOrder;
+import static exchange.core2.tests.util.TestConstants.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class JournalRetentionTest {
+
+    private static final String EXCHANGE_ID = "RETAIN";
+
+    @Test
+    public void shouldDeleteOldRecoveryPoints() throws Exception {
+        retainRecoveryPoints(false);
+    }
+
+    @Test
+    public void shouldArchiveOldRecoveryPoints() throws Exception {
+        retainRecoveryPoints(true);
+    }
+
+    private static void retainRecoveryPoints(boolean archive) throws Exception {
+
+        final Path folder = Files.createTempDirectory("retention-test");
+        final Path archiveFolder = folder.resolve("archive");
+
+        final DiskSerializationProcessorConfiguration diskCfg = DiskSerializationProcessorConfiguration.builder()
+                .storageFolder(folder.toString())
+                .snapshotLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .journalFileMaxSize(64 * 1024 * 1024)
+                .journalBufferSize(64 * 1024)
+                .journalBatchCompressThreshold(2048)
+                .journalLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .retentionRecoveryPoints(2)
+                .retentionArchiveFolder(archive ? archiveFolder.toString() : null)
+                .build();
+
+        final SerializationConfiguration serializationCfg = SerializationConfiguration.builder()
+                .enableJournaling(true)
+                .serializationProcessorFactory(cfg -> new DiskSerializationProcessor(cfg, diskCfg))
+                .build();
+
+        final int stateHash;
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(
+                PerformanceConfiguration.DEFAULT,
+                InitialStateConfiguration.cleanStartJournaling(EXCHANGE_ID),
+                serializationCfg)) {
+
+            container.initFeeSymbols();
+            container.initFeeUsers();
+
+            container.submitCommandSync(placeOrder(UID_1, 101L, OrderAction.ASK, 160000L, 7L), CommandResultCode.SUCCESS);
+            assertThat(persist(container, 1L, 0L), is(CommandResultCode.SUCCESS));
+
+            container.submitCommandSync(placeOrder(UID_2, 202L, OrderAction.ASK, 159900L, 10L), CommandResultCode.SUCCESS);
+            assertThat(persist(container, 2L, 0L), is(CommandResultCode.SUCCESS));
+
+            // delta snapshot keeps its base snapshot files
+            container.submitCommandSync(placeOrder(UID_3, 303L, OrderAction.BID, 150000L, 12L), CommandResultCode.SUCCESS);
+            assertThat(persist(container, 3L, 2L), is(CommandResultCode.SUCCESS));
+
+            container.submitCommandSync(placeOrder(UID_4, 404L, OrderAction.BID, 150100L, 3L), CommandResultCode.SUCCESS);
+            assertThat(persist(container, 4L, 0L), is(CommandResultCode.SUCCESS));
+
+            container.submitCommandSync(placeOrder(UID_1, 105L, OrderAction.ASK, 161000L, 1L), CommandResultCode.SUCCESS);
+
+            // retention runs in background
+            final long deadline = System.currentTimeMillis() + 10_000;
+            while (Files.exists(journal(folder, 2L)) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertThat(Files.exists(journal(folder, 0L)), is(false));
+            assertThat(Files.exists(snapshot(folder, 1L)), is(false));
+            assertThat(Files.exists(journal(folder, 1L)), is(false));
+            assertThat(Files.exists(snapshot(folder, 2L)), is(true));
+            assertThat(Files.exists(journal(folder, 2L)), is(false));
+            assertThat(Files.exists(snapshot(folder, 3L)), is(true));
+            assertThat(Files.exists(journal(folder, 3L)), is(true));
+            assertThat(Files.exists(snapshot(folder, 4L)), is(true));
+
+            assertThat(Files.exists(archiveFolder.resolve(journal(folder, 1L).getFileName() + ".lz4")), is(archive));
+            assertThat(Files.exists(archiveFolder.resolve(snapshot(folder, 1L).getFileName())), is(archive));
+
+            stateHash = container.requestStateHash();
+        }
+
+        // the latest recovery point is still complete
+        final InitialStateConfiguration lastKnownState = DiskSerializationProcessor.findLastKnownState(EXCHANGE_ID, diskCfg);
+        assertThat(lastKnownState.getSnapshotId(), is(4L));
+
+        try (final ExchangeTestContainer recreated = ExchangeTestContainer.create(
+                PerformanceConfiguration.DEFAULT,
+                lastKnownState,
+                serializationCfg)) {
+
+            assertThat(recreated.requestStateHash(), is(stateHash));
+        }
+    }
+
+    private static Path journal(Path folder, long snapshotId) {
+        return folder.resolve(DiskSerializationProcessor.journalFileName(EXCHANGE_ID, 1, snapshotId));
+    }
+
+    private static Path snapshot(Path folder, long snapshotId) {
+        return folder.resolve(DiskSerializationProcessor.snapshotFileName(EXCHANGE_ID, snapshotId, ISerializationProcessor.SerializedModuleType.RISK_ENGINE, 0));
+    }
+}
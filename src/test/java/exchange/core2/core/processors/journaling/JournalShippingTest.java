@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.api.ApiPersistState;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static exchange.core2.tests.util.TestCommands.placeOrder;
+import static exchange.core2.tests.util.TestConstants.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class JournalShippingTest {
+
+    @Test
+    public void followerShouldApplyLeaderJournal() throws Exception {
+
+        final Path folder = Files.createTempDirectory("shipping-test");
+        final SocketJournalShipper shipper = new SocketJournalShipper(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+
+        final DiskSerializationProcessorConfiguration diskCfg = DiskSerializationProcessorConfiguration.builder()
+                .storageFolder(folder.toString())
+                .snapshotLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .journalFileMaxSize(64 * 1024 * 1024)
+                .journalBufferSize(64 * 1024)
+                .journalBatchCompressThreshold(2048)
+                .journalLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .journalShipperFactory(() -> shipper)
+                .build();
+
+        final SerializationConfiguration leaderSerializationCfg = SerializationConfiguration.builder()
+                .enableJournaling(true)
+                .serializationProcessorFactory(cfg -> new DiskSerializationProcessor(cfg, diskCfg))
+                .build();
+
+        try (final ExchangeTestContainer leader = ExchangeTestContainer.create(
+                PerformanceConfiguration.DEFAULT,
+                InitialStateConfiguration.cleanStartJournaling("LEADER"),
+                leaderSerializationCfg);
+             final ExchangeTestContainer standby = ExchangeTestContainer.create(
+                     PerformanceConfiguration.DEFAULT,
+                     InitialStateConfiguration.cleanStart("STANDBY"),
+                     SerializationConfiguration.DEFAULT)) {
+
+            leader.initFeeSymbols();
+            leader.initFeeUsers();
+
+            // blocks are queued until follower connects
+            final JournalFollower follower = JournalFollower.connect(shipper.getLocalAddress(), standby.getApi());
+
+            leader.submitCommandSync(placeOrder(UID_1, 101L, OrderAction.ASK, 160000L, 7L), CommandResultCode.SUCCESS);
+            leader.submitCommandSync(placeOrder(UID_2, 202L, OrderAction.ASK, 159900L, 10L), CommandResultCode.SUCCESS);
+
+            // snapshot points are not applied by follower
+            assertThat(leader.getApi().submitCommandAsync(ApiPersistState.builder().dumpId(1L).build()).get(), is(CommandResultCode.SUCCESS));
+
+            leader.submitCommandSync(placeOrder(UID_3, 303L, OrderAction.BID, 160000L, 12L), CommandResultCode.SUCCESS);
+
+            final int leaderHash = leader.requestStateHash();
+
+            final long deadline = System.currentTimeMillis() + 10_000;
+            while (standby.requestStateHash() != leaderHash && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(standby.requestStateHash(), is(leaderHash));
+            assertThat(follower.getLag(), is(0L));
+            assertThat(follower.isFailed(), is(false));
+
+            final long promotedSeq = follower.promote();
+            assertThat(promotedSeq, is(follower.getLeaderSeq()));
+
+            // promoted core accepts regular commands
+            standby.submitCommandSync(placeOrder(UID_4, 404L, OrderAction.ASK, 161000L, 1L), CommandResultCode.SUCCESS);
+            assertThat(shipper.isBroken(), is(false));
+        }
+    }
+
+    @Test
+    public void followerShouldFailOnDamagedBlock() throws Exception {
+
+        // checksummed block with wrong checksum
+        final ByteBuffer block = ByteBuffer.allocate(JournalBlockChecksum.HEADER_SIZE + 4);
+        block.position(JournalBlockChecksum.HEADER_SIZE);
+        block.putInt(12345);
+        block.flip();
+        JournalBlockChecksum.seal(block);
+        block.put(JournalBlockChecksum.HEADER_SIZE, (byte) 1);
+
+        final ByteBuffer frame = ByteBuffer.allocate(SocketJournalShipper.FRAME_HEADER_SIZE + block.remaining());
+        frame.putLong(5L);
+        frame.putInt(block.remaining());
+        frame.put(block);
+
+        try (final ExchangeTestContainer standby = ExchangeTestContainer.create(PerformanceConfiguration.DEFAULT)) {
+
+            final JournalFollower follower = new JournalFollower(new ByteArrayInputStream(frame.array()), standby.getApi());
+
+            final long deadline = System.currentTimeMillis() + 10_000;
+            while (!follower.isFailed() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(follower.isFailed(), is(true));
+            assertThat(follower.getPublishedSeq(), is(0L));
+        }
+    }
+}
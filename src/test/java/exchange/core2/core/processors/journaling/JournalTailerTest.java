@@ -0,0 +1,145 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import com.lmax.disruptor.RingBuffer;
+import exchange.core2.core.ExchangeApi;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.common.cmd.OrderCommandType;
+import exchange.core2.core.common.config.AdmissionControlConfiguration;
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import net.jpountz.lz4.LZ4Factory;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class JournalTailerTest {
+
+    private static final int COMMANDS = 100_000;
+
+    @Test
+    public void shouldTailAndResumeFixedWidth() throws IOException {
+        tailAndResume(false);
+    }
+
+    @Test
+    public void shouldTailAndResumeCompact() throws IOException {
+        tailAndResume(true);
+    }
+
+    private static void tailAndResume(boolean compactRecords) throws IOException {
+
+        final Path folder = Files.createTempDirectory("journal-tailer-test");
+        final String exchangeId = "TAIL" + (compactRecords ? "C" : "F");
+
+        final ExchangeConfiguration exchangeCfg = ExchangeConfiguration.defaultBuilder()
+                .initStateCfg(InitialStateConfiguration.cleanStartJournaling(exchangeId))
+                .build();
+
+        final DiskSerializationProcessor processor = new DiskSerializationProcessor(exchangeCfg, diskConfig(folder, compactRecords));
+        final RingBuffer<OrderCommand> writeRing = RingBuffer.createMultiProducer(OrderCommand::new, 1024);
+        processor.enableJournaling(0, new ExchangeApi(writeRing, LZ4Factory.fastestInstance().fastCompressor(), AdmissionControlConfiguration.DEFAULT));
+
+        final SeqChecker checker = new SeqChecker();
+        final JournalPosition position;
+
+        try (final JournalTailer tailer = new JournalTailer(folder.toString(), exchangeId, 0)) {
+
+            // nothing written yet
+            assertThat(tailer.poll(checker, 1000), is(0));
+
+            // follow live journal while it is written
+            for (int i = 1; i <= COMMANDS / 2; i++) {
+                writeCommand(processor, i);
+                if (i % 10_000 == 0) {
+                    tailer.poll(checker, Integer.MAX_VALUE);
+                }
+            }
+            tailer.poll(checker, Integer.MAX_VALUE);
+
+            position = tailer.getPosition();
+            assertThat(position.getSeq(), is(checker.lastSeq));
+        }
+
+        for (int i = COMMANDS / 2 + 1; i <= COMMANDS; i++) {
+            writeCommand(processor, i);
+        }
+        final OrderCommand shutdown = new OrderCommand();
+        shutdown.command = OrderCommandType.SHUTDOWN_SIGNAL;
+        processor.writeToJournal(shutdown, COMMANDS + 1, true);
+
+        // several partitions were written
+        assertThat(Files.exists(folder.resolve(exchangeId + "_journal_0_0002.ecj")), is(true));
+
+        // resume from the saved position
+        try (final JournalTailer tailer = new JournalTailer(folder.toString(), exchangeId, position)) {
+            while (tailer.poll(checker, 777) != 0) {
+                // keep polling in small batches
+            }
+            assertThat(tailer.getPosition().getSeq(), is((long) COMMANDS));
+        }
+        assertThat(checker.lastSeq, is((long) COMMANDS));
+    }
+
+    private static void writeCommand(DiskSerializationProcessor processor, int i) throws IOException {
+        final OrderCommand cmd = OrderCommand.newOrder(OrderType.GTC, i, 100L + (i % 13), 10_000L + (i % 100), 10_000L + (i % 100), 1L + (i % 5), OrderAction.BID);
+        cmd.symbol = 1 + (i % 3);
+        cmd.timestamp = 1_000_000L + i;
+        processor.writeToJournal(cmd, i, i % 50 == 0);
+    }
+
+    private static final class SeqChecker implements Consumer<JournalCommandView> {
+
+        private long lastSeq = 0;
+
+        @Override
+        public void accept(JournalCommandView view) {
+            assertThat(view.getSeq(), is(lastSeq + 1));
+            assertThat(view.getCommand(), is(OrderCommandType.PLACE_ORDER));
+            assertThat(view.getOrderId(), is(view.getSeq()));
+            assertThat(view.getUid(), is(100L + (view.getSeq() % 13)));
+            assertThat(view.getSymbol(), is((int) (1 + (view.getSeq() % 3))));
+            assertThat(view.getTimestamp(), is(1_000_000L + view.getSeq()));
+            lastSeq = view.getSeq();
+        }
+    }
+
+    private static DiskSerializationProcessorConfiguration diskConfig(Path folder, boolean compactRecords) {
+        return DiskSerializationProcessorConfiguration.builder()
+                .storageFolder(folder.toString())
+                .snapshotLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .journalFileMaxSize(512 * 1024)
+                .journalBufferSize(64 * 1024)
+                .journalBatchCompressThreshold(2048)
+                .journalLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .journalDurabilityMode(JournalDurabilityMode.OS_BUFFERED)
+                .journalGroupCommitIntervalUs(500)
+                .journalGroupCommitBytes(1024 * 1024)
+                .journalForceIntervalMs(1000)
+                .journalCompactRecords(compactRecords)
+                .journalReplayThreads(0)
+                .build();
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.common.api.ApiPersistState;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.core.metrics.PaddedCounter;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static exchange.core2.tests.util.TestConstants.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public final class MappedJournalSegmentsTest {
+
+    @Test
+    public void shouldPreallocateRollAndTruncateSegments() throws IOException {
+
+        final Path folder = Files.createTempDirectory("journal-seg-test");
+        final Path seg1 = folder.resolve("j_0001.ecj");
+        final Path seg2 = folder.resolve("j_0002.ecj");
+        final Path spare = folder.resolve("j.spare");
+
+        final PaddedCounter forces = new PaddedCounter();
+        final MappedJournalSegments segments = new MappedJournalSegments(
+                4096, spare, JournalDurabilityMode.STRICT_SYNC, 0L, 0L, forces, "J-SEG-test");
+
+        // not prepared - mapped without zero-filling
+        segments.open(seg1);
+        segments.prepareNext();
+        assertThat(Files.size(seg1), is(4096L));
+
+        segments.append(bytes(1, 100));
+        segments.append(bytes(2, 50));
+        assertThat(segments.remaining(), is(4096 - 150));
+        assertThat(forces.get(), is(2L));
+
+        // prepared spare segment is renamed
+        segments.open(seg2);
+        assertFalse(Files.exists(spare));
+        assertThat(Files.size(seg2), is(4096L));
+        segments.prepareNext();
+        segments.append(bytes(3, 10));
+
+        segments.close();
+
+        assertArrayEquals(concat(bytes(1, 100), bytes(2, 50)), Files.readAllBytes(seg1));
+        assertArrayEquals(bytes(3, 10).array(), Files.readAllBytes(seg2));
+        assertFalse(Files.exists(spare));
+    }
+
+    @Test
+    public void shouldRejectOversizedSegment() {
+        assertThrows(IllegalArgumentException.class, () -> new MappedJournalSegments(
+                4L * 1024 * 1024 * 1024, Paths.get("j.spare"), JournalDurabilityMode.STRICT_SYNC, 0L, 0L, new PaddedCounter(), "J-SEG-test"));
+    }
+
+    @Test
+    public void shouldRecoverFromMappedJournal() throws Exception {
+
+        final Path folder = Files.createTempDirectory("journal-seg-recovery-test");
+
+        final DiskSerializationProcessorConfiguration diskCfg = DiskSerializationProcessorConfiguration.builder()
+                .storageFolder(folder.toString())
+                .snapshotLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .journalFileMaxSize(1024 * 1024)
+                .journalBufferSize(64 * 1024)
+                .journalBatchCompressThreshold(2048)
+                .journalLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .journalDurabilityMode(JournalDurabilityMode.STRICT_SYNC)
+                .journalMmapSegments(true)
+                .build();
+
+        final SerializationConfiguration serializationCfg = SerializationConfiguration.builder()
+                .enableJournaling(true)
+                .serializationProcessorFactory(cfg -> new DiskSerializationProcessor(cfg, diskCfg))
+                .build();
+
+        final int stateHash;
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(
+                PerformanceConfiguration.DEFAULT,
+                InitialStateConfiguration.cleanStartJournaling("SEG"),
+                serializationCfg)) {
+
+            container.initFeeSymbols();
+            container.initFeeUsers();
+
+            // first partition after snapshot is opened from spare segment too
+            assertThat(container.getApi().submitCommandAsync(ApiPersistState.builder().dumpId(1L).build()).get(), is(CommandResultCode.SUCCESS));
+            container.addMoneyToUser(UID_1, CURRENECY_XBT, 1_000L);
+
+            stateHash = container.requestStateHash();
+        }
+
+        assertFalse(Files.exists(folder.resolve("SEG_segment.spare")));
+
+        final InitialStateConfiguration lastKnownState = DiskSerializationProcessor.findLastKnownState("SEG", diskCfg);
+        assertThat(lastKnownState.getSnapshotId(), is(1L));
+
+        try (final ExchangeTestContainer recreated = ExchangeTestContainer.create(PerformanceConfiguration.DEFAULT, lastKnownState, serializationCfg)) {
+            assertThat(recreated.requestStateHash(), is(stateHash));
+        }
+    }
+
+    private static ByteBuffer bytes(int value, int length) {
+        final ByteBuffer bb = ByteBuffer.allocate(length);
+        while (bb.hasRemaining()) {
+            bb.put((byte) value);
+        }
+        bb.flip();
+        return bb;
+    }
+
+    private static byte[] concat(ByteBuffer a, ByteBuffer b) {
+        final ByteBuffer bb = ByteBuffer.allocate(a.remaining() + b.remaining());
+        bb.put(a).put(b);
+        return bb.array();
+    }
+}
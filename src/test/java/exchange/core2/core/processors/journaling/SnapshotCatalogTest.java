@@ -0,0 +1,113 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.journaling;
+
+import exchange.core2.core.common.config.ExchangeConfiguration;
+import exchange.core2.core.common.config.InitialStateConfiguration;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.NavigableMap;
+
+import static exchange.core2.core.processors.journaling.ISerializationProcessor.SerializedModuleType.MATCHING_ENGINE_ROUTER;
+import static exchange.core2.core.processors.journaling.ISerializationProcessor.SerializedModuleType.RISK_ENGINE;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class SnapshotCatalogTest {
+
+    @Test
+    public void shouldSelectLatestCompleteSnapshotWithJournalTail() throws IOException {
+
+        final Path path = Files.createTempDirectory("catalog-test").resolve("CAT.ecc");
+
+        final SnapshotCatalog catalog = new SnapshotCatalog(path);
+        assertThat(catalog.findLatestRecoveryPoint().getSnapshotId(), is(0L));
+
+        catalog.appendJournalPartition(0, 1, 1, 500, 4096, 1000);
+
+        // complete snapshot 10 (2 ME shards, 1 RE shard)
+        catalog.appendSnapshotModule(10, 500, 1100, MATCHING_ENGINE_ROUTER, 1, 2, 1);
+        catalog.appendSnapshotModule(10, 500, 1100, RISK_ENGINE, 0, 2, 1);
+        catalog.appendSnapshotModule(10, 500, 1100, MATCHING_ENGINE_ROUTER, 0, 2, 1);
+        catalog.appendJournalPartition(10, 1, 501, 900, 8192, 1200);
+        catalog.appendJournalPartition(10, 2, 901, 1300, 8192, 1300);
+
+        // incomplete snapshot 20 - risk engine shard was not stored
+        catalog.appendSnapshotModule(20, 1300, 1400, MATCHING_ENGINE_ROUTER, 0, 2, 1);
+        catalog.appendSnapshotModule(20, 1300, 1400, MATCHING_ENGINE_ROUTER, 1, 2, 1);
+
+        // partially written record is ignored
+        Files.write(path, new byte[20], StandardOpenOption.APPEND);
+
+        final SnapshotCatalog reloaded = new SnapshotCatalog(path);
+        final SnapshotCatalog.RecoveryPoint recoveryPoint = reloaded.findLatestRecoveryPoint();
+        assertThat(recoveryPoint.getSnapshotId(), is(10L));
+        assertThat(recoveryPoint.getSeq(), is(500L));
+        assertThat(recoveryPoint.getLastJournalSeq(), is(1300L));
+        assertThat(recoveryPoint.getJournal().size(), is(2));
+        assertThat(recoveryPoint.getJournal().get(1).getFirstSeq(), is(901L));
+
+        final NavigableMap<Long, SnapshotDescriptor> index = reloaded.buildSnapshotIndex();
+        assertThat(index.size(), is(2));
+        assertThat(index.get(0L).getJournals().size(), is(1));
+        assertThat(index.get(500L).getSnapshotId(), is(10L));
+        assertThat(index.get(500L).getNumMatchingEngines(), is(2));
+        assertThat(index.get(500L).getJournals().lastEntry().getValue().getSeqLast(), is(1300L));
+
+        // missing module stored later completes the snapshot
+        reloaded.appendSnapshotModule(20, 1300, 1400, RISK_ENGINE, 0, 2, 1);
+        assertThat(Files.size(path), is((long) SnapshotCatalog.HEADER_SIZE + 9 * SnapshotCatalog.RECORD_SIZE));
+        assertThat(new SnapshotCatalog(path).findLatestRecoveryPoint().getSnapshotId(), is(20L));
+    }
+
+    @Test
+    public void shouldFindLastKnownStateOfStoredSnapshot() throws IOException {
+
+        final Path folder = Files.createTempDirectory("catalog-test");
+
+        final DiskSerializationProcessorConfiguration diskCfg = DiskSerializationProcessorConfiguration.builder()
+                .storageFolder(folder.toString())
+                .snapshotLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .journalFileMaxSize(64 * 1024 * 1024)
+                .journalBufferSize(64 * 1024)
+                .journalBatchCompressThreshold(2048)
+                .journalLz4CompressorFactory(DiskSerializationProcessorConfiguration.LZ4_FAST)
+                .build();
+
+        assertThat(DiskSerializationProcessor.findLastKnownState("LKS", diskCfg).fromSnapshot(), is(false));
+
+        final ExchangeConfiguration exchangeCfg = ExchangeConfiguration.defaultBuilder()
+                .initStateCfg(InitialStateConfiguration.cleanStart("LKS"))
+                .performanceCfg(PerformanceConfiguration.baseBuilder().matchingEnginesNum(1).riskEnginesNum(1).build())
+                .build();
+
+        final DiskSerializationProcessor processor = new DiskSerializationProcessor(exchangeCfg, diskCfg);
+        assertThat(processor.storeData(33, 700, 1, MATCHING_ENGINE_ROUTER, 0, bytes -> bytes.writeLong(1L)), is(true));
+        assertThat(processor.storeData(33, 700, 1, RISK_ENGINE, 0, bytes -> bytes.writeLong(2L)), is(true));
+
+        assertThat(processor.findAllSnapshotPoints().get(700L).getSnapshotId(), is(33L));
+
+        final InitialStateConfiguration lastKnownState = DiskSerializationProcessor.findLastKnownState("LKS", diskCfg);
+        assertThat(lastKnownState.getSnapshotId(), is(33L));
+        assertThat(lastKnownState.getSnapshotBaseSeq(), is(700L));
+        assertThat(lastKnownState.getJournalTimestampNs(), is(0L));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.output;
+
+import exchange.core2.core.common.MatcherEventType;
+import exchange.core2.core.common.MatcherTradeEvent;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.cmd.OrderCommand;
+import exchange.core2.core.metrics.MetricsRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+
+public final class OutputRingTest {
+
+    private MetricsRegistry registry;
+    private OutputRing ring;
+
+    @BeforeEach
+    public void before() {
+        registry = new MetricsRegistry();
+        ring = new OutputRing(16, registry);
+    }
+
+    @Test
+    public void shouldDeliverCommandsWithEvents() {
+        final OutputSubscriber subscriber = ring.subscribe("test");
+
+        ring.publish(100L, placeOrder(1L, 2));
+        ring.publish(101L, placeOrder(2L, 0));
+
+        assertThat(subscriber.getLag(), is(4L));
+        assertThat(registry.getValue("output.test.lag"), is(4L));
+
+        final List<String> received = new ArrayList<>();
+        final int delivered = subscriber.poll((cmd, seq) -> {
+            final StringBuilder sb = new StringBuilder().append(seq).append(':').append(cmd.orderId);
+            for (MatcherTradeEvent evt = cmd.matcherEvent; evt != null; evt = evt.nextEvent) {
+                sb.append(' ').append(evt.matchedOrderId).append('/').append(evt.size);
+            }
+            received.add(sb.toString());
+        }, 10);
+
+        assertThat(delivered, is(2));
+        assertThat(received.get(0), is("100:1 1000/10 1001/11"));
+        assertThat(received.get(1), is("101:2"));
+        assertThat(subscriber.getLag(), is(0L));
+        assertThat(subscriber.getLostRecords(), is(0L));
+    }
+
+    @Test
+    public void shouldSkipOverrunRecordsOfSlowSubscriber() {
+        final OutputSubscriber slow = ring.subscribe("slow");
+
+        // 10 commands x 2 records = 20 records, ring holds 16
+        for (int i = 0; i < 10; i++) {
+            ring.publish(i, placeOrder(i, 1));
+        }
+
+        final List<Long> received = new ArrayList<>();
+        slow.poll((cmd, seq) -> received.add(cmd.orderId), 100);
+
+        assertThat(slow.getLostRecords(), is(4L));
+        assertThat(received.size(), is(8));
+        assertThat(received.get(0), is(2L));
+        assertThat(slow.getLag(), is(0L));
+    }
+
+    @Test
+    public void shouldRespectMaxCommands() {
+        final OutputSubscriber subscriber = ring.subscribe("limited");
+        ring.publish(1L, placeOrder(1L, 0));
+        ring.publish(2L, placeOrder(2L, 0));
+
+        final List<OrderCommand> received = new ArrayList<>();
+        assertThat(subscriber.poll((cmd, seq) -> received.add(cmd), 1), is(1));
+        assertThat(subscriber.poll((cmd, seq) -> assertThat(cmd.matcherEvent, nullValue()), 1), is(1));
+        assertThat(subscriber.poll((cmd, seq) -> received.add(cmd), 1), is(0));
+    }
+
+    @Test
+    public void shouldMarkTruncatedCommand() {
+        final OutputSubscriber subscriber = ring.subscribe("truncated");
+
+        // 20 events, ring holds command and 15 events
+        ring.publish(1L, placeOrder(1L, 20));
+
+        final List<String> received = new ArrayList<>();
+        subscriber.poll((cmd, seq) -> {
+            int events = 0;
+            for (MatcherTradeEvent evt = cmd.matcherEvent; evt != null; evt = evt.nextEvent) {
+                events++;
+            }
+            received.add(cmd.orderId + ":" + events + "/" + subscriber.getDroppedEvents());
+        }, 10);
+
+        assertThat(registry.getValue("output.truncated"), is(1L));
+        assertThat(received.get(0), is("1:15/5"));
+    }
+
+    private static OrderCommand placeOrder(long orderId, int trades) {
+        final OrderCommand cmd = OrderCommand.newOrder(OrderType.GTC, orderId, 5L, 100L, 100L, 30L, OrderAction.BID);
+        cmd.resultCode = CommandResultCode.SUCCESS;
+        MatcherTradeEvent tail = null;
+        for (int i = 0; i < trades; i++) {
+            final MatcherTradeEvent evt = MatcherTradeEvent.builder()
+                    .eventType(MatcherEventType.TRADE)
+                    .matchedOrderId(1000L + i)
+                    .size(10L + i)
+                    .price(100L)
+                    .build();
+            if (tail == null) {
+                cmd.matcherEvent = evt;
+            } else {
+                tail.nextEvent = evt;
+            }
+            tail = evt;
+        }
+        return cmd;
+    }
+}
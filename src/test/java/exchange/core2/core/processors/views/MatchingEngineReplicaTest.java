@@ -0,0 +1,131 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.views;
+
+import exchange.core2.core.common.L2MarketData;
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.api.reports.MultiSymbolDepthReportQuery;
+import exchange.core2.core.common.api.reports.MultiSymbolDepthReportResult;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.ReportsQueriesConfiguration;
+import exchange.core2.core.orderbook.IOrderBook;
+import exchange.core2.core.orderbook.OrderBookDirectImpl;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static exchange.core2.tests.util.TestConstants.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class MatchingEngineReplicaTest {
+
+    private static final int ORDERS_NUM = 600;
+
+    // first order book created for a symbol belongs to matching engine (replica follows it)
+    private final Map<Integer, IOrderBook> matchingEngineBooks = new ConcurrentHashMap<>();
+
+    private final Set<Thread> matchingThreads = new CopyOnWriteArraySet<>();
+    private final Set<Thread> copyingThreads = new CopyOnWriteArraySet<>();
+    private final AtomicLong matchingEngineBookCopies = new AtomicLong();
+
+    @Test
+    public void shouldNotCopyOrderBooksOnMatchingEngineThread() throws Exception {
+
+        final PerformanceConfiguration perfCfg = PerformanceConfiguration.baseBuilder()
+                .matchingEnginesNum(1)
+                .riskEnginesNum(1)
+                .orderBookFactory((spec, pool, eventsHelper, loggingCfg) -> recording(spec.symbolId, new OrderBookDirectImpl(spec, pool, eventsHelper, loggingCfg)))
+                .build();
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(
+                perfCfg,
+                ReportsQueriesConfiguration.createStandardConfig().withReadViews(1, 1))) {
+
+            final ReportQueryEngine engine = container.getReportQueryEngine();
+
+            container.addSymbol(SYMBOLSPECFEE_XBT_LTC);
+            container.initFeeUsers();
+
+            // large book, every report publishes new view of it
+            for (int i = 0; i < ORDERS_NUM; i++) {
+                container.submitCommandSync(placeBid(i % 2 == 0 ? UID_1 : UID_2, i + 1, 5000L - i), CommandResultCode.SUCCESS);
+                if (i % 50 == 0) {
+                    engine.processReportSynced(new MultiSymbolDepthReportQuery(10), 0).get();
+                }
+            }
+
+            final MultiSymbolDepthReportResult report = engine.processReportSynced(new MultiSymbolDepthReportQuery(Integer.MAX_VALUE), 0).get();
+            final L2MarketData expected = container.getApi().requestOrderBookAsync(SYMBOL_EXCHANGE_FEE, Integer.MAX_VALUE).get();
+            assertThat(report.getL2MarketData(report.indexOf(SYMBOL_EXCHANGE_FEE)), is(expected));
+            assertThat(expected.bidSize, is(ORDERS_NUM));
+        }
+
+        // views are copied from replica books by replica thread
+        assertThat(matchingEngineBookCopies.get(), is(0L));
+        assertThat(copyingThreads.isEmpty(), is(false));
+        assertThat(matchingThreads.stream().anyMatch(copyingThreads::contains), is(false));
+    }
+
+    private IOrderBook recording(final int symbol, final IOrderBook orderBook) {
+
+        final IOrderBook proxy = (IOrderBook) Proxy.newProxyInstance(
+                IOrderBook.class.getClassLoader(),
+                new Class[]{IOrderBook.class},
+                (p, method, args) -> {
+                    final boolean isMatchingEngineBook = matchingEngineBooks.get(symbol) == p;
+                    if (method.getName().equals("writeMarshallable")) {
+                        copyingThreads.add(Thread.currentThread());
+                        if (isMatchingEngineBook) {
+                            matchingEngineBookCopies.incrementAndGet();
+                        }
+                    } else if (method.getName().equals("newOrder") && isMatchingEngineBook) {
+                        matchingThreads.add(Thread.currentThread());
+                    }
+                    try {
+                        return method.invoke(orderBook, args);
+                    } catch (final InvocationTargetException ex) {
+                        throw ex.getCause();
+                    }
+                });
+
+        matchingEngineBooks.putIfAbsent(symbol, proxy);
+        return proxy;
+    }
+
+    private static ApiPlaceOrder placeBid(long uid, long orderId, long price) {
+        return ApiPlaceOrder.builder()
+                .uid(uid)
+                .orderId(orderId)
+                .action(OrderAction.BID)
+                .orderType(OrderType.GTC)
+                .symbol(SYMBOL_EXCHANGE_FEE)
+                .price(price)
+                .reservePrice(price)
+                .size(1L)
+                .build();
+    }
+}
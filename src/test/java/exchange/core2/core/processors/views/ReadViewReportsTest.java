@@ -0,0 +1,85 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.core.processors.views;
+
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.api.ApiCancelOrder;
+import exchange.core2.core.common.api.reports.SingleUserReportQuery;
+import exchange.core2.core.common.api.reports.SingleUserReportResult;
+import exchange.core2.core.common.api.reports.StateHashReportQuery;
+import exchange.core2.core.common.api.reports.TotalCurrencyBalanceReportQuery;
+import exchange.core2.core.common.cmd.CommandResultCode;
+import exchange.core2.core.common.config.PerformanceConfiguration;
+import exchange.core2.core.common.config.ReportsQueriesConfiguration;
+import exchange.core2.tests.util.ExchangeTestContainer;
+import org.junit.jupiter.api.Test;
+
+import static exchange.core2.tests.util.TestCommands.placeOrder;
+import static exchange.core2.tests.util.TestConstants.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public final class ReadViewReportsTest {
+
+    private static final PerformanceConfiguration PERF_CFG = PerformanceConfiguration.baseBuilder()
+            .matchingEnginesNum(2)
+            .riskEnginesNum(2)
+            .build();
+
+    @Test
+    public void shouldReturnSameResultsAsPipelineReports() throws Exception {
+
+        try (final ExchangeTestContainer container = ExchangeTestContainer.create(
+                PERF_CFG,
+                ReportsQueriesConfiguration.createStandardConfig().withReadViews(2, 4))) {
+
+            final ReportQueryEngine engine = container.getReportQueryEngine();
+
+            container.initFeeSymbols();
+            container.initFeeUsers();
+
+            container.submitCommandSync(placeOrder(UID_1, 101L, OrderAction.ASK, 160000L, 7L), CommandResultCode.SUCCESS);
+            container.submitCommandSync(placeOrder(UID_2, 202L, OrderAction.BID, 159000L, 10L), CommandResultCode.SUCCESS);
+            container.submitCommandSync(placeOrder(UID_3, 303L, OrderAction.BID, 160000L, 3L), CommandResultCode.SUCCESS);
+            container.submitCommandSync(placeOrder(UID_4, 404L, OrderAction.ASK, 161000L, 12L), CommandResultCode.SUCCESS);
+
+            assertSameReports(container, engine);
+            final long version = engine.getConsistentVersion();
+
+            // changes are visible only after views are published again
+            container.submitCommandSync(
+                    ApiCancelOrder.builder().uid(UID_2).orderId(202L).symbol(SYMBOL_EXCHANGE_FEE).build(),
+                    CommandResultCode.SUCCESS);
+            container.submitCommandSync(placeOrder(UID_1, 102L, OrderAction.BID, 150000L, 2L), CommandResultCode.SUCCESS);
+
+            assertSameReports(container, engine);
+            assertThat(engine.getConsistentVersion() > version, is(true));
+
+            final SingleUserReportResult user2 = engine.processReportSynced(new SingleUserReportQuery(UID_2), 0).get();
+            assertThat(user2.getOrders().isEmpty(), is(true));
+
+            // state hash report does not support read views - executed by engines
+            assertThat(engine.processReport(new StateHashReportQuery(), 0).get().getStateHash(), is(container.requestStateHash()));
+        }
+    }
+
+    private static void assertSameReports(final ExchangeTestContainer container, final ReportQueryEngine engine) throws Exception {
+        for (long uid : new long[]{UID_1, UID_2, UID_3, UID_4, 999L}) {
+            assertThat(engine.processReportSynced(new SingleUserReportQuery(uid), 0).get(), is(container.getUserProfile(uid)));
+        }
+        assertThat(engine.processReportSynced(new TotalCurrencyBalanceReportQuery(), 0).get(), is(container.totalBalanceReport()));
+    }
+}
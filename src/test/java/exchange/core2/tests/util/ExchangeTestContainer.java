@@ -28,6 +28,7 @@ import exchange.core2.core.common.api.reports.*;
 import exchange.core2.core.common.cmd.CommandResultCode;
 import exchange.core2.core.common.cmd.OrderCommand;
 import exchange.core2.core.common.config.*;
+import exchange.core2.core.processors.views.ReportQueryEngine;
 import exchange.core2.core.utils.AffinityThreadFactory;
 import lombok.Builder;
 import lombok.Data;
@@ -78,13 +79,19 @@ public final class ExchangeTestContainer implements AutoCloseable {
     public static ExchangeTestContainer create(final PerformanceConfiguration perfCfg) {
         return new ExchangeTestContainer(perfCfg,
                 InitialStateConfiguration.CLEAN_TEST,
-                SerializationConfiguration.DEFAULT);
+                SerializationConfiguration.DEFAULT,
+                ReportsQueriesConfiguration.createStandardConfig());
     }
 
     public static ExchangeTestContainer create(final PerformanceConfiguration perfCfg,
                                                final InitialStateConfiguration initStateCfg,
                                                final SerializationConfiguration serializationCfg) {
-        return new ExchangeTestContainer(perfCfg, initStateCfg, serializationCfg);
+        return new ExchangeTestContainer(perfCfg, initStateCfg, serializationCfg, ReportsQueriesConfiguration.createStandardConfig());
+    }
+
+    public static ExchangeTestContainer create(final PerformanceConfiguration perfCfg,
+                                               final ReportsQueriesConfiguration reportsQueriesCfg) {
+        return new ExchangeTestContainer(perfCfg, InitialStateConfiguration.CLEAN_TEST, SerializationConfiguration.DEFAULT, reportsQueriesCfg);
     }
 
     public static TestDataFutures prepareTestDataAsync(TestDataParameters parameters, int seed) {
@@ -125,7 +132,8 @@ public final class ExchangeTestContainer implements AutoCloseable {
 
     private ExchangeTestContainer(final PerformanceConfiguration perfCfg,
                                   final InitialStateConfiguration initStateCfg,
-                                  final SerializationConfiguration serializationCfg) {
+                                  final SerializationConfiguration serializationCfg,
+                                  final ReportsQueriesConfiguration reportsQueriesCfg) {
 
         //log.debug("CREATING exchange container");
 
@@ -134,7 +142,7 @@ public final class ExchangeTestContainer implements AutoCloseable {
         final ExchangeConfiguration exchangeConfiguration = ExchangeConfiguration.defaultBuilder()
                 .initStateCfg(initStateCfg)
                 .performanceCfg(perfCfg)
-                .reportsQueriesCfg(ReportsQueriesConfiguration.createStandardConfig())
+                .reportsQueriesCfg(reportsQueriesCfg)
                 .ordersProcessingCfg(OrdersProcessingConfiguration.DEFAULT)
                 .loggingCfg(LoggingConfiguration.DEFAULT)
                 .serializationCfg(serializationCfg)
@@ -307,6 +315,10 @@ public final class ExchangeTestContainer implements AutoCloseable {
         return api.processReport(new SingleUserReportQuery(clientId), getRandomTransferId()).get();
     }
 
+    public ReportQueryEngine getReportQueryEngine() {
+        return exchangeCore.getReportQueryEngine();
+    }
+
     public TotalCurrencyBalanceReportResult totalBalanceReport() {
         final TotalCurrencyBalanceReportResult res = api.processReport(new TotalCurrencyBalanceReportQuery(), getRandomTransferId()).join();
         final IntLongHashMap openInterestLong = res.getOpenInterestLong();
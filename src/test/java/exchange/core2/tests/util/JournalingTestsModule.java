@@ -20,10 +20,18 @@ import exchange.core2.core.common.cmd.CommandResultCode;
 import exchange.core2.core.common.config.InitialStateConfiguration;
 import exchange.core2.core.common.config.PerformanceConfiguration;
 import exchange.core2.core.common.config.SerializationConfiguration;
+import exchange.core2.core.processors.journaling.DiskSerializationProcessor;
+import exchange.core2.core.processors.journaling.DiskSerializationProcessorConfiguration;
 import lombok.extern.slf4j.Slf4j;
 import org.hamcrest.core.Is;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.concurrent.ExecutionException;
+import java.util.stream.Stream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
@@ -73,10 +81,8 @@ public class JournalingTestsModule {
                 log.info("Original state checks completed");
             }
 
-            // TODO Discover snapshots and journals with DiskSerializationProcessor
-            final long snapshotBaseSeq = 0L;
-
-            final InitialStateConfiguration fromSnapshotConfig = InitialStateConfiguration.lastKnownStateFromJournal(exchangeId, stateId, snapshotBaseSeq);
+            final InitialStateConfiguration fromSnapshotConfig = DiskSerializationProcessor.findLastKnownState(exchangeId, DiskSerializationProcessorConfiguration.createDefaultConfig());
+            assertThat(fromSnapshotConfig.getSnapshotId(), is(stateId));
 
             log.debug("Creating new exchange from persisted state...");
             final long tLoad = System.currentTimeMillis();
@@ -88,6 +94,10 @@ public class JournalingTestsModule {
                 float loadTimeSec = (float) (System.currentTimeMillis() - tLoad) / 1000.0f;
                 log.debug("Load+start+replay time: {}s", String.format("%.3f", loadTimeSec));
 
+                final long journalBytes = journalSize(exchangeId, stateId);
+                log.info("Recovery: {} MB of journal, {}s per GB", String.format("%.1f", journalBytes / 1048576.0),
+                        String.format("%.1f", loadTimeSec * 1073741824.0 / Math.max(journalBytes, 1)));
+
                 final long restoredStateHash = recreatedContainer.requestStateHash();
                 assertThat(restoredStateHash, is(originalFinalStateHash));
 
@@ -98,4 +108,15 @@ public class JournalingTestsModule {
         }
 
     }
+
+    private static long journalSize(final String exchangeId, final long snapshotId) {
+        final String prefix = exchangeId + "_journal_" + snapshotId + "_";
+        try (final Stream<Path> files = Files.list(Paths.get(DiskSerializationProcessorConfiguration.DEFAULT_FOLDER))) {
+            return files.filter(p -> p.getFileName().toString().startsWith(prefix))
+                    .mapToLong(p -> p.toFile().length())
+                    .sum();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
 }
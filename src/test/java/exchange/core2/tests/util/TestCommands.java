@@ -0,0 +1,53 @@
+/*
+ * Copyright 2019 Maksim Zheravin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package exchange.core2.tests.util;
+
+import exchange.core2.core.common.OrderAction;
+import exchange.core2.core.common.OrderType;
+import exchange.core2.core.common.api.ApiPersistState;
+import exchange.core2.core.common.api.ApiPlaceOrder;
+import exchange.core2.core.common.cmd.CommandResultCode;
+
+import static exchange.core2.tests.util.TestConstants.SYMBOL_EXCHANGE_FEE;
+
+public final class TestCommands {
+
+    private TestCommands() {
+    }
+
+    /**
+     * GTC order for SYMBOL_EXCHANGE_FEE, reserve price is same as price
+     */
+    public static ApiPlaceOrder placeOrder(long uid, long orderId, OrderAction action, long price, long size) {
+        return ApiPlaceOrder.builder()
+                .uid(uid)
+                .orderId(orderId)
+                .action(action)
+                .orderType(OrderType.GTC)
+                .symbol(SYMBOL_EXCHANGE_FEE)
+                .price(price)
+                .reservePrice(price)
+                .size(size)
+                .build();
+    }
+
+    /**
+     * Persist state and wait for result (delta snapshot if baseDumpId is not 0)
+     */
+    public static CommandResultCode persist(ExchangeTestContainer container, long dumpId, long baseDumpId) throws Exception {
+        return container.getApi().submitCommandAsync(ApiPersistState.builder().dumpId(dumpId).baseDumpId(baseDumpId).build()).get();
+    }
+}